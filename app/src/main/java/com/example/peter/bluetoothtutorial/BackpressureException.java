@@ -0,0 +1,16 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+
+/*
+*   A send failed because the connection's outbound queue was full
+*/
+public class BackpressureException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public BackpressureException(String __message)
+    {
+        super(__message);
+    }//end constructor
+}//end class BackpressureException
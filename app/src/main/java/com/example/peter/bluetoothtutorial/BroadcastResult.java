@@ -0,0 +1,153 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+*   Combined outcome of one frame sent to several peers. Every peer's send completes on its own,
+*   so a slow peer only holds up its own result; this keeps count and completes once every peer
+*   has either written the frame or failed
+*/
+public class BroadcastResult
+{
+    /*
+    *   notified once when every peer has finished
+    */
+    public interface Listener
+    {
+        void onComplete(BroadcastResult __result);
+    }//end interface Listener
+
+    private final int _targets;
+    private final AtomicInteger _succeeded = new AtomicInteger();
+    private final ConcurrentHashMap<String, IOException> _failures = new ConcurrentHashMap<>();
+    private final CountDownLatch _done;
+    private ArrayList<Listener> _listeners = null;
+
+    BroadcastResult(int __targets)
+    {
+        _targets = __targets;
+        _done = new CountDownLatch(__targets);
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   follows the send to one peer
+    */
+    void track(final String __address, SendFuture __future)
+    {
+        __future.addListener(new SendFuture.Listener()
+        {
+            @Override
+            public void onComplete(SendFuture __sent)
+            {
+                if(__sent.isSuccess())
+                {
+                    _succeeded.incrementAndGet();
+                }//end if
+                else
+                {
+                    _failures.put(__address, __sent.getFailure());
+                }//end else
+
+                peerFinished();
+            }//end method onComplete
+        });
+    }//end method track
+
+    private void peerFinished()
+    {
+        ArrayList<Listener> __listeners;
+
+        synchronized (this)
+        {
+            _done.countDown();
+            if(_done.getCount() > 0)
+            {
+                return;
+            }//end if
+
+            __listeners = _listeners;
+            _listeners = null;
+        }//end synchronized
+
+        if(__listeners != null)
+        {
+            for(Listener __listener : __listeners)
+            {
+                __listener.onComplete(this);
+            }//end for loop
+        }//end if
+    }//end method peerFinished
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs the listener when every peer has finished, straight away if they already have
+    */
+    public void addListener(Listener __listener)
+    {
+        synchronized (this)
+        {
+            if(_done.getCount() > 0)
+            {
+                if(_listeners == null)
+                {
+                    _listeners = new ArrayList<>(1);
+                }//end if
+
+                _listeners.add(__listener);
+                return;
+            }//end if
+        }//end synchronized
+
+        __listener.onComplete(this);
+    }//end method addListener
+
+    //----------------------------------------------------------------------------------------------
+
+    //waits for every peer, false if some are still pending after the timeout
+    public boolean await(long __timeout, TimeUnit __unit) throws InterruptedException
+    {
+        return _done.await(__timeout, __unit);
+    }//end method await
+
+    public boolean isDone()
+    {
+        return _done.getCount() == 0;
+    }//end method isDone
+
+    //number of peers the frame was sent to
+    public int getTargetCount()
+    {
+        return _targets;
+    }//end method getTargetCount
+
+    public int getSucceededCount()
+    {
+        return _succeeded.get();
+    }//end method getSucceededCount
+
+    public int getFailedCount()
+    {
+        return _failures.size();
+    }//end method getFailedCount
+
+    public int getPendingCount()
+    {
+        return (int) _done.getCount();
+    }//end method getPendingCount
+
+    //why each failed peer failed, by address
+    public Map<String, IOException> getFailures()
+    {
+        return Collections.unmodifiableMap(_failures);
+    }//end method getFailures
+}//end class BroadcastResult
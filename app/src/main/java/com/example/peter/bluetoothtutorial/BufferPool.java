@@ -0,0 +1,165 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Shared pool of byte arrays in power-of-two size classes. The pool never holds more than a
+*   fixed number of bytes, arrays released beyond that are left to the garbage collector.
+*   Acquiring from a warm pool allocates nothing, which keeps the receive path free of garbage
+*/
+public class BufferPool
+{
+    //smallest and largest pooled sizes, requests above the largest are allocated exactly and not pooled
+    public static final int MIN_BUFFER_SIZE = 256;
+    public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    //number of arrays kept per size class
+    private static final int SLOTS_PER_CLASS = 32;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+    private static final BufferPool DEFAULT = new BufferPool(4 * 1024 * 1024);
+
+    private final long _maxPooledBytes;
+    private final byte[][][] _free = new byte[CLASS_COUNT][SLOTS_PER_CLASS][];
+    private final int[] _freeCount = new int[CLASS_COUNT];
+    private long _pooledBytes = 0;
+
+    //counters to check that the steady state really is allocation free
+    private final AtomicLong _allocations = new AtomicLong();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _discards = new AtomicLong();
+
+    public BufferPool(long __maxPooledBytes)
+    {
+        _maxPooledBytes = __maxPooledBytes;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   pool shared by every connection in the process
+    */
+    public static BufferPool getDefault()
+    {
+        return DEFAULT;
+    }//end method getDefault
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   returns an array of at least __minSize bytes, its contents are undefined
+    */
+    public byte[] acquire(int __minSize)
+    {
+        int __class = classFor(__minSize);
+
+        if(__class < 0)
+        {
+            _allocations.incrementAndGet();
+            return new byte[__minSize];
+        }//end if
+
+        synchronized (this)
+        {
+            if(_freeCount[__class] > 0)
+            {
+                int __slot = --_freeCount[__class];
+                byte[] __buffer = _free[__class][__slot];
+                _free[__class][__slot] = null;
+                _pooledBytes -= __buffer.length;
+                _hits.incrementAndGet();
+                return __buffer;
+            }//end if
+        }//end synchronized
+
+        _allocations.incrementAndGet();
+        return new byte[1 << (__class + MIN_SHIFT)];
+    }//end method acquire
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   gives an array back to the pool, the caller must not touch it afterwards
+    */
+    public void release(byte[] __buffer)
+    {
+        int __class = classFor(__buffer.length);
+
+        //only arrays that exactly match a size class are pooled
+        if(__class < 0 || (1 << (__class + MIN_SHIFT)) != __buffer.length)
+        {
+            _discards.incrementAndGet();
+            return;
+        }//end if
+
+        synchronized (this)
+        {
+            if(_freeCount[__class] < SLOTS_PER_CLASS && _pooledBytes + __buffer.length <= _maxPooledBytes)
+            {
+                _free[__class][_freeCount[__class]++] = __buffer;
+                _pooledBytes += __buffer.length;
+                return;
+            }//end if
+        }//end synchronized
+
+        _discards.incrementAndGet();
+    }//end method release
+
+    //----------------------------------------------------------------------------------------------
+
+    //arrays created because the pool had none to hand out
+    public long getAllocationCount()
+    {
+        return _allocations.get();
+    }//end method getAllocationCount
+
+    //acquires served from the pool
+    public long getHitCount()
+    {
+        return _hits.get();
+    }//end method getHitCount
+
+    //released arrays that were not kept
+    public long getDiscardCount()
+    {
+        return _discards.get();
+    }//end method getDiscardCount
+
+    public synchronized long getPooledBytes()
+    {
+        return _pooledBytes;
+    }//end method getPooledBytes
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   rounds a size up to the next power of two that the pool hands out
+    */
+    public static int roundUp(int __size)
+    {
+        if(__size <= MIN_BUFFER_SIZE)
+        {
+            return MIN_BUFFER_SIZE;
+        }//end if
+
+        int __rounded = Integer.highestOneBit(__size - 1) << 1;
+        return __rounded > 0 ? __rounded : __size;
+    }//end method roundUp
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   index of the smallest size class holding __size bytes, -1 when it is too large to pool
+    */
+    private static int classFor(int __size)
+    {
+        if(__size > MAX_BUFFER_SIZE)
+        {
+            return -1;
+        }//end if
+
+        return Integer.numberOfTrailingZeros(roundUp(__size)) - MIN_SHIFT;
+    }//end method classFor
+}//end class BufferPool
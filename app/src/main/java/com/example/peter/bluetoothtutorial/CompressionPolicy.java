@@ -0,0 +1,72 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/*
+*   Settings for compressing frames on connections that negotiate it. The setters return the
+*   policy so several can be chained when it is created
+*/
+public class CompressionPolicy
+{
+    private int _level = Deflater.BEST_SPEED;
+    private int _minFrameLength = 256;
+    private byte[] _dictionary = null;
+
+    //----------------------------------------------------------------------------------------------
+
+    //deflate level, BEST_SPEED keeps the cost per megabyte low
+    public CompressionPolicy setLevel(int __level)
+    {
+        _level = __level;
+        return this;
+    }//end method setLevel
+
+    //payloads shorter than this are sent as they are, the deflate overhead would eat the gain
+    public CompressionPolicy setMinFrameLength(int __minFrameLength)
+    {
+        _minFrameLength = __minFrameLength;
+        return this;
+    }//end method setMinFrameLength
+
+    /*
+    *   bytes that typical payloads share, e.g. field names of the telemetry records. Both peers
+    *   must use the same dictionary, the handshake only enables compression when they do
+    */
+    public CompressionPolicy setDictionary(byte[] __dictionary)
+    {
+        _dictionary = __dictionary;
+        return this;
+    }//end method setDictionary
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getLevel()
+    {
+        return _level;
+    }//end method getLevel
+
+    public int getMinFrameLength()
+    {
+        return _minFrameLength;
+    }//end method getMinFrameLength
+
+    //null when there is none
+    public byte[] getDictionary()
+    {
+        return _dictionary;
+    }//end method getDictionary
+
+    //checksum of the dictionary that is compared during the handshake, 0 without one
+    public int getDictionaryId()
+    {
+        if(_dictionary == null)
+        {
+            return 0;
+        }//end if
+
+        Adler32 __checksum = new Adler32();
+        __checksum.update(_dictionary, 0, _dictionary.length);
+        return (int) __checksum.getValue();
+    }//end method getDictionaryId
+}//end class CompressionPolicy
@@ -0,0 +1,108 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Totals for frame compression, shared by every connection of an engine. The ratio and the
+*   CPU time per megabyte tell whether compressing beats sending the raw bytes over the link
+*/
+public class CompressionStats
+{
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final AtomicLong _framesCompressed = new AtomicLong();
+    private final AtomicLong _framesSkipped = new AtomicLong();
+    private final AtomicLong _bytesIn = new AtomicLong();
+    private final AtomicLong _bytesOut = new AtomicLong();
+    private final AtomicLong _compressNanos = new AtomicLong();
+
+    private final AtomicLong _framesInflated = new AtomicLong();
+    private final AtomicLong _bytesInflated = new AtomicLong();
+    private final AtomicLong _inflateNanos = new AtomicLong();
+
+    //----------------------------------------------------------------------------------------------
+
+    void recordCompressed(int __before, int __after, long __nanos)
+    {
+        _framesCompressed.incrementAndGet();
+        _bytesIn.addAndGet(__before);
+        _bytesOut.addAndGet(__after);
+        _compressNanos.addAndGet(__nanos);
+    }//end method recordCompressed
+
+    //sent as it was, too short or it did not get smaller. __nanos is what a failed attempt cost
+    void recordSkipped(int __length, long __nanos)
+    {
+        _framesSkipped.incrementAndGet();
+        _bytesIn.addAndGet(__length);
+        _bytesOut.addAndGet(__length);
+        _compressNanos.addAndGet(__nanos);
+    }//end method recordSkipped
+
+    void recordInflated(int __length, long __nanos)
+    {
+        _framesInflated.incrementAndGet();
+        _bytesInflated.addAndGet(__length);
+        _inflateNanos.addAndGet(__nanos);
+    }//end method recordInflated
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getFramesCompressed()
+    {
+        return _framesCompressed.get();
+    }//end method getFramesCompressed
+
+    public long getFramesSkipped()
+    {
+        return _framesSkipped.get();
+    }//end method getFramesSkipped
+
+    public long getFramesInflated()
+    {
+        return _framesInflated.get();
+    }//end method getFramesInflated
+
+    //payload bytes offered for sending on compressing connections
+    public long getBytesIn()
+    {
+        return _bytesIn.get();
+    }//end method getBytesIn
+
+    //payload bytes that went out for them
+    public long getBytesOut()
+    {
+        return _bytesOut.get();
+    }//end method getBytesOut
+
+    //bytes out per byte in, below 1 means the link carries less
+    public double getRatio()
+    {
+        long __in = _bytesIn.get();
+        return __in == 0 ? 1 : (double) _bytesOut.get() / __in;
+    }//end method getRatio
+
+    //CPU time spent compressing per megabyte of payload offered
+    public double getCompressNanosPerMegabyte()
+    {
+        long __in = _bytesIn.get();
+        return __in == 0 ? 0 : _compressNanos.get() * MEGABYTE / __in;
+    }//end method getCompressNanosPerMegabyte
+
+    //CPU time spent inflating per megabyte of payload received
+    public double getInflateNanosPerMegabyte()
+    {
+        long __out = _bytesInflated.get();
+        return __out == 0 ? 0 : _inflateNanos.get() * MEGABYTE / __out;
+    }//end method getInflateNanosPerMegabyte
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return String.format("ratio %.3f, compress %.1f ms/MB, inflate %.1f ms/MB, %d compressed, %d skipped",
+                getRatio(), getCompressNanosPerMegabyte() / 1e6, getInflateNanosPerMegabyte() / 1e6,
+                getFramesCompressed(), getFramesSkipped());
+    }//end method toString
+}//end class CompressionStats
@@ -0,0 +1,105 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.Random;
+
+/*
+*   Settings for establishing connections. The setters return the policy so several can be
+*   chained when it is created
+*/
+public class ConnectPolicy
+{
+    private final Random _random = new Random();
+
+    private int _maxParallelAttempts = 2;
+    private long _attemptTimeoutMillis = 12000;
+    private int _maxAttempts = 3;
+    private long _initialBackoffMillis = 500;
+    private long _maxBackoffMillis = 8000;
+    private CompressionPolicy _compression = null;
+
+    //----------------------------------------------------------------------------------------------
+
+    //connect attempts that may run at the same time, the rest wait in the connect queue
+    public ConnectPolicy setMaxParallelAttempts(int __maxParallelAttempts)
+    {
+        _maxParallelAttempts = __maxParallelAttempts;
+        return this;
+    }//end method setMaxParallelAttempts
+
+    //longest a single attempt may take before its transport is closed
+    public ConnectPolicy setAttemptTimeoutMillis(long __attemptTimeoutMillis)
+    {
+        _attemptTimeoutMillis = __attemptTimeoutMillis;
+        return this;
+    }//end method setAttemptTimeoutMillis
+
+    //attempts made before the connection is reported as failed, 1 means no retry
+    public ConnectPolicy setMaxAttempts(int __maxAttempts)
+    {
+        _maxAttempts = __maxAttempts;
+        return this;
+    }//end method setMaxAttempts
+
+    //delay before the first retry, it doubles for every further retry
+    public ConnectPolicy setInitialBackoffMillis(long __initialBackoffMillis)
+    {
+        _initialBackoffMillis = __initialBackoffMillis;
+        return this;
+    }//end method setInitialBackoffMillis
+
+    public ConnectPolicy setMaxBackoffMillis(long __maxBackoffMillis)
+    {
+        _maxBackoffMillis = __maxBackoffMillis;
+        return this;
+    }//end method setMaxBackoffMillis
+
+    /*
+    *   offers compression to every peer when the connection comes up, frames are compressed once
+    *   the peer has accepted. Null, the default, sends everything uncompressed
+    */
+    public ConnectPolicy setCompression(CompressionPolicy __compression)
+    {
+        _compression = __compression;
+        return this;
+    }//end method setCompression
+
+    //----------------------------------------------------------------------------------------------
+
+    public CompressionPolicy getCompression()
+    {
+        return _compression;
+    }//end method getCompression
+
+    public int getMaxParallelAttempts()
+    {
+        return _maxParallelAttempts;
+    }//end method getMaxParallelAttempts
+
+    public long getAttemptTimeoutMillis()
+    {
+        return _attemptTimeoutMillis;
+    }//end method getAttemptTimeoutMillis
+
+    public int getMaxAttempts()
+    {
+        return _maxAttempts;
+    }//end method getMaxAttempts
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   delay before retrying after __failedAttempts attempts. Exponential with jitter between
+    *   half and all of the step, so peers that dropped together do not all retry together
+    */
+    public long getBackoffMillis(int __failedAttempts)
+    {
+        long __step = _initialBackoffMillis << Math.min(30, Math.max(0, __failedAttempts - 1));
+        __step = Math.min(__step, _maxBackoffMillis);
+
+        long __half = __step / 2;
+        synchronized (_random)
+        {
+            return __half + (long) (_random.nextDouble() * (__step - __half));
+        }//end synchronized
+    }//end method getBackoffMillis
+}//end class ConnectPolicy
@@ -0,0 +1,483 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+*   One link to a peer. The connection owns no thread, a ConnectionEngine connects it on its
+*   connect pool and a reader worker polls it for data together with other connections
+*/
+public class Connection implements FrameConsumer
+{
+    //creates the transport for each connect attempt
+    private final TransportFactory _transportFactory;
+
+    //transport of the current or last attempt, null before the first attempt
+    private volatile Transport _transport;
+
+    private final ConnectionListener _listener;
+
+    //reassembles frames from the stream into a pooled ring buffer reused for every read
+    private final FrameDecoder _decoder = new FrameDecoder();
+    private final LinkMetrics _metrics;
+
+    //outbound frames wait here until a writer thread of the engine writes them
+    private final WriteQueue _writeQueue;
+
+    private volatile InputStream _inputStream;
+
+    private final AtomicReference<ConnectionState> _state = new AtomicReference<>(ConnectionState.CONNECTING);
+
+    //registry the connection removes itself from once closed
+    private final ConnectionRegistry _registry;
+
+    //nanoseconds from the connect call to the connection being up, -1 until then
+    private volatile long _connectNanos = -1;
+
+    //System.nanoTime an inbound link was accepted, -1 for outbound links and once its first bytes are read
+    private volatile long _acceptedNanos = -1;
+
+    //set for links a server accepted, the peer dialled us
+    private volatile boolean _inbound = false;
+
+    //null when the engine does not offer compression
+    private final FrameCompressor _compressor;
+
+    //set once the peer's hello accepted compression
+    private volatile boolean _compressing = false;
+
+    //hello payload: [version][flags][dictionary id: 4 bytes]
+    private static final byte HELLO_VERSION = 1;
+    private static final byte HELLO_FLAG_DEFLATE = 1;
+    private static final int HELLO_LENGTH = 6;
+
+    Connection(TransportFactory __transportFactory, ConnectionListener __listener, WriteQueue __writeQueue, ConnectionRegistry __registry)
+    {
+        this(__transportFactory, __listener, __writeQueue, __registry, null);
+    }//end constructor
+
+    Connection(TransportFactory __transportFactory, ConnectionListener __listener, WriteQueue __writeQueue,
+               ConnectionRegistry __registry, FrameCompressor __compressor)
+    {
+        _transportFactory = __transportFactory;
+        _listener = __listener;
+        _writeQueue = __writeQueue;
+        _registry = __registry;
+        _compressor = __compressor;
+        _metrics = __writeQueue.getMetrics();
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   makes one connect attempt on a new transport, blocks until it succeeds or fails. Called on
+    *   the engine's connect pool
+    */
+    void open() throws IOException
+    {
+        Transport __transport = _transportFactory.create();
+        _transport = __transport;
+
+        //closed while the transport was being created, make sure the new one is closed too
+        if(isClosed())
+        {
+            abortAttempt();
+            throw new IOException("connection closed while connecting");
+        }//end if
+
+        __transport.connect();
+        _inputStream = __transport.getInputStream();
+    }//end method open
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts writing queued frames once the engine has accepted the attempt, so a timed out
+    *   attempt never hands its stream to the write queue
+    */
+    void startWriting() throws IOException
+    {
+        _writeQueue.start(_transport.getOutputStream());
+    }//end method startWriting
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   closes the transport of the current attempt without closing the connection, which makes
+    *   a blocked connect give up. Used for timeouts and after failed attempts
+    */
+    void abortAttempt()
+    {
+        Transport __transport = _transport;
+
+        if(__transport != null)
+        {
+            try
+            {
+                __transport.close();
+            }//end try
+            catch (IOException e)
+            {
+                //the attempt is abandoned either way
+            }//end catch
+        }//end if
+    }//end method abortAttempt
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   has the stream unpark the reader when data arrives or the link ends. False if the stream
+    *   cannot tell, then the reader has to keep polling it
+    */
+    boolean wakeOnInput(Thread __reader)
+    {
+        if(!(_inputStream instanceof ReadAheadInputStream))
+        {
+            return false;
+        }//end if
+
+        ((ReadAheadInputStream) _inputStream).wakeOnInput(__reader);
+        return true;
+    }//end method wakeOnInput
+
+    //true while the link's stream runs a read-ahead thread of its own
+    boolean isReadingAhead()
+    {
+        InputStream __inputStream = _inputStream;
+        return __inputStream instanceof ReadAheadInputStream && ((ReadAheadInputStream) __inputStream).isPumping();
+    }//end method isReadingAhead
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   reads whatever is waiting in the stream without blocking and passes complete frames to the
+    *   listener. Returns the number of bytes read, 0 when nothing was waiting, -1 at end of stream
+    */
+    int poll() throws IOException
+    {
+        if(isClosed())
+        {
+            return -1;
+        }//end if
+
+        if(_inputStream.available() <= 0)
+        {
+            return 0;
+        }//end if
+
+        //data is waiting so the read returns straight away
+        int __read = _decoder.readFrom(_inputStream, this);
+        if(__read > 0)
+        {
+            _metrics.recordRead(__read);
+
+            if(_acceptedNanos >= 0)
+            {
+                _metrics.recordAcceptToFirstByte(System.nanoTime() - _acceptedNanos);
+                _acceptedNanos = -1;
+            }//end if
+        }//end if
+
+        return __read;
+    }//end method poll
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onFrame(Frame __frame) throws IOException
+    {
+        if(__frame.getType() == Frame.TYPE_HELLO)
+        {
+            onHello(__frame);
+            return;
+        }//end if
+
+        if((__frame.getType() & FrameCompressor.FLAG_COMPRESSED) != 0)
+        {
+            //a peer only compresses after we offered it, anything else is a protocol error
+            if(_compressor == null)
+            {
+                throw new IOException("compressed frame on a connection that did not offer compression");
+            }//end if
+
+            __frame = _compressor.decode(__frame);
+        }//end if
+
+        //Send the frame to the owner
+        long __start = System.nanoTime();
+        _listener.onFrameReceived(this, __frame);
+        _metrics.recordFrameIn(System.nanoTime() - __start);
+    }//end method onFrame
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   tells the peer what this side can decode, called by the engine once the link is up
+    */
+    void sendHello()
+    {
+        if(_compressor == null)
+        {
+            return;
+        }//end if
+
+        int __dictionaryId = _compressor.getPolicy().getDictionaryId();
+        sendFrame(FrameEncoder.encode(Frame.TYPE_HELLO, new byte[] {HELLO_VERSION, HELLO_FLAG_DEFLATE,
+                (byte) (__dictionaryId >>> 24), (byte) (__dictionaryId >>> 16), (byte) (__dictionaryId >>> 8), (byte) __dictionaryId}));
+    }//end method sendHello
+
+    /*
+    *   compression is switched on when both sides offered it with the same dictionary. Peers that
+    *   never send a hello simply get uncompressed frames
+    */
+    private void onHello(Frame __frame)
+    {
+        if(_compressor == null || __frame.getLength() < HELLO_LENGTH)
+        {
+            return;
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        int __dictionaryId = ((__buffer[__offset + 2] & 0xff) << 24) | ((__buffer[__offset + 3] & 0xff) << 16)
+                | ((__buffer[__offset + 4] & 0xff) << 8) | (__buffer[__offset + 5] & 0xff);
+
+        _compressing = (__buffer[__offset + 1] & HELLO_FLAG_DEFLATE) != 0
+                && __dictionaryId == _compressor.getPolicy().getDictionaryId();
+    }//end method onHello
+
+    //true once the peer agreed to compression
+    public boolean isCompressing()
+    {
+        return _compressing;
+    }//end method isCompressing
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues a text frame for the peer. The returned future completes once the frame is
+    *   written; it fails if the outbound queue is full or the connection goes down first
+    */
+    public SendFuture send(String __message)
+    {
+        return send(Frame.TYPE_TEXT, __message.getBytes(Frame.UTF_8));
+    }//end method send
+
+    //----------------------------------------------------------------------------------------------
+
+    //queues a frame of the given type, the payload is not interpreted
+    public SendFuture send(byte __type, byte[] __payload)
+    {
+        if(_compressing)
+        {
+            return sendFrame(_compressor.encode(__type, __payload, 0, __payload.length));
+        }//end if
+
+        return sendFrame(FrameEncoder.encode(__type, __payload));
+    }//end method send
+
+    //----------------------------------------------------------------------------------------------
+
+    //queues an already encoded frame, the array must not change until the send completes
+    SendFuture sendFrame(byte[] __frame)
+    {
+        return _writeQueue.enqueue(__frame, 0, __frame.length);
+    }//end method sendFrame
+
+    //same for a frame in the first __length bytes of a larger array, e.g. one from a BufferPool
+    SendFuture sendFrame(byte[] __frame, int __length)
+    {
+        return _writeQueue.enqueue(__frame, 0, __length);
+    }//end method sendFrame
+
+    //same, failing at once instead of waiting when the queue is full, for frames shared between connections
+    SendFuture sendFrameWithoutBlocking(byte[] __frame)
+    {
+        return _writeQueue.enqueue(__frame, 0, __frame.length, false);
+    }//end method sendFrameWithoutBlocking
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of frames waiting to be written
+    public int getQueuedFrames()
+    {
+        return _writeQueue.size();
+    }//end method getQueuedFrames
+
+    //how long the socket write in progress has been blocked, 0 when none is
+    long getWriteBlockedNanos(long __now)
+    {
+        return _writeQueue.getWriteBlockedNanos(__now);
+    }//end method getWriteBlockedNanos
+
+    //traffic and errors of this connection
+    public LinkMetrics getMetrics()
+    {
+        return _metrics;
+    }//end method getMetrics
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   method to return the transport used by this connection, null before the first connect attempt
+    */
+    public Transport get_transport()
+    {
+        return _transport;
+    }//end method get_transport
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   method to return the address of the peer
+    */
+    public String getAddress()
+    {
+        return _transportFactory.getAddress();
+    }//end method getAddress
+
+    //----------------------------------------------------------------------------------------------
+
+    //time it took to connect, retries included, -1 if the connection never came up
+    public long getConnectNanos()
+    {
+        return _connectNanos;
+    }//end method getConnectNanos
+
+    void setConnectNanos(long __connectNanos)
+    {
+        _connectNanos = __connectNanos;
+    }//end method setConnectNanos
+
+    void setAcceptedNanos(long __acceptedNanos)
+    {
+        _acceptedNanos = __acceptedNanos;
+        _inbound = true;
+    }//end method setAcceptedNanos
+
+    //true for a link the peer dialled
+    public boolean isInbound()
+    {
+        return _inbound;
+    }//end method isInbound
+
+    //----------------------------------------------------------------------------------------------
+
+    public ConnectionState getState()
+    {
+        return _state.get();
+    }//end method getState
+
+    //true once the connection is closing or closed
+    public boolean isClosed()
+    {
+        ConnectionState __state = _state.get();
+        return __state == ConnectionState.CLOSING || __state == ConnectionState.CLOSED;
+    }//end method isClosed
+
+    //atomically moves from __expected to __next, false if the connection was not in __expected
+    boolean transition(ConnectionState __expected, ConnectionState __next)
+    {
+        return _state.compareAndSet(__expected, __next);
+    }//end method transition
+
+    //----------------------------------------------------------------------------------------------
+
+    // will cancel an in-progress connection and close the transport
+    public void close()
+    {
+        close(new IOException("connection closed"));
+    }//end method close
+
+    /*
+    *   closes the connection because the link stopped working. The cause is counted as an error
+    *   and every queued send fails with it
+    */
+    void abort(IOException __cause)
+    {
+        if(close(__cause))
+        {
+            _metrics.recordError(__cause);
+        }//end if
+    }//end method abort
+
+    //false if the connection was already closing
+    private boolean close(IOException __cause)
+    {
+        while(true)
+        {
+            ConnectionState __state = _state.get();
+
+            if(__state == ConnectionState.CLOSING || __state == ConnectionState.CLOSED)
+            {
+                return false;
+            }//end if
+
+            if(_state.compareAndSet(__state, ConnectionState.CLOSING))
+            {
+                break;
+            }//end if
+        }//end while loop
+
+        releaseTransport(__cause);
+        return true;
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+
+    private void releaseTransport(IOException __cause)
+    {
+        _writeQueue.close(__cause);
+        abortAttempt();
+    }//end method releaseTransport
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   called once the connection is gone, whichever side closed it
+    */
+    void reportDisconnected()
+    {
+        if(_state.getAndSet(ConnectionState.CLOSED) != ConnectionState.CLOSED)
+        {
+            releaseTransport(new IOException("connection closed"));
+            _registry.unregister(this);
+
+            //the reader worker is the only user of the decoder, it calls this after its last poll
+            releaseCodecs();
+            _listener.onDisconnected(this);
+        }//end if
+    }//end method reportDisconnected
+
+    //----------------------------------------------------------------------------------------------
+
+    private void releaseCodecs()
+    {
+        _decoder.release();
+
+        if(_compressor != null)
+        {
+            _compressor.release();
+        }//end if
+    }//end method releaseCodecs
+
+    //----------------------------------------------------------------------------------------------
+
+    void reportConnected()
+    {
+        _listener.onConnected(this);
+    }//end method reportConnected
+
+    void reportConnectionFailed(IOException __cause)
+    {
+        if(_state.getAndSet(ConnectionState.CLOSED) != ConnectionState.CLOSED)
+        {
+            _metrics.recordError(__cause);
+            releaseTransport(__cause);
+            _registry.unregister(this);
+            releaseCodecs();
+            _listener.onConnectionFailed(this, __cause);
+        }//end if
+    }//end method reportConnectionFailed
+}//end class Connection
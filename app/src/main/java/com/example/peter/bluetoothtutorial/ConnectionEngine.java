@@ -0,0 +1,878 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+*   Runs every connection on a small, fixed set of threads instead of two threads per peer.
+*   Connect attempts go to a bounded connect pool, established connections are shared out
+*   between a fixed number of reader workers and outbound queues are drained by a writer pool.
+*   A worker polls its connections for waiting bytes and only reads from the ones that have
+*   some, so it never blocks in read and the thread count stays flat however many peers are
+*   connected.
+*
+*   Each connect attempt has a deadline, after which its transport is closed. Failed attempts
+*   are retried with jittered exponential backoff as set by the ConnectPolicy, and the time
+*   from the connect call to the connection being up is recorded in a histogram.
+*
+*   Polling relies on InputStream.available, which the transports report without blocking and
+*   which throws once the link is gone. RFCOMM sockets cannot tell, so RfcommTransport reads
+*   them ahead on a thread per link. That thread wakes the worker when data arrives, so a worker
+*   whose links are all read ahead sleeps until then instead of polling.
+*
+*   Socket writes block while the peer is not reading. A timer thread, which also runs every
+*   timeout and delayed flush so none of them waits behind a blocked write, checks the writers
+*   regularly: each write blocked for longer than a moment gets an extra writer thread for the
+*   others, and one blocked past the policy's write timeout closes its connection
+*/
+public class ConnectionEngine
+{
+    public static final int DEFAULT_READER_THREADS = 2;
+    public static final int DEFAULT_WRITER_THREADS = 2;
+
+    //shortest and longest a worker sleeps while none of its connections has data and some cannot wake it
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    //how often the timer looks for blocked writes, and how long one has to block to count as stalled
+    private static final long WRITE_CHECK_MILLIS = 50;
+    private static final long STALLED_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ThreadPoolExecutor _connectExecutor;
+    private final ConnectPolicy _connectPolicy;
+    private final ReaderWorker[] _readers;
+    private final ThreadPoolExecutor _writeExecutor;
+    private final int _writerThreads;
+    private final WritePolicy _writePolicy;
+    private final ScheduledThreadPoolExecutor _timerExecutor;
+    private final ConnectionRegistry _registry = new ConnectionRegistry();
+    private volatile boolean _shutdown = false;
+
+    //traffic and latency of every connection, connect statistics
+    private final EngineMetrics _metrics = new EngineMetrics();
+    private final AtomicLong _connectAttempts = new AtomicLong();
+    private final AtomicLong _connectRetries = new AtomicLong();
+    private final AtomicLong _connectTimeouts = new AtomicLong();
+    private final AtomicLong _connectFailures = new AtomicLong();
+
+    //compression totals of every connection, and the compressor for frames shared by a broadcast
+    private final CompressionStats _compressionStats = new CompressionStats();
+    private final FrameCompressor _broadcastCompressor;
+
+    public ConnectionEngine()
+    {
+        this(new ConnectPolicy(), DEFAULT_READER_THREADS, DEFAULT_WRITER_THREADS, new WritePolicy());
+    }//end constructor
+
+    public ConnectionEngine(int __connectThreads, int __readerThreads)
+    {
+        this(__connectThreads, __readerThreads, DEFAULT_WRITER_THREADS, new WritePolicy());
+    }//end constructor
+
+    public ConnectionEngine(int __connectThreads, int __readerThreads, int __writerThreads, WritePolicy __writePolicy)
+    {
+        this(new ConnectPolicy().setMaxParallelAttempts(__connectThreads), __readerThreads, __writerThreads, __writePolicy);
+    }//end constructor
+
+    public ConnectionEngine(ConnectPolicy __connectPolicy, int __readerThreads, int __writerThreads, WritePolicy __writePolicy)
+    {
+        _connectPolicy = __connectPolicy;
+        _writePolicy = __writePolicy;
+        _broadcastCompressor = newCompressor();
+
+        //drains the outbound queues of every connection, threads added for stalled writes end a second after they are done
+        _writerThreads = __writerThreads;
+        _writeExecutor = new ThreadPoolExecutor(__writerThreads, __writerThreads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("writer"));
+
+        //connect deadlines and retries, timeouts, retransmits and delayed flushes of every connection, and the check for blocked writes
+        _timerExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("timer"));
+        _timerExecutor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                checkWrites();
+            }//end method run
+        }, WRITE_CHECK_MILLIS, WRITE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+
+        //attempts beyond the parallel limit wait in the pool's queue
+        int __connectThreads = __connectPolicy.getMaxParallelAttempts();
+        _connectExecutor = new ThreadPoolExecutor(__connectThreads, __connectThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("connect"));
+        _connectExecutor.allowCoreThreadTimeOut(true);
+
+        _readers = new ReaderWorker[__readerThreads];
+        for(int i = 0; i < _readers.length; i++)
+        {
+            _readers[i] = new ReaderWorker("reader-" + i);
+            _readers[i].start();
+        }//end for loop
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts connecting the transport in the background and returns its connection straight away.
+    *   A single transport cannot be reconnected, so it gets one attempt. The listener hears
+    *   onConnected or onConnectionFailed when the attempt finishes. If a live connection to the
+    *   same address exists, that connection is returned and nothing is started
+    */
+    public Connection connect(Transport __transport, ConnectionListener __listener)
+    {
+        return connect(new SingleTransportFactory(__transport), __listener, 1);
+    }//end method connect
+
+    /*
+    *   same as above, but every attempt gets a new transport from the factory so failed attempts
+    *   are retried as the connect policy allows
+    */
+    public Connection connect(TransportFactory __transportFactory, ConnectionListener __listener)
+    {
+        return connect(__transportFactory, __listener, _connectPolicy.getMaxAttempts());
+    }//end method connect
+
+    /*
+    *   queues a connect for every target, at most the policy's parallel limit run at once
+    */
+    public List<Connection> connectAll(List<? extends TransportFactory> __targets, ConnectionListener __listener)
+    {
+        ArrayList<Connection> __connections = new ArrayList<>(__targets.size());
+
+        for(TransportFactory __target : __targets)
+        {
+            __connections.add(connect(__target, __listener));
+        }//end for loop
+
+        return __connections;
+    }//end method connectAll
+
+    /*
+    *   connects like above with a ReliableChannel between the connection and the listener. Sends
+    *   on the channel are delivered in order and complete when the peer acknowledges them; the
+    *   peer must read the connection through a ReliableChannel as well
+    */
+    public ReliableChannel connectReliable(TransportFactory __transportFactory, ReliabilityPolicy __policy, ConnectionListener __listener)
+    {
+        ReliableChannel __channel = new ReliableChannel(__policy, _timerExecutor, __listener);
+        connect(__transportFactory, __channel);
+        return __channel;
+    }//end method connectReliable
+
+    public ReliableChannel connectReliable(Transport __transport, ReliabilityPolicy __policy, ConnectionListener __listener)
+    {
+        ReliableChannel __channel = new ReliableChannel(__policy, _timerExecutor, __listener);
+        connect(__transport, __channel);
+        return __channel;
+    }//end method connectReliable
+
+    /*
+    *   connects like connect(TransportFactory, ...) with a ResumableSession between the links and
+    *   the listener. When the link drops the session dials again and carries on where both sides
+    *   left off; the peer must accept through a SessionDirectory
+    */
+    public ResumableSession connectResumable(TransportFactory __transportFactory, SessionPolicy __policy, ConnectionListener __listener)
+    {
+        ResumableSession __session = new ResumableSession(this, __transportFactory, __policy, _timerExecutor, __listener);
+        connect(__transportFactory, __session);
+        return __session;
+    }//end method connectResumable
+
+    //the accepting side of connectResumable, to be used as the listener of a ConnectionServer
+    public SessionDirectory newSessionDirectory(SessionPolicy __policy, ConnectionListener __listener)
+    {
+        return new SessionDirectory(__policy, _timerExecutor, __listener);
+    }//end method newSessionDirectory
+
+    /*
+    *   takes over a transport a server has just accepted. It is brought up on the connect pool
+    *   like an outbound one and read by the same reader workers, an accepted link costs no thread
+    *   of its own.
+    *
+    *   A peer that dials us while its earlier inbound link is still registered has lost that
+    *   link, even if our end has not noticed yet, so the old link is closed and the new one takes
+    *   its place. Returns null, with the transport closed, if we dialled the peer ourselves
+    */
+    public Connection accept(Transport __transport, ConnectionListener __listener)
+    {
+        long __acceptedNanos = System.nanoTime();
+        Connection __connection = newConnection(new SingleTransportFactory(__transport), __listener);
+        __connection.setAcceptedNanos(__acceptedNanos);
+
+        if(_shutdown)
+        {
+            __connection.reportConnectionFailed(new IOException("connection engine is shut down"));
+            return __connection;
+        }//end if
+
+        Connection __existing = _registry.register(__connection);
+        if(__existing != null && __existing.isInbound())
+        {
+            //its listener hears onDisconnected, or onConnectionFailed if it was still connecting
+            __existing.abort(new IOException("peer connected again, the old link was gone"));
+            __existing = _registry.register(__connection);
+        }//end if
+
+        if(__existing != null)
+        {
+            try
+            {
+                __transport.close();
+            }//end try
+            catch (IOException e)
+            {
+                //the duplicate is dropped either way
+            }//end catch
+
+            return null;
+        }//end if
+
+        submitAttempt(__connection, 1, 1, __acceptedNanos);
+        return __connection;
+    }//end method accept
+
+    //----------------------------------------------------------------------------------------------
+
+    private Connection newConnection(TransportFactory __transportFactory, ConnectionListener __listener)
+    {
+        return new Connection(__transportFactory, __listener,
+                new WriteQueue(_writePolicy, _writeExecutor, _timerExecutor, BufferPool.getDefault(), new LinkMetrics(_metrics)), _registry, newCompressor());
+    }//end method newConnection
+
+    private Connection connect(TransportFactory __transportFactory, ConnectionListener __listener, int __maxAttempts)
+    {
+        Connection __connection = newConnection(__transportFactory, __listener);
+
+        if(_shutdown)
+        {
+            __connection.reportConnectionFailed(new IOException("connection engine is shut down"));
+            return __connection;
+        }//end if
+
+        Connection __existing = _registry.register(__connection);
+        if(__existing != null)
+        {
+            return __existing;
+        }//end if
+
+        submitAttempt(__connection, 1, __maxAttempts, System.nanoTime());
+        return __connection;
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues an attempt on the connect pool
+    */
+    private void submitAttempt(final Connection __connection, final int __attempt, final int __maxAttempts, final long __requestedNanos)
+    {
+        try
+        {
+            _connectExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    attempt(__connection, __attempt, __maxAttempts, __requestedNanos);
+                }//end method run
+            });
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            __connection.reportConnectionFailed(new IOException("connection engine is shut down"));
+        }//end catch
+    }//end method submitAttempt
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs on the connect pool, blocks until the transport is connected, fails or times out
+    */
+    private void attempt(final Connection __connection, final int __attempt, final int __maxAttempts, final long __requestedNanos)
+    {
+        if(_shutdown || __connection.isClosed())
+        {
+            __connection.reportConnectionFailed(new IOException("connection closed while connecting"));
+            return;
+        }//end if
+
+        _connectAttempts.incrementAndGet();
+
+        //closing the transport is the only way to make a blocked connect give up
+        final AtomicBoolean __timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> __watchdog = _timerExecutor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                __timedOut.set(true);
+                __connection.abortAttempt();
+            }//end method run
+        }, _connectPolicy.getAttemptTimeoutMillis(), TimeUnit.MILLISECONDS);
+
+        IOException __failure = null;
+
+        try
+        {
+            __connection.open();
+        }//end try
+        catch (IOException connectException)
+        {
+            __failure = connectException;
+        }//end catch
+
+        //a watchdog that already fired means the attempt timed out, even if connect returned just after
+        __watchdog.cancel(false);
+        if(__timedOut.get())
+        {
+            _connectTimeouts.incrementAndGet();
+            __failure = new IOException("connect timed out after " + _connectPolicy.getAttemptTimeoutMillis() + " ms", __failure);
+        }//end if
+
+        if(__failure != null)
+        {
+            //Unable to connect; close the transport and try again or get out
+            __connection.abortAttempt();
+
+            if(__attempt < __maxAttempts && !_shutdown && !__connection.isClosed())
+            {
+                _connectRetries.incrementAndGet();
+                scheduleRetry(__connection, __attempt + 1, __maxAttempts, __requestedNanos);
+            }//end if
+            else
+            {
+                _connectFailures.incrementAndGet();
+                __connection.reportConnectionFailed(__failure);
+            }//end else
+
+            return;
+        }//end if
+
+        if(_shutdown || !__connection.transition(ConnectionState.CONNECTING, ConnectionState.CONNECTED))
+        {
+            __connection.reportConnectionFailed(new IOException("connection closed while connecting"));
+            return;
+        }//end if
+
+        try
+        {
+            __connection.startWriting();
+            __connection.sendHello();
+        }//end try
+        catch (IOException e)
+        {
+            __connection.reportConnectionFailed(e);
+            return;
+        }//end catch
+
+        long __connectNanos = System.nanoTime() - __requestedNanos;
+        __connection.setConnectNanos(__connectNanos);
+        __connection.getMetrics().recordConnectLatency(__connectNanos);
+        __connection.reportConnected();
+        leastLoadedReader().add(__connection);
+    }//end method attempt
+
+    //----------------------------------------------------------------------------------------------
+
+    private void scheduleRetry(final Connection __connection, final int __attempt, final int __maxAttempts, final long __requestedNanos)
+    {
+        try
+        {
+            _timerExecutor.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    submitAttempt(__connection, __attempt, __maxAttempts, __requestedNanos);
+                }//end method run
+            }, _connectPolicy.getBackoffMillis(__attempt - 1), TimeUnit.MILLISECONDS);
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            __connection.reportConnectionFailed(new IOException("connection engine is shut down"));
+        }//end catch
+    }//end method scheduleRetry
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs on the timer. A write blocked past the write timeout closes its connection, which
+    *   fails the write and frees its thread. Every other stalled write is made up for with an
+    *   extra writer thread, so peers that stopped reading never hold up the healthy ones
+    */
+    private void checkWrites()
+    {
+        long __now = System.nanoTime();
+        long __timeoutNanos = TimeUnit.MILLISECONDS.toNanos(_writePolicy.getWriteTimeoutMillis());
+        int __stalled = 0;
+
+        for(Connection __connection : _registry.snapshotArray())
+        {
+            long __blocked = __connection.getWriteBlockedNanos(__now);
+
+            if(__timeoutNanos > 0 && __blocked > __timeoutNanos)
+            {
+                __connection.abort(new IOException("write blocked for more than " + _writePolicy.getWriteTimeoutMillis() + " ms"));
+            }//end if
+            else if(__blocked > STALLED_WRITE_NANOS)
+            {
+                __stalled++;
+            }//end else if
+        }//end for loop
+
+        resizeWriters(_writerThreads + __stalled);
+    }//end method checkWrites
+
+    //threads above the base count end once they are idle
+    private void resizeWriters(int __threads)
+    {
+        int __current = _writeExecutor.getCorePoolSize();
+
+        if(__threads > __current)
+        {
+            _writeExecutor.setMaximumPoolSize(__threads);
+            _writeExecutor.setCorePoolSize(__threads);
+        }//end if
+        else if(__threads < __current)
+        {
+            _writeExecutor.setCorePoolSize(__threads);
+            _writeExecutor.setMaximumPoolSize(__threads);
+        }//end else if
+    }//end method resizeWriters
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   sends a text frame to every connected peer, see broadcast(byte, byte[])
+    */
+    public BroadcastResult broadcast(String __message)
+    {
+        return multicast(null, Frame.TYPE_TEXT, __message.getBytes(Frame.UTF_8));
+    }//end method broadcast
+
+    /*
+    *   sends one frame to every connected peer. The frame is encoded once, plus once compressed
+    *   if any peer negotiated compression, and the same array is queued on every connection,
+    *   nothing is copied per peer. Queuing never waits for a full
+    *   queue, a peer that cannot keep up fails with a BackpressureException instead of holding up
+    *   the others
+    */
+    public BroadcastResult broadcast(byte __type, byte[] __payload)
+    {
+        return multicast(null, __type, __payload);
+    }//end method broadcast
+
+    /*
+    *   same as broadcast, to the connected peers among the given addresses
+    */
+    public BroadcastResult multicast(Collection<String> __addresses, byte __type, byte[] __payload)
+    {
+        ArrayList<Connection> __targets = new ArrayList<>();
+
+        for(Connection __connection : _registry.snapshotArray())
+        {
+            if(__connection.getState() == ConnectionState.CONNECTED
+                    && (__addresses == null || __addresses.contains(__connection.getAddress())))
+            {
+                __targets.add(__connection);
+            }//end if
+        }//end for loop
+
+        BroadcastResult __result = new BroadcastResult(__targets.size());
+        byte[] __plain = null;
+        byte[] __compressed = null;
+
+        for(Connection __connection : __targets)
+        {
+            byte[] __frame;
+
+            if(__connection.isCompressing())
+            {
+                if(__compressed == null)
+                {
+                    __compressed = _broadcastCompressor.encode(__type, __payload, 0, __payload.length);
+                }//end if
+                __frame = __compressed;
+            }//end if
+            else
+            {
+                if(__plain == null)
+                {
+                    __plain = FrameEncoder.encode(__type, __payload);
+                }//end if
+                __frame = __plain;
+            }//end else
+
+            __result.track(__connection.getAddress(), __connection.sendFrameWithoutBlocking(__frame));
+        }//end for loop
+
+        return __result;
+    }//end method multicast
+
+    //----------------------------------------------------------------------------------------------
+
+    private ReaderWorker leastLoadedReader()
+    {
+        ReaderWorker __best = _readers[0];
+
+        for(int i = 1; i < _readers.length; i++)
+        {
+            if(_readers[i].size() < __best.size())
+            {
+                __best = _readers[i];
+            }//end if
+        }//end for loop
+
+        return __best;
+    }//end method leastLoadedReader
+
+    //----------------------------------------------------------------------------------------------
+
+    //live connections by peer address
+    public ConnectionRegistry getRegistry()
+    {
+        return _registry;
+    }//end method getRegistry
+
+    //----------------------------------------------------------------------------------------------
+
+    //nanoseconds from a connect call to the connection being up, retries included
+    public LatencyHistogram getConnectLatency()
+    {
+        return _metrics.getConnectLatency();
+    }//end method getConnectLatency
+
+    public long getConnectAttemptCount()
+    {
+        return _connectAttempts.get();
+    }//end method getConnectAttemptCount
+
+    public long getConnectRetryCount()
+    {
+        return _connectRetries.get();
+    }//end method getConnectRetryCount
+
+    public long getConnectTimeoutCount()
+    {
+        return _connectTimeouts.get();
+    }//end method getConnectTimeoutCount
+
+    //connections that gave up after their last attempt
+    public long getConnectFailureCount()
+    {
+        return _connectFailures.get();
+    }//end method getConnectFailureCount
+
+    //----------------------------------------------------------------------------------------------
+
+    //totals and latency histograms over every connection
+    public EngineMetrics getMetrics()
+    {
+        return _metrics;
+    }//end method getMetrics
+
+    /*
+    *   current metrics with the counters of every live connection, cheap enough to take once a
+    *   second for the overlay
+    */
+    public MetricsSnapshot getMetricsSnapshot()
+    {
+        return _metrics.snapshot(_registry.snapshotArray());
+    }//end method getMetricsSnapshot
+
+    //----------------------------------------------------------------------------------------------
+
+    //ratio and CPU cost of compression over every connection
+    public CompressionStats getCompressionStats()
+    {
+        return _compressionStats;
+    }//end method getCompressionStats
+
+    //----------------------------------------------------------------------------------------------
+
+    //null when the connect policy does not offer compression
+    private FrameCompressor newCompressor()
+    {
+        CompressionPolicy __compression = _connectPolicy.getCompression();
+        return __compression == null ? null : new FrameCompressor(__compression, _compressionStats, FrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }//end method newCompressor
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of connections being read by the workers
+    public int getConnectionCount()
+    {
+        int __count = 0;
+
+        for(ReaderWorker __reader : _readers)
+        {
+            __count += __reader.size();
+        }//end for loop
+
+        return __count;
+    }//end method getConnectionCount
+
+    /*
+    *   number of threads running for the engine at the moment: its pools and workers, plus the
+    *   read-ahead thread of every registered link whose transport needs one, which only RFCOMM
+    *   links do
+    */
+    public int getThreadCount()
+    {
+        int __readingAhead = 0;
+
+        for(Connection __connection : _registry.snapshotArray())
+        {
+            if(__connection.isReadingAhead())
+            {
+                __readingAhead++;
+            }//end if
+        }//end for loop
+
+        return _readers.length + _connectExecutor.getPoolSize() + _writeExecutor.getPoolSize() + _timerExecutor.getPoolSize()
+                + __readingAhead;
+    }//end method getThreadCount
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   closes every connection and stops the engine's threads
+    */
+    public void shutdown()
+    {
+        _shutdown = true;
+        _connectExecutor.shutdownNow();
+        _writeExecutor.shutdownNow();
+        _timerExecutor.shutdownNow();
+
+        //also reaches connections that are still connecting
+        for(Connection __connection : _registry.snapshotArray())
+        {
+            __connection.close();
+        }//end for loop
+
+        for(ReaderWorker __reader : _readers)
+        {
+            __reader.closeAll();
+            LockSupport.unpark(__reader);
+        }//end for loop
+
+        if(_broadcastCompressor != null)
+        {
+            _broadcastCompressor.release();
+        }//end if
+    }//end method shutdown
+
+    //----------------------------------------------------------------------------------------------
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   polls a set of connections for data on a single thread
+    */
+    private class ReaderWorker extends Thread
+    {
+        //replaced as a whole when connections come and go so the poll loop iterates without locks or iterators
+        private volatile Connection[] _connections = new Connection[0];
+
+        //connections whose stream cannot wake the worker, while there are any it has to keep polling
+        private volatile int _polled = 0;
+
+        ReaderWorker(String __name)
+        {
+            super(__name);
+            setDaemon(true);
+        }//end constructor
+
+        //------------------------------------------------------------------------------------------
+
+        int size()
+        {
+            return _connections.length;
+        }//end method size
+
+        synchronized void add(Connection __connection)
+        {
+            Connection[] __current = _connections;
+            Connection[] __updated = new Connection[__current.length + 1];
+            System.arraycopy(__current, 0, __updated, 0, __current.length);
+            __updated[__current.length] = __connection;
+            _connections = __updated;
+
+            if(!__connection.wakeOnInput(this))
+            {
+                _polled++;
+            }//end if
+
+            LockSupport.unpark(this);
+        }//end method add
+
+        synchronized void remove(Connection __connection)
+        {
+            Connection[] __current = _connections;
+            int __position = -1;
+
+            for(int i = 0; i < __current.length; i++)
+            {
+                if(__current[i] == __connection)
+                {
+                    __position = i;
+                }//end if
+            }//end for loop
+
+            if(__position < 0)
+            {
+                return;
+            }//end if
+
+            Connection[] __updated = new Connection[__current.length - 1];
+            System.arraycopy(__current, 0, __updated, 0, __position);
+            System.arraycopy(__current, __position + 1, __updated, __position, __updated.length - __position);
+            _connections = __updated;
+
+            if(!__connection.wakeOnInput(null))
+            {
+                _polled--;
+            }//end if
+        }//end method remove
+
+        void closeAll()
+        {
+            for(Connection __connection : _connections)
+            {
+                __connection.close();
+            }//end for loop
+        }//end method closeAll
+
+        //------------------------------------------------------------------------------------------
+
+        @Override
+        public void run()
+        {
+            long __parkNanos = 0;
+
+            while(!_shutdown || _connections.length > 0)
+            {
+                Connection[] __connections = _connections;
+                boolean __progress = false;
+
+                for(Connection __connection : __connections)
+                {
+                    int __read;
+
+                    try
+                    {
+                        __read = __connection.poll();
+                    }//end try
+                    catch (IOException e)
+                    {
+                        //the link broke, keep the reason instead of losing it
+                        __connection.getMetrics().recordError(e);
+                        __read = -1;
+                    }//end catch
+
+                    if(__read > 0)
+                    {
+                        __progress = true;
+                    }//end if
+                    else if(__read < 0)
+                    {
+                        remove(__connection);
+                        __connection.reportDisconnected();
+                    }//end else if
+                }//end for loop
+
+                if(__progress)
+                {
+                    __parkNanos = 0;
+                }//end if
+                else if(_polled == 0)
+                {
+                    //every stream wakes the worker when it has data or ends, as do new connections
+                    LockSupport.park(this);
+                }//end else if
+                else
+                {
+                    //sleep straight away instead of spinning, a phone's cores are better off idle.
+                    //Back off exponentially up to the maximum, new connections unpark the worker
+                    __parkNanos = Math.min(MAX_IDLE_PARK_NANOS, Math.max(MIN_IDLE_PARK_NANOS, __parkNanos * 2));
+                    LockSupport.parkNanos(this, __parkNanos);
+                }//end else
+            }//end while loop
+        }//end method run
+    }//end class ReaderWorker
+
+    //----------------------------------------------------------------------------------------------
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   hands out one existing transport, for connections that were given a transport instead of a factory
+    */
+    private static class SingleTransportFactory implements TransportFactory
+    {
+        private Transport _transport;
+        private final String _address;
+
+        SingleTransportFactory(Transport __transport)
+        {
+            _transport = __transport;
+            _address = __transport.getAddress();
+        }//end constructor
+
+        @Override
+        public String getAddress()
+        {
+            return _address;
+        }//end method getAddress
+
+        @Override
+        public synchronized Transport create() throws IOException
+        {
+            if(_transport == null)
+            {
+                throw new IOException("transport cannot be reconnected");
+            }//end if
+
+            Transport __transport = _transport;
+            _transport = null;
+            return __transport;
+        }//end method create
+    }//end class SingleTransportFactory
+
+    //----------------------------------------------------------------------------------------------
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   names the pool threads so they can be told apart in traces and thread counts
+    */
+    private static class NamedThreadFactory implements ThreadFactory
+    {
+        private final String _prefix;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        NamedThreadFactory(String __prefix)
+        {
+            _prefix = __prefix;
+        }//end constructor
+
+        @Override
+        public Thread newThread(Runnable __task)
+        {
+            Thread __thread = new Thread(__task, _prefix + "-" + _count.getAndIncrement());
+            __thread.setDaemon(true);
+            return __thread;
+        }//end method newThread
+    }//end class NamedThreadFactory
+}//end class ConnectionEngine
@@ -0,0 +1,22 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+
+/*
+*   Callbacks from a connection back to whoever owns it. They are invoked on the connection's
+*   own threads, implementations must hand work over to the UI thread themselves
+*/
+public interface ConnectionListener
+{
+    //the transport connected and the connection is ready to send and receive
+    void onConnected(Connection __connection);
+
+    //the transport could not be connected
+    void onConnectionFailed(Connection __connection, IOException __cause);
+
+    //a complete frame was read from the peer, it is only valid until this method returns
+    void onFrameReceived(Connection __connection, Frame __frame);
+
+    //the connection was closed by either side
+    void onDisconnected(Connection __connection);
+}//end interface ConnectionListener
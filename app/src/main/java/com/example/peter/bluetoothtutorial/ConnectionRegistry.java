@@ -0,0 +1,113 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+*   Thread-safe index of the live connections, keyed by peer address. Lookups are O(1) and
+*   never block. For broadcasts and UI listings the registry keeps an array snapshot that is
+*   rebuilt when a connection comes or goes, so iterating over it takes no lock and cannot fail
+*   with a ConcurrentModificationException
+*/
+public class ConnectionRegistry
+{
+    private final ConcurrentHashMap<String, Connection> _byAddress = new ConcurrentHashMap<>();
+    private volatile Connection[] _snapshot = new Connection[0];
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   adds the connection unless a live one to the same address exists, in which case that
+    *   one is returned and the new connection is not registered. Returns null when added
+    */
+    public Connection register(Connection __connection)
+    {
+        String __address = __connection.getAddress();
+
+        while(true)
+        {
+            Connection __existing = _byAddress.putIfAbsent(__address, __connection);
+
+            if(__existing == null)
+            {
+                rebuildSnapshot();
+                return null;
+            }//end if
+
+            if(!__existing.isClosed())
+            {
+                return __existing;
+            }//end if
+
+            //the old connection is on its way out, take its place
+            if(_byAddress.replace(__address, __existing, __connection))
+            {
+                rebuildSnapshot();
+                return null;
+            }//end if
+        }//end while loop
+    }//end method register
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   removes the connection if it is still the one registered for its address
+    */
+    public boolean unregister(Connection __connection)
+    {
+        if(_byAddress.remove(__connection.getAddress(), __connection))
+        {
+            rebuildSnapshot();
+            return true;
+        }//end if
+
+        return false;
+    }//end method unregister
+
+    //----------------------------------------------------------------------------------------------
+
+    //connection registered for the address, or null
+    public Connection get(String __address)
+    {
+        return _byAddress.get(__address);
+    }//end method get
+
+    public boolean contains(String __address)
+    {
+        return _byAddress.containsKey(__address);
+    }//end method contains
+
+    public int size()
+    {
+        return _byAddress.size();
+    }//end method size
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   immutable view of the registered connections at the time of the last change
+    */
+    public List<Connection> snapshot()
+    {
+        return Collections.unmodifiableList(Arrays.asList(_snapshot));
+    }//end method snapshot
+
+    //same snapshot as an array for hot loops, callers must not modify it
+    Connection[] snapshotArray()
+    {
+        return _snapshot;
+    }//end method snapshotArray
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   always reads the map after the change that triggered it, so the last rebuild wins with
+    *   the current contents
+    */
+    private synchronized void rebuildSnapshot()
+    {
+        _snapshot = _byAddress.values().toArray(new Connection[0]);
+    }//end method rebuildSnapshot
+}//end class ConnectionRegistry
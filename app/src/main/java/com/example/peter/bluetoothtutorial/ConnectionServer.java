@@ -0,0 +1,307 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Accepts inbound links and hands them to a ConnectionEngine. A single accept thread serves
+*   every client, accepted links are read and written by the engine's shared workers like
+*   outbound ones, so the thread count does not grow with the number of clients.
+*
+*   At most the policy's number of clients are connected at once. When the server is full a new
+*   link is closed straight away, or accepting pauses until a client leaves, as the policy says.
+*   A client that dials again after losing its link is let in even when full: the engine
+*   replaces its old link, and that gives the old slot back.
+*   An optional filter can turn peers away before they take a slot. The time from accepting a
+*   link to its first bytes is recorded in the engine's metrics
+*/
+public class ConnectionServer
+{
+    /*
+    *   decides whether an accepted peer may connect, called on the accept thread
+    */
+    public interface AdmissionFilter
+    {
+        boolean admit(Transport __transport, int __clients);
+    }//end interface AdmissionFilter
+
+    private final ConnectionEngine _engine;
+    private final TransportAcceptor _acceptor;
+    private final ServerPolicy _policy;
+    private final ConnectionListener _listener;
+    private volatile AdmissionFilter _admissionFilter = null;
+
+    private Thread _acceptThread;
+    private volatile boolean _stopped = false;
+
+    //admitted links that are connecting or connected, guarded by this
+    private int _clients = 0;
+
+    private final AtomicLong _accepted = new AtomicLong();
+    private final AtomicLong _rejected = new AtomicLong();
+    private final AtomicLong _acceptErrors = new AtomicLong();
+
+    public ConnectionServer(ConnectionEngine __engine, TransportAcceptor __acceptor, ServerPolicy __policy, ConnectionListener __listener)
+    {
+        _engine = __engine;
+        _acceptor = __acceptor;
+        _policy = __policy;
+        _listener = __listener;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    //replaces the filter, null admits everyone while there is room
+    public void setAdmissionFilter(AdmissionFilter __admissionFilter)
+    {
+        _admissionFilter = __admissionFilter;
+    }//end method setAdmissionFilter
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts the accept thread
+    */
+    public synchronized void start()
+    {
+        if(_acceptThread != null)
+        {
+            throw new IllegalStateException("server already started");
+        }//end if
+
+        _acceptThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                acceptLoop();
+            }//end method run
+        }, "acceptor");
+        _acceptThread.setDaemon(true);
+        _acceptThread.start();
+    }//end method start
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   stops listening and waits for the accept thread. Clients already connected stay
+    *   connected, they belong to the engine
+    */
+    public void stop() throws InterruptedException
+    {
+        Thread __acceptThread;
+
+        synchronized (this)
+        {
+            _stopped = true;
+            __acceptThread = _acceptThread;
+            notifyAll();
+        }//end synchronized
+
+        closeQuietly(_acceptor);
+
+        if(__acceptThread != null)
+        {
+            __acceptThread.join();
+        }//end if
+    }//end method stop
+
+    //----------------------------------------------------------------------------------------------
+
+    private void acceptLoop()
+    {
+        while(!_stopped)
+        {
+            if(!_policy.isRejectWhenFull() && !awaitFreeSlot())
+            {
+                break;
+            }//end if
+
+            Transport __transport;
+            try
+            {
+                __transport = _acceptor.accept();
+            }//end try
+            catch (IOException e)
+            {
+                if(_stopped)
+                {
+                    break;
+                }//end if
+
+                _acceptErrors.incrementAndGet();
+                if(!pause(_policy.getAcceptRetryMillis()))
+                {
+                    break;
+                }//end if
+                continue;
+            }//end catch
+
+            _accepted.incrementAndGet();
+
+            if(!admit(__transport))
+            {
+                _rejected.incrementAndGet();
+                closeQuietly(__transport);
+                continue;
+            }//end if
+
+            //a peer we dialled ourselves keeps that link
+            if(_engine.accept(__transport, _clientListener) == null)
+            {
+                _rejected.incrementAndGet();
+                releaseSlot();
+            }//end if
+        }//end while loop
+    }//end method acceptLoop
+
+    //----------------------------------------------------------------------------------------------
+
+    //takes a slot for the peer if the filter lets it in and there is room, or it is coming back
+    private boolean admit(Transport __transport)
+    {
+        AdmissionFilter __filter = _admissionFilter;
+        Connection __previous = _engine.getRegistry().get(__transport.getAddress());
+        boolean __returning = __previous != null && __previous.isInbound();
+
+        synchronized (this)
+        {
+            if((_clients >= _policy.getMaxClients() && !__returning) || _stopped)
+            {
+                return false;
+            }//end if
+
+            if(__filter != null && !__filter.admit(__transport, _clients))
+            {
+                return false;
+            }//end if
+
+            _clients++;
+            return true;
+        }//end synchronized
+    }//end method admit
+
+    private synchronized void releaseSlot()
+    {
+        _clients--;
+        notifyAll();
+    }//end method releaseSlot
+
+    //false if the server stopped while waiting
+    private synchronized boolean awaitFreeSlot()
+    {
+        try
+        {
+            while(_clients >= _policy.getMaxClients() && !_stopped)
+            {
+                wait();
+            }//end while loop
+        }//end try
+        catch (InterruptedException e)
+        {
+            return false;
+        }//end catch
+
+        return !_stopped;
+    }//end method awaitFreeSlot
+
+    //false if the server stopped while pausing
+    private synchronized boolean pause(long __millis)
+    {
+        try
+        {
+            wait(__millis);
+        }//end try
+        catch (InterruptedException e)
+        {
+            return false;
+        }//end catch
+
+        return !_stopped;
+    }//end method pause
+
+    //----------------------------------------------------------------------------------------------
+
+    private static void closeQuietly(Transport __transport)
+    {
+        try
+        {
+            __transport.close();
+        }//end try
+        catch (IOException e)
+        {
+            //the link is dropped either way
+        }//end catch
+    }//end method closeQuietly
+
+    private static void closeQuietly(TransportAcceptor __acceptor)
+    {
+        try
+        {
+            __acceptor.close();
+        }//end try
+        catch (IOException e)
+        {
+            //nothing more to release
+        }//end catch
+    }//end method closeQuietly
+
+    //----------------------------------------------------------------------------------------------
+
+    //admitted clients connecting or connected
+    public synchronized int getClientCount()
+    {
+        return _clients;
+    }//end method getClientCount
+
+    //links accepted, including the ones rejected afterwards
+    public long getAcceptedCount()
+    {
+        return _accepted.get();
+    }//end method getAcceptedCount
+
+    //links closed because the server was full, the filter refused them or the peer was already connected
+    public long getRejectedCount()
+    {
+        return _rejected.get();
+    }//end method getRejectedCount
+
+    public long getAcceptErrorCount()
+    {
+        return _acceptErrors.get();
+    }//end method getAcceptErrorCount
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   gives the slot back when an admitted link fails or goes, everything else is passed on
+    */
+    private final ConnectionListener _clientListener = new ConnectionListener()
+    {
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            _listener.onConnected(__connection);
+        }//end method onConnected
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            releaseSlot();
+            _listener.onConnectionFailed(__connection, __cause);
+        }//end method onConnectionFailed
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            _listener.onFrameReceived(__connection, __frame);
+        }//end method onFrameReceived
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+            releaseSlot();
+            _listener.onDisconnected(__connection);
+        }//end method onDisconnected
+    };//end ConnectionListener
+}//end class ConnectionServer
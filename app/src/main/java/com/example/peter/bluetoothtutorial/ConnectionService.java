@@ -0,0 +1,842 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Owns the connection engine and the received message log so they outlive any activity.
+*   Activities bind to the service and attach as clients; rotating the screen or opening
+*   another screen only detaches the client, the links stay up and nothing has to reconnect.
+*   While at least one device is connected the service runs in the foreground
+*/
+public class ConnectionService extends Service
+{
+    private static final int NOTIFICATION_ID = 1;
+
+    //remembered devices connecting at least this reliably are reconnected without a scan
+    private static final double KNOWN_GOOD_SUCCESS_RATE = 0.5;
+
+    //under the app's files directory
+    private static final String JOURNAL_DIRECTORY = "journal";
+
+    //messages kept searchable, about 80 bytes of heap each
+    private static final int MAX_INDEXED_MESSAGES = MessageIndex.DEFAULT_MAX_DOCUMENTS;
+
+    //name of the service record peers see when we accept links
+    private static final String SERVER_NAME = "BluetoothTutorial";
+
+    //sender of the notes the service adds to the message log itself
+    private static final String LOCAL_ADDRESS = "local";
+
+    /*
+    *   a UI that wants to hear about the connections, callbacks run on the main thread
+    */
+    public interface Client
+    {
+        //new messages were added to the message log
+        void onMessagesAppended(MessageLog __log);
+
+        //a device connected or disconnected
+        void onConnectionsChanged();
+    }//end interface Client
+
+    /*
+    *   receives a page of search results on the main thread. The cursor gives the next page
+    */
+    public interface SearchCallback
+    {
+        void onResults(MessageIndex.Cursor __cursor, List<ReceivedMessage> __page);
+    }//end interface SearchCallback
+
+    /*
+    *   returned to activities binding in the same process
+    */
+    public class LocalBinder extends Binder
+    {
+        public ConnectionService getService()
+        {
+            return ConnectionService.this;
+        }//end method getService
+    }//end class LocalBinder
+
+    private final IBinder _binder = new LocalBinder();
+
+    //attaching and detaching a client is a single hash set operation
+    private final Set<Client> _clients = Collections.newSetFromMap(new ConcurrentHashMap<Client, Boolean>());
+
+    private BluetoothAdapter _bluetoothAdapter;
+    private ConnectionEngine _connectionEngine;
+    private Handler _handler;
+    private MessageLog _messageLog;
+    private FramePacedDispatcher<ReceivedMessage> _messageDispatcher;
+    private DeviceCache _deviceCache;
+    private DeviceRepository _deviceRepository;
+    private boolean _foreground = false;
+
+    //answers the peers' probes on every connection and runs our own
+    private LinkProbe _linkProbe;
+
+    //every frame received, kept on disk across sessions. Null if the journal could not be opened
+    private SessionJournal _journal;
+
+    //the newest text messages of this and earlier sessions. Indexing and searches each have their own thread
+    private final MessageIndex _messageIndex = new MessageIndex(MessageIndex.DEFAULT_BUCKET_MILLIS, MAX_INDEXED_MESSAGES);
+    private final ExecutorService _indexExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService _searchExecutor = Executors.newSingleThreadExecutor();
+
+    //link probes and journal replays the user asked for, one at a time however often the menu is tapped
+    private final ExecutorService _taskExecutor = Executors.newSingleThreadExecutor();
+
+    //reads and writes the device cache file, never on the main thread
+    private final ExecutorService _cacheExecutor = Executors.newSingleThreadExecutor();
+
+    //accepts inbound links while server mode is on, null otherwise
+    private ConnectionServer _server;
+
+    //sessions to the devices we dialled by address, and the sessions of the devices that dialled us.
+    //A session dials again by itself when its link drops, so it has to be closed to disconnect
+    private final ConcurrentHashMap<String, ResumableSession> _sessions = new ConcurrentHashMap<>();
+    private SessionDirectory _sessionDirectory;
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+
+        _bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        _connectionEngine = new ConnectionEngine();
+        _handler = new Handler(Looper.getMainLooper());
+        _messageLog = new MessageLog(MessageLog.DEFAULT_CAPACITY);
+        _linkProbe = new LinkProbe(_connectionListener);
+        _sessionDirectory = _connectionEngine.newSessionDirectory(new SessionPolicy(), _linkProbe);
+
+        //read from disk in the background straight away, so the screens that look devices up find it loaded
+        _deviceCache = DeviceCache.getDefault(this);
+        _cacheExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                _deviceCache.size();
+            }//end function run
+        });
+
+        //screens read the connected devices from here instead of asking the service
+        _deviceRepository = DeviceRepository.getDefault();
+
+        //batches received messages so the clients are updated at most once per frame
+        _messageDispatcher = new FramePacedDispatcher<>(
+                new FramePacedDispatcher.Scheduler()
+                {
+                    @Override
+                    public void schedule(Runnable __task, long __delayMillis)
+                    {
+                        _handler.postDelayed(__task, __delayMillis);
+                    }//end function schedule
+
+                    @Override
+                    public long now()
+                    {
+                        return SystemClock.uptimeMillis();
+                    }//end function now
+                },
+                new FramePacedDispatcher.Sink<ReceivedMessage>()
+                {
+                    @Override
+                    public void onBatch(List<ReceivedMessage> __messages)
+                    {
+                        _messageLog.appendAll(__messages);
+
+                        for(Client __client : _clients)
+                        {
+                            __client.onMessagesAppended(_messageLog);
+                        }//end for loop
+
+                        //the clients have invalidated their views, the batch is drawn in this frame
+                        long __now = System.nanoTime();
+                        EngineMetrics __metrics = _connectionEngine.getMetrics();
+                        for(int i = 0; i < __messages.size(); i++)
+                        {
+                            __metrics.recordReadToRender(__now - __messages.get(i).getReceivedNanos());
+                        }//end for loop
+                    }//end function onBatch
+                });
+
+        //after the dispatcher, which reports it if the journal cannot be read
+        openJournal();
+        indexEarlierSessions();
+    }//end function onCreate
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public int onStartCommand(Intent __intent, int __flags, int __startId)
+    {
+        //the links do not survive the process, there is nothing to restore if it is killed
+        return START_NOT_STICKY;
+    }//end function onStartCommand
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public IBinder onBind(Intent __intent)
+    {
+        return _binder;
+    }//end function onBind
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onDestroy()
+    {
+        //disconnects every connected device and stops the engine threads
+        stopServer();
+        closeSessions();
+        _connectionEngine.shutdown();
+        _handler.removeCallbacksAndMessages(null);
+        saveDeviceCache();
+        closeJournal();
+        _indexExecutor.shutdownNow();
+        _searchExecutor.shutdownNow();
+        _taskExecutor.shutdownNow();
+
+        //the last save still finishes
+        _cacheExecutor.shutdown();
+        _clients.clear();
+        _bluetoothAdapter = null;
+
+        super.onDestroy();
+    }//end function onDestroy
+
+    //----------------------------------------------------------------------------------------------
+
+    public void attach(Client __client)
+    {
+        _clients.add(__client);
+    }//end function attach
+
+    public void detach(Client __client)
+    {
+        _clients.remove(__client);
+    }//end function detach
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts a session with the device, returns the existing one if there is one. The session
+    *   dials again whenever the link drops and resumes where it stopped, until it is disconnected
+    */
+    public ResumableSession connect(BluetoothDevice __device)
+    {
+        return connect(RfcommTransport.factory(_bluetoothAdapter, __device));
+    }//end function connect
+
+    private ResumableSession connect(TransportFactory __transportFactory)
+    {
+        String __address = __transportFactory.getAddress();
+        ResumableSession __session = _sessions.get(__address);
+
+        if(__session != null && !__session.isClosed())
+        {
+            return __session;
+        }//end if
+
+        ResumableSession __started = _connectionEngine.connectResumable(__transportFactory, new SessionPolicy(), _linkProbe);
+        _sessions.put(__address, __started);
+        return __started;
+    }//end function connect
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   connects to every remembered device that connected reliably before, without a discovery
+    *   scan. Returns the number of connects started
+    */
+    public int reconnectKnownDevices()
+    {
+        int __started = 0;
+
+        for(DeviceCache.Entry __entry : _deviceCache.getKnownGood(KNOWN_GOOD_SUCCESS_RATE))
+        {
+            if(!_connectionEngine.getRegistry().contains(__entry.getAddress()))
+            {
+                ResumableSession __session = _sessions.get(__entry.getAddress());
+
+                //a session that is dialling again already counts
+                if(__session == null || __session.isClosed())
+                {
+                    connect(RfcommTransport.factory(_bluetoothAdapter, _bluetoothAdapter.getRemoteDevice(__entry.getAddress())));
+                    __started++;
+                }//end if
+            }//end if
+        }//end for loop
+
+        return __started;
+    }//end function reconnectKnownDevices
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts accepting links from other devices, they join the same engine as the devices we
+    *   connect to. Returns false if it was already on
+    */
+    public boolean startServer(ServerPolicy __policy) throws IOException
+    {
+        if(_server != null)
+        {
+            return false;
+        }//end if
+
+        //the directory resumes the session of a device that dials us again after a drop
+        _server = new ConnectionServer(_connectionEngine, new RfcommAcceptor(_bluetoothAdapter, SERVER_NAME), __policy, _sessionDirectory);
+        _server.start();
+        return true;
+    }//end function startServer
+
+    /*
+    *   stops accepting, the devices that connected to us stay connected
+    */
+    public void stopServer()
+    {
+        if(_server == null)
+        {
+            return;
+        }//end if
+
+        try
+        {
+            _server.stop();
+        }//end try
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }//end catch
+
+        _server = null;
+    }//end function stopServer
+
+    public boolean isServerRunning()
+    {
+        return _server != null;
+    }//end function isServerRunning
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   sends the message through every session, the ones we dialled and the ones that dialled
+    *   us. A device whose link is down at the moment gets it once its session resumes, a link
+    *   that has not sent its resume yet belongs to no session and is left out
+    */
+    public BroadcastResult broadcast(String __message)
+    {
+        List<ResumableSession> __sessions = _sessionDirectory.getSessions();
+
+        for(ResumableSession __session : _sessions.values())
+        {
+            if(!__session.isClosed())
+            {
+                __sessions.add(__session);
+            }//end if
+        }//end for loop
+
+        return ResumableSession.broadcast(__sessions, Frame.TYPE_TEXT, __message.getBytes(Frame.UTF_8));
+    }//end function broadcast
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   measures every connected link in the background, one after the other. The results are
+    *   added to the message log like messages from the device. Returns the number of links
+    */
+    public int probeLinks(final ProbePlan __plan)
+    {
+        final Connection[] __connections = _connectionEngine.getRegistry().snapshotArray();
+
+        _taskExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for(Connection __connection : __connections)
+                {
+                    StringBuilder __report = new StringBuilder("link quality\n").append(ProbeResult.HEADER);
+
+                    try
+                    {
+                        for(ProbeResult __result : _linkProbe.run(__connection, __plan))
+                        {
+                            __report.append('\n').append(__result);
+                        }//end for loop
+                    }//end try
+                    catch (IOException e)
+                    {
+                        __report.append("\nprobe failed: ").append(e.getMessage());
+                    }//end catch
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }//end catch
+
+                    _messageDispatcher.submit(new ReceivedMessage(System.currentTimeMillis(), __connection.getAddress(), __report.toString()));
+                }//end for loop
+            }//end function run
+        });
+
+        return __connections.length;
+    }//end function probeLinks
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   ends the session with the device, returns false if there was none. A session that is
+    *   dialling again after a drop is ended as well
+    */
+    public boolean disconnect(String __address)
+    {
+        ResumableSession __session = _sessions.remove(__address);
+
+        if(__session != null && !__session.isClosed())
+        {
+            __session.close();
+            return true;
+        }//end if
+
+        Connection __connection = _connectionEngine.getRegistry().get(__address);
+
+        if(__connection == null)
+        {
+            return false;
+        }//end if
+
+        //a device that dialled us, its session closes the link and removes it from the registry
+        __session = _sessionDirectory.find(__connection);
+        if(__session != null)
+        {
+            __session.close();
+        }//end if
+        else
+        {
+            __connection.close();
+        }//end else
+
+        return true;
+    }//end function disconnect
+
+    /*
+    *   ends every session, so none of them dials again while the engine shuts down
+    */
+    private void closeSessions()
+    {
+        for(ResumableSession __session : _sessions.values())
+        {
+            __session.close();
+        }//end for loop
+        _sessions.clear();
+
+        for(Connection __connection : _connectionEngine.getRegistry().snapshotArray())
+        {
+            ResumableSession __session = _sessionDirectory.find(__connection);
+            if(__session != null)
+            {
+                __session.close();
+            }//end if
+        }//end for loop
+    }//end function closeSessions
+
+    //----------------------------------------------------------------------------------------------
+
+    //messages received since the service started, only touched on the main thread
+    public MessageLog getMessageLog()
+    {
+        return _messageLog;
+    }//end function getMessageLog
+
+    public ConnectionEngine getConnectionEngine()
+    {
+        return _connectionEngine;
+    }//end function getConnectionEngine
+
+    public DeviceCache getDeviceCache()
+    {
+        return _deviceCache;
+    }//end function getDeviceCache
+
+    //----------------------------------------------------------------------------------------------
+
+    //writes the cache file in the background
+    private void saveDeviceCache()
+    {
+        try
+        {
+            _cacheExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        _deviceCache.save();
+                    }//end try
+                    catch (IOException e)
+                    {
+                        reportFailure("could not save the known devices", e);
+                    }//end catch
+                }//end function run
+            });
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            //the service is going away, onDestroy has saved already
+        }//end catch
+    }//end function saveDeviceCache
+
+    //----------------------------------------------------------------------------------------------
+
+    private void openJournal()
+    {
+        try
+        {
+            _journal = new SessionJournal(new File(getFilesDir(), JOURNAL_DIRECTORY), new JournalPolicy());
+        }//end try
+        catch (IOException e)
+        {
+            //the app works without it, only nothing is recorded
+            reportFailure("message history is off", e);
+        }//end catch
+    }//end function openJournal
+
+    private void closeJournal()
+    {
+        if(_journal == null)
+        {
+            return;
+        }//end if
+
+        try
+        {
+            _journal.close();
+        }//end try
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }//end catch
+    }//end function closeJournal
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   reads the text messages of the last session before this one back into the message log,
+    *   in the background. Returns false if there is no earlier session
+    */
+    public boolean replayPreviousSession()
+    {
+        if(_journal == null)
+        {
+            return false;
+        }//end if
+
+        final File __directory = _journal.getDirectory();
+        long[] __sessions = SessionJournal.listSessions(__directory);
+        int __previous = Arrays.binarySearch(__sessions, _journal.getSessionId()) - 1;
+        if(__previous < 0)
+        {
+            return false;
+        }//end if
+
+        final long __sessionId = __sessions[__previous];
+        _taskExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    SessionJournal.replay(__directory, __sessionId, new SessionJournal.Visitor()
+                    {
+                        @Override
+                        public void onRecord(long __session, long __timestamp, String __address, Frame __frame)
+                        {
+                            if(__frame.getType() == Frame.TYPE_TEXT)
+                            {
+                                _messageDispatcher.submit(new ReceivedMessage(__timestamp, __address, __frame.asText()));
+                            }//end if
+                        }//end function onRecord
+                    });
+                }//end try
+                catch (IOException e)
+                {
+                    reportFailure("could not replay the previous session", e);
+                }//end catch
+            }//end function run
+        });
+
+        return true;
+    }//end function replayPreviousSession
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   fills the search index from the journal before any new message is indexed, so the
+    *   history is searchable as soon as it is read. The journal is bounded by its disk budget
+    *   and sessions replay oldest first, so once the index is full the oldest messages make
+    *   room and the newest MAX_INDEXED_MESSAGES stay searchable
+    */
+    private void indexEarlierSessions()
+    {
+        if(_journal == null)
+        {
+            return;
+        }//end if
+
+        final File __directory = _journal.getDirectory();
+        _indexExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    SessionJournal.replay(__directory, SessionJournal.ALL_SESSIONS, new SessionJournal.Visitor()
+                    {
+                        @Override
+                        public void onRecord(long __session, long __timestamp, String __address, Frame __frame)
+                        {
+                            if(__frame.getType() == Frame.TYPE_TEXT)
+                            {
+                                _messageIndex.add(new ReceivedMessage(__timestamp, __address, __frame.asText(), 0));
+                            }//end if
+                        }//end function onRecord
+                    });
+                }//end try
+                catch (IOException e)
+                {
+                    reportFailure("earlier messages are not searchable", e);
+                }//end catch
+            }//end function run
+        });
+    }//end function indexEarlierSessions
+
+    /*
+    *   tells the clients about a failure of the service's own work through the message log,
+    *   the same way probe results reach them. Safe to call from any thread
+    */
+    private void reportFailure(String __what, IOException __cause)
+    {
+        _messageDispatcher.submit(new ReceivedMessage(System.currentTimeMillis(), LOCAL_ADDRESS, __what + ": " + __cause.getMessage()));
+    }//end function reportFailure
+
+    //called on a reader thread for every text message
+    private void indexMessage(final ReceivedMessage __message)
+    {
+        try
+        {
+            _indexExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _messageIndex.add(__message);
+                }//end function run
+            });
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            //the service is going away
+        }//end catch
+    }//end function indexMessage
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   searches the received messages on a background thread and hands the first page to
+    *   __callback on the main thread
+    */
+    public void searchMessages(final MessageQuery __query, final int __pageSize, final SearchCallback __callback)
+    {
+        _searchExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                MessageIndex.Cursor __cursor = _messageIndex.search(__query);
+                fetchPage(__cursor, __pageSize, __callback);
+            }//end function run
+        });
+    }//end function searchMessages
+
+    /*
+    *   the next page of a search, also found in the background
+    */
+    public void nextSearchPage(final MessageIndex.Cursor __cursor, final int __pageSize, final SearchCallback __callback)
+    {
+        _searchExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                fetchPage(__cursor, __pageSize, __callback);
+            }//end function run
+        });
+    }//end function nextSearchPage
+
+    //called on the search thread
+    private void fetchPage(final MessageIndex.Cursor __cursor, int __pageSize, final SearchCallback __callback)
+    {
+        final List<ReceivedMessage> __page = __cursor.nextPage(__pageSize);
+
+        _handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                __callback.onResults(__cursor, __page);
+            }//end function run
+        });
+    }//end function fetchPage
+
+    public MessageIndex getMessageIndex()
+    {
+        return _messageIndex;
+    }//end function getMessageIndex
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   keeps the service in the foreground exactly while devices are connected, runs on the main thread
+    */
+    private void updateForeground()
+    {
+        boolean __connected = _connectionEngine.getRegistry().size() > 0;
+
+        if(__connected && !_foreground)
+        {
+            PendingIntent __openApp = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
+
+            startForeground(NOTIFICATION_ID, new NotificationCompat.Builder(this)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentTitle(getString(R.string.service_notification_title))
+                    .setContentText(getString(R.string.service_notification_text))
+                    .setContentIntent(__openApp)
+                    .setOngoing(true)
+                    .build());
+            _foreground = true;
+        }//end if
+        else if(!__connected && _foreground)
+        {
+            stopForeground(true);
+            _foreground = false;
+
+            //a good moment to keep what the connections taught us
+            saveDeviceCache();
+        }//end else if
+
+        for(Client __client : _clients)
+        {
+            __client.onConnectionsChanged();
+        }//end for loop
+    }//end function updateForeground
+
+    //----------------------------------------------------------------------------------------------
+
+    private final Runnable _updateForegroundTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            updateForeground();
+        }//end function run
+    };
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   bluetooth only knows the name of a device it has seen lately, one reconnected straight from
+    *   the cache has none until it is discovered again. The connected device is looked up in the
+    *   cache every time, so the cache's hit rate counts every connect
+    */
+    private String resolveName(Connection __connection)
+    {
+        DeviceCache.Entry __known = _deviceCache.get(__connection.getAddress());
+        String __name = __connection.get_transport().getName();
+
+        if(__name == null && __known != null)
+        {
+            __name = __known.getName();
+        }//end if
+
+        return __name;
+    }//end function resolveName
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   receives callbacks from the connection engine threads and passes them to the main thread
+    */
+    private final ConnectionListener _connectionListener = new ConnectionListener()
+    {
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            String __name = resolveName(__connection);
+            _deviceCache.recordConnect(__connection.getAddress(), __name,
+                    true, TimeUnit.NANOSECONDS.toMillis(__connection.getConnectNanos()));
+            _deviceRepository.addConnected(new DiscoveredDevice(__connection.getAddress(), __name, DiscoveredDevice.NO_RSSI, SystemClock.uptimeMillis()));
+            _handler.post(_updateForegroundTask);
+        }//end function onConnected
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            //the engine has already counted the cause in the link's and the engine's error metrics
+            _deviceCache.recordConnect(__connection.getAddress(), null, false, -1);
+            _handler.post(_updateForegroundTask);
+        }//end function onConnectionFailed
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            if(_journal != null)
+            {
+                _journal.append(System.currentTimeMillis(), __connection.getAddress(), __frame);
+            }//end if
+
+            //only text frames are shown, the text is decoded here because the frame is reused after we return
+            if(__frame.getType() == Frame.TYPE_TEXT)
+            {
+                ReceivedMessage __message = new ReceivedMessage(System.currentTimeMillis(), __connection.getAddress(), __frame.asText());
+                _messageDispatcher.submit(__message);
+                indexMessage(__message);
+            }//end if
+        }//end function onFrameReceived
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+            _deviceRepository.removeConnected(__connection.getAddress());
+            _handler.post(_updateForegroundTask);
+        }//end function onDisconnected
+    };//end ConnectionListener
+}//end class ConnectionService
@@ -0,0 +1,13 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Lifecycle of a connection. It only moves forward:
+*   CONNECTING -> CONNECTED -> CLOSING -> CLOSED, and straight to CLOSING or CLOSED from any earlier state
+*/
+public enum ConnectionState
+{
+    CONNECTING,
+    CONNECTED,
+    CLOSING,
+    CLOSED
+}//end enum ConnectionState
@@ -0,0 +1,491 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*   Devices remembered between runs: name, when and how strongly each was last seen and how
+*   connecting to it went. Kept in least recently used order and bounded in size; entries not
+*   seen within the time to live are dropped. The file is only read on first use, through a
+*   read-only mapping, and written back in one go to a temporary file that replaces the old one.
+*   Safe to use from any thread
+*/
+public class DeviceCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TTL_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String FILE_NAME = "devices.cache";
+    private static final int MAGIC = 0x42544443;      //"BTDC"
+    private static final int VERSION = 1;
+
+    private static DeviceCache _default = null;
+
+    /*
+    *   one remembered device, replaced as a whole on every update
+    */
+    public static final class Entry
+    {
+        private final String _address;
+        private final String _name;
+        private final long _lastSeenMillis;
+        private final int _lastRssi;
+        private final long _lastConnectMillis;
+        private final int _connectAttempts;
+        private final int _connectSuccesses;
+
+        Entry(String __address, String __name, long __lastSeenMillis, int __lastRssi,
+              long __lastConnectMillis, int __connectAttempts, int __connectSuccesses)
+        {
+            _address = __address;
+            _name = __name;
+            _lastSeenMillis = __lastSeenMillis;
+            _lastRssi = __lastRssi;
+            _lastConnectMillis = __lastConnectMillis;
+            _connectAttempts = __connectAttempts;
+            _connectSuccesses = __connectSuccesses;
+        }//end constructor
+
+        public String getAddress()
+        {
+            return _address;
+        }//end method getAddress
+
+        //null if the device never reported a name
+        public String getName()
+        {
+            return _name;
+        }//end method getName
+
+        //wall clock time of the last sighting or connect
+        public long getLastSeenMillis()
+        {
+            return _lastSeenMillis;
+        }//end method getLastSeenMillis
+
+        //DiscoveredDevice.NO_RSSI when never seen by a scan
+        public int getLastRssi()
+        {
+            return _lastRssi;
+        }//end method getLastRssi
+
+        //time the last successful connect took, -1 if none succeeded
+        public long getLastConnectMillis()
+        {
+            return _lastConnectMillis;
+        }//end method getLastConnectMillis
+
+        public int getConnectAttempts()
+        {
+            return _connectAttempts;
+        }//end method getConnectAttempts
+
+        public int getConnectSuccesses()
+        {
+            return _connectSuccesses;
+        }//end method getConnectSuccesses
+
+        //share of connects that succeeded, 0 when never tried
+        public double getSuccessRate()
+        {
+            return _connectAttempts == 0 ? 0 : (double) _connectSuccesses / _connectAttempts;
+        }//end method getSuccessRate
+    }//end class Entry
+
+    //----------------------------------------------------------------------------------------------
+
+    private final File _file;
+    private final int _maxEntries;
+    private final long _ttlMillis;
+
+    //access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> _entries;
+    private boolean _loaded = false;
+    private boolean _dirty = false;
+
+    private long _loadNanos = -1;
+    private long _hits = 0;
+    private long _misses = 0;
+
+    public DeviceCache(File __file, int __maxEntries, long __ttlMillis)
+    {
+        _file = __file;
+        _maxEntries = __maxEntries;
+        _ttlMillis = __ttlMillis;
+
+        _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DeviceCache.Entry> __eldest)
+            {
+                return size() > _maxEntries;
+            }//end method removeEldestEntry
+        };
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the cache of the app's private files directory, created on first use. The file itself is
+    *   not read until the cache is first queried
+    */
+    public static synchronized DeviceCache getDefault(Context __context)
+    {
+        if(_default == null)
+        {
+            File __file = new File(__context.getApplicationContext().getFilesDir(), FILE_NAME);
+            _default = new DeviceCache(__file, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+        }//end if
+
+        return _default;
+    }//end method getDefault
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   returns the device or null if it is not known or has expired, counted as a hit or a miss
+    */
+    public Entry get(String __address)
+    {
+        return get(__address, System.currentTimeMillis());
+    }//end method get
+
+    synchronized Entry get(String __address, long __nowMillis)
+    {
+        ensureLoaded(__nowMillis);
+
+        Entry __entry = _entries.get(__address);
+        if(__entry != null && isExpired(__entry, __nowMillis))
+        {
+            _entries.remove(__address);
+            _dirty = true;
+            __entry = null;
+        }//end if
+
+        if(__entry == null)
+        {
+            _misses++;
+        }//end if
+        else
+        {
+            _hits++;
+        }//end else
+
+        return __entry;
+    }//end method get
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   remembers that a scan reported the device
+    */
+    public void recordSighting(String __address, String __name, int __rssi)
+    {
+        recordSighting(__address, __name, __rssi, System.currentTimeMillis());
+    }//end method recordSighting
+
+    synchronized void recordSighting(String __address, String __name, int __rssi, long __nowMillis)
+    {
+        ensureLoaded(__nowMillis);
+
+        Entry __old = _entries.get(__address);
+        if(__old == null)
+        {
+            _entries.put(__address, new Entry(__address, __name, __nowMillis, __rssi, -1, 0, 0));
+        }//end if
+        else
+        {
+            _entries.put(__address, new Entry(__address,
+                    __name != null ? __name : __old._name,
+                    __nowMillis,
+                    __rssi != DiscoveredDevice.NO_RSSI ? __rssi : __old._lastRssi,
+                    __old._lastConnectMillis, __old._connectAttempts, __old._connectSuccesses));
+        }//end else
+
+        _dirty = true;
+    }//end method recordSighting
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   remembers the outcome of a connect, __connectMillis is ignored for failed ones
+    */
+    public void recordConnect(String __address, String __name, boolean __success, long __connectMillis)
+    {
+        recordConnect(__address, __name, __success, __connectMillis, System.currentTimeMillis());
+    }//end method recordConnect
+
+    synchronized void recordConnect(String __address, String __name, boolean __success, long __connectMillis, long __nowMillis)
+    {
+        ensureLoaded(__nowMillis);
+
+        Entry __old = _entries.get(__address);
+        if(__old == null)
+        {
+            __old = new Entry(__address, __name, __nowMillis, DiscoveredDevice.NO_RSSI, -1, 0, 0);
+        }//end if
+
+        _entries.put(__address, new Entry(__address,
+                __name != null ? __name : __old._name,
+                __success ? __nowMillis : __old._lastSeenMillis,
+                __old._lastRssi,
+                __success ? __connectMillis : __old._lastConnectMillis,
+                __old._connectAttempts + 1,
+                __old._connectSuccesses + (__success ? 1 : 0)));
+
+        _dirty = true;
+    }//end method recordConnect
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   devices that connected at least once with at least the given success rate, most recently
+    *   used first. These can be connected to directly, without a scan
+    */
+    public List<Entry> getKnownGood(double __minSuccessRate)
+    {
+        return getKnownGood(__minSuccessRate, System.currentTimeMillis());
+    }//end method getKnownGood
+
+    synchronized List<Entry> getKnownGood(double __minSuccessRate, long __nowMillis)
+    {
+        ArrayList<Entry> __good = new ArrayList<>();
+
+        for(Entry __entry : getAll(__nowMillis))
+        {
+            if(__entry._connectSuccesses > 0 && __entry.getSuccessRate() >= __minSuccessRate)
+            {
+                __good.add(__entry);
+            }//end if
+        }//end for loop
+
+        return __good;
+    }//end method getKnownGood
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   every unexpired entry, most recently used first. Does not change the usage order
+    */
+    public List<Entry> getAll()
+    {
+        return getAll(System.currentTimeMillis());
+    }//end method getAll
+
+    synchronized List<Entry> getAll(long __nowMillis)
+    {
+        ensureLoaded(__nowMillis);
+        evictExpired(__nowMillis);
+
+        ArrayList<Entry> __all = new ArrayList<>(_entries.values());
+        Collections.reverse(__all);
+        return __all;
+    }//end method getAll
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   writes the cache if it changed since it was loaded or last saved
+    */
+    public synchronized void save() throws IOException
+    {
+        if(!_loaded || !_dirty)
+        {
+            return;
+        }//end if
+
+        File __temp = new File(_file.getPath() + ".tmp");
+        DataOutputStream __out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(__temp)));
+
+        try
+        {
+            __out.writeInt(MAGIC);
+            __out.writeShort(VERSION);
+            __out.writeInt(_entries.size());
+
+            //least recently used first, so loading in file order restores the usage order
+            for(Entry __entry : _entries.values())
+            {
+                writeString(__out, __entry._address);
+                writeString(__out, __entry._name);
+                __out.writeLong(__entry._lastSeenMillis);
+                __out.writeShort(__entry._lastRssi);
+                __out.writeLong(__entry._lastConnectMillis);
+                __out.writeInt(__entry._connectAttempts);
+                __out.writeInt(__entry._connectSuccesses);
+            }//end for loop
+        }//end try
+        finally
+        {
+            __out.close();
+        }//end finally
+
+        if(!__temp.renameTo(_file))
+        {
+            __temp.delete();
+            throw new IOException("could not replace " + _file);
+        }//end if
+
+        _dirty = false;
+    }//end method save
+
+    //----------------------------------------------------------------------------------------------
+
+    private void ensureLoaded(long __nowMillis)
+    {
+        if(_loaded)
+        {
+            return;
+        }//end if
+
+        _loaded = true;
+        long __start = System.nanoTime();
+
+        try
+        {
+            load();
+        }//end try
+        catch (IOException | BufferUnderflowException | IllegalArgumentException e)
+        {
+            //a damaged cache is only a slower start, begin with an empty one
+            _entries.clear();
+            _dirty = true;
+        }//end catch
+
+        evictExpired(__nowMillis);
+        _loadNanos = System.nanoTime() - __start;
+    }//end method ensureLoaded
+
+    //----------------------------------------------------------------------------------------------
+
+    private void load() throws IOException
+    {
+        if(!_file.exists())
+        {
+            return;
+        }//end if
+
+        RandomAccessFile __raf = new RandomAccessFile(_file, "r");
+
+        try
+        {
+            FileChannel __channel = __raf.getChannel();
+            MappedByteBuffer __buffer = __channel.map(FileChannel.MapMode.READ_ONLY, 0, __channel.size());
+
+            if(__buffer.getInt() != MAGIC || __buffer.getShort() != VERSION)
+            {
+                throw new IOException("not a device cache");
+            }//end if
+
+            int __count = __buffer.getInt();
+            for(int i = 0; i < __count; i++)
+            {
+                String __address = readString(__buffer);
+                String __name = readString(__buffer);
+
+                _entries.put(__address, new Entry(__address, __name, __buffer.getLong(), __buffer.getShort(),
+                        __buffer.getLong(), __buffer.getInt(), __buffer.getInt()));
+            }//end for loop
+        }//end try
+        finally
+        {
+            __raf.close();
+        }//end finally
+    }//end method load
+
+    //----------------------------------------------------------------------------------------------
+
+    private void evictExpired(long __nowMillis)
+    {
+        Iterator<Entry> __iterator = _entries.values().iterator();
+
+        while(__iterator.hasNext())
+        {
+            if(isExpired(__iterator.next(), __nowMillis))
+            {
+                __iterator.remove();
+                _dirty = true;
+            }//end if
+        }//end while loop
+    }//end method evictExpired
+
+    private boolean isExpired(Entry __entry, long __nowMillis)
+    {
+        return __nowMillis - __entry._lastSeenMillis > _ttlMillis;
+    }//end method isExpired
+
+    //----------------------------------------------------------------------------------------------
+
+    //length prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream __out, String __value) throws IOException
+    {
+        if(__value == null)
+        {
+            __out.writeShort(-1);
+            return;
+        }//end if
+
+        byte[] __bytes = __value.getBytes(Frame.UTF_8);
+        __out.writeShort(__bytes.length);
+        __out.write(__bytes);
+    }//end method writeString
+
+    private static String readString(MappedByteBuffer __buffer)
+    {
+        int __length = __buffer.getShort();
+        if(__length < 0)
+        {
+            return null;
+        }//end if
+
+        byte[] __bytes = new byte[__length];
+        __buffer.get(__bytes);
+        return new String(__bytes, Frame.UTF_8);
+    }//end method readString
+
+    //----------------------------------------------------------------------------------------------
+
+    public synchronized int size()
+    {
+        ensureLoaded(System.currentTimeMillis());
+        return _entries.size();
+    }//end method size
+
+    //lookups that found an unexpired entry
+    public synchronized long getHitCount()
+    {
+        return _hits;
+    }//end method getHitCount
+
+    public synchronized long getMissCount()
+    {
+        return _misses;
+    }//end method getMissCount
+
+    public synchronized double getHitRate()
+    {
+        long __lookups = _hits + _misses;
+        return __lookups == 0 ? 0 : (double) _hits / __lookups;
+    }//end method getHitRate
+
+    //nanoseconds the first use spent reading the file, -1 before it was loaded
+    public synchronized long getLoadNanos()
+    {
+        return _loadNanos;
+    }//end method getLoadNanos
+}//end class DeviceCache
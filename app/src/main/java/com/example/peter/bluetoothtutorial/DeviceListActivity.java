@@ -8,17 +8,23 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.view.ContextMenu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.Toast;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DeviceListActivity extends AppCompatActivity
 {
@@ -28,12 +34,25 @@ public class DeviceListActivity extends AppCompatActivity
     //bluetooth adapter to handle requests
     private BluetoothAdapter _bluetoothAdapter;
 
-    //collection of bluetooth device objects
-    private ArrayList<BluetoothDevice> _bluetoothDevices;
+    //the list is refreshed at most this often while a scan is reporting devices
+    private static final long DISCOVERY_REFRESH_MILLIS = 250;
+
+    //paired, discovered and connected devices shared with the rest of the app
+    private DeviceRepository _deviceRepository;
+
+    //one entry per device however often it is reported, ranked by signal strength
+    private DiscoveryIndex _discoveryIndex;
+
+    //devices remembered from earlier scans and connects, only read and written on its own thread
+    private DeviceCache _deviceCache;
+    private final ExecutorService _cacheExecutor = Executors.newSingleThreadExecutor();
 
     //for displaying the list of devices to the user
-    private ArrayList<String> _listDiscoveredDevices;
-    private ArrayAdapter _listAdapter;
+    private DiscoveryListAdapter _listAdapter;
+
+    //batches sightings so the list is refreshed once per interval instead of once per sighting
+    private Handler _handler;
+    private FramePacedDispatcher<DiscoveredDevice> _sightingDispatcher;
 
     //support variables
     private boolean _broadcastReceiverEnable = false;
@@ -59,17 +78,48 @@ public class DeviceListActivity extends AppCompatActivity
         //get an instance of the bluetooth adapter
         _bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
-        //initialize ArrayList for holding bluetooth objects
-        _bluetoothDevices = new ArrayList<>();
-
+        _deviceRepository = DeviceRepository.getDefault();
+        _discoveryIndex = new DiscoveryIndex();
+        _deviceCache = DeviceCache.getDefault(this);
+
+        _handler = new Handler(Looper.getMainLooper());
+        _sightingDispatcher = new FramePacedDispatcher<>(
+                new FramePacedDispatcher.Scheduler()
+                {
+                    @Override
+                    public void schedule(Runnable __task, long __delayMillis)
+                    {
+                        _handler.postDelayed(__task, __delayMillis);
+                    }//end function schedule
+
+                    @Override
+                    public long now()
+                    {
+                        return SystemClock.uptimeMillis();
+                    }//end function now
+                },
+                new FramePacedDispatcher.Sink<DiscoveredDevice>()
+                {
+                    @Override
+                    public void onBatch(List<DiscoveredDevice> __sightings)
+                    {
+                        for(DiscoveredDevice __sighting : __sightings)
+                        {
+                            _discoveryIndex.report(__sighting);
+                        }//end for loop
+
+                        _listAdapter.apply(_discoveryIndex.publish());
+                        _deviceRepository.reportDiscovered(__sightings);
+                    }//end function onBatch
+                },
+                DISCOVERY_REFRESH_MILLIS);
 
         //possibility of getting null pointer exception
         try
         {
             //prepare list for displaying devices found
             ListView __lstDevices = (ListView)findViewById(R.id.listView);
-            _listDiscoveredDevices = new ArrayList<>();
-            _listAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, _listDiscoveredDevices);
+            _listAdapter = new DiscoveryListAdapter(getLayoutInflater());
             assert __lstDevices != null;
             __lstDevices.setAdapter(_listAdapter);
             __lstDevices.setOnCreateContextMenuListener(this);
@@ -104,21 +154,19 @@ public class DeviceListActivity extends AppCompatActivity
     */
     public void list()
     {
-        //clear ArrayLists
-        _listDiscoveredDevices.clear();
-        _listAdapter.notifyDataSetChanged();
-        _bluetoothDevices.clear();
+        clearDevices();
 
         Toast.makeText(getApplicationContext(), "Listing paired devices...", Toast.LENGTH_LONG).show();
         Set<BluetoothDevice> __pairedDevices = _bluetoothAdapter.getBondedDevices();
+        ArrayList<DiscoveredDevice> __paired = new ArrayList<>(__pairedDevices.size());
 
         //iterate through all the Bluetooth devices paired with
         for (BluetoothDevice __bt : __pairedDevices) {
-            _listDiscoveredDevices.add(__bt.getName());
-            _bluetoothDevices.add(__bt);
+            __paired.add(new DiscoveredDevice(__bt.getAddress(), __bt.getName(), DiscoveredDevice.NO_RSSI, SystemClock.uptimeMillis()));
         }//end for loop
 
-        _listAdapter.notifyDataSetChanged();
+        _deviceRepository.setPaired(__paired);
+        showDevices(__paired);
     }//end function list
 
     //----------------------------------------------------------------------------------------------
@@ -135,13 +183,28 @@ public class DeviceListActivity extends AppCompatActivity
             {
                 //get the bluetooth device object from the intent
                 BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                _listDiscoveredDevices.add(device.getName() + "\n" + device.getAddress());
-                _listAdapter.notifyDataSetChanged();
-                _bluetoothDevices.add(device);
+                short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, (short) DiscoveredDevice.NO_RSSI);
+
+                //the same device is usually reported several times per scan, the index merges them
+                recordSighting(device.getAddress(), device.getName(), rssi);
+                _sightingDispatcher.submit(new DiscoveredDevice(device.getAddress(), device.getName(), rssi, SystemClock.uptimeMillis()));
             }//end if
         }
     };//end BroadcastReceiver
 
+    //the first sighting may have to wait for the cache file to be read
+    private void recordSighting(final String __address, final String __name, final short __rssi)
+    {
+        _cacheExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                _deviceCache.recordSighting(__address, __name, __rssi);
+            }//end function run
+        });
+    }//end function recordSighting
+
     //----------------------------------------------------------------------------------------------
 
     /*
@@ -170,9 +233,35 @@ public class DeviceListActivity extends AppCompatActivity
         }//end if
 
         //clear the list
-        _listDiscoveredDevices.clear();
-        _listAdapter.notifyDataSetChanged();
-        _bluetoothDevices.clear();
+        clearDevices();
+        _deviceRepository.clearDiscovered();
+
+        //remembered devices are listed once the cache is read, without a signal reading until the scan finds them
+        _cacheExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final ArrayList<DiscoveredDevice> __known = new ArrayList<>();
+                for(DeviceCache.Entry __entry : _deviceCache.getAll())
+                {
+                    __known.add(new DiscoveredDevice(__entry.getAddress(), __entry.getName(), DiscoveredDevice.NO_RSSI, SystemClock.uptimeMillis()));
+                }//end for loop
+
+                _handler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        //the screen may have closed meanwhile
+                        if(_currentInstruction == SEARCH)
+                        {
+                            showDevices(__known);
+                        }//end if
+                    }//end function run
+                });
+            }//end function run
+        });
 
         Toast.makeText(getApplicationContext(), "Searching for devices...", Toast.LENGTH_LONG).show();
 
@@ -205,31 +294,62 @@ public class DeviceListActivity extends AppCompatActivity
     //----------------------------------------------------------------------------------------------
 
     /*
-    *   Method to show the current devices that are connected
+    *   Method to show the current devices that are connected, the list follows connects and
+    *   disconnects while it is open
     */
     public void showConnections()
     {
-        try
-        {
-            ArrayList<BluetoothDevice> devices = (ArrayList<BluetoothDevice>) getIntent().getExtras().get("devices");
+        showDevices(_deviceRepository.getSnapshot().getConnected());
+        _deviceRepository.addListener(_connectionsListener);
+    }//end function showConnections
 
-            for(BluetoothDevice device:devices)
-            {
-                _listDiscoveredDevices.add(device.getName() + "\n" + device.getAddress());
-                _bluetoothDevices.add(device);
-            }//end for loop
+    //----------------------------------------------------------------------------------------------
 
-            _listAdapter.notifyDataSetChanged();
-        }//end try
-        catch (NullPointerException npe)
+    /*
+    *   the repository calls this on the thread that changed it, the list is only touched on the main thread
+    */
+    private final DeviceRepository.Listener _connectionsListener = new DeviceRepository.Listener()
+    {
+        @Override
+        public void onDevicesChanged(DeviceRepository.Snapshot __snapshot)
         {
-            Toast.makeText(getApplicationContext(), "Null Pointer Exception: " + npe, Toast.LENGTH_LONG).show();
-        }//end catch
-        catch(Exception e)
+            _handler.post(_refreshConnectionsTask);
+        }//end function onDevicesChanged
+    };
+
+    private final Runnable _refreshConnectionsTask = new Runnable()
+    {
+        @Override
+        public void run()
         {
-            Toast.makeText(getApplicationContext(), "Exception: " + e, Toast.LENGTH_LONG).show();
-        }//end catch
-    }//end function showConnections
+            //connects and disconnects are rare, rebuilding the short list is simplest
+            clearDevices();
+            showDevices(_deviceRepository.getSnapshot().getConnected());
+        }//end function run
+    };
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   adds devices that are not coming from a scan to the list straight away
+    */
+    private void showDevices(List<DiscoveredDevice> __devices)
+    {
+        for(DiscoveredDevice __device : __devices)
+        {
+            _discoveryIndex.report(__device);
+        }//end for loop
+
+        _listAdapter.apply(_discoveryIndex.publish());
+    }//end function showDevices
+
+    //----------------------------------------------------------------------------------------------
+
+    private void clearDevices()
+    {
+        _discoveryIndex.clear();
+        _listAdapter.clear();
+    }//end function clearDevices
 
     //----------------------------------------------------------------------------------------------
 
@@ -240,11 +360,30 @@ public class DeviceListActivity extends AppCompatActivity
     protected void onDestroy()
     {
         _currentInstruction = 0;
-        _bluetoothAdapter = null;
-        _bluetoothDevices.clear();
-        _listAdapter.clear();
-        _listDiscoveredDevices.clear();
         stopDiscovery();
+        _deviceRepository.removeListener(_connectionsListener);
+        _handler.removeCallbacksAndMessages(null);
+
+        //the save runs after any sighting still queued, then the thread ends
+        _cacheExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    _deviceCache.save();
+                }//end try
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }//end catch
+            }//end function run
+        });
+        _cacheExecutor.shutdown();
+
+        _bluetoothAdapter = null;
+        clearDevices();
         super.onDestroy();
     }//end function onDestroy
 
@@ -277,19 +416,19 @@ public class DeviceListActivity extends AppCompatActivity
     public boolean onContextItemSelected(MenuItem item)
     {
         AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo) item.getMenuInfo();
-        int position = info.position;
+        DiscoveredDevice device = _listAdapter.getItem(info.position);
 
         switch (item.getItemId())
         {
             case 0:
                 stopDiscovery();
-                Toast.makeText(getApplicationContext(), "connecting to " + _bluetoothDevices.get(position).getName(), Toast.LENGTH_SHORT).show();
-                setResult(RESULT_OK, new Intent().putExtra("device", _bluetoothDevices.get(position)));
+                Toast.makeText(getApplicationContext(), "connecting to " + device.getName(), Toast.LENGTH_SHORT).show();
+                setResult(RESULT_OK, new Intent().putExtra("address", device.getAddress()));
                 finish();
                 break;
             case 1:
-                Toast.makeText(getApplicationContext(), "disconnecting from " + _bluetoothDevices.get(position).getName(), Toast.LENGTH_SHORT).show();
-                setResult(RESULT_OK, new Intent().putExtra("device", _bluetoothDevices.get(position)));
+                Toast.makeText(getApplicationContext(), "disconnecting from " + device.getName(), Toast.LENGTH_SHORT).show();
+                setResult(RESULT_OK, new Intent().putExtra("address", device.getAddress()));
                 finish();
                 break;
         }//end switch
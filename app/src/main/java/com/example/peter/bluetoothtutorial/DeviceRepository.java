@@ -0,0 +1,274 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+*   The paired, discovered and connected devices of the process, shared by every screen and the
+*   connection service. Readers get an immutable snapshot and never copy or lock anything;
+*   every change builds a new snapshot and hands it to the listeners. Devices are identified by
+*   address, BluetoothAdapter.getRemoteDevice turns one back into a BluetoothDevice
+*/
+public class DeviceRepository
+{
+    private static final DeviceRepository DEFAULT = new DeviceRepository();
+
+    /*
+    *   called on the thread that made the change, UI listeners have to post to the main thread
+    */
+    public interface Listener
+    {
+        void onDevicesChanged(Snapshot __snapshot);
+    }//end interface Listener
+
+    /*
+    *   the devices at one point in time, never changes once published
+    */
+    public static final class Snapshot
+    {
+        private final List<DiscoveredDevice> _paired;
+        private final List<DiscoveredDevice> _discovered;
+        private final List<DiscoveredDevice> _connected;
+        private final long _version;
+
+        Snapshot(List<DiscoveredDevice> __paired, List<DiscoveredDevice> __discovered, List<DiscoveredDevice> __connected, long __version)
+        {
+            _paired = __paired;
+            _discovered = __discovered;
+            _connected = __connected;
+            _version = __version;
+        }//end constructor
+
+        public List<DiscoveredDevice> getPaired()
+        {
+            return _paired;
+        }//end method getPaired
+
+        //devices found by scans since discovery was last cleared, in the order they were first found
+        public List<DiscoveredDevice> getDiscovered()
+        {
+            return _discovered;
+        }//end method getDiscovered
+
+        public List<DiscoveredDevice> getConnected()
+        {
+            return _connected;
+        }//end method getConnected
+
+        //increases with every change
+        public long getVersion()
+        {
+            return _version;
+        }//end method getVersion
+
+        /*
+        *   the device with the given address from any of the lists, null if there is none
+        */
+        public DiscoveredDevice find(String __address)
+        {
+            DiscoveredDevice __device = find(_connected, __address);
+            if(__device == null)
+            {
+                __device = find(_discovered, __address);
+            }//end if
+            if(__device == null)
+            {
+                __device = find(_paired, __address);
+            }//end if
+
+            return __device;
+        }//end method find
+
+        private static DiscoveredDevice find(List<DiscoveredDevice> __devices, String __address)
+        {
+            for(DiscoveredDevice __device : __devices)
+            {
+                if(__device.getAddress().equals(__address))
+                {
+                    return __device;
+                }//end if
+            }//end for loop
+
+            return null;
+        }//end method find
+    }//end class Snapshot
+
+    //----------------------------------------------------------------------------------------------
+
+    private static final List<DiscoveredDevice> EMPTY = Collections.emptyList();
+
+    private final CopyOnWriteArrayList<Listener> _listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot _snapshot = new Snapshot(EMPTY, EMPTY, EMPTY, 0);
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   repository shared by the whole process
+    */
+    public static DeviceRepository getDefault()
+    {
+        return DEFAULT;
+    }//end method getDefault
+
+    //----------------------------------------------------------------------------------------------
+
+    public Snapshot getSnapshot()
+    {
+        return _snapshot;
+    }//end method getSnapshot
+
+    public void addListener(Listener __listener)
+    {
+        _listeners.add(__listener);
+    }//end method addListener
+
+    public void removeListener(Listener __listener)
+    {
+        _listeners.remove(__listener);
+    }//end method removeListener
+
+    //----------------------------------------------------------------------------------------------
+
+    public void setPaired(Collection<DiscoveredDevice> __paired)
+    {
+        Snapshot __snapshot;
+
+        synchronized (this)
+        {
+            Snapshot __old = _snapshot;
+            __snapshot = publish(new Snapshot(freeze(__paired), __old._discovered, __old._connected, __old._version + 1));
+        }//end synchronized
+
+        notifyListeners(__snapshot);
+    }//end method setPaired
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   adds a batch of scan results, a device that is already listed is merged with its sighting
+    */
+    public void reportDiscovered(Collection<DiscoveredDevice> __sightings)
+    {
+        if(__sightings.isEmpty())
+        {
+            return;
+        }//end if
+
+        Snapshot __snapshot;
+
+        synchronized (this)
+        {
+            Snapshot __old = _snapshot;
+            __snapshot = publish(new Snapshot(__old._paired, merge(__old._discovered, __sightings), __old._connected, __old._version + 1));
+        }//end synchronized
+
+        notifyListeners(__snapshot);
+    }//end method reportDiscovered
+
+    public void clearDiscovered()
+    {
+        Snapshot __snapshot;
+
+        synchronized (this)
+        {
+            Snapshot __old = _snapshot;
+            __snapshot = publish(new Snapshot(__old._paired, EMPTY, __old._connected, __old._version + 1));
+        }//end synchronized
+
+        notifyListeners(__snapshot);
+    }//end method clearDiscovered
+
+    //----------------------------------------------------------------------------------------------
+
+    public void addConnected(DiscoveredDevice __device)
+    {
+        Snapshot __snapshot;
+
+        synchronized (this)
+        {
+            Snapshot __old = _snapshot;
+            List<DiscoveredDevice> __connected = merge(__old._connected, Collections.singletonList(__device));
+            __snapshot = publish(new Snapshot(__old._paired, __old._discovered, __connected, __old._version + 1));
+        }//end synchronized
+
+        notifyListeners(__snapshot);
+    }//end method addConnected
+
+    public void removeConnected(String __address)
+    {
+        Snapshot __snapshot;
+
+        synchronized (this)
+        {
+            Snapshot __old = _snapshot;
+            ArrayList<DiscoveredDevice> __connected = new ArrayList<>(__old._connected.size());
+
+            for(DiscoveredDevice __device : __old._connected)
+            {
+                if(!__device.getAddress().equals(__address))
+                {
+                    __connected.add(__device);
+                }//end if
+            }//end for loop
+
+            if(__connected.size() == __old._connected.size())
+            {
+                return;
+            }//end if
+
+            __snapshot = publish(new Snapshot(__old._paired, __old._discovered, Collections.unmodifiableList(__connected), __old._version + 1));
+        }//end synchronized
+
+        notifyListeners(__snapshot);
+    }//end method removeConnected
+
+    //----------------------------------------------------------------------------------------------
+
+    //called with the lock held
+    private Snapshot publish(Snapshot __snapshot)
+    {
+        _snapshot = __snapshot;
+        return __snapshot;
+    }//end method publish
+
+    //outside the lock so a listener can read or change the repository
+    private void notifyListeners(Snapshot __snapshot)
+    {
+        for(Listener __listener : _listeners)
+        {
+            __listener.onDevicesChanged(__snapshot);
+        }//end for loop
+    }//end method notifyListeners
+
+    //----------------------------------------------------------------------------------------------
+
+    private static List<DiscoveredDevice> freeze(Collection<DiscoveredDevice> __devices)
+    {
+        return Collections.unmodifiableList(new ArrayList<>(__devices));
+    }//end method freeze
+
+    /*
+    *   a new list with the sightings merged into the devices, new ones are added at the end
+    */
+    private static List<DiscoveredDevice> merge(List<DiscoveredDevice> __devices, Collection<DiscoveredDevice> __sightings)
+    {
+        LinkedHashMap<String, DiscoveredDevice> __byAddress = new LinkedHashMap<>();
+
+        for(DiscoveredDevice __device : __devices)
+        {
+            __byAddress.put(__device.getAddress(), __device);
+        }//end for loop
+
+        for(DiscoveredDevice __sighting : __sightings)
+        {
+            DiscoveredDevice __known = __byAddress.get(__sighting.getAddress());
+            __byAddress.put(__sighting.getAddress(), __known != null ? __known.merge(__sighting) : __sighting);
+        }//end for loop
+
+        return freeze(__byAddress.values());
+    }//end method merge
+}//end class DeviceRepository
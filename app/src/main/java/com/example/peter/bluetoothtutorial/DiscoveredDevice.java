@@ -0,0 +1,99 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   What discovery knows about one device. Instances are immutable, a repeated sighting
+*   produces a new instance through merge so published lists never change underneath a reader
+*/
+public final class DiscoveredDevice
+{
+    //signal strength of a device that was not found by a scan, e.g. a paired one
+    public static final int NO_RSSI = Short.MIN_VALUE;
+
+    private final String _address;
+    private final String _name;
+    private final int _rssi;
+    private final long _firstSeenMillis;
+    private final long _lastSeenMillis;
+    private final int _sightings;
+
+    public DiscoveredDevice(String __address, String __name, int __rssi, long __seenMillis)
+    {
+        this(__address, __name, __rssi, __seenMillis, __seenMillis, 1);
+    }//end constructor
+
+    private DiscoveredDevice(String __address, String __name, int __rssi, long __firstSeenMillis, long __lastSeenMillis, int __sightings)
+    {
+        _address = __address;
+        _name = __name;
+        _rssi = __rssi;
+        _firstSeenMillis = __firstSeenMillis;
+        _lastSeenMillis = __lastSeenMillis;
+        _sightings = __sightings;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   combines this device with a later sighting of it. The newest name and signal strength win,
+    *   unless the sighting did not carry one
+    */
+    public DiscoveredDevice merge(DiscoveredDevice __sighting)
+    {
+        String __name = __sighting._name != null ? __sighting._name : _name;
+        int __rssi = __sighting._rssi != NO_RSSI ? __sighting._rssi : _rssi;
+
+        return new DiscoveredDevice(_address, __name, __rssi,
+                Math.min(_firstSeenMillis, __sighting._firstSeenMillis),
+                Math.max(_lastSeenMillis, __sighting._lastSeenMillis),
+                _sightings + __sighting._sightings);
+    }//end method merge
+
+    //----------------------------------------------------------------------------------------------
+
+    public String getAddress()
+    {
+        return _address;
+    }//end method getAddress
+
+    //null until the device reports a name
+    public String getName()
+    {
+        return _name;
+    }//end method getName
+
+    //dBm, NO_RSSI when unknown
+    public int getRssi()
+    {
+        return _rssi;
+    }//end method getRssi
+
+    public boolean hasRssi()
+    {
+        return _rssi != NO_RSSI;
+    }//end method hasRssi
+
+    public long getFirstSeenMillis()
+    {
+        return _firstSeenMillis;
+    }//end method getFirstSeenMillis
+
+    public long getLastSeenMillis()
+    {
+        return _lastSeenMillis;
+    }//end method getLastSeenMillis
+
+    //number of times the device was reported
+    public int getSightings()
+    {
+        return _sightings;
+    }//end method getSightings
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        String __label = (_name != null ? _name : "Unknown device") + "\n" + _address;
+        return hasRssi() ? __label + "  (" + _rssi + " dBm)" : __label;
+    }//end method toString
+}//end class DiscoveredDevice
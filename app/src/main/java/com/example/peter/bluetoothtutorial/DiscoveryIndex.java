@@ -0,0 +1,238 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+*   Discovery results keyed by address. Repeated sightings of a device are merged into one
+*   entry instead of adding a row each time. The entries are ranked by signal strength and
+*   publish() returns the inserts, updates and moves that turn the previously published list
+*   into the current one, so a list view only has to apply what changed since its last refresh.
+*   Not thread safe, used from the UI thread
+*/
+public class DiscoveryIndex
+{
+    /*
+    *   one step of a diff. Steps are applied in order, positions refer to the list as it is
+    *   after the previous steps
+    */
+    public static final class Change
+    {
+        public static final int INSERT = 0, UPDATE = 1, MOVE = 2;
+
+        private final int _type;
+        private final int _from;
+        private final int _to;
+        private final DiscoveredDevice _device;
+
+        Change(int __type, int __from, int __to, DiscoveredDevice __device)
+        {
+            _type = __type;
+            _from = __from;
+            _to = __to;
+            _device = __device;
+        }//end constructor
+
+        public int getType()
+        {
+            return _type;
+        }//end method getType
+
+        //position the device was moved from, -1 for inserts
+        public int getFrom()
+        {
+            return _from;
+        }//end method getFrom
+
+        //position of the device once the step is applied
+        public int getTo()
+        {
+            return _to;
+        }//end method getTo
+
+        public DiscoveredDevice getDevice()
+        {
+            return _device;
+        }//end method getDevice
+    }//end class Change
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   strongest signal first, devices without a signal reading last, then by name and address
+    *   so the order is stable between refreshes
+    */
+    public static final Comparator<DiscoveredDevice> BY_SIGNAL = new Comparator<DiscoveredDevice>()
+    {
+        @Override
+        public int compare(DiscoveredDevice __a, DiscoveredDevice __b)
+        {
+            if(__a.getRssi() != __b.getRssi())
+            {
+                return __a.getRssi() > __b.getRssi() ? -1 : 1;
+            }//end if
+
+            String __nameA = __a.getName() != null ? __a.getName() : "";
+            String __nameB = __b.getName() != null ? __b.getName() : "";
+            int __byName = __nameA.compareToIgnoreCase(__nameB);
+
+            return __byName != 0 ? __byName : __a.getAddress().compareTo(__b.getAddress());
+        }//end method compare
+    };
+
+    private final HashMap<String, DiscoveredDevice> _devices = new HashMap<>();
+
+    //the ranking as of the last publish
+    private final ArrayList<DiscoveredDevice> _published = new ArrayList<>();
+    private boolean _dirty = false;
+
+    private long _reports = 0;
+    private long _merges = 0;
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   adds a sighting, or merges it into the entry for the same address
+    */
+    public void report(DiscoveredDevice __sighting)
+    {
+        _reports++;
+
+        DiscoveredDevice __known = _devices.get(__sighting.getAddress());
+        if(__known != null)
+        {
+            _merges++;
+            __sighting = __known.merge(__sighting);
+        }//end if
+
+        _devices.put(__sighting.getAddress(), __sighting);
+        _dirty = true;
+    }//end method report
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   ranks the entries and returns the steps from the last published ranking to this one,
+    *   an empty list when nothing was reported since
+    */
+    public List<Change> publish()
+    {
+        if(!_dirty)
+        {
+            return Collections.emptyList();
+        }//end if
+
+        _dirty = false;
+
+        ArrayList<DiscoveredDevice> __ranked = new ArrayList<>(_devices.values());
+        Collections.sort(__ranked, BY_SIGNAL);
+
+        ArrayList<Change> __changes = new ArrayList<>();
+
+        //walk the new ranking, everything before i is already in place in _published
+        for(int i = 0; i < __ranked.size(); i++)
+        {
+            DiscoveredDevice __device = __ranked.get(i);
+            int __current = indexOf(_published, __device.getAddress(), i);
+
+            if(__current < 0)
+            {
+                _published.add(i, __device);
+                __changes.add(new Change(Change.INSERT, -1, i, __device));
+            }//end if
+            else if(__current != i)
+            {
+                _published.remove(__current);
+                _published.add(i, __device);
+                __changes.add(new Change(Change.MOVE, __current, i, __device));
+            }//end else if
+            else if(_published.get(i) != __device)
+            {
+                _published.set(i, __device);
+                __changes.add(new Change(Change.UPDATE, i, i, __device));
+            }//end else if
+        }//end for loop
+
+        return __changes;
+    }//end method publish
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   applies the steps of a diff to a copy of the published list
+    */
+    public static void apply(List<DiscoveredDevice> __rows, List<Change> __changes)
+    {
+        for(Change __change : __changes)
+        {
+            switch (__change.getType())
+            {
+                case Change.INSERT:
+                    __rows.add(__change.getTo(), __change.getDevice());
+                    break;
+                case Change.MOVE:
+                    __rows.remove(__change.getFrom());
+                    __rows.add(__change.getTo(), __change.getDevice());
+                    break;
+                default:
+                    __rows.set(__change.getTo(), __change.getDevice());
+            }//end switch
+        }//end for loop
+    }//end method apply
+
+    //----------------------------------------------------------------------------------------------
+
+    private static int indexOf(List<DiscoveredDevice> __list, String __address, int __from)
+    {
+        for(int i = __from; i < __list.size(); i++)
+        {
+            if(__list.get(i).getAddress().equals(__address))
+            {
+                return i;
+            }//end if
+        }//end for loop
+
+        return -1;
+    }//end method indexOf
+
+    //----------------------------------------------------------------------------------------------
+
+    public DiscoveredDevice get(String __address)
+    {
+        return _devices.get(__address);
+    }//end method get
+
+    public int size()
+    {
+        return _devices.size();
+    }//end method size
+
+    //the ranking as of the last publish
+    public List<DiscoveredDevice> getPublished()
+    {
+        return Collections.unmodifiableList(_published);
+    }//end method getPublished
+
+    //sightings reported since the index was created
+    public long getReportCount()
+    {
+        return _reports;
+    }//end method getReportCount
+
+    //sightings of a device that was already in the index
+    public long getMergeCount()
+    {
+        return _merges;
+    }//end method getMergeCount
+
+    //forgets every device, the caller clears whatever shows the published list
+    public void clear()
+    {
+        _devices.clear();
+        _published.clear();
+        _dirty = false;
+    }//end method clear
+}//end class DiscoveryIndex
@@ -0,0 +1,107 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+*   Shows the ranking of a DiscoveryIndex. Diffs are applied to the rows and the list is told
+*   once per batch; ids stay with their address so a device that moves keeps its row
+*/
+public class DiscoveryListAdapter extends BaseAdapter
+{
+    private final LayoutInflater _inflater;
+    private final ArrayList<DiscoveredDevice> _rows = new ArrayList<>();
+
+    //stable row id per address
+    private final HashMap<String, Long> _ids = new HashMap<>();
+    private long _nextId = 0;
+
+    public DiscoveryListAdapter(LayoutInflater __inflater)
+    {
+        _inflater = __inflater;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   applies one batch of changes, the list only rebinds when something changed
+    */
+    public void apply(List<DiscoveryIndex.Change> __changes)
+    {
+        if(__changes.isEmpty())
+        {
+            return;
+        }//end if
+
+        DiscoveryIndex.apply(_rows, __changes);
+        notifyDataSetChanged();
+    }//end method apply
+
+    //----------------------------------------------------------------------------------------------
+
+    public void clear()
+    {
+        _rows.clear();
+        _ids.clear();
+        notifyDataSetChanged();
+    }//end method clear
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public int getCount()
+    {
+        return _rows.size();
+    }//end method getCount
+
+    @Override
+    public DiscoveredDevice getItem(int __position)
+    {
+        return _rows.get(__position);
+    }//end method getItem
+
+    @Override
+    public long getItemId(int __position)
+    {
+        String __address = _rows.get(__position).getAddress();
+        Long __id = _ids.get(__address);
+
+        if(__id == null)
+        {
+            __id = _nextId++;
+            _ids.put(__address, __id);
+        }//end if
+
+        return __id;
+    }//end method getItemId
+
+    @Override
+    public boolean hasStableIds()
+    {
+        return true;
+    }//end method hasStableIds
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public View getView(int __position, View __convertView, ViewGroup __parent)
+    {
+        TextView __row = (TextView) __convertView;
+
+        //only inflate when the list has no row to recycle
+        if(__row == null)
+        {
+            __row = (TextView) _inflater.inflate(android.R.layout.simple_list_item_1, __parent, false);
+        }//end if
+
+        __row.setText(_rows.get(__position).toString());
+        return __row;
+    }//end method getView
+}//end class DiscoveryListAdapter
@@ -0,0 +1,129 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Totals and latency histograms over every connection of an engine. Recording is a few atomic
+*   increments in fixed memory and never takes a lock or allocates, so it stays on in
+*   production. Each connection counts its own traffic in a LinkMetrics that adds to these
+*/
+public class EngineMetrics
+{
+    final AtomicLong _bytesIn = new AtomicLong();
+    final AtomicLong _bytesOut = new AtomicLong();
+    final AtomicLong _framesIn = new AtomicLong();
+    final AtomicLong _framesOut = new AtomicLong();
+    final AtomicLong _errors = new AtomicLong();
+    final AtomicLong _maxQueueDepth = new AtomicLong();
+
+    private final LatencyHistogram _connectLatency = new LatencyHistogram();
+    private final LatencyHistogram _writeLatency = new LatencyHistogram();
+    private final LatencyHistogram _writeStall = new LatencyHistogram();
+    private final LatencyHistogram _dispatchLatency = new LatencyHistogram();
+    private final LatencyHistogram _readToRender = new LatencyHistogram();
+    private final LatencyHistogram _acceptToFirstByte = new LatencyHistogram();
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   called by the UI once received messages are on screen, __nanos is the time since the
+    *   frame carrying them was read
+    */
+    public void recordReadToRender(long __nanos)
+    {
+        _readToRender.record(__nanos);
+    }//end method recordReadToRender
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   copies the current values, together with the live __connections
+    */
+    public MetricsSnapshot snapshot(Connection[] __connections)
+    {
+        return new MetricsSnapshot(this, __connections);
+    }//end method snapshot
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getBytesIn()
+    {
+        return _bytesIn.get();
+    }//end method getBytesIn
+
+    public long getBytesOut()
+    {
+        return _bytesOut.get();
+    }//end method getBytesOut
+
+    public long getFramesIn()
+    {
+        return _framesIn.get();
+    }//end method getFramesIn
+
+    public long getFramesOut()
+    {
+        return _framesOut.get();
+    }//end method getFramesOut
+
+    //failed connects, reads and writes
+    public long getErrors()
+    {
+        return _errors.get();
+    }//end method getErrors
+
+    //deepest any outbound queue has been
+    public long getMaxQueueDepth()
+    {
+        return _maxQueueDepth.get();
+    }//end method getMaxQueueDepth
+
+    //----------------------------------------------------------------------------------------------
+
+    //nanoseconds from a connect call to the connection being up, retries included
+    public LatencyHistogram getConnectLatency()
+    {
+        return _connectLatency;
+    }//end method getConnectLatency
+
+    //nanoseconds from a frame being queued to it being written to the socket
+    public LatencyHistogram getWriteLatency()
+    {
+        return _writeLatency;
+    }//end method getWriteLatency
+
+    //nanoseconds senders spent waiting for room in a full outbound queue
+    public LatencyHistogram getWriteStall()
+    {
+        return _writeStall;
+    }//end method getWriteStall
+
+    //nanoseconds the listener took with each received frame
+    public LatencyHistogram getDispatchLatency()
+    {
+        return _dispatchLatency;
+    }//end method getDispatchLatency
+
+    //nanoseconds from reading a frame to its message being on screen
+    public LatencyHistogram getReadToRender()
+    {
+        return _readToRender;
+    }//end method getReadToRender
+
+    //nanoseconds from accepting an inbound link to the first bytes read from it
+    public LatencyHistogram getAcceptToFirstByte()
+    {
+        return _acceptToFirstByte;
+    }//end method getAcceptToFirstByte
+
+    //----------------------------------------------------------------------------------------------
+
+    static void raiseMax(AtomicLong __max, long __value)
+    {
+        long __current = __max.get();
+        while(__value > __current && !__max.compareAndSet(__current, __value))
+        {
+            __current = __max.get();
+        }//end while loop
+    }//end method raiseMax
+}//end class EngineMetrics
@@ -0,0 +1,929 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/*
+*   Sends and receives whole files over a connection without holding them in memory. The
+*   sender maps the file and copies one chunk at a time from the mapping into a pooled frame,
+*   the receiver writes each chunk straight into a mapped file it preallocated. Only a window
+*   of chunks is ever in flight, so memory use is the same for a log and a firmware image.
+*
+*   Every chunk carries a CRC32; a bad one makes the receiver ask for the rest again from that
+*   chunk. The receiver records how far it got next to the partial file, so when the link
+*   drops, even with a restart in between, offering the same file again resumes from the last
+*   chunk it acknowledged. The channel sits between the connection and its listener like a
+*   ReliableChannel and passes frames of other types through untouched.
+*
+*       offer: [transfer id: 8 bytes][file length: 8 bytes][chunk size: 4 bytes][name, UTF-8]
+*       chunk: [transfer id: 8 bytes][chunk index: 4 bytes][CRC32: 4 bytes][data]
+*       ack:   [transfer id: 8 bytes][next chunk expected: 4 bytes][status]
+*/
+public class FileTransferChannel implements ConnectionListener
+{
+    /*
+    *   told about every file that arrived completely
+    */
+    public interface ReceiveListener
+    {
+        void onFileReceived(Connection __connection, File __file);
+    }//end interface ReceiveListener
+
+    private static final int OFFER_HEADER_LENGTH = 20;
+    private static final int CHUNK_HEADER_LENGTH = 16;
+    private static final int ACK_LENGTH = 13;
+
+    private static final byte STATUS_PROGRESS = 0;
+    private static final byte STATUS_RESEND = 1;
+    private static final byte STATUS_COMPLETE = 2;
+    private static final byte STATUS_REJECTED = 3;
+
+    //files being received are written under this suffix and renamed once complete
+    static final String PART_SUFFIX = ".part";
+    static final String PROGRESS_SUFFIX = ".progress";
+    private static final int PROGRESS_MAGIC = 0x42544650;
+
+    /*
+    *   A file being sent, returned by sendFile to follow its progress. The future completes
+    *   once the receiver has the whole file and fails if it rejects it or the transfer is
+    *   cancelled. A transfer outlives the connection, it continues on the next one
+    */
+    public static final class Transfer
+    {
+        private final long _id;
+        private final File _file;
+        private final long _length;
+        private final int _chunkSize;
+        private final int _chunkCount;
+        private final SendFuture _future = new SendFuture();
+
+        //guarded by the channel
+        private Mapping _mapping = null;
+        private boolean _accepted = false;
+        private int _nextToSend = 0;
+
+        private volatile int _acked = 0;
+        private volatile int _resumedFrom = -1;
+        private volatile long _chunksSent = 0;
+
+        Transfer(long __id, File __file, int __chunkSize)
+        {
+            _id = __id;
+            _file = __file;
+            _length = __file.length();
+            _chunkSize = __chunkSize;
+            _chunkCount = (int) ((_length + __chunkSize - 1) / __chunkSize);
+        }//end constructor
+
+        public File getFile()
+        {
+            return _file;
+        }//end method getFile
+
+        public long getLength()
+        {
+            return _length;
+        }//end method getLength
+
+        public int getChunkCount()
+        {
+            return _chunkCount;
+        }//end method getChunkCount
+
+        //chunks the receiver has acknowledged
+        public int getAckedChunks()
+        {
+            return _acked;
+        }//end method getAckedChunks
+
+        //chunk the receiver asked to start from when it last accepted the offer, -1 before that
+        public int getResumedFrom()
+        {
+            return _resumedFrom;
+        }//end method getResumedFrom
+
+        //chunk frames written, resends included
+        public long getChunksSent()
+        {
+            return _chunksSent;
+        }//end method getChunksSent
+
+        public SendFuture getFuture()
+        {
+            return _future;
+        }//end method getFuture
+    }//end class Transfer
+
+    /*
+    *   a file being received
+    */
+    private static final class Incoming
+    {
+        final long id;
+        final File target;
+        final File part;
+        final File progress;
+        final long length;
+        final int chunkSize;
+        final int chunkCount;
+        Mapping mapping = null;
+        int next = 0;
+        int sinceSync = 0;
+
+        Incoming(long __id, File __target, long __length, int __chunkSize)
+        {
+            id = __id;
+            target = __target;
+            part = new File(__target.getPath() + PART_SUFFIX);
+            progress = new File(__target.getPath() + PROGRESS_SUFFIX);
+            length = __length;
+            chunkSize = __chunkSize;
+            chunkCount = (int) ((__length + __chunkSize - 1) / __chunkSize);
+        }//end constructor
+
+        int chunkLength(int __index)
+        {
+            return (int) Math.min(chunkSize, length - (long) __index * chunkSize);
+        }//end method chunkLength
+    }//end class Incoming
+
+    private final FileTransferPolicy _policy;
+    private final File _directory;
+    private final ConnectionListener _listener;
+    private final BufferPool _pool;
+    private volatile ReceiveListener _receiveListener = null;
+    private volatile Connection _connection = null;
+
+    //guarded by this
+    private final HashMap<Long, Transfer> _outgoing = new HashMap<>();
+    private final HashMap<Long, Incoming> _incoming = new HashMap<>();
+    private final CRC32 _sendChecksum = new CRC32();
+
+    //reader thread only
+    private final CRC32 _receiveChecksum = new CRC32();
+
+    public FileTransferChannel(FileTransferPolicy __policy, File __directory, ConnectionListener __listener)
+    {
+        this(__policy, __directory, __listener, BufferPool.getDefault());
+    }//end constructor
+
+    FileTransferChannel(FileTransferPolicy __policy, File __directory, ConnectionListener __listener, BufferPool __pool)
+    {
+        _policy = __policy;
+        _directory = __directory;
+        _listener = __listener;
+        _pool = __pool;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    public void setReceiveListener(ReceiveListener __receiveListener)
+    {
+        _receiveListener = __receiveListener;
+    }//end method setReceiveListener
+
+    public Connection getConnection()
+    {
+        return _connection;
+    }//end method getConnection
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   offers the file to the peer, straight away if connected and otherwise once the channel is.
+    *   Offering a file that is already being sent returns the running transfer
+    */
+    public Transfer sendFile(File __file) throws IOException
+    {
+        if(!__file.isFile())
+        {
+            throw new FileNotFoundException(__file.getPath());
+        }//end if
+
+        //the same file, unchanged, gets the same id, that is what lets the receiver resume it
+        long __id = __file.getName().hashCode();
+        __id = __id * 31 + __file.length();
+        __id = __id * 31 + __file.lastModified();
+
+        synchronized (this)
+        {
+            Transfer __transfer = _outgoing.get(__id);
+            if(__transfer != null)
+            {
+                return __transfer;
+            }//end if
+
+            __transfer = new Transfer(__id, __file, _policy.getChunkSize());
+            _outgoing.put(__id, __transfer);
+
+            if(_connection != null)
+            {
+                offer(_connection, __transfer);
+            }//end if
+
+            return __transfer;
+        }//end synchronized
+    }//end method sendFile
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   stops sending, the receiver keeps what it has so a later sendFile can still resume
+    */
+    public void cancel(Transfer __transfer)
+    {
+        synchronized (this)
+        {
+            if(_outgoing.remove(__transfer._id) == null)
+            {
+                return;
+            }//end if
+
+            closeMapping(__transfer);
+        }//end synchronized
+
+        __transfer._future.fail(new IOException("transfer of " + __transfer._file.getName() + " cancelled"));
+    }//end method cancel
+
+    //----------------------------------------------------------------------------------------------
+
+    //called with the lock held
+    private void offer(Connection __connection, Transfer __transfer)
+    {
+        byte[] __name = __transfer._file.getName().getBytes(Frame.UTF_8);
+        byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + OFFER_HEADER_LENGTH + __name.length];
+        FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_FILE_OFFER, OFFER_HEADER_LENGTH + __name.length);
+        writeLong(__frame, FrameEncoder.HEADER_LENGTH, __transfer._id);
+        writeLong(__frame, FrameEncoder.HEADER_LENGTH + 8, __transfer._length);
+        writeInt(__frame, FrameEncoder.HEADER_LENGTH + 16, __transfer._chunkSize);
+        System.arraycopy(__name, 0, __frame, FrameEncoder.HEADER_LENGTH + OFFER_HEADER_LENGTH, __name.length);
+
+        __transfer._accepted = false;
+        __connection.sendFrame(__frame);
+    }//end method offer
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   sender side, the receiver accepted, acknowledged, finished or asked for a resend
+    */
+    private void onAck(Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < ACK_LENGTH)
+        {
+            throw new IOException("file ack too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        long __id = readLong(__buffer, __offset);
+        int __next = readInt(__buffer, __offset + 8);
+        byte __status = __buffer[__offset + 12];
+
+        Transfer __finished = null;
+        IOException __failure = null;
+
+        synchronized (this)
+        {
+            Transfer __transfer = _outgoing.get(__id);
+            if(__transfer == null)
+            {
+                return;
+            }//end if
+
+            if(__next < 0 || __next > __transfer._chunkCount)
+            {
+                throw new IOException("file ack for chunk " + __next + " of " + __transfer._chunkCount);
+            }//end if
+
+            if(__status == STATUS_COMPLETE || __status == STATUS_REJECTED)
+            {
+                _outgoing.remove(__id);
+                closeMapping(__transfer);
+                __finished = __transfer;
+
+                if(__status == STATUS_COMPLETE)
+                {
+                    __transfer._acked = __transfer._chunkCount;
+                }//end if
+                else
+                {
+                    __failure = new IOException("peer rejected " + __transfer._file.getName());
+                }//end else
+            }//end if
+            else
+            {
+                if(!__transfer._accepted || __status == STATUS_RESEND)
+                {
+                    //everything from __next on goes out again, chunks still in flight are ignored by the receiver
+                    if(!__transfer._accepted)
+                    {
+                        __transfer._accepted = true;
+                        __transfer._resumedFrom = __next;
+                    }//end if
+
+                    __transfer._nextToSend = __next;
+                    __transfer._acked = __next;
+                }//end if
+                else if(__next > __transfer._acked)
+                {
+                    __transfer._acked = __next;
+                }//end else if
+
+                try
+                {
+                    pump(__transfer);
+                }//end try
+                catch (IOException e)
+                {
+                    //the source file went away or shrank, nothing more can be sent
+                    _outgoing.remove(__id);
+                    closeMapping(__transfer);
+                    __finished = __transfer;
+                    __failure = e;
+                }//end catch
+            }//end else
+        }//end synchronized
+
+        if(__finished != null)
+        {
+            if(__failure == null)
+            {
+                __finished._future.complete();
+            }//end if
+            else
+            {
+                __finished._future.fail(__failure);
+            }//end else
+        }//end if
+    }//end method onAck
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   sends chunks until the window is full, called with the lock held
+    */
+    private void pump(Transfer __transfer) throws IOException
+    {
+        Connection __connection = _connection;
+
+        while(__connection != null && __transfer._accepted && __transfer._nextToSend < __transfer._chunkCount
+                && __transfer._nextToSend - __transfer._acked < _policy.getWindowChunks())
+        {
+            if(__transfer._mapping == null)
+            {
+                __transfer._mapping = Mapping.open(__transfer._file, false, __transfer._length, _policy.getMapSegmentBytes(), __transfer._chunkSize);
+            }//end if
+
+            int __index = __transfer._nextToSend++;
+            long __position = (long) __index * __transfer._chunkSize;
+            int __length = (int) Math.min(__transfer._chunkSize, __transfer._length - __position);
+            int __frameLength = FrameEncoder.HEADER_LENGTH + CHUNK_HEADER_LENGTH + __length;
+            int __dataOffset = FrameEncoder.HEADER_LENGTH + CHUNK_HEADER_LENGTH;
+
+            final byte[] __frame = _pool.acquire(__frameLength);
+            __transfer._mapping.read(__position, __frame, __dataOffset, __length);
+
+            _sendChecksum.reset();
+            _sendChecksum.update(__frame, __dataOffset, __length);
+
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_FILE_CHUNK, CHUNK_HEADER_LENGTH + __length);
+            writeLong(__frame, FrameEncoder.HEADER_LENGTH, __transfer._id);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH + 8, __index);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH + 12, (int) _sendChecksum.getValue());
+
+            __transfer._chunksSent++;
+            __connection.sendFrame(__frame, __frameLength).addListener(new SendFuture.Listener()
+            {
+                @Override
+                public void onComplete(SendFuture __future)
+                {
+                    _pool.release(__frame);
+                }//end method onComplete
+            });
+        }//end while loop
+    }//end method pump
+
+    //called with the lock held
+    private void closeMapping(Transfer __transfer)
+    {
+        if(__transfer._mapping != null)
+        {
+            close(__transfer._mapping, _connection);
+            __transfer._mapping = null;
+        }//end if
+    }//end method closeMapping
+
+    //a file that fails to close has been forced already, the failure is only counted on the link
+    private static void close(Mapping __mapping, Connection __connection)
+    {
+        try
+        {
+            __mapping.close();
+        }//end try
+        catch (IOException e)
+        {
+            if(__connection != null)
+            {
+                __connection.getMetrics().recordError(e);
+            }//end if
+        }//end catch
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   receiver side, answers an offer with the chunk to start from
+    */
+    private void onOffer(Connection __connection, Frame __frame) throws IOException
+    {
+        if(__frame.getLength() <= OFFER_HEADER_LENGTH)
+        {
+            throw new IOException("file offer too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        long __id = readLong(__buffer, __offset);
+        long __length = readLong(__buffer, __offset + 8);
+        int __chunkSize = readInt(__buffer, __offset + 16);
+
+        //only the last path element is used, the peer does not get to pick the directory
+        String __name = new File(new String(__buffer, __offset + OFFER_HEADER_LENGTH,
+                __frame.getLength() - OFFER_HEADER_LENGTH, Frame.UTF_8)).getName();
+
+        if(__name.isEmpty() || __name.equals(".") || __name.equals("..") || __length < 0 || __length > _policy.getMaxFileLength()
+                || __chunkSize <= 0 || __chunkSize > FrameDecoder.DEFAULT_MAX_FRAME_LENGTH - CHUNK_HEADER_LENGTH)
+        {
+            sendAck(__connection, __id, 0, STATUS_REJECTED);
+            return;
+        }//end if
+
+        Incoming __incoming;
+        File __received = null;
+
+        synchronized (this)
+        {
+            __incoming = _incoming.get(__id);
+
+            if(__incoming == null)
+            {
+                __incoming = new Incoming(__id, new File(_directory, __name), __length, __chunkSize);
+
+                try
+                {
+                    open(__incoming);
+                }//end try
+                catch (IOException e)
+                {
+                    __connection.getMetrics().recordError(e);
+                    sendAck(__connection, __id, 0, STATUS_REJECTED);
+                    return;
+                }//end catch
+
+                _incoming.put(__id, __incoming);
+            }//end if
+
+            if(__incoming.next == __incoming.chunkCount)
+            {
+                //nothing left to receive, e.g. an empty file
+                __received = finish(__connection, __incoming);
+            }//end if
+        }//end synchronized
+
+        sendAck(__connection, __id, __incoming.next, __received != null ? STATUS_COMPLETE : STATUS_PROGRESS);
+        notifyReceived(__connection, __received);
+    }//end method onOffer
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   picks up the recorded progress of an earlier attempt at the same file, or preallocates a
+    *   new partial file. Called with the lock held
+    */
+    private void open(Incoming __incoming) throws IOException
+    {
+        __incoming.next = readProgress(__incoming);
+
+        if(__incoming.next == 0)
+        {
+            RandomAccessFile __file = new RandomAccessFile(__incoming.part, "rw");
+            try
+            {
+                __file.setLength(__incoming.length);
+            }//end try
+            finally
+            {
+                __file.close();
+            }//end finally
+
+            writeProgress(__incoming);
+        }//end if
+
+        __incoming.mapping = Mapping.open(__incoming.part, true, __incoming.length, _policy.getMapSegmentBytes(), __incoming.chunkSize);
+    }//end method open
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   receiver side, checks a chunk and writes it into the mapped file
+    */
+    private void onChunk(Connection __connection, Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < CHUNK_HEADER_LENGTH)
+        {
+            throw new IOException("file chunk too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        long __id = readLong(__buffer, __offset);
+        int __index = readInt(__buffer, __offset + 8);
+        int __checksum = readInt(__buffer, __offset + 12);
+        int __dataOffset = __offset + CHUNK_HEADER_LENGTH;
+        int __dataLength = __frame.getLength() - CHUNK_HEADER_LENGTH;
+
+        byte __status;
+        int __next;
+        File __received = null;
+
+        synchronized (this)
+        {
+            Incoming __incoming = _incoming.get(__id);
+
+            //chunks sent before a resend was asked for, or after the file was complete
+            if(__incoming == null || __index != __incoming.next)
+            {
+                return;
+            }//end if
+
+            _receiveChecksum.reset();
+            _receiveChecksum.update(__buffer, __dataOffset, __dataLength);
+
+            if(__dataLength != __incoming.chunkLength(__index) || (int) _receiveChecksum.getValue() != __checksum)
+            {
+                __status = STATUS_RESEND;
+            }//end if
+            else
+            {
+                __incoming.mapping.write((long) __index * __incoming.chunkSize, __buffer, __dataOffset, __dataLength);
+                __incoming.next++;
+                __incoming.sinceSync++;
+                __status = STATUS_PROGRESS;
+
+                if(__incoming.next == __incoming.chunkCount)
+                {
+                    __received = finish(__connection, __incoming);
+                    __status = STATUS_COMPLETE;
+                }//end if
+                else if(__incoming.sinceSync >= _policy.getSyncEveryChunks())
+                {
+                    sync(__incoming);
+                }//end else if
+            }//end else
+
+            __next = __incoming.next;
+        }//end synchronized
+
+        sendAck(__connection, __id, __next, __status);
+        notifyReceived(__connection, __received);
+    }//end method onChunk
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   flushes the mapped data before recording progress, so the record never claims chunks a
+    *   crash could still lose. Called with the lock held
+    */
+    private void sync(Incoming __incoming) throws IOException
+    {
+        __incoming.mapping.force();
+        writeProgress(__incoming);
+        __incoming.sinceSync = 0;
+    }//end method sync
+
+    /*
+    *   moves the complete file into place, called with the lock held
+    */
+    private File finish(Connection __connection, Incoming __incoming) throws IOException
+    {
+        _incoming.remove(__incoming.id);
+        close(__incoming.mapping, __connection);
+
+        if(__incoming.target.exists() && !__incoming.target.delete())
+        {
+            throw new IOException("cannot replace " + __incoming.target);
+        }//end if
+
+        if(!__incoming.part.renameTo(__incoming.target))
+        {
+            throw new IOException("cannot rename " + __incoming.part + " to " + __incoming.target);
+        }//end if
+
+        __incoming.progress.delete();
+        return __incoming.target;
+    }//end method finish
+
+    private void notifyReceived(Connection __connection, File __received)
+    {
+        ReceiveListener __receiveListener = _receiveListener;
+        if(__received != null && __receiveListener != null)
+        {
+            __receiveListener.onFileReceived(__connection, __received);
+        }//end if
+    }//end method notifyReceived
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   progress record: [magic][transfer id][file length][chunk size][next chunk]. It is written
+    *   to a temporary file and renamed, so it is either the old record or the new one
+    */
+    private static void writeProgress(Incoming __incoming) throws IOException
+    {
+        File __temp = new File(__incoming.progress.getPath() + ".tmp");
+        DataOutputStream __out = new DataOutputStream(new FileOutputStream(__temp));
+
+        try
+        {
+            __out.writeInt(PROGRESS_MAGIC);
+            __out.writeLong(__incoming.id);
+            __out.writeLong(__incoming.length);
+            __out.writeInt(__incoming.chunkSize);
+            __out.writeInt(__incoming.next);
+        }//end try
+        finally
+        {
+            __out.close();
+        }//end finally
+
+        if(!__temp.renameTo(__incoming.progress))
+        {
+            throw new IOException("cannot rename " + __temp + " to " + __incoming.progress);
+        }//end if
+    }//end method writeProgress
+
+    /*
+    *   chunk to resume from, 0 when there is no usable record for this exact transfer
+    */
+    private static int readProgress(Incoming __incoming)
+    {
+        if(!__incoming.progress.isFile() || !__incoming.part.isFile() || __incoming.part.length() != __incoming.length)
+        {
+            return 0;
+        }//end if
+
+        try
+        {
+            DataInputStream __in = new DataInputStream(new FileInputStream(__incoming.progress));
+
+            try
+            {
+                if(__in.readInt() != PROGRESS_MAGIC || __in.readLong() != __incoming.id
+                        || __in.readLong() != __incoming.length || __in.readInt() != __incoming.chunkSize)
+                {
+                    return 0;
+                }//end if
+
+                int __next = __in.readInt();
+                return __next >= 0 && __next <= __incoming.chunkCount ? __next : 0;
+            }//end try
+            finally
+            {
+                __in.close();
+            }//end finally
+        }//end try
+        catch (IOException e)
+        {
+            //an unreadable record only costs starting over
+            return 0;
+        }//end catch
+    }//end method readProgress
+
+    //----------------------------------------------------------------------------------------------
+
+    private void sendAck(Connection __connection, long __id, int __next, byte __status)
+    {
+        byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + ACK_LENGTH];
+        FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_FILE_ACK, ACK_LENGTH);
+        writeLong(__frame, FrameEncoder.HEADER_LENGTH, __id);
+        writeInt(__frame, FrameEncoder.HEADER_LENGTH + 8, __next);
+        __frame[FrameEncoder.HEADER_LENGTH + 12] = __status;
+        __connection.sendFrame(__frame);
+    }//end method sendAck
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onConnected(Connection __connection)
+    {
+        synchronized (this)
+        {
+            _connection = __connection;
+
+            //transfers that were cut off, or queued before the link was up
+            for(Transfer __transfer : _outgoing.values())
+            {
+                offer(__connection, __transfer);
+            }//end for loop
+        }//end synchronized
+
+        _listener.onConnected(__connection);
+    }//end method onConnected
+
+    @Override
+    public void onConnectionFailed(Connection __connection, IOException __cause)
+    {
+        //outgoing transfers wait for the next connection
+        _listener.onConnectionFailed(__connection, __cause);
+    }//end method onConnectionFailed
+
+    @Override
+    public void onFrameReceived(Connection __connection, Frame __frame)
+    {
+        try
+        {
+            switch (__frame.getType())
+            {
+                case Frame.TYPE_FILE_CHUNK:
+                    onChunk(__connection, __frame);
+                    break;
+                case Frame.TYPE_FILE_ACK:
+                    onAck(__frame);
+                    break;
+                case Frame.TYPE_FILE_OFFER:
+                    onOffer(__connection, __frame);
+                    break;
+                default:
+                    _listener.onFrameReceived(__connection, __frame);
+                    break;
+            }//end switch
+        }//end try
+        catch (IOException e)
+        {
+            //a broken frame or a local file error, the peer resumes from the recorded progress
+            __connection.getMetrics().recordError(e);
+            __connection.close();
+        }//end catch
+    }//end method onFrameReceived
+
+    @Override
+    public void onDisconnected(Connection __connection)
+    {
+        ArrayList<Incoming> __interrupted;
+
+        synchronized (this)
+        {
+            if(_connection == __connection)
+            {
+                _connection = null;
+            }//end if
+
+            for(Transfer __transfer : _outgoing.values())
+            {
+                __transfer._accepted = false;
+                closeMapping(__transfer);
+            }//end for loop
+
+            __interrupted = new ArrayList<>(_incoming.values());
+            _incoming.clear();
+
+            //what arrived is kept, the next offer of the same file resumes after it
+            for(Incoming __incoming : __interrupted)
+            {
+                try
+                {
+                    sync(__incoming);
+                }//end try
+                catch (IOException e)
+                {
+                    __connection.getMetrics().recordError(e);
+                }//end catch
+                finally
+                {
+                    close(__incoming.mapping, __connection);
+                }//end finally
+            }//end for loop
+        }//end synchronized
+
+        _listener.onDisconnected(__connection);
+    }//end method onDisconnected
+
+    //----------------------------------------------------------------------------------------------
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+
+    private static void writeLong(byte[] __destination, int __offset, long __value)
+    {
+        writeInt(__destination, __offset, (int) (__value >>> 32));
+        writeInt(__destination, __offset + 4, (int) __value);
+    }//end method writeLong
+
+    private static long readLong(byte[] __source, int __offset)
+    {
+        return ((long) readInt(__source, __offset) << 32) | (readInt(__source, __offset + 4) & 0xffffffffL);
+    }//end method readLong
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   Maps a file one segment at a time. Segments are a whole number of chunks, so a chunk never
+    *   spans two of them. Writable mappings are flushed before the next segment replaces them
+    */
+    private static final class Mapping
+    {
+        private final RandomAccessFile _file;
+        private final boolean _writable;
+        private final long _length;
+        private final long _segmentBytes;
+        private MappedByteBuffer _segment = null;
+        private long _segmentStart = -1;
+
+        private Mapping(RandomAccessFile __file, boolean __writable, long __length, long __segmentBytes)
+        {
+            _file = __file;
+            _writable = __writable;
+            _length = __length;
+            _segmentBytes = __segmentBytes;
+        }//end constructor
+
+        static Mapping open(File __file, boolean __writable, long __length, int __segmentBytes, int __chunkSize) throws IOException
+        {
+            long __chunksPerSegment = Math.max(1, __segmentBytes / __chunkSize);
+            return new Mapping(new RandomAccessFile(__file, __writable ? "rw" : "r"), __writable, __length, __chunksPerSegment * __chunkSize);
+        }//end method open
+
+        private ByteBuffer at(long __position, int __length) throws IOException
+        {
+            long __start = __position - __position % _segmentBytes;
+
+            if(__start != _segmentStart)
+            {
+                force();
+                _segment = _file.getChannel().map(_writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        __start, Math.min(_segmentBytes, _length - __start));
+                _segmentStart = __start;
+            }//end if
+
+            int __offset = (int) (__position - _segmentStart);
+            if(__offset + __length > _segment.limit())
+            {
+                throw new IOException("chunk at " + __position + " runs past the end of the file");
+            }//end if
+
+            ByteBuffer __view = _segment.duplicate();
+            __view.position(__offset);
+            return __view;
+        }//end method at
+
+        void read(long __position, byte[] __destination, int __offset, int __length) throws IOException
+        {
+            at(__position, __length).get(__destination, __offset, __length);
+        }//end method read
+
+        void write(long __position, byte[] __source, int __offset, int __length) throws IOException
+        {
+            at(__position, __length).put(__source, __offset, __length);
+        }//end method write
+
+        void force()
+        {
+            if(_writable && _segment != null)
+            {
+                _segment.force();
+            }//end if
+        }//end method force
+
+        //the mapping itself is released by the garbage collector, Java has no way to unmap it
+        void close() throws IOException
+        {
+            force();
+            _segment = null;
+            _file.close();
+        }//end method close
+    }//end class Mapping
+}//end class FileTransferChannel
@@ -0,0 +1,78 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a FileTransferChannel. The setters return the policy so several can be chained
+*   when it is created
+*/
+public class FileTransferPolicy
+{
+    private int _chunkSize = 16 * 1024;
+    private int _windowChunks = 8;
+    private int _syncEveryChunks = 64;
+    private int _mapSegmentBytes = 8 * 1024 * 1024;
+    private long _maxFileLength = 1024L * 1024 * 1024;
+
+    //----------------------------------------------------------------------------------------------
+
+    //bytes of file data per chunk frame, each chunk carries its own checksum
+    public FileTransferPolicy setChunkSize(int __chunkSize)
+    {
+        _chunkSize = __chunkSize;
+        return this;
+    }//end method setChunkSize
+
+    //chunks sent ahead of the last one the receiver acknowledged
+    public FileTransferPolicy setWindowChunks(int __windowChunks)
+    {
+        _windowChunks = __windowChunks;
+        return this;
+    }//end method setWindowChunks
+
+    //the receiver flushes the file and records its progress after this many chunks
+    public FileTransferPolicy setSyncEveryChunks(int __syncEveryChunks)
+    {
+        _syncEveryChunks = __syncEveryChunks;
+        return this;
+    }//end method setSyncEveryChunks
+
+    //how much of a file is mapped at a time, so large files do not need one huge mapping
+    public FileTransferPolicy setMapSegmentBytes(int __mapSegmentBytes)
+    {
+        _mapSegmentBytes = __mapSegmentBytes;
+        return this;
+    }//end method setMapSegmentBytes
+
+    //offers for longer files are rejected by the receiver
+    public FileTransferPolicy setMaxFileLength(long __maxFileLength)
+    {
+        _maxFileLength = __maxFileLength;
+        return this;
+    }//end method setMaxFileLength
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getChunkSize()
+    {
+        return _chunkSize;
+    }//end method getChunkSize
+
+    public int getWindowChunks()
+    {
+        return _windowChunks;
+    }//end method getWindowChunks
+
+    public int getSyncEveryChunks()
+    {
+        return _syncEveryChunks;
+    }//end method getSyncEveryChunks
+
+    public int getMapSegmentBytes()
+    {
+        return _mapSegmentBytes;
+    }//end method getMapSegmentBytes
+
+    public long getMaxFileLength()
+    {
+        return _maxFileLength;
+    }//end method getMaxFileLength
+}//end class FileTransferPolicy
@@ -0,0 +1,111 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/*
+*   A complete frame read from a connection. The payload is a slice of the decoder's buffer,
+*   nothing is copied. The same object is reused for the next frame, so consumers that need
+*   the data after their callback returns must copy it with toByteArray or asText
+*/
+public final class Frame
+{
+    //frame types understood by every connection
+    public static final byte TYPE_TEXT = 1;
+    public static final byte TYPE_BINARY = 2;
+
+    //sent by a connection to its peer when it comes up, never passed to the listener
+    public static final byte TYPE_HELLO = 3;
+
+    //sequenced data and its acks, consumed by a ReliableChannel in front of the listener
+    public static final byte TYPE_RELIABLE_DATA = 4;
+    public static final byte TYPE_RELIABLE_ACK = 5;
+
+    //file offers, chunks and their acks, consumed by a FileTransferChannel in front of the listener
+    public static final byte TYPE_FILE_OFFER = 6;
+    public static final byte TYPE_FILE_CHUNK = 7;
+    public static final byte TYPE_FILE_ACK = 8;
+
+    //link quality probes, answered by a LinkProbe in front of the listener
+    public static final byte TYPE_PROBE_PING = 9;
+    public static final byte TYPE_PROBE_PONG = 10;
+    public static final byte TYPE_PROBE_DATA = 11;
+    public static final byte TYPE_PROBE_REPORT = 12;
+
+    //session handshake, sequenced data and acks, consumed by a ResumableSession in front of the listener
+    public static final byte TYPE_SESSION_RESUME = 13;
+    public static final byte TYPE_SESSION_DATA = 14;
+    public static final byte TYPE_SESSION_ACK = 15;
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte _type;
+    private byte[] _buffer;
+    private int _offset;
+    private int _length;
+
+    //----------------------------------------------------------------------------------------------
+
+    void set(byte __type, byte[] __buffer, int __offset, int __length)
+    {
+        _type = __type;
+        _buffer = __buffer;
+        _offset = __offset;
+        _length = __length;
+    }//end method set
+
+    //----------------------------------------------------------------------------------------------
+
+    public byte getType()
+    {
+        return _type;
+    }//end method getType
+
+    //array backing the payload, only the range [getOffset, getOffset + getLength) belongs to this frame
+    public byte[] getBuffer()
+    {
+        return _buffer;
+    }//end method getBuffer
+
+    public int getOffset()
+    {
+        return _offset;
+    }//end method getOffset
+
+    public int getLength()
+    {
+        return _length;
+    }//end method getLength
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   decodes the payload as UTF-8 text, this is the only place a String is created
+    */
+    public String asText()
+    {
+        return new String(_buffer, _offset, _length, UTF_8);
+    }//end method asText
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   read-only view of the payload without copying it
+    */
+    public ByteBuffer asReadOnlyBuffer()
+    {
+        return ByteBuffer.wrap(_buffer, _offset, _length).slice().asReadOnlyBuffer();
+    }//end method asReadOnlyBuffer
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   copy of the payload that stays valid after the callback returns
+    */
+    public byte[] toByteArray()
+    {
+        byte[] __copy = new byte[_length];
+        System.arraycopy(_buffer, _offset, __copy, 0, _length);
+        return __copy;
+    }//end method toByteArray
+}//end class Frame
@@ -0,0 +1,238 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+*   Deflates outbound frames and inflates inbound ones for one connection. Every frame is
+*   compressed on its own against the policy's preset dictionary, so frames can be dropped or
+*   reordered by the write queue without breaking the ones after them. A compressed frame
+*   carries the original type with FLAG_COMPRESSED set:
+*
+*       [payload length: 4 bytes][type | FLAG_COMPRESSED][original length: 4 bytes][deflate data]
+*
+*   Encoding may be called from any thread. Decoding is only called by the connection's reader
+*/
+class FrameCompressor
+{
+    public static final byte FLAG_COMPRESSED = (byte) 0x80;
+
+    private static final int ORIGINAL_LENGTH_BYTES = 4;
+
+    private final CompressionPolicy _policy;
+    private final CompressionStats _stats;
+    private final int _maxFrameLength;
+
+    //guarded by itself
+    private final Deflater _deflater;
+    private byte[] _deflateScratch = new byte[0];
+
+    //reader thread only
+    private final Inflater _inflater = new Inflater();
+    private final Frame _inflatedFrame = new Frame();
+    private byte[] _inflateBuffer = new byte[0];
+
+    private boolean _released = false;
+
+    FrameCompressor(CompressionPolicy __policy, CompressionStats __stats, int __maxFrameLength)
+    {
+        _policy = __policy;
+        _stats = __stats;
+        _maxFrameLength = __maxFrameLength;
+        _deflater = new Deflater(__policy.getLevel());
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    CompressionPolicy getPolicy()
+    {
+        return _policy;
+    }//end method getPolicy
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   returns the frame compressed, or as it is when it is too short or would not get smaller
+    */
+    byte[] encode(byte __type, byte[] __payload, int __offset, int __length)
+    {
+        if(__length < _policy.getMinFrameLength())
+        {
+            _stats.recordSkipped(__length, 0);
+            return FrameEncoder.encode(__type, __payload, __offset, __length);
+        }//end if
+
+        long __start = System.nanoTime();
+
+        synchronized (_deflater)
+        {
+            int __compressed = _released ? -1 : deflate(__payload, __offset, __length);
+            long __nanos = System.nanoTime() - __start;
+
+            if(__compressed < 0)
+            {
+                _stats.recordSkipped(__length, __nanos);
+                return FrameEncoder.encode(__type, __payload, __offset, __length);
+            }//end if
+
+            int __payloadLength = ORIGINAL_LENGTH_BYTES + __compressed;
+            byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + __payloadLength];
+            FrameEncoder.writeHeader(__frame, 0, (byte) (__type | FLAG_COMPRESSED), __payloadLength);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, __length);
+            System.arraycopy(_deflateScratch, 0, __frame, FrameEncoder.HEADER_LENGTH + ORIGINAL_LENGTH_BYTES, __compressed);
+
+            _stats.recordCompressed(__length, __payloadLength, __nanos);
+            return __frame;
+        }//end synchronized
+    }//end method encode
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   deflates into the scratch buffer, -1 if the result would not be smaller than the input.
+    *   Called with the deflater lock held
+    */
+    private int deflate(byte[] __payload, int __offset, int __length)
+    {
+        //anything that does not fit is not worth sending compressed
+        int __limit = __length - ORIGINAL_LENGTH_BYTES - 1;
+        if(_deflateScratch.length < __limit)
+        {
+            _deflateScratch = new byte[BufferPool.roundUp(__limit)];
+        }//end if
+
+        _deflater.reset();
+        if(_policy.getDictionary() != null)
+        {
+            _deflater.setDictionary(_policy.getDictionary());
+        }//end if
+        _deflater.setInput(__payload, __offset, __length);
+        _deflater.finish();
+
+        int __written = 0;
+        while(!_deflater.finished())
+        {
+            if(__written >= __limit)
+            {
+                return -1;
+            }//end if
+
+            __written += _deflater.deflate(_deflateScratch, __written, __limit - __written);
+        }//end while loop
+
+        return __written;
+    }//end method deflate
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   inflates a frame that arrived with FLAG_COMPRESSED. The returned frame and its buffer are
+    *   reused for the next call
+    */
+    Frame decode(Frame __compressed) throws IOException
+    {
+        if(__compressed.getLength() < ORIGINAL_LENGTH_BYTES)
+        {
+            throw new IOException("compressed frame too short");
+        }//end if
+
+        byte[] __buffer = __compressed.getBuffer();
+        int __offset = __compressed.getOffset();
+        int __originalLength = readInt(__buffer, __offset);
+
+        //the declared length is checked before anything is allocated for it
+        if(__originalLength < 0 || __originalLength > _maxFrameLength)
+        {
+            throw new IOException("compressed frame of " + __originalLength + " bytes exceeds " + _maxFrameLength);
+        }//end if
+
+        if(_inflateBuffer.length < __originalLength)
+        {
+            _inflateBuffer = new byte[BufferPool.roundUp(__originalLength)];
+        }//end if
+
+        long __start = System.nanoTime();
+
+        try
+        {
+            _inflater.reset();
+            _inflater.setInput(__buffer, __offset + ORIGINAL_LENGTH_BYTES, __compressed.getLength() - ORIGINAL_LENGTH_BYTES);
+
+            int __inflated = 0;
+            while(!_inflater.finished())
+            {
+                int __count = _inflater.inflate(_inflateBuffer, __inflated, __originalLength - __inflated);
+                __inflated += __count;
+
+                if(__count == 0)
+                {
+                    if(_inflater.needsDictionary() && _policy.getDictionary() != null)
+                    {
+                        _inflater.setDictionary(_policy.getDictionary());
+                    }//end if
+                    else if(_inflater.needsInput() || __inflated >= __originalLength)
+                    {
+                        break;
+                    }//end else if
+                    else
+                    {
+                        throw new IOException("compressed frame needs a dictionary that was not negotiated");
+                    }//end else
+                }//end if
+            }//end while loop
+
+            if(!_inflater.finished() || __inflated != __originalLength)
+            {
+                throw new IOException("compressed frame does not match its declared length");
+            }//end if
+        }//end try
+        catch (DataFormatException e)
+        {
+            throw new IOException("corrupt compressed frame", e);
+        }//end catch
+
+        _stats.recordInflated(__originalLength, System.nanoTime() - __start);
+
+        _inflatedFrame.set((byte) (__compressed.getType() & ~FLAG_COMPRESSED), _inflateBuffer, 0, __originalLength);
+        return _inflatedFrame;
+    }//end method decode
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   frees the native zlib memory, later encodes send their frames uncompressed
+    */
+    void release()
+    {
+        synchronized (_deflater)
+        {
+            if(_released)
+            {
+                return;
+            }//end if
+
+            _released = true;
+            _deflater.end();
+        }//end synchronized
+
+        _inflater.end();
+    }//end method release
+
+    //----------------------------------------------------------------------------------------------
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+}//end class FrameCompressor
@@ -0,0 +1,12 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+
+/*
+*   receives the frames reassembled by a FrameDecoder
+*/
+public interface FrameConsumer
+{
+    //the frame is only valid until this method returns
+    void onFrame(Frame __frame) throws IOException;
+}//end interface FrameConsumer
@@ -0,0 +1,302 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+*   Reassembles frames written by FrameEncoder from an arbitrary sequence of reads. A frame may
+*   be split over several reads and several frames may arrive in one read.
+*
+*   Bytes are read straight into a ring buffer taken from a BufferPool. Frames that lie in one
+*   piece in the ring are handed out as slices of it; a frame that wraps around the end of the
+*   ring is copied into a pooled chunk that goes back to the pool as soon as the consumer
+*   returns. The ring grows when reads keep filling it and shrinks when they stay small, so
+*   once the capacity has settled the receive path allocates nothing
+*/
+public class FrameDecoder
+{
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024;
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+    //bounds for the capacity picked from observed read sizes, a single larger frame may still grow past the maximum
+    public static final int MIN_ADAPTIVE_CAPACITY = 1024;
+    public static final int MAX_ADAPTIVE_CAPACITY = 64 * 1024;
+
+    //number of reads between two capacity decisions
+    private static final int ADAPT_WINDOW = 64;
+
+    private final BufferPool _pool;
+    private final int _maxFrameLength;
+    private final Frame _frame = new Frame();
+
+    //ring buffer, its length is always a power of two
+    private byte[] _ring;
+
+    //unconsumed bytes start at _head and wrap around the end of _ring
+    private int _head = 0;
+    private int _size = 0;
+
+    //read statistics for the current adaptation window
+    private int _windowReads = 0;
+    private int _windowSaturatedReads = 0;
+    private int _windowLargestRead = 0;
+
+    public FrameDecoder()
+    {
+        this(BufferPool.getDefault(), DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME_LENGTH);
+    }//end constructor
+
+    public FrameDecoder(int __bufferSize, int __maxFrameLength)
+    {
+        this(BufferPool.getDefault(), __bufferSize, __maxFrameLength);
+    }//end constructor
+
+    public FrameDecoder(BufferPool __pool, int __bufferSize, int __maxFrameLength)
+    {
+        _pool = __pool;
+        _maxFrameLength = __maxFrameLength;
+        _ring = _pool.acquire(BufferPool.roundUp(__bufferSize));
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   performs one blocking read from the stream and hands every frame completed by it to the
+    *   consumer. Returns the number of bytes read or -1 at the end of the stream
+    */
+    public int readFrom(InputStream __inputStream, FrameConsumer __consumer) throws IOException
+    {
+        makeRoom();
+
+        int __tail = (_head + _size) & (_ring.length - 1);
+        int __free = __tail >= _head && _size < _ring.length ? _ring.length - __tail : _head - __tail;
+
+        int __read = __inputStream.read(_ring, __tail, __free);
+        if(__read > 0)
+        {
+            _size += __read;
+            recordRead(__read, __free);
+            drain(__consumer);
+        }//end if
+
+        return __read;
+    }//end method readFrom
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   feeds bytes that were read elsewhere into the decoder
+    */
+    public void feed(byte[] __bytes, int __offset, int __length, FrameConsumer __consumer) throws IOException
+    {
+        while(__length > 0)
+        {
+            makeRoom();
+
+            int __tail = (_head + _size) & (_ring.length - 1);
+            int __free = __tail >= _head && _size < _ring.length ? _ring.length - __tail : _head - __tail;
+            int __chunk = Math.min(__length, __free);
+
+            System.arraycopy(__bytes, __offset, _ring, __tail, __chunk);
+            _size += __chunk;
+            __offset += __chunk;
+            __length -= __chunk;
+
+            drain(__consumer);
+        }//end while loop
+    }//end method feed
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of bytes held for a frame that is not complete yet
+    public int getPendingBytes()
+    {
+        return _size;
+    }//end method getPendingBytes
+
+    //current size of the ring buffer
+    public int getCapacity()
+    {
+        return _ring.length;
+    }//end method getCapacity
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   gives the ring back to the pool, the decoder must not be used afterwards
+    */
+    public void release()
+    {
+        if(_ring != null)
+        {
+            _pool.release(_ring);
+            _ring = null;
+        }//end if
+    }//end method release
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   hands out every complete frame in the ring
+    */
+    private void drain(FrameConsumer __consumer) throws IOException
+    {
+        int __mask = _ring.length - 1;
+
+        while(_size >= FrameEncoder.HEADER_LENGTH)
+        {
+            int __length = peekLength();
+            int __frameLength = FrameEncoder.HEADER_LENGTH + __length;
+
+            if(__frameLength > _size)
+            {
+                break;
+            }//end if
+
+            byte __type = _ring[(_head + 4) & __mask];
+            int __payloadStart = (_head + FrameEncoder.HEADER_LENGTH) & __mask;
+
+            //consume before dispatching so a consumer that throws does not see the frame again
+            _head = (_head + __frameLength) & __mask;
+            _size -= __frameLength;
+
+            if(__payloadStart + __length <= _ring.length)
+            {
+                //the payload is in one piece, hand out a slice of the ring
+                _frame.set(__type, _ring, __payloadStart, __length);
+                __consumer.onFrame(_frame);
+            }//end if
+            else
+            {
+                //the payload wraps around the end of the ring, join it in a pooled chunk
+                byte[] __chunk = _pool.acquire(__length);
+                int __firstPart = _ring.length - __payloadStart;
+                System.arraycopy(_ring, __payloadStart, __chunk, 0, __firstPart);
+                System.arraycopy(_ring, 0, __chunk, __firstPart, __length - __firstPart);
+
+                try
+                {
+                    _frame.set(__type, __chunk, 0, __length);
+                    __consumer.onFrame(_frame);
+                }//end try
+                finally
+                {
+                    _pool.release(__chunk);
+                }//end finally
+            }//end else
+        }//end while loop
+
+        if(_size == 0)
+        {
+            _head = 0;
+        }//end if
+    }//end method drain
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   reads and validates the payload length of the frame at _head
+    */
+    private int peekLength() throws IOException
+    {
+        int __mask = _ring.length - 1;
+        int __length = ((_ring[_head] & 0xFF) << 24)
+                | ((_ring[(_head + 1) & __mask] & 0xFF) << 16)
+                | ((_ring[(_head + 2) & __mask] & 0xFF) << 8)
+                | (_ring[(_head + 3) & __mask] & 0xFF);
+
+        if(__length < 0 || __length > _maxFrameLength)
+        {
+            throw new IOException("invalid frame length " + __length);
+        }//end if
+
+        return __length;
+    }//end method peekLength
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   makes sure there is free space in the ring, growing it when the pending frame does not
+    *   fit or when the last reads asked for a different capacity
+    */
+    private void makeRoom() throws IOException
+    {
+        if(_size == _ring.length)
+        {
+            int __needed = _size + 1;
+
+            if(_size >= FrameEncoder.HEADER_LENGTH)
+            {
+                __needed = Math.max(__needed, FrameEncoder.HEADER_LENGTH + peekLength());
+            }//end if
+
+            resize(Math.max(__needed, _ring.length * 2));
+        }//end if
+        else if(_windowReads >= ADAPT_WINDOW)
+        {
+            adapt();
+        }//end else if
+    }//end method makeRoom
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   remembers how a read used the space it was offered
+    */
+    private void recordRead(int __read, int __offered)
+    {
+        _windowReads++;
+
+        //a read that fills a large free region means more data was waiting in the stream
+        if(__read == __offered && __offered >= _ring.length / 2)
+        {
+            _windowSaturatedReads++;
+        }//end if
+
+        if(__read > _windowLargestRead)
+        {
+            _windowLargestRead = __read;
+        }//end if
+    }//end method recordRead
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   picks the capacity for the next window from the reads seen in the last one
+    */
+    private void adapt()
+    {
+        int __capacity = _ring.length;
+
+        if(_windowSaturatedReads * 2 > _windowReads && __capacity < MAX_ADAPTIVE_CAPACITY)
+        {
+            resize(__capacity * 2);
+        }//end if
+        else if(_windowLargestRead * 4 <= __capacity && __capacity > MIN_ADAPTIVE_CAPACITY && _size * 2 <= __capacity)
+        {
+            resize(Math.max(__capacity / 2, MIN_ADAPTIVE_CAPACITY));
+        }//end else if
+
+        _windowReads = 0;
+        _windowSaturatedReads = 0;
+        _windowLargestRead = 0;
+    }//end method adapt
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   moves the pending bytes into a pooled ring of the new capacity
+    */
+    private void resize(int __capacity)
+    {
+        byte[] __target = _pool.acquire(BufferPool.roundUp(Math.max(__capacity, _size)));
+
+        int __firstPart = Math.min(_size, _ring.length - _head);
+        System.arraycopy(_ring, _head, __target, 0, __firstPart);
+        System.arraycopy(_ring, 0, __target, __firstPart, _size - __firstPart);
+
+        _pool.release(_ring);
+        _ring = __target;
+        _head = 0;
+    }//end method resize
+}//end class FrameDecoder
@@ -0,0 +1,52 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Builds frames in the wire format read by FrameDecoder:
+*
+*       [payload length: 4 bytes, big endian][type: 1 byte][payload]
+*/
+public final class FrameEncoder
+{
+    public static final int HEADER_LENGTH = 5;
+
+    private FrameEncoder()
+    {
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   writes the frame header at __offset in __destination
+    */
+    public static void writeHeader(byte[] __destination, int __offset, byte __type, int __payloadLength)
+    {
+        __destination[__offset] = (byte) (__payloadLength >>> 24);
+        __destination[__offset + 1] = (byte) (__payloadLength >>> 16);
+        __destination[__offset + 2] = (byte) (__payloadLength >>> 8);
+        __destination[__offset + 3] = (byte) __payloadLength;
+        __destination[__offset + 4] = __type;
+    }//end method writeHeader
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   returns header and payload in a single array so they go out in one socket write
+    */
+    public static byte[] encode(byte __type, byte[] __payload, int __offset, int __length)
+    {
+        byte[] __frame = new byte[HEADER_LENGTH + __length];
+        writeHeader(__frame, 0, __type, __length);
+        System.arraycopy(__payload, __offset, __frame, HEADER_LENGTH, __length);
+        return __frame;
+    }//end method encode
+
+    public static byte[] encode(byte __type, byte[] __payload)
+    {
+        return encode(__type, __payload, 0, __payload.length);
+    }//end method encode
+
+    public static byte[] encodeText(String __text)
+    {
+        return encode(Frame.TYPE_TEXT, __text.getBytes(Frame.UTF_8));
+    }//end method encodeText
+}//end class FrameEncoder
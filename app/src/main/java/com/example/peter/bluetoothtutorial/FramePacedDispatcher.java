@@ -0,0 +1,165 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Collects items submitted from worker threads and hands them to the UI thread in batches,
+*   at most once per flush interval. With the default interval of one display frame the UI is
+*   updated once per frame however many messages arrive in between
+*/
+public class FramePacedDispatcher<T>
+{
+    //one frame at 60 frames per second
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 16;
+
+    /*
+    *   posts work to the UI thread, normally backed by a Handler on the main looper
+    */
+    public interface Scheduler
+    {
+        void schedule(Runnable __task, long __delayMillis);
+
+        //monotonic clock in milliseconds
+        long now();
+    }//end interface Scheduler
+
+    /*
+    *   receives the batched items on the UI thread, the list is only valid during the call
+    */
+    public interface Sink<T>
+    {
+        void onBatch(List<T> __batch);
+    }//end interface Sink
+
+    private final Scheduler _scheduler;
+    private final Sink<T> _sink;
+    private volatile long _flushIntervalMillis;
+
+    //items are added to _pending and swapped with _flushing when a flush runs, so no list is allocated per batch
+    private ArrayList<T> _pending = new ArrayList<>();
+    private ArrayList<T> _flushing = new ArrayList<>();
+    private boolean _flushScheduled = false;
+    private long _lastFlushTime = Long.MIN_VALUE / 2;
+
+    private final AtomicLong _submitted = new AtomicLong();
+    private final AtomicLong _flushes = new AtomicLong();
+
+    private final Runnable _flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }//end method run
+    };
+
+    public FramePacedDispatcher(Scheduler __scheduler, Sink<T> __sink)
+    {
+        this(__scheduler, __sink, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }//end constructor
+
+    public FramePacedDispatcher(Scheduler __scheduler, Sink<T> __sink, long __flushIntervalMillis)
+    {
+        _scheduler = __scheduler;
+        _sink = __sink;
+        _flushIntervalMillis = __flushIntervalMillis;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues an item for the next flush, safe to call from any thread
+    */
+    public void submit(T __item)
+    {
+        long __delay = -1;
+
+        synchronized (this)
+        {
+            _pending.add(__item);
+
+            //only the first item after a flush schedules the next one
+            if(!_flushScheduled)
+            {
+                _flushScheduled = true;
+                __delay = Math.max(0, _lastFlushTime + _flushIntervalMillis - _scheduler.now());
+            }//end if
+        }//end synchronized
+
+        _submitted.incrementAndGet();
+
+        if(__delay >= 0)
+        {
+            _scheduler.schedule(_flushTask, __delay);
+        }//end if
+    }//end method submit
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   hands everything queued so far to the sink, runs on the UI thread
+    */
+    void flush()
+    {
+        ArrayList<T> __batch;
+
+        synchronized (this)
+        {
+            __batch = _pending;
+            _pending = _flushing;
+            _flushing = __batch;
+            _flushScheduled = false;
+            _lastFlushTime = _scheduler.now();
+        }//end synchronized
+
+        if(__batch.isEmpty())
+        {
+            return;
+        }//end if
+
+        _flushes.incrementAndGet();
+
+        try
+        {
+            _sink.onBatch(__batch);
+        }//end try
+        finally
+        {
+            __batch.clear();
+        }//end finally
+    }//end method flush
+
+    //----------------------------------------------------------------------------------------------
+
+    public void setFlushIntervalMillis(long __flushIntervalMillis)
+    {
+        _flushIntervalMillis = __flushIntervalMillis;
+    }//end method setFlushIntervalMillis
+
+    public long getFlushIntervalMillis()
+    {
+        return _flushIntervalMillis;
+    }//end method getFlushIntervalMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of items submitted
+    public long getSubmittedCount()
+    {
+        return _submitted.get();
+    }//end method getSubmittedCount
+
+    //number of UI updates performed
+    public long getFlushCount()
+    {
+        return _flushes.get();
+    }//end method getFlushCount
+
+    //number of items that did not need a UI update of their own
+    public long getCoalescedCount()
+    {
+        return Math.max(0, _submitted.get() - _flushes.get());
+    }//end method getCoalescedCount
+}//end class FramePacedDispatcher
@@ -0,0 +1,78 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a SessionJournal. The setters return the policy so several can be chained when
+*   it is created
+*/
+public class JournalPolicy
+{
+    private int _segmentBytes = 4 * 1024 * 1024;
+    private long _diskBudgetBytes = 64L * 1024 * 1024;
+    private int _bufferBytes = 2 * 1024 * 1024;
+    private int _commitBytes = 64 * 1024;
+    private long _commitIntervalMillis = 50;
+
+    //----------------------------------------------------------------------------------------------
+
+    //size of each segment file, a new one is started when the current one is full
+    public JournalPolicy setSegmentBytes(int __segmentBytes)
+    {
+        _segmentBytes = __segmentBytes;
+        return this;
+    }//end method setSegmentBytes
+
+    //the oldest segments are deleted once all of them together take more than this
+    public JournalPolicy setDiskBudgetBytes(long __diskBudgetBytes)
+    {
+        _diskBudgetBytes = __diskBudgetBytes;
+        return this;
+    }//end method setDiskBudgetBytes
+
+    //records waiting for the writer, records that do not fit are dropped instead of waiting
+    public JournalPolicy setBufferBytes(int __bufferBytes)
+    {
+        _bufferBytes = __bufferBytes;
+        return this;
+    }//end method setBufferBytes
+
+    //the writer commits as soon as this much is waiting
+    public JournalPolicy setCommitBytes(int __commitBytes)
+    {
+        _commitBytes = __commitBytes;
+        return this;
+    }//end method setCommitBytes
+
+    //otherwise it commits this long after the first record of a batch arrived
+    public JournalPolicy setCommitIntervalMillis(long __commitIntervalMillis)
+    {
+        _commitIntervalMillis = __commitIntervalMillis;
+        return this;
+    }//end method setCommitIntervalMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getSegmentBytes()
+    {
+        return _segmentBytes;
+    }//end method getSegmentBytes
+
+    public long getDiskBudgetBytes()
+    {
+        return _diskBudgetBytes;
+    }//end method getDiskBudgetBytes
+
+    public int getBufferBytes()
+    {
+        return _bufferBytes;
+    }//end method getBufferBytes
+
+    public int getCommitBytes()
+    {
+        return _commitBytes;
+    }//end method getCommitBytes
+
+    public long getCommitIntervalMillis()
+    {
+        return _commitIntervalMillis;
+    }//end method getCommitIntervalMillis
+}//end class JournalPolicy
@@ -0,0 +1,148 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+*   Fixed-memory, lock-free histogram of non-negative values, normally durations in
+*   nanoseconds. Every power-of-two range is split into 16 linear sub-buckets, so percentiles
+*   are accurate to about 6% over the whole range of a long while recording is a couple of
+*   atomic increments and never allocates
+*/
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    //----------------------------------------------------------------------------------------------
+
+    public void record(long __value)
+    {
+        if(__value < 0)
+        {
+            __value = 0;
+        }//end if
+
+        _counts.incrementAndGet(bucketIndex(__value));
+        _count.incrementAndGet();
+        _sum.addAndGet(__value);
+
+        long __max = _max.get();
+        while(__value > __max && !_max.compareAndSet(__max, __value))
+        {
+            __max = _max.get();
+        }//end while loop
+    }//end method record
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getCount()
+    {
+        return _count.get();
+    }//end method getCount
+
+    public long getMax()
+    {
+        return _max.get();
+    }//end method getMax
+
+    public double getMean()
+    {
+        long __count = _count.get();
+        return __count == 0 ? 0 : (double) _sum.get() / __count;
+    }//end method getMean
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   value below which __percentile percent of the recorded values fall, 0 when empty
+    */
+    public long getValueAtPercentile(double __percentile)
+    {
+        long __total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            __total += _counts.get(i);
+        }//end for loop
+
+        if(__total == 0)
+        {
+            return 0;
+        }//end if
+
+        long __rank = Math.max(1, (long) Math.ceil(__total * Math.min(100, Math.max(0, __percentile)) / 100.0));
+        long __seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            __seen += _counts.get(i);
+            if(__seen >= __rank)
+            {
+                //the highest value of the bucket, but never more than the largest value seen
+                return Math.min(bucketUpperBound(i), _max.get());
+            }//end if
+        }//end for loop
+
+        return _max.get();
+    }//end method getValueAtPercentile
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   clears the histogram, values recorded at the same time may or may not survive
+    */
+    public void reset()
+    {
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            _counts.set(i, 0);
+        }//end for loop
+
+        _count.set(0);
+        _sum.set(0);
+        _max.set(0);
+    }//end method reset
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + " p50=" + getValueAtPercentile(50) + " p90=" + getValueAtPercentile(90)
+                + " p99=" + getValueAtPercentile(99) + " max=" + getMax();
+    }//end method toString
+
+    //----------------------------------------------------------------------------------------------
+
+    static int bucketIndex(long __value)
+    {
+        if(__value < SUB_BUCKETS)
+        {
+            return (int) __value;
+        }//end if
+
+        int __exponent = 63 - Long.numberOfLeadingZeros(__value);
+        int __subBucket = (int) (__value >>> (__exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (__exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + __subBucket;
+    }//end method bucketIndex
+
+    static long bucketUpperBound(int __index)
+    {
+        if(__index < SUB_BUCKETS)
+        {
+            return __index;
+        }//end if
+
+        int __exponent = __index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long __subBucket = __index % SUB_BUCKETS;
+        long __lower = (SUB_BUCKETS + __subBucket) << (__exponent - SUB_BUCKET_BITS);
+        long __width = 1L << (__exponent - SUB_BUCKET_BITS);
+        return __lower + __width - 1;
+    }//end method bucketUpperBound
+}//end class LatencyHistogram
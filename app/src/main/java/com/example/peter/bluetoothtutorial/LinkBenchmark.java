@@ -0,0 +1,233 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Runs a LinkProbe without the app, so CI can compare numbers across builds:
+*
+*       loopback [sizes...]                 both ends in this process
+*       tcp-server <port>                   answers probes until the client disconnects
+*       tcp-client <host> <port> [sizes...] probes a tcp-server and prints the table
+*
+*   sizes are payload bytes, comma separated or as separate arguments
+*/
+public class LinkBenchmark
+{
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    //----------------------------------------------------------------------------------------------
+
+    public static void main(String[] __args) throws Exception
+    {
+        if(__args.length == 0)
+        {
+            usage();
+            return;
+        }//end if
+
+        switch (__args[0])
+        {
+            case "loopback":
+                print(System.out, runLoopback(plan(__args, 1)));
+                break;
+            case "tcp-server":
+                if(__args.length < 2)
+                {
+                    usage();
+                    return;
+                }//end if
+                serve(Integer.parseInt(__args[1]));
+                break;
+            case "tcp-client":
+                if(__args.length < 3)
+                {
+                    usage();
+                    return;
+                }//end if
+                print(System.out, runTcp(__args[1], Integer.parseInt(__args[2]), plan(__args, 3)));
+                break;
+            default:
+                usage();
+                break;
+        }//end switch
+    }//end method main
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   probes one engine from another over an in-memory pair
+    */
+    public static List<ProbeResult> runLoopback(ProbePlan __plan) throws IOException, InterruptedException
+    {
+        ConnectionEngine __engine = new ConnectionEngine();
+        ConnectionEngine __peerEngine = new ConnectionEngine();
+
+        try
+        {
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("probe", "peer", 1024 * 1024);
+            __peerEngine.connect(__pair[1], new LinkProbe(new Waiter()));
+
+            Waiter __waiter = new Waiter();
+            LinkProbe __probe = new LinkProbe(__waiter);
+            Connection __connection = __engine.connect(__pair[0], __probe);
+
+            __waiter.awaitConnected();
+            return __probe.run(__connection, __plan);
+        }//end try
+        finally
+        {
+            __engine.shutdown();
+            __peerEngine.shutdown();
+        }//end finally
+    }//end method runLoopback
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   probes a tcp-server on another machine or process
+    */
+    public static List<ProbeResult> runTcp(String __host, int __port, ProbePlan __plan) throws IOException, InterruptedException
+    {
+        ConnectionEngine __engine = new ConnectionEngine();
+
+        try
+        {
+            Waiter __waiter = new Waiter();
+            LinkProbe __probe = new LinkProbe(__waiter);
+            Connection __connection = __engine.connect(new TcpTransport(__host, __port), __probe);
+
+            __waiter.awaitConnected();
+            return __probe.run(__connection, __plan);
+        }//end try
+        finally
+        {
+            __engine.shutdown();
+        }//end finally
+    }//end method runTcp
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   accepts one client and answers its probes until it goes away
+    */
+    private static void serve(int __port) throws IOException, InterruptedException
+    {
+        ConnectionEngine __engine = new ConnectionEngine();
+        ServerSocket __serverSocket = new ServerSocket(__port);
+
+        try
+        {
+            System.out.println("waiting for a probe on port " + __serverSocket.getLocalPort());
+            Socket __socket = __serverSocket.accept();
+
+            Waiter __waiter = new Waiter();
+            __engine.connect(new TcpTransport(__socket), new LinkProbe(__waiter));
+            __waiter._disconnected.await();
+        }//end try
+        finally
+        {
+            __serverSocket.close();
+            __engine.shutdown();
+        }//end finally
+    }//end method serve
+
+    //----------------------------------------------------------------------------------------------
+
+    //the default plan, with the payload sizes from the arguments after __first if there are any
+    private static ProbePlan plan(String[] __args, int __first)
+    {
+        ProbePlan __plan = new ProbePlan();
+        if(__args.length <= __first)
+        {
+            return __plan;
+        }//end if
+
+        StringBuilder __joined = new StringBuilder();
+        for(int i = __first; i < __args.length; i++)
+        {
+            __joined.append(__args[i]).append(',');
+        }//end for loop
+
+        String[] __parts = __joined.toString().split(",+");
+        int[] __sizes = new int[__parts.length];
+        for(int i = 0; i < __parts.length; i++)
+        {
+            __sizes[i] = Integer.parseInt(__parts[i].trim());
+        }//end for loop
+
+        return __plan.setPayloadSizes(__sizes);
+    }//end method plan
+
+    public static void print(PrintStream __out, List<ProbeResult> __results)
+    {
+        __out.println(ProbeResult.HEADER);
+
+        for(ProbeResult __result : __results)
+        {
+            __out.println(__result);
+        }//end for loop
+    }//end method print
+
+    private static void usage()
+    {
+        System.err.println("usage: LinkBenchmark loopback [sizes...]");
+        System.err.println("       LinkBenchmark tcp-server <port>");
+        System.err.println("       LinkBenchmark tcp-client <host> <port> [sizes...]");
+    }//end method usage
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   lets the caller wait for the link to come up or go down, frames are ignored
+    */
+    private static class Waiter implements ConnectionListener
+    {
+        private final CountDownLatch _connected = new CountDownLatch(1);
+        private final CountDownLatch _disconnected = new CountDownLatch(1);
+        private volatile IOException _failure;
+
+        void awaitConnected() throws IOException, InterruptedException
+        {
+            if(!_connected.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                throw new IOException("timed out connecting");
+            }//end if
+
+            if(_failure != null)
+            {
+                throw _failure;
+            }//end if
+        }//end method awaitConnected
+
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            _connected.countDown();
+        }//end method onConnected
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            _failure = __cause;
+            _connected.countDown();
+            _disconnected.countDown();
+        }//end method onConnectionFailed
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+        }//end method onFrameReceived
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+            _disconnected.countDown();
+        }//end method onDisconnected
+    }//end class Waiter
+}//end class LinkBenchmark
@@ -0,0 +1,128 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Traffic counters of one connection. Every record also updates the engine totals, the
+*   latency histograms only exist there so each connection costs a handful of counters
+*/
+public class LinkMetrics
+{
+    private final EngineMetrics _engine;
+
+    private final AtomicLong _bytesIn = new AtomicLong();
+    private final AtomicLong _bytesOut = new AtomicLong();
+    private final AtomicLong _framesIn = new AtomicLong();
+    private final AtomicLong _framesOut = new AtomicLong();
+    private final AtomicLong _errors = new AtomicLong();
+    private final AtomicLong _maxQueueDepth = new AtomicLong();
+    private volatile String _lastError = null;
+
+    LinkMetrics(EngineMetrics __engine)
+    {
+        _engine = __engine;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    void recordRead(int __bytes)
+    {
+        _bytesIn.addAndGet(__bytes);
+        _engine._bytesIn.addAndGet(__bytes);
+    }//end method recordRead
+
+    /*
+    *   a frame was passed to the listener, which took __dispatchNanos with it. Only counted once
+    *   the listener has returned, so a listener that is still handling a frame has it in bytesIn
+    *   but not yet in framesIn
+    */
+    void recordFrameIn(long __dispatchNanos)
+    {
+        _framesIn.incrementAndGet();
+        _engine._framesIn.incrementAndGet();
+        _engine.getDispatchLatency().record(__dispatchNanos);
+    }//end method recordFrameIn
+
+    //one socket write of __frames coalesced frames
+    void recordWrite(int __frames, int __bytes)
+    {
+        _framesOut.addAndGet(__frames);
+        _bytesOut.addAndGet(__bytes);
+        _engine._framesOut.addAndGet(__frames);
+        _engine._bytesOut.addAndGet(__bytes);
+    }//end method recordWrite
+
+    void recordWriteLatency(long __nanos)
+    {
+        _engine.getWriteLatency().record(__nanos);
+    }//end method recordWriteLatency
+
+    void recordWriteStall(long __nanos)
+    {
+        _engine.getWriteStall().record(__nanos);
+    }//end method recordWriteStall
+
+    void recordQueueDepth(int __depth)
+    {
+        EngineMetrics.raiseMax(_maxQueueDepth, __depth);
+        EngineMetrics.raiseMax(_engine._maxQueueDepth, __depth);
+    }//end method recordQueueDepth
+
+    void recordConnectLatency(long __nanos)
+    {
+        _engine.getConnectLatency().record(__nanos);
+    }//end method recordConnectLatency
+
+    void recordAcceptToFirstByte(long __nanos)
+    {
+        _engine.getAcceptToFirstByte().record(__nanos);
+    }//end method recordAcceptToFirstByte
+
+    //failures used to end up on stderr only, now they are counted and the last one is kept
+    void recordError(IOException __cause)
+    {
+        _errors.incrementAndGet();
+        _engine._errors.incrementAndGet();
+        _lastError = String.valueOf(__cause.getMessage());
+    }//end method recordError
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getBytesIn()
+    {
+        return _bytesIn.get();
+    }//end method getBytesIn
+
+    public long getBytesOut()
+    {
+        return _bytesOut.get();
+    }//end method getBytesOut
+
+    //frames the listener has finished with, lags the frames dispatched by the one in progress
+    public long getFramesIn()
+    {
+        return _framesIn.get();
+    }//end method getFramesIn
+
+    public long getFramesOut()
+    {
+        return _framesOut.get();
+    }//end method getFramesOut
+
+    public long getErrors()
+    {
+        return _errors.get();
+    }//end method getErrors
+
+    public long getMaxQueueDepth()
+    {
+        return _maxQueueDepth.get();
+    }//end method getMaxQueueDepth
+
+    //message of the last failure, null if there was none
+    public String getLastError()
+    {
+        return _lastError;
+    }//end method getLastError
+}//end class LinkMetrics
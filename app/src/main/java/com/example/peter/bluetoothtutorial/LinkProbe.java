@@ -0,0 +1,365 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Measures round trips, jitter and throughput of a link against a peer that runs a LinkProbe
+*   too. Pings carry the send time and come back unchanged, so only the local clock is used.
+*   For throughput data is queued as fast as the link takes it and the peer reports what
+*   arrived. The probe sits between the connection and its listener and answers the peer's
+*   probes on every connection, other frames pass through untouched.
+*
+*       ping, pong: [run id: 4 bytes][sequence: 4 bytes][send time: 8 bytes][padding]
+*       data:       [run id: 4 bytes][last flag][padding]
+*       report:     [run id: 4 bytes][payload bytes received: 8 bytes]
+*
+*   run blocks for the length of the plan, it must not be called on a reader thread
+*/
+public class LinkProbe implements ConnectionListener
+{
+    private static final int PING_HEADER_LENGTH = 16;
+    private static final int DATA_HEADER_LENGTH = 5;
+    private static final int REPORT_LENGTH = 12;
+
+    private final ConnectionListener _listener;
+    private final Random _random = new Random();
+
+    //one run at a time, the state below is only held briefly so the reader thread is never kept waiting
+    private final Object _runLock = new Object();
+
+    //the run in progress, guarded by this
+    private int _runId = 0;
+    private LatencyHistogram _rtt = null;
+    private int _received = 0;
+    private long _lastRtt = -1;
+    private long _jitterNanos = 0;
+    private long _reportedBytes = -1;
+    private long _reportNanos = 0;
+
+    //data received per peer for its throughput runs, guarded by _receiving. [run id, payload bytes]
+    private final HashMap<String, long[]> _receiving = new HashMap<>();
+
+    public LinkProbe(ConnectionListener __listener)
+    {
+        _listener = __listener;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs the plan against the peer of __connection and returns a result per payload size
+    */
+    public List<ProbeResult> run(Connection __connection, ProbePlan __plan) throws IOException, InterruptedException
+    {
+        synchronized (_runLock)
+        {
+            ArrayList<ProbeResult> __results = new ArrayList<>();
+
+            for(int __payloadSize : __plan.getPayloadSizes())
+            {
+                __results.add(run(__connection, __plan, __payloadSize));
+            }//end for loop
+
+            return __results;
+        }//end synchronized
+    }//end method run
+
+    //----------------------------------------------------------------------------------------------
+
+    //called with the run lock held
+    private ProbeResult run(Connection __connection, ProbePlan __plan, int __payloadSize) throws IOException, InterruptedException
+    {
+        int __runId = _random.nextInt();
+        LatencyHistogram __rtt = new LatencyHistogram();
+
+        synchronized (this)
+        {
+            _runId = __runId;
+            _rtt = __rtt;
+            _received = 0;
+            _lastRtt = -1;
+            _jitterNanos = 0;
+            _reportedBytes = -1;
+        }//end synchronized
+
+        int __pingLength = Math.max(__payloadSize, PING_HEADER_LENGTH);
+        for(int i = 0; i < __plan.getPingCount(); i++)
+        {
+            checkOpen(__connection);
+
+            byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + __pingLength];
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_PROBE_PING, __pingLength);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, __runId);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH + 4, i);
+            writeLong(__frame, FrameEncoder.HEADER_LENGTH + 8, System.nanoTime());
+            __connection.sendFrame(__frame);
+
+            if(__plan.getPingIntervalMillis() > 0)
+            {
+                Thread.sleep(__plan.getPingIntervalMillis());
+            }//end if
+        }//end for loop
+
+        int __lost;
+        long __jitterNanos;
+
+        synchronized (this)
+        {
+            awaitCondition(__connection, __plan.getTimeoutMillis(), __plan.getPingCount());
+            __lost = __plan.getPingCount() - _received;
+            __jitterNanos = _jitterNanos;
+        }//end synchronized
+
+        double __bytesPerSecond = 0;
+        if(__plan.getThroughputMillis() > 0)
+        {
+            __bytesPerSecond = measureThroughput(__connection, __plan, __runId, Math.max(__payloadSize, DATA_HEADER_LENGTH));
+        }//end if
+
+        return new ProbeResult(__payloadSize, __plan.getPingCount(), __lost, __rtt, __jitterNanos, __bytesPerSecond);
+    }//end method run
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues data frames as fast as the write queue accepts them, then asks the peer how much
+    *   arrived. The rate is over the time until its report is back, so nothing still in flight
+    *   is counted. Called with the run lock held
+    */
+    private double measureThroughput(Connection __connection, ProbePlan __plan, int __runId, int __payloadSize) throws IOException, InterruptedException
+    {
+        //one frame is sent over and over, the write queue never changes it
+        byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + __payloadSize];
+        FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_PROBE_DATA, __payloadSize);
+        writeInt(__frame, FrameEncoder.HEADER_LENGTH, __runId);
+
+        long __start = System.nanoTime();
+        long __end = __start + TimeUnit.MILLISECONDS.toNanos(__plan.getThroughputMillis());
+
+        SendFuture __last = null;
+        while(System.nanoTime() < __end)
+        {
+            checkOpen(__connection);
+            __last = __connection.sendFrame(__frame);
+        }//end while loop
+
+        byte[] __final = new byte[FrameEncoder.HEADER_LENGTH + __payloadSize];
+        System.arraycopy(__frame, 0, __final, 0, __frame.length);
+        __final[FrameEncoder.HEADER_LENGTH + 4] = 1;
+        __connection.sendFrame(__final);
+
+        synchronized (this)
+        {
+            //the queue may still hold a whole duration's worth of data
+            awaitCondition(__connection, __plan.getTimeoutMillis() + __plan.getThroughputMillis(), -1);
+
+            if(_reportedBytes < 0)
+            {
+                throw new IOException("peer did not report the throughput run" + (__last != null && __last.getFailure() != null
+                        ? ": " + __last.getFailure().getMessage() : ""));
+            }//end if
+
+            return _reportedBytes * (double) TimeUnit.SECONDS.toNanos(1) / (_reportNanos - __start);
+        }//end synchronized
+    }//end method measureThroughput
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   waits until __pongs pongs are in, or the report when __pongs is negative. Called holding this
+    */
+    private void awaitCondition(Connection __connection, long __timeoutMillis, int __pongs) throws InterruptedException
+    {
+        long __deadline = System.currentTimeMillis() + __timeoutMillis;
+
+        while(__pongs >= 0 ? _received < __pongs : _reportedBytes < 0)
+        {
+            long __remaining = __deadline - System.currentTimeMillis();
+            if(__remaining <= 0 || __connection.isClosed())
+            {
+                return;
+            }//end if
+
+            wait(Math.min(__remaining, 50));
+        }//end while loop
+    }//end method awaitCondition
+
+    private static void checkOpen(Connection __connection) throws IOException
+    {
+        if(__connection.isClosed())
+        {
+            throw new IOException("connection closed during the probe");
+        }//end if
+    }//end method checkOpen
+
+    //----------------------------------------------------------------------------------------------
+
+    private synchronized void onPong(Frame __frame)
+    {
+        long __now = System.nanoTime();
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+
+        if(__frame.getLength() < PING_HEADER_LENGTH || readInt(__buffer, __offset) != _runId || _rtt == null)
+        {
+            //a late pong of an earlier run
+            return;
+        }//end if
+
+        long __rtt = __now - readLong(__buffer, __offset + 8);
+        _rtt.record(__rtt);
+        _received++;
+
+        //RFC 3550 jitter, a running average of the change between consecutive round trips
+        if(_lastRtt >= 0)
+        {
+            _jitterNanos += (Math.abs(__rtt - _lastRtt) - _jitterNanos) / 16;
+        }//end if
+        _lastRtt = __rtt;
+
+        notifyAll();
+    }//end method onPong
+
+    private synchronized void onReport(Frame __frame)
+    {
+        if(__frame.getLength() < REPORT_LENGTH || readInt(__frame.getBuffer(), __frame.getOffset()) != _runId)
+        {
+            return;
+        }//end if
+
+        _reportNanos = System.nanoTime();
+        _reportedBytes = readLong(__frame.getBuffer(), __frame.getOffset() + 4);
+        notifyAll();
+    }//end method onReport
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   peer side of a throughput run, counts the data and reports it after the last frame
+    */
+    private void onData(Connection __connection, Frame __frame)
+    {
+        if(__frame.getLength() < DATA_HEADER_LENGTH)
+        {
+            return;
+        }//end if
+
+        int __runId = readInt(__frame.getBuffer(), __frame.getOffset());
+        boolean __last = __frame.getBuffer()[__frame.getOffset() + 4] != 0;
+        long __bytes;
+
+        synchronized (_receiving)
+        {
+            long[] __run = _receiving.get(__connection.getAddress());
+            if(__run == null || __run[0] != __runId)
+            {
+                __run = new long[] {__runId, 0};
+                _receiving.put(__connection.getAddress(), __run);
+            }//end if
+
+            __run[1] += __frame.getLength();
+            __bytes = __run[1];
+
+            if(__last)
+            {
+                _receiving.remove(__connection.getAddress());
+            }//end if
+        }//end synchronized
+
+        if(__last)
+        {
+            byte[] __report = new byte[FrameEncoder.HEADER_LENGTH + REPORT_LENGTH];
+            FrameEncoder.writeHeader(__report, 0, Frame.TYPE_PROBE_REPORT, REPORT_LENGTH);
+            writeInt(__report, FrameEncoder.HEADER_LENGTH, __runId);
+            writeLong(__report, FrameEncoder.HEADER_LENGTH + 4, __bytes);
+            __connection.sendFrame(__report);
+        }//end if
+    }//end method onData
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onConnected(Connection __connection)
+    {
+        _listener.onConnected(__connection);
+    }//end method onConnected
+
+    @Override
+    public void onConnectionFailed(Connection __connection, IOException __cause)
+    {
+        _listener.onConnectionFailed(__connection, __cause);
+    }//end method onConnectionFailed
+
+    @Override
+    public void onFrameReceived(Connection __connection, Frame __frame)
+    {
+        switch (__frame.getType())
+        {
+            case Frame.TYPE_PROBE_PING:
+                //sent back as it came, the send time inside is the peer's own
+                __connection.sendFrame(FrameEncoder.encode(Frame.TYPE_PROBE_PONG, __frame.getBuffer(), __frame.getOffset(), __frame.getLength()));
+                break;
+            case Frame.TYPE_PROBE_PONG:
+                onPong(__frame);
+                break;
+            case Frame.TYPE_PROBE_DATA:
+                onData(__connection, __frame);
+                break;
+            case Frame.TYPE_PROBE_REPORT:
+                onReport(__frame);
+                break;
+            default:
+                _listener.onFrameReceived(__connection, __frame);
+                break;
+        }//end switch
+    }//end method onFrameReceived
+
+    @Override
+    public void onDisconnected(Connection __connection)
+    {
+        synchronized (_receiving)
+        {
+            _receiving.remove(__connection.getAddress());
+        }//end synchronized
+
+        synchronized (this)
+        {
+            //wakes a run waiting on this connection
+            notifyAll();
+        }//end synchronized
+
+        _listener.onDisconnected(__connection);
+    }//end method onDisconnected
+
+    //----------------------------------------------------------------------------------------------
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+
+    private static void writeLong(byte[] __destination, int __offset, long __value)
+    {
+        writeInt(__destination, __offset, (int) (__value >>> 32));
+        writeInt(__destination, __offset + 4, (int) __value);
+    }//end method writeLong
+
+    private static long readLong(byte[] __source, int __offset)
+    {
+        return ((long) readInt(__source, __offset) << 32) | (readInt(__source, __offset + 4) & 0xffffffffL);
+    }//end method readLong
+}//end class LinkProbe
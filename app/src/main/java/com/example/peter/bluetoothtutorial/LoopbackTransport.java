@@ -0,0 +1,278 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+*   In-memory transport. createPair returns two ends that are wired to each other, whatever is
+*   written to one end can be read from the other. Used to drive the receive pipeline on a plain
+*   JVM without any radio or socket in the way
+*/
+public class LoopbackTransport implements Transport
+{
+    //default capacity of each direction of the pipe
+    public static final int DEFAULT_PIPE_CAPACITY = 64 * 1024;
+
+    private final String _address;
+    private final Pipe _incoming;
+    private final Pipe _outgoing;
+
+    private LoopbackTransport(String __address, Pipe __incoming, Pipe __outgoing)
+    {
+        _address = __address;
+        _incoming = __incoming;
+        _outgoing = __outgoing;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   creates two connected ends, the first one is seen by the second as __firstAddress
+    *   and the other way round
+    */
+    public static LoopbackTransport[] createPair(String __firstAddress, String __secondAddress)
+    {
+        return createPair(__firstAddress, __secondAddress, DEFAULT_PIPE_CAPACITY);
+    }//end method createPair
+
+    public static LoopbackTransport[] createPair(String __firstAddress, String __secondAddress, int __capacity)
+    {
+        Pipe __firstToSecond = new Pipe(__capacity);
+        Pipe __secondToFirst = new Pipe(__capacity);
+
+        //each end is named after the peer it talks to, the same way a socket reports its remote device
+        return new LoopbackTransport[] {
+                new LoopbackTransport(__secondAddress, __secondToFirst, __firstToSecond),
+                new LoopbackTransport(__firstAddress, __firstToSecond, __secondToFirst)
+        };
+    }//end method createPair
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void connect() throws IOException
+    {
+        if(_incoming.isClosed() || _outgoing.isClosed())
+        {
+            throw new IOException("loopback transport is closed");
+        }//end if
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return _incoming.getInputStream();
+    }//end method getInputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return _outgoing.getOutputStream();
+    }//end method getOutputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getAddress()
+    {
+        return _address;
+    }//end method getAddress
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getName()
+    {
+        return "loopback://" + _address;
+    }//end method getName
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   closing either end closes both directions, like a socket would
+    */
+    @Override
+    public void close()
+    {
+        _incoming.close();
+        _outgoing.close();
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   bounded single-direction byte pipe, writers block while it is full and readers block
+    *   while it is empty
+    */
+    private static class Pipe
+    {
+        private final byte[] _buffer;
+        private int _readPosition = 0;
+        private int _count = 0;
+        private boolean _closed = false;
+
+        private final InputStream _inputStream = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                byte[] __single = new byte[1];
+                return read(__single, 0, 1) < 0 ? -1 : __single[0] & 0xFF;
+            }//end method read
+
+            @Override
+            public int read(byte[] __bytes, int __offset, int __length) throws IOException
+            {
+                return Pipe.this.read(__bytes, __offset, __length);
+            }//end method read
+
+            //like a bluetooth socket, reports the end of the link by throwing once nothing is left to read
+            @Override
+            public int available() throws IOException
+            {
+                synchronized (Pipe.this)
+                {
+                    if(_count == 0 && _closed)
+                    {
+                        throw new IOException("pipe closed");
+                    }//end if
+
+                    return _count;
+                }//end synchronized
+            }//end method available
+
+            @Override
+            public void close()
+            {
+                Pipe.this.close();
+            }//end method close
+        };
+
+        private final OutputStream _outputStream = new OutputStream()
+        {
+            @Override
+            public void write(int __byte) throws IOException
+            {
+                write(new byte[] {(byte) __byte}, 0, 1);
+            }//end method write
+
+            @Override
+            public void write(byte[] __bytes, int __offset, int __length) throws IOException
+            {
+                Pipe.this.write(__bytes, __offset, __length);
+            }//end method write
+
+            @Override
+            public void close()
+            {
+                Pipe.this.close();
+            }//end method close
+        };
+
+        Pipe(int __capacity)
+        {
+            _buffer = new byte[__capacity];
+        }//end constructor
+
+        InputStream getInputStream()
+        {
+            return _inputStream;
+        }//end method getInputStream
+
+        OutputStream getOutputStream()
+        {
+            return _outputStream;
+        }//end method getOutputStream
+
+        synchronized boolean isClosed()
+        {
+            return _closed;
+        }//end method isClosed
+
+        synchronized void close()
+        {
+            _closed = true;
+            notifyAll();
+        }//end method close
+
+        synchronized int read(byte[] __bytes, int __offset, int __length) throws IOException
+        {
+            if(__length == 0)
+            {
+                return 0;
+            }//end if
+
+            //wait for data, a closed pipe still hands out what was written before closing
+            while(_count == 0)
+            {
+                if(_closed)
+                {
+                    return -1;
+                }//end if
+
+                try
+                {
+                    wait();
+                }//end try
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading");
+                }//end catch
+            }//end while loop
+
+            int __read = Math.min(__length, _count);
+            int __firstPart = Math.min(__read, _buffer.length - _readPosition);
+            System.arraycopy(_buffer, _readPosition, __bytes, __offset, __firstPart);
+            System.arraycopy(_buffer, 0, __bytes, __offset + __firstPart, __read - __firstPart);
+
+            _readPosition = (_readPosition + __read) % _buffer.length;
+            _count -= __read;
+            notifyAll();
+
+            return __read;
+        }//end method read
+
+        synchronized void write(byte[] __bytes, int __offset, int __length) throws IOException
+        {
+            while(__length > 0)
+            {
+                //wait for room in the buffer
+                while(_count == _buffer.length && !_closed)
+                {
+                    try
+                    {
+                        wait();
+                    }//end try
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted while writing");
+                    }//end catch
+                }//end while loop
+
+                if(_closed)
+                {
+                    throw new IOException("pipe closed");
+                }//end if
+
+                int __writePosition = (_readPosition + _count) % _buffer.length;
+                int __chunk = Math.min(__length, _buffer.length - _count);
+                int __firstPart = Math.min(__chunk, _buffer.length - __writePosition);
+                System.arraycopy(__bytes, __offset, _buffer, __writePosition, __firstPart);
+                System.arraycopy(__bytes, __offset + __firstPart, _buffer, 0, __chunk - __firstPart);
+
+                _count += __chunk;
+                __offset += __chunk;
+                __length -= __chunk;
+                notifyAll();
+            }//end while loop
+        }//end method write
+    }//end class Pipe
+}//end class LoopbackTransport
@@ -2,40 +2,37 @@ package com.example.peter.bluetoothtutorial;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
+import android.content.ServiceConnection;
+import android.os.IBinder;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.ScrollView;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity
 {
     private BluetoothAdapter _bluetoothAdapter;
 
-    //Handler to get data from other threads
-    private Handler _handler = null;
+    //the service holding the connections and the message log, null until it is bound
+    private ConnectionService _connectionService = null;
 
-    //constant integer value to represent receiving a message from another device
-    private final int MESSAGE_RECEIVED = 1;
+    private ListView _lstMessageLog;
+    private MessageLogAdapter _messageLogAdapter = null;
 
-    //device that is connected
-    private ArrayList<ConnectThread> _connectDevices;
+    //link metrics drawn over the message log while switched on from the menu
+    private static final long METRICS_REFRESH_MILLIS = 1000;
+    private TextView _lblMetricsOverlay;
+    private boolean _metricsVisible = false;
+    private MetricsSnapshot _lastMetrics = null;
 
-    private ArrayList<BluetoothDevice> _connectedBluetoothDevice;
     //----------------------------------------------------------------------------------------------
 
     @Override
@@ -47,37 +44,13 @@ public class MainActivity extends AppCompatActivity
         //initialize the bluetooth adapter
         _bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
-        //initialize handler and make it do something when another thread passes a message back
-        _handler = new Handler(Looper.getMainLooper()){
-            TextView lblMessage = (TextView)findViewById(R.id.lblMessagesReceived);
-            ScrollView scrollView = (ScrollView)findViewById(R.id.scrollTextView);
+        _lstMessageLog = (ListView)findViewById(R.id.lstMessageLog);
+        _lblMetricsOverlay = (TextView)findViewById(R.id.lblMetricsOverlay);
 
-            @Override
-            public void handleMessage(Message __inputMessage)
-            {
-                switch (__inputMessage.what)
-                {
-                    case MESSAGE_RECEIVED:
-                        //append the message to the text view
-                        lblMessage.append(__inputMessage.obj.toString() + "\n");
-
-                        //make the scrollView move down to the last item
-                        scrollView.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                scrollView.fullScroll(View.FOCUS_DOWN);
-                            }//end function run
-                        });
-                        break;
-                    default:
-                        //let the program handle any other messages passed
-                        super.handleMessage(__inputMessage);
-                }//end switch
-            }//end function handleMessage
-        };//end Handler
-
-        _connectDevices = new ArrayList<>();
-        _connectedBluetoothDevice = new ArrayList<>();
+        //started as well as bound so the connections survive while no activity is bound, e.g. during rotation
+        Intent __serviceIntent = new Intent(this, ConnectionService.class);
+        startService(__serviceIntent);
+        bindService(__serviceIntent, _serviceConnection, BIND_AUTO_CREATE);
     }//end onCreate
 
     //----------------------------------------------------------------------------------------------
@@ -149,14 +122,10 @@ public class MainActivity extends AppCompatActivity
 
     //----------------------------------------------------------------------------------------------
 
-    /*Call this function to cancel connection with the device*/
-    public void closeConnection(ConnectThread closeDevice)
+    /*Call this function to cancel connection with the device, returns false if it was not connected*/
+    public boolean closeConnection(String __address)
     {
-        if(_connectDevices.contains(closeDevice))
-        {
-            closeDevice.cancel();
-            _connectDevices.remove(closeDevice);
-        }//end if
+        return _connectionService != null && _connectionService.disconnect(__address);
     }//end function closeConnection
 
     //----------------------------------------------------------------------------------------------
@@ -173,6 +142,11 @@ public class MainActivity extends AppCompatActivity
         menu.add(0,3,3,"Display paired devices");
         menu.add(0,4,4,"Show connected devices");
         menu.add(0,5,5, "Make Discoverable");
+        menu.add(0,6,6, "Reconnect known devices");
+        menu.add(0,7,7, "Show link metrics");
+        menu.add(0,8,8, "Test link quality");
+        menu.add(0,9,9, "Load previous session");
+        menu.add(0,10,10, "Accept incoming devices");
         return true;
     }//end function onCreateOptionsMenu
 
@@ -232,7 +206,6 @@ public class MainActivity extends AppCompatActivity
                 {
                     Intent __connectedDevicesIntent = new Intent(this, DeviceListActivity.class);
                     __connectedDevicesIntent.putExtra("instruction", 3);
-                    __connectedDevicesIntent.putExtra("devices", _connectedBluetoothDevice);
                     startActivityForResult(__connectedDevicesIntent, 2);
                     result = true;
                 }//end if
@@ -245,6 +218,51 @@ public class MainActivity extends AppCompatActivity
                 visible();
                 result = true;
                 break;
+            case 6:           //connect to remembered devices without searching
+                if(_bluetoothAdapter.isEnabled() && _connectionService != null)
+                {
+                    int __started = _connectionService.reconnectKnownDevices();
+                    Toast.makeText(getApplicationContext(), "Reconnecting to " + __started + " known devices", Toast.LENGTH_SHORT).show();
+                    result = true;
+                }//end if
+                else
+                {
+                    Toast.makeText(getApplicationContext(), "Bluetooth must be enabled first!", Toast.LENGTH_LONG).show();
+                }//end else
+                break;
+            case 7:           //show or hide the metrics overlay
+                toggleMetricsOverlay();
+                result = true;
+                break;
+            case 8:           //ping and load every connected device, the results arrive as messages
+                if(_connectionService != null)
+                {
+                    int __probed = _connectionService.probeLinks(new ProbePlan());
+                    Toast.makeText(getApplicationContext(), "Testing " + __probed + " links", Toast.LENGTH_SHORT).show();
+                    result = true;
+                }//end if
+                break;
+            case 9:           //read the messages of the last run back from the journal
+                if(_connectionService != null)
+                {
+                    if(!_connectionService.replayPreviousSession())
+                    {
+                        Toast.makeText(getApplicationContext(), "No previous session recorded", Toast.LENGTH_SHORT).show();
+                    }//end if
+                    result = true;
+                }//end if
+                break;
+            case 10:          //turn server mode on or off
+                if(_bluetoothAdapter.isEnabled() && _connectionService != null)
+                {
+                    toggleServer();
+                    result = true;
+                }//end if
+                else
+                {
+                    Toast.makeText(getApplicationContext(), "Bluetooth must be enabled first!", Toast.LENGTH_LONG).show();
+                }//end else
+                break;
         }//end switch
 
         return result;
@@ -252,6 +270,79 @@ public class MainActivity extends AppCompatActivity
 
     //----------------------------------------------------------------------------------------------
 
+    /*
+    *   starts accepting links from other devices, or stops it again
+    */
+    private void toggleServer()
+    {
+        if(_connectionService.isServerRunning())
+        {
+            _connectionService.stopServer();
+            Toast.makeText(getApplicationContext(), "No longer accepting devices", Toast.LENGTH_SHORT).show();
+            return;
+        }//end if
+
+        try
+        {
+            _connectionService.startServer(new ServerPolicy());
+            Toast.makeText(getApplicationContext(), "Accepting devices", Toast.LENGTH_SHORT).show();
+        }//end try
+        catch (IOException e)
+        {
+            Toast.makeText(getApplicationContext(), "Could not listen: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }//end catch
+    }//end function toggleServer
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   shows the link metrics over the message log, or hides them again
+    */
+    private void toggleMetricsOverlay()
+    {
+        _metricsVisible = !_metricsVisible;
+        _lblMetricsOverlay.removeCallbacks(_refreshMetricsTask);
+
+        if(_metricsVisible)
+        {
+            _lastMetrics = null;
+            _lblMetricsOverlay.setVisibility(View.VISIBLE);
+            _refreshMetricsTask.run();
+        }//end if
+        else
+        {
+            _lblMetricsOverlay.setVisibility(View.GONE);
+        }//end else
+    }//end function toggleMetricsOverlay
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   takes a snapshot once a second while the overlay is shown, rates are over the last second
+    */
+    private final Runnable _refreshMetricsTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if(!_metricsVisible)
+            {
+                return;
+            }//end if
+
+            if(_connectionService != null)
+            {
+                MetricsSnapshot __snapshot = _connectionService.getConnectionEngine().getMetricsSnapshot();
+                _lblMetricsOverlay.setText(__snapshot.format(_lastMetrics));
+                _lastMetrics = __snapshot;
+            }//end if
+
+            _lblMetricsOverlay.postDelayed(this, METRICS_REFRESH_MILLIS);
+        }//end function run
+    };
+
+    //----------------------------------------------------------------------------------------------
+
     /*
     *   This method is called when the activity is given back control after the opened activity closes
     */
@@ -265,28 +356,30 @@ public class MainActivity extends AppCompatActivity
             {
                 //connect a given device
                 case 1:
-                    BluetoothDevice __connectDevice = (BluetoothDevice) data.getExtras().get("device");
-                    _connectedBluetoothDevice.add(__connectDevice);
-                    ConnectThread __newDevice = new ConnectThread(__connectDevice);
-                    __newDevice.start();
-                    _connectDevices.add(__newDevice);
+                    BluetoothDevice __connectDevice = _bluetoothAdapter.getRemoteDevice(data.getStringExtra("address"));
+                    try
+                    {
+                        if(_connectionService == null)
+                        {
+                            throw new IOException("connection service not bound");
+                        }//end if
+
+                        _connectionService.connect(__connectDevice);
+                    }//end try
+                    catch (IOException e)
+                    {
+                        Toast.makeText(getApplicationContext(), "Unable to connect to " + __connectDevice.getName(), Toast.LENGTH_SHORT).show();
+                    }//end catch
                     break;
                 //disconnect a device
                 case 2:
-                    BluetoothDevice __disconnectDevice = (BluetoothDevice) data.getExtras().get("device");
-                    Toast.makeText(getApplicationContext(), "Device to be disconnected: " + __disconnectDevice.getName(), Toast.LENGTH_SHORT).show();
+                    String __disconnectAddress = data.getStringExtra("address");
+                    Toast.makeText(getApplicationContext(), "Device to be disconnected: " + __disconnectAddress, Toast.LENGTH_SHORT).show();
 
-                    for(ConnectThread __connectThread:_connectDevices)
+                    if(closeConnection(__disconnectAddress))
                     {
-                        Toast.makeText(getApplicationContext(), "Device found: " + __connectThread.get_device().getName(), Toast.LENGTH_SHORT).show();
-
-                        if(__connectThread.get_device().equals(__disconnectDevice))
-                        {
-                            closeConnection(__connectThread);
-                            _connectedBluetoothDevice.remove(__disconnectDevice);
-                            Toast.makeText(getApplicationContext(), "Device disconnected!", Toast.LENGTH_SHORT).show();
-                        }//end if
-                    }//end for loop
+                        Toast.makeText(getApplicationContext(), "Device disconnected!", Toast.LENGTH_SHORT).show();
+                    }//end if
             }//end switch
         }//end if
     }//end onActivityResult
@@ -299,207 +392,73 @@ public class MainActivity extends AppCompatActivity
     @Override
     protected void onDestroy()
     {
-        //loop through all the connected devices and disconnect
-        for(ConnectThread __disconnectDevice : _connectDevices)
+        _lblMetricsOverlay.removeCallbacks(_refreshMetricsTask);
+
+        //detaching is all a rotation costs, the connections stay up in the service
+        if(_connectionService != null)
         {
-            try
-            {
-                __disconnectDevice.cancel();
-            }//end try
-            catch (Exception e)
-            {
-                //nothing to do about it
-            }//end catch
-        }//end for loop
+            _connectionService.detach(_serviceClient);
+            _connectionService = null;
+        }//end if
+        unbindService(_serviceConnection);
+
+        //leaving the app for good disconnects every device
+        if(isFinishing())
+        {
+            stopService(new Intent(this, ConnectionService.class));
+        }//end if
 
         //destroying references to objects to make sure that memory is released when app closes
-        _connectDevices.clear();
-        _connectedBluetoothDevice.clear();
         _bluetoothAdapter = null;
-        _handler = null;
 
         super.onDestroy();
     }//end method onDestroy
 
-    //----------------------------------------------------------------------------------------------
     //----------------------------------------------------------------------------------------------
 
     /*
-    *   Class that initiates the connection to the bluetooth device
+    *   attaches to the connection service once it is bound
     */
-    private class ConnectThread extends Thread
+    private final ServiceConnection _serviceConnection = new ServiceConnection()
     {
-        //default Bluetooth UUID is being used
-        private final UUID _UUID = UUID.fromString("00001101-0000-1000-8000-00805f9b34fb");
-
-        //defining connection variables
-        private final BluetoothSocket _socket;
-
-        private final BluetoothDevice _device;
-
-        //the object that will manage communication with the bluetooth device
-        ConnectedThread _managedCommunication;
-
-        public ConnectThread(BluetoothDevice __device)
+        @Override
+        public void onServiceConnected(ComponentName __name, IBinder __binder)
         {
-            //Use a temporary object that is later assigned to mmSocket,
-            //because mmSocket is final
-            BluetoothSocket tmp = null;
-            _device = __device;
-
-            //get a BluetoothSocket to connect with the given BluetoothDevice
-            try
-            {
-                // MY_UUID is the app's UUID string, also used by the server code
-                tmp = _device.createRfcommSocketToServiceRecord(_UUID);
-            }//end try
-            catch(IOException e)
-            {
-                e.printStackTrace();
-            }//end catch
+            _connectionService = ((ConnectionService.LocalBinder) __binder).getService();
 
-            _socket = tmp;
-        }//end constructor
+            //the list view only lays out the rows that are visible, the log itself lives in the service
+            _messageLogAdapter = new MessageLogAdapter(getLayoutInflater(), _connectionService.getMessageLog());
+            _lstMessageLog.setAdapter(_messageLogAdapter);
 
-        //------------------------------------------------------------------------------------------
+            _connectionService.attach(_serviceClient);
+        }//end function onServiceConnected
 
-        public void run()
+        @Override
+        public void onServiceDisconnected(ComponentName __name)
         {
-            //cancel discovery because it will slow the connection
-            _bluetoothAdapter.cancelDiscovery();
-
-            try
-            {
-                //Connect the device through the socket. This will block
-                //until it succeeds or throws an exception
-                _socket.connect();
-            }//end try
-            catch (IOException connectException)
-            {
-                //Unable to connect; close the socket and get out
-                try
-                {
-                    _socket.close();
-                }//end try
-                catch (IOException closeException)
-                {
-                    closeException.printStackTrace();
-                }//end catch
-
-                return;
-            }//end catch
+            _connectionService = null;
+        }//end function onServiceDisconnected
+    };//end ServiceConnection
 
-            //manage connection in a separate thread
-            _managedCommunication = new ConnectedThread(_socket);
-            _managedCommunication.start();
-        }//end method run
-
-        //------------------------------------------------------------------------------------------
-
-        //uses this method to invoke write method for the connection
-        public void send(String message)
-        {
-            _managedCommunication.write(message.getBytes());
-        }//end method send
-
-        //------------------------------------------------------------------------------------------
-
-        /*
-        *   method to return the bluetooth device connected
-        */
-        public BluetoothDevice get_device()
-        {
-            return _device;
-        }//end method get_device
-
-        //------------------------------------------------------------------------------------------
-
-        // will cancel an in-progress connection and close the socket
-        public void cancel()
-        {
-            try
-            {
-                _socket.close();
-            }//end try
-            catch (IOException e)
-            {
-                e.printStackTrace();
-            }//end catch
-        }//end method cancel
-    }//end class ConnectThread
-
-    //----------------------------------------------------------------------------------------------
     //----------------------------------------------------------------------------------------------
 
     /*
-    *   class that handles communication between bluetooth devices
+    *   receives updates from the connection service on the UI thread
     */
-    private class ConnectedThread extends Thread
+    private final ConnectionService.Client _serviceClient = new ConnectionService.Client()
     {
-        private final InputStream _inputStream;
-        private final OutputStream _outputStream;
-
-        public ConnectedThread(BluetoothSocket __socket)
+        @Override
+        public void onMessagesAppended(MessageLog __log)
         {
-            InputStream tmpIn = null;
-            OutputStream tmpOut = null;
-
-            //Get the input and output streams using temp objects because member streams are final
-            try
-            {
-                tmpIn = __socket.getInputStream();
-                tmpOut = __socket.getOutputStream();
-            }//end try
-            catch (IOException e)
-            {
-                e.printStackTrace();
-            }//end catch
+            //refresh the visible rows once per batch,
+            //the list keeps following new messages while it is scrolled to the bottom
+            _messageLogAdapter.notifyDataSetChanged();
+        }//end function onMessagesAppended
 
-            _inputStream = tmpIn;
-            _outputStream = tmpOut;
-        }//end constructor
-
-        //------------------------------------------------------------------------------------------
-
-        public void run()
-        {
-            byte[] buffer = new byte[1024];
-            int bytes;
-
-            //Keep listening to the InputStream until an exception occurs
-            while(true)
-            {
-                try
-                {
-                    //Read from the InputStream
-                    bytes = _inputStream.read(buffer);
-
-                    //converting array of bytes into string
-                    String readMessage = new String(buffer, 0, bytes);
-
-                    //Send the obtained bytes to the UI activity
-                    _handler.obtainMessage(MESSAGE_RECEIVED, readMessage).sendToTarget();
-                }//end try
-                catch(IOException e)
-                {
-                    break;
-                }//end catch
-            }//end while loop
-        }//end function run
-
-        //------------------------------------------------------------------------------------------
-
-        //writes bytes to the output stream
-        public void write(byte[] __bytes)
+        @Override
+        public void onConnectionsChanged()
         {
-            try
-            {
-                _outputStream.write(__bytes);
-            }//end try
-            catch (IOException e)
-            {
-                e.printStackTrace();
-            }//end catch
-        }//end function write
-    }//end class ConnectedThread
+            //nothing on this screen lists the connections
+        }//end function onConnectionsChanged
+    };//end Client
 }//end Main Activity
@@ -0,0 +1,613 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+*   Inverted index over received messages. Each message gets the next document id and is added
+*   to the sorted id list of every word in it and of its peer, and to the id span of the time
+*   bucket it arrived in. A search walks the lists of its words and peer from the newest id
+*   down, jumping each list to the next id all of them share, so a page of matches costs about
+*   the same however many messages there are.
+*
+*   The text is kept as UTF-8 in large blocks rather than as one String per message. Adding
+*   takes the write lock, searches take the read lock, so one thread can index while others
+*   search.
+*
+*   The index holds at most its maximum number of messages, a message costs about 80 bytes.
+*   Past that the oldest ones are dropped from searches straight away and their memory is
+*   given back in one go once a quarter of the maximum has been dropped
+*/
+public class MessageIndex
+{
+    public static final long DEFAULT_BUCKET_MILLIS = 60 * 1000;
+    public static final int DEFAULT_MAX_DOCUMENTS = 100 * 1000;
+
+    //longer runs of letters are cut, they are hardly ever searched for whole
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int TEXT_BLOCK_BYTES = 256 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /*
+    *   ascending document ids, appended to and cut from the front when old documents go
+    */
+    private static final class Postings
+    {
+        int[] docs = new int[4];
+        int size = 0;
+
+        //entries cut from the front so far, cursors count positions from the first entry ever
+        int trimmed = 0;
+
+        void add(int __doc)
+        {
+            //a word that occurs twice in a message is listed once
+            if(size > 0 && docs[size - 1] == __doc)
+            {
+                return;
+            }//end if
+
+            if(size == docs.length)
+            {
+                docs = Arrays.copyOf(docs, size * 2);
+            }//end if
+
+            docs[size++] = __doc;
+        }//end method add
+
+        //drops the ids below __first, false if none is left
+        boolean trim(int __first)
+        {
+            int __cut = Arrays.binarySearch(docs, 0, size, __first);
+            if(__cut < 0)
+            {
+                __cut = -__cut - 1;
+            }//end if
+
+            if(__cut == 0)
+            {
+                return true;
+            }//end if
+
+            //a new array, a running cursor may still be reading the old one
+            docs = Arrays.copyOfRange(docs, __cut, __cut + Math.max(size - __cut, 4));
+            size -= __cut;
+            trimmed += __cut;
+            return size > 0;
+        }//end method trim
+    }//end class Postings
+
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final long _bucketMillis;
+    private final int _maxDocuments;
+
+    //per document at index doc - _base, guarded by _lock
+    private long[] _timestamps = new long[INITIAL_CAPACITY];
+    private int[] _addressIds = new int[INITIAL_CAPACITY];
+    private int[] _textBlocks = new int[INITIAL_CAPACITY];
+    private int[] _textOffsets = new int[INITIAL_CAPACITY];
+    private int[] _textLengths = new int[INITIAL_CAPACITY];
+    //next document id, lowest id still searchable and id at index 0 of the arrays
+    private int _size = 0;
+    private int _first = 0;
+    private int _base = 0;
+
+    //_textBlocks holds block numbers, block _blockBase is at index 0
+    private final ArrayList<byte[]> _blocks = new ArrayList<>();
+    private int _blockBase = 0;
+    private int _blockUsed = 0;
+
+    private final HashMap<String, Postings> _tokens = new HashMap<>();
+    private final HashMap<String, Integer> _addressIdsByName = new HashMap<>();
+    private final ArrayList<String> _addresses = new ArrayList<>();
+    private final ArrayList<Postings> _addressPostings = new ArrayList<>();
+
+    //time bucket to the first and last document received in it
+    private final TreeMap<Long, int[]> _buckets = new TreeMap<>();
+
+    public MessageIndex()
+    {
+        this(DEFAULT_BUCKET_MILLIS);
+    }//end constructor
+
+    public MessageIndex(long __bucketMillis)
+    {
+        this(__bucketMillis, DEFAULT_MAX_DOCUMENTS);
+    }//end constructor
+
+    public MessageIndex(long __bucketMillis, int __maxDocuments)
+    {
+        if(__maxDocuments < 1)
+        {
+            throw new IllegalArgumentException("maxDocuments must be at least 1");
+        }//end if
+
+        _bucketMillis = __bucketMillis;
+        _maxDocuments = __maxDocuments;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   indexes the message and returns its document id. The words are found before the lock is
+    *   taken, so searches only wait for the list appends. Drops the oldest message once the
+    *   index is full
+    */
+    public int add(ReceivedMessage __message)
+    {
+        String __text = __message.getText();
+        List<String> __words = tokenize(__text);
+        byte[] __bytes = __text.getBytes(Frame.UTF_8);
+
+        _lock.writeLock().lock();
+        try
+        {
+            int __doc = _size;
+            ensureCapacity(__doc - _base + 1);
+
+            _timestamps[__doc - _base] = __message.getTimestamp();
+            _addressIds[__doc - _base] = addressId(__message.getAddress());
+            storeText(__doc - _base, __bytes);
+
+            for(int i = 0; i < __words.size(); i++)
+            {
+                Postings __postings = _tokens.get(__words.get(i));
+                if(__postings == null)
+                {
+                    __postings = new Postings();
+                    _tokens.put(__words.get(i), __postings);
+                }//end if
+
+                __postings.add(__doc);
+            }//end for loop
+
+            _addressPostings.get(_addressIds[__doc - _base]).add(__doc);
+
+            long __bucket = bucketOf(__message.getTimestamp());
+            int[] __span = _buckets.get(__bucket);
+            if(__span == null)
+            {
+                _buckets.put(__bucket, new int[] {__doc, __doc});
+            }//end if
+            else
+            {
+                //messages normally arrive in time order, a clock change only widens the span
+                __span[0] = Math.min(__span[0], __doc);
+                __span[1] = __doc;
+            }//end else
+
+            _size++;
+            if(_size - _first > _maxDocuments)
+            {
+                _first++;
+
+                if(_first - _base >= Math.max(_maxDocuments / 4, 1))
+                {
+                    compact();
+                }//end if
+            }//end if
+
+            return __doc;
+        }//end try
+        finally
+        {
+            _lock.writeLock().unlock();
+        }//end finally
+    }//end method add
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts a search, newest matches first. Nothing is matched until a page is asked for
+    */
+    public Cursor search(MessageQuery __query)
+    {
+        List<String> __words = __query.getText() != null ? tokenize(__query.getText()) : new ArrayList<String>();
+
+        if(__query.getFromMillis() >= __query.getToMillis())
+        {
+            return new Cursor(this, __query, new Postings[0], -1, 0);
+        }//end if
+
+        _lock.readLock().lock();
+        try
+        {
+            ArrayList<Postings> __lists = new ArrayList<>();
+
+            for(int i = 0; i < __words.size(); i++)
+            {
+                Postings __postings = _tokens.get(__words.get(i));
+                if(__postings == null)
+                {
+                    return new Cursor(this, __query, new Postings[0], -1, 0);
+                }//end if
+
+                __lists.add(__postings);
+            }//end for loop
+
+            if(__query.getAddress() != null)
+            {
+                Integer __addressId = _addressIdsByName.get(__query.getAddress());
+                if(__addressId == null)
+                {
+                    return new Cursor(this, __query, new Postings[0], -1, 0);
+                }//end if
+
+                __lists.add(_addressPostings.get(__addressId));
+            }//end if
+
+            //the time range narrows the ids to the spans of its buckets
+            int __highest = _size - 1;
+            int __lowest = _first;
+            if(__query.getFromMillis() != Long.MIN_VALUE || __query.getToMillis() != Long.MAX_VALUE)
+            {
+                __highest = -1;
+                __lowest = Integer.MAX_VALUE;
+
+                for(int[] __span : _buckets.subMap(bucketOf(__query.getFromMillis()), true, bucketOf(__query.getToMillis()), true).values())
+                {
+                    __lowest = Math.min(__lowest, __span[0]);
+                    __highest = Math.max(__highest, __span[1]);
+                }//end for loop
+
+                //spans are only brought up to date when dropped documents are given back
+                __lowest = Math.max(__lowest, _first);
+            }//end if
+
+            return new Cursor(this, __query, __lists.toArray(new Postings[__lists.size()]), __highest, __lowest);
+        }//end try
+        finally
+        {
+            _lock.readLock().unlock();
+        }//end finally
+    }//end method search
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   Matches of one search, found a page at a time. Messages indexed after the search started
+    *   are not part of it, messages dropped while it runs are skipped. Not thread safe, but it
+    *   can move between threads
+    */
+    public static final class Cursor
+    {
+        private final MessageIndex _index;
+        private final long _fromMillis;
+        private final long _toMillis;
+        private final Postings[] _lists;
+
+        //per list, how many of its entries since the first ever may still hold a match
+        private final int[] _limits;
+
+        //next document id to look at, counting down to _lowest
+        private int _next;
+        private int _lowest;
+        private int _matched = 0;
+
+        Cursor(MessageIndex __index, MessageQuery __query, Postings[] __lists, int __highest, int __lowest)
+        {
+            _index = __index;
+            _fromMillis = __query.getFromMillis();
+            _toMillis = __query.getToMillis();
+            _lists = __lists;
+            _limits = new int[__lists.length];
+            _next = __highest;
+            _lowest = __lowest;
+
+            for(int i = 0; i < __lists.length; i++)
+            {
+                _limits[i] = __lists[i].trimmed + __lists[i].size;
+            }//end for loop
+        }//end constructor
+
+        /*
+        *   the next __count matches at most, an empty list once there are no more
+        */
+        public List<ReceivedMessage> nextPage(int __count)
+        {
+            ArrayList<ReceivedMessage> __page = new ArrayList<>();
+
+            _index._lock.readLock().lock();
+            try
+            {
+                _lowest = Math.max(_lowest, _index._first);
+                int __candidate = _next;
+
+                while(__candidate >= _lowest && __page.size() < __count)
+                {
+                    //every list jumps to its highest id at or below the candidate, until they agree
+                    boolean __agreed = true;
+                    for(int i = 0; i < _lists.length && __candidate >= _lowest; i++)
+                    {
+                        int __doc = seekAtMost(i, __candidate);
+                        if(__doc != __candidate)
+                        {
+                            __candidate = __doc;
+                            __agreed = false;
+                        }//end if
+                    }//end for loop
+
+                    if(!__agreed || __candidate < _lowest)
+                    {
+                        continue;
+                    }//end if
+
+                    long __timestamp = _index._timestamps[__candidate - _index._base];
+                    if(__timestamp >= _fromMillis && __timestamp < _toMillis)
+                    {
+                        __page.add(_index.get(__candidate));
+                    }//end if
+
+                    __candidate--;
+                }//end while loop
+
+                _next = __candidate;
+            }//end try
+            finally
+            {
+                _index._lock.readLock().unlock();
+            }//end finally
+
+            _matched += __page.size();
+            return __page;
+        }//end method nextPage
+
+        /*
+        *   highest id of list __list that is at or below __doc, -1 if there is none. The limit
+        *   only moves down because the candidates do
+        */
+        private int seekAtMost(int __list, int __doc)
+        {
+            Postings __postings = _lists[__list];
+            int __limit = _limits[__list] - __postings.trimmed;
+
+            if(__limit <= 0)
+            {
+                //everything left in the list was dropped
+                return -1;
+            }//end if
+
+            int __position = Arrays.binarySearch(__postings.docs, 0, __limit, __doc);
+
+            if(__position < 0)
+            {
+                //insertion point, everything before it is lower
+                __position = -__position - 2;
+            }//end if
+
+            _limits[__list] = __postings.trimmed + __position + 1;
+            return __position >= 0 ? __postings.docs[__position] : -1;
+        }//end method seekAtMost
+
+        //false once every match has been returned
+        public boolean hasMore()
+        {
+            return _next >= _lowest;
+        }//end method hasMore
+
+        //matches returned so far
+        public int getMatchedCount()
+        {
+            return _matched;
+        }//end method getMatchedCount
+    }//end class Cursor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the message with document id __doc, which must not have been dropped
+    */
+    public ReceivedMessage get(int __doc)
+    {
+        _lock.readLock().lock();
+        try
+        {
+            if(__doc < _first || __doc >= _size)
+            {
+                throw new IndexOutOfBoundsException("document " + __doc + " not in " + _first + " to " + (_size - 1));
+            }//end if
+
+            int __index = __doc - _base;
+            String __text = new String(_blocks.get(_textBlocks[__index] - _blockBase), _textOffsets[__index], _textLengths[__index], Frame.UTF_8);
+            return new ReceivedMessage(_timestamps[__index], _addresses.get(_addressIds[__index]), __text, 0);
+        }//end try
+        finally
+        {
+            _lock.readLock().unlock();
+        }//end finally
+    }//end method get
+
+    //number of messages that can be found
+    public int size()
+    {
+        _lock.readLock().lock();
+        try
+        {
+            return _size - _first;
+        }//end try
+        finally
+        {
+            _lock.readLock().unlock();
+        }//end finally
+    }//end method size
+
+    //number of different words in the index
+    public int getWordCount()
+    {
+        _lock.readLock().lock();
+        try
+        {
+            return _tokens.size();
+        }//end try
+        finally
+        {
+            _lock.readLock().unlock();
+        }//end finally
+    }//end method getWordCount
+
+    //messages dropped to stay within the maximum
+    public int getDroppedCount()
+    {
+        _lock.readLock().lock();
+        try
+        {
+            return _first;
+        }//end try
+        finally
+        {
+            _lock.readLock().unlock();
+        }//end finally
+    }//end method getDroppedCount
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the distinct words of __text in lower case. Letters, digits and underscores make up a
+    *   word, so "E_42" and "sensor17" are found whole while "temp=21.5" gives temp, 21 and 5
+    */
+    static List<String> tokenize(String __text)
+    {
+        ArrayList<String> __words = new ArrayList<>();
+        StringBuilder __word = new StringBuilder();
+
+        for(int i = 0; i <= __text.length(); i++)
+        {
+            char __char = i < __text.length() ? __text.charAt(i) : ' ';
+
+            if(Character.isLetterOrDigit(__char) || __char == '_')
+            {
+                if(__word.length() < MAX_TOKEN_LENGTH)
+                {
+                    __word.append(Character.toLowerCase(__char));
+                }//end if
+            }//end if
+            else if(__word.length() > 0)
+            {
+                String __token = __word.toString();
+                if(!__words.contains(__token))
+                {
+                    __words.add(__token);
+                }//end if
+                __word.setLength(0);
+            }//end else if
+        }//end for loop
+
+        return __words;
+    }//end method tokenize
+
+    //----------------------------------------------------------------------------------------------
+
+    private long bucketOf(long __timestamp)
+    {
+        //rounds down for times before the epoch too
+        long __bucket = __timestamp / _bucketMillis;
+        return __timestamp < 0 && __timestamp % _bucketMillis != 0 ? __bucket - 1 : __bucket;
+    }//end method bucketOf
+
+    //called with the write lock held
+    private int addressId(String __address)
+    {
+        Integer __id = _addressIdsByName.get(__address);
+
+        if(__id == null)
+        {
+            __id = _addresses.size();
+            _addresses.add(__address);
+            _addressPostings.add(new Postings());
+            _addressIdsByName.put(__address, __id);
+        }//end if
+
+        return __id;
+    }//end method addressId
+
+    //called with the write lock held, a message never spans two blocks. __index is doc - _base
+    private void storeText(int __index, byte[] __bytes)
+    {
+        if(_blocks.isEmpty() || TEXT_BLOCK_BYTES - _blockUsed < __bytes.length)
+        {
+            _blocks.add(new byte[Math.max(TEXT_BLOCK_BYTES, __bytes.length)]);
+            _blockUsed = 0;
+        }//end if
+
+        byte[] __block = _blocks.get(_blocks.size() - 1);
+        System.arraycopy(__bytes, 0, __block, _blockUsed, __bytes.length);
+
+        _textBlocks[__index] = _blockBase + _blocks.size() - 1;
+        _textOffsets[__index] = _blockUsed;
+        _textLengths[__index] = __bytes.length;
+        _blockUsed += __bytes.length;
+    }//end method storeText
+
+    /*
+    *   gives back the memory of the documents below _first, called with the write lock held.
+    *   Ids stay as they are, only the arrays move down
+    */
+    private void compact()
+    {
+        int __dropped = _first - _base;
+        int __kept = _size - _first;
+
+        System.arraycopy(_timestamps, __dropped, _timestamps, 0, __kept);
+        System.arraycopy(_addressIds, __dropped, _addressIds, 0, __kept);
+        System.arraycopy(_textBlocks, __dropped, _textBlocks, 0, __kept);
+        System.arraycopy(_textOffsets, __dropped, _textOffsets, 0, __kept);
+        System.arraycopy(_textLengths, __dropped, _textLengths, 0, __kept);
+        _base = _first;
+
+        //blocks before the one holding the oldest kept text are no longer used
+        int __unusedBlocks = _textBlocks[0] - _blockBase;
+        _blocks.subList(0, __unusedBlocks).clear();
+        _blockBase += __unusedBlocks;
+
+        Iterator<Postings> __tokens = _tokens.values().iterator();
+        while(__tokens.hasNext())
+        {
+            if(!__tokens.next().trim(_first))
+            {
+                __tokens.remove();
+            }//end if
+        }//end while loop
+
+        //address ids are positions, so their lists stay even when empty
+        for(int i = 0; i < _addressPostings.size(); i++)
+        {
+            _addressPostings.get(i).trim(_first);
+        }//end for loop
+
+        Iterator<int[]> __spans = _buckets.values().iterator();
+        while(__spans.hasNext())
+        {
+            int[] __span = __spans.next();
+
+            if(__span[1] < _first)
+            {
+                __spans.remove();
+            }//end if
+            else
+            {
+                __span[0] = Math.max(__span[0], _first);
+            }//end else
+        }//end while loop
+    }//end method compact
+
+    //called with the write lock held, __capacity counts from _base
+    private void ensureCapacity(int __capacity)
+    {
+        if(__capacity <= _timestamps.length)
+        {
+            return;
+        }//end if
+
+        int __grown = Math.max(__capacity, _timestamps.length * 2);
+        _timestamps = Arrays.copyOf(_timestamps, __grown);
+        _addressIds = Arrays.copyOf(_addressIds, __grown);
+        _textBlocks = Arrays.copyOf(_textBlocks, __grown);
+        _textOffsets = Arrays.copyOf(_textOffsets, __grown);
+        _textLengths = Arrays.copyOf(_textLengths, __grown);
+    }//end method ensureCapacity
+}//end class MessageIndex
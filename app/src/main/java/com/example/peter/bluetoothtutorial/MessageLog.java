@@ -0,0 +1,120 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.List;
+
+/*
+*   Fixed-capacity log of received messages. Entries live in a ring, once it is full every new
+*   message replaces the oldest one, so memory and the cost of appending stay the same however
+*   long the session runs. Not thread safe, it is only used from the UI thread
+*/
+public class MessageLog
+{
+    public static final int DEFAULT_CAPACITY = 5000;
+
+    private final ReceivedMessage[] _entries;
+
+    //index of the oldest retained entry
+    private int _first = 0;
+    private int _size = 0;
+
+    //total number of messages ever appended, used as a stable id for each entry
+    private long _appended = 0;
+
+    public MessageLog()
+    {
+        this(DEFAULT_CAPACITY);
+    }//end constructor
+
+    public MessageLog(int __capacity)
+    {
+        if(__capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + __capacity);
+        }//end if
+
+        _entries = new ReceivedMessage[__capacity];
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   adds a message, dropping the oldest one when the log is full
+    */
+    public void append(ReceivedMessage __message)
+    {
+        if(_size < _entries.length)
+        {
+            _entries[(_first + _size) % _entries.length] = __message;
+            _size++;
+        }//end if
+        else
+        {
+            _entries[_first] = __message;
+            _first = (_first + 1) % _entries.length;
+        }//end else
+
+        _appended++;
+    }//end method append
+
+    public void appendAll(List<ReceivedMessage> __messages)
+    {
+        for(int i = 0; i < __messages.size(); i++)
+        {
+            append(__messages.get(i));
+        }//end for loop
+    }//end method appendAll
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   entry at __position, 0 is the oldest retained message
+    */
+    public ReceivedMessage get(int __position)
+    {
+        if(__position < 0 || __position >= _size)
+        {
+            throw new IndexOutOfBoundsException("position " + __position + " of " + _size);
+        }//end if
+
+        return _entries[(_first + __position) % _entries.length];
+    }//end method get
+
+    /*
+    *   sequence number of the entry at __position, it does not change when older entries are dropped
+    */
+    public long getSequence(int __position)
+    {
+        return _appended - _size + __position;
+    }//end method getSequence
+
+    //----------------------------------------------------------------------------------------------
+
+    public int size()
+    {
+        return _size;
+    }//end method size
+
+    public int getCapacity()
+    {
+        return _entries.length;
+    }//end method getCapacity
+
+    //number of messages appended since the log was created, including dropped ones
+    public long getAppendedCount()
+    {
+        return _appended;
+    }//end method getAppendedCount
+
+    //----------------------------------------------------------------------------------------------
+
+    public void clear()
+    {
+        for(int i = 0; i < _entries.length; i++)
+        {
+            _entries[i] = null;
+        }//end for loop
+
+        _first = 0;
+        _size = 0;
+    }//end method clear
+}//end class MessageLog
@@ -0,0 +1,67 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/*
+*   Shows a MessageLog in a ListView. Only the visible rows are bound and their views are
+*   recycled, so scrolling costs the same whatever the size of the log
+*/
+public class MessageLogAdapter extends BaseAdapter
+{
+    private final MessageLog _log;
+    private final LayoutInflater _inflater;
+
+    public MessageLogAdapter(LayoutInflater __inflater, MessageLog __log)
+    {
+        _inflater = __inflater;
+        _log = __log;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public int getCount()
+    {
+        return _log.size();
+    }//end method getCount
+
+    @Override
+    public ReceivedMessage getItem(int __position)
+    {
+        return _log.get(__position);
+    }//end method getItem
+
+    //sequence numbers stay with their message when older ones are dropped from the log
+    @Override
+    public long getItemId(int __position)
+    {
+        return _log.getSequence(__position);
+    }//end method getItemId
+
+    @Override
+    public boolean hasStableIds()
+    {
+        return true;
+    }//end method hasStableIds
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public View getView(int __position, View __convertView, ViewGroup __parent)
+    {
+        TextView __row = (TextView) __convertView;
+
+        //only inflate when the list has no row to recycle
+        if(__row == null)
+        {
+            __row = (TextView) _inflater.inflate(R.layout.item_message_log, __parent, false);
+        }//end if
+
+        __row.setText(_log.get(__position).getText());
+        return __row;
+    }//end method getView
+}//end class MessageLogAdapter
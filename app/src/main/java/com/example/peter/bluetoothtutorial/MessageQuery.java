@@ -0,0 +1,66 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   What to look for in a MessageIndex. Every word of the text must be in a message for it to
+*   match, a query without words matches every message of the address and time range. The
+*   setters return the query so several can be chained when it is created
+*/
+public class MessageQuery
+{
+    private String _text = null;
+    private String _address = null;
+    private long _fromMillis = Long.MIN_VALUE;
+    private long _toMillis = Long.MAX_VALUE;
+
+    //----------------------------------------------------------------------------------------------
+
+    //words to look for, split the same way as the messages and not case sensitive
+    public MessageQuery setText(String __text)
+    {
+        _text = __text;
+        return this;
+    }//end method setText
+
+    //only messages from this peer, null for every peer
+    public MessageQuery setAddress(String __address)
+    {
+        _address = __address;
+        return this;
+    }//end method setAddress
+
+    //only messages received at or after this time, in milliseconds since the epoch
+    public MessageQuery setFromMillis(long __fromMillis)
+    {
+        _fromMillis = __fromMillis;
+        return this;
+    }//end method setFromMillis
+
+    //only messages received before this time
+    public MessageQuery setToMillis(long __toMillis)
+    {
+        _toMillis = __toMillis;
+        return this;
+    }//end method setToMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public String getText()
+    {
+        return _text;
+    }//end method getText
+
+    public String getAddress()
+    {
+        return _address;
+    }//end method getAddress
+
+    public long getFromMillis()
+    {
+        return _fromMillis;
+    }//end method getFromMillis
+
+    public long getToMillis()
+    {
+        return _toMillis;
+    }//end method getToMillis
+}//end class MessageQuery
@@ -0,0 +1,319 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   The engine's metrics at one moment. Rates are worked out between two snapshots, so a
+*   screen or a log line only has to keep the previous one around.
+*
+*   A received frame is counted after its listener returns, so frames in lag dispatch: a
+*   snapshot taken from inside a listener, or while one is busy, does not include the frames
+*   being handled yet. Bytes in are counted as they are read and run ahead of frames in
+*/
+public final class MetricsSnapshot
+{
+    /*
+    *   percentiles of one histogram, in nanoseconds
+    */
+    public static final class Latency
+    {
+        private final long _count;
+        private final long _p50;
+        private final long _p99;
+        private final long _max;
+
+        Latency(LatencyHistogram __histogram)
+        {
+            _count = __histogram.getCount();
+            _p50 = __histogram.getValueAtPercentile(50);
+            _p99 = __histogram.getValueAtPercentile(99);
+            _max = __histogram.getMax();
+        }//end constructor
+
+        public long getCount()
+        {
+            return _count;
+        }//end method getCount
+
+        public long getP50()
+        {
+            return _p50;
+        }//end method getP50
+
+        public long getP99()
+        {
+            return _p99;
+        }//end method getP99
+
+        public long getMax()
+        {
+            return _max;
+        }//end method getMax
+
+        //in milliseconds, which is what a person reading the overlay cares about
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "p50 %.2f  p99 %.2f  max %.2f ms", _p50 / 1e6, _p99 / 1e6, _max / 1e6);
+        }//end method toString
+    }//end class Latency
+
+    /*
+    *   counters of one live connection
+    */
+    public static final class Link
+    {
+        private final String _address;
+        private final long _bytesIn;
+        private final long _bytesOut;
+        private final long _framesIn;
+        private final long _framesOut;
+        private final int _queueDepth;
+        private final long _errors;
+        private final String _lastError;
+
+        Link(Connection __connection)
+        {
+            LinkMetrics __metrics = __connection.getMetrics();
+            _address = __connection.getAddress();
+            _bytesIn = __metrics.getBytesIn();
+            _bytesOut = __metrics.getBytesOut();
+            _framesIn = __metrics.getFramesIn();
+            _framesOut = __metrics.getFramesOut();
+            _queueDepth = __connection.getQueuedFrames();
+            _errors = __metrics.getErrors();
+            _lastError = __metrics.getLastError();
+        }//end constructor
+
+        public String getAddress()
+        {
+            return _address;
+        }//end method getAddress
+
+        public long getBytesIn()
+        {
+            return _bytesIn;
+        }//end method getBytesIn
+
+        public long getBytesOut()
+        {
+            return _bytesOut;
+        }//end method getBytesOut
+
+        public long getFramesIn()
+        {
+            return _framesIn;
+        }//end method getFramesIn
+
+        public long getFramesOut()
+        {
+            return _framesOut;
+        }//end method getFramesOut
+
+        //frames waiting in the outbound queue when the snapshot was taken
+        public int getQueueDepth()
+        {
+            return _queueDepth;
+        }//end method getQueueDepth
+
+        public long getErrors()
+        {
+            return _errors;
+        }//end method getErrors
+
+        public String getLastError()
+        {
+            return _lastError;
+        }//end method getLastError
+    }//end class Link
+
+    private final long _nanos;
+    private final long _bytesIn;
+    private final long _bytesOut;
+    private final long _framesIn;
+    private final long _framesOut;
+    private final long _errors;
+    private final long _maxQueueDepth;
+    private final int _queueDepth;
+    private final List<Link> _links;
+
+    private final Latency _connect;
+    private final Latency _writeLatency;
+    private final Latency _writeStall;
+    private final Latency _dispatch;
+    private final Latency _readToRender;
+    private final Latency _acceptToFirstByte;
+
+    MetricsSnapshot(EngineMetrics __metrics, Connection[] __connections)
+    {
+        _nanos = System.nanoTime();
+        _bytesIn = __metrics.getBytesIn();
+        _bytesOut = __metrics.getBytesOut();
+        _framesIn = __metrics.getFramesIn();
+        _framesOut = __metrics.getFramesOut();
+        _errors = __metrics.getErrors();
+        _maxQueueDepth = __metrics.getMaxQueueDepth();
+
+        ArrayList<Link> __links = new ArrayList<>(__connections.length);
+        int __queueDepth = 0;
+        for(Connection __connection : __connections)
+        {
+            Link __link = new Link(__connection);
+            __links.add(__link);
+            __queueDepth += __link.getQueueDepth();
+        }//end for loop
+        _links = Collections.unmodifiableList(__links);
+        _queueDepth = __queueDepth;
+
+        _connect = new Latency(__metrics.getConnectLatency());
+        _writeLatency = new Latency(__metrics.getWriteLatency());
+        _writeStall = new Latency(__metrics.getWriteStall());
+        _dispatch = new Latency(__metrics.getDispatchLatency());
+        _readToRender = new Latency(__metrics.getReadToRender());
+        _acceptToFirstByte = new Latency(__metrics.getAcceptToFirstByte());
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    //System.nanoTime when the snapshot was taken
+    public long getNanos()
+    {
+        return _nanos;
+    }//end method getNanos
+
+    public long getBytesIn()
+    {
+        return _bytesIn;
+    }//end method getBytesIn
+
+    public long getBytesOut()
+    {
+        return _bytesOut;
+    }//end method getBytesOut
+
+    public long getFramesIn()
+    {
+        return _framesIn;
+    }//end method getFramesIn
+
+    public long getFramesOut()
+    {
+        return _framesOut;
+    }//end method getFramesOut
+
+    public long getErrors()
+    {
+        return _errors;
+    }//end method getErrors
+
+    public long getMaxQueueDepth()
+    {
+        return _maxQueueDepth;
+    }//end method getMaxQueueDepth
+
+    //frames waiting in every outbound queue together
+    public int getQueueDepth()
+    {
+        return _queueDepth;
+    }//end method getQueueDepth
+
+    public List<Link> getLinks()
+    {
+        return _links;
+    }//end method getLinks
+
+    public Latency getConnect()
+    {
+        return _connect;
+    }//end method getConnect
+
+    public Latency getWriteLatency()
+    {
+        return _writeLatency;
+    }//end method getWriteLatency
+
+    public Latency getWriteStall()
+    {
+        return _writeStall;
+    }//end method getWriteStall
+
+    public Latency getDispatch()
+    {
+        return _dispatch;
+    }//end method getDispatch
+
+    public Latency getReadToRender()
+    {
+        return _readToRender;
+    }//end method getReadToRender
+
+    public Latency getAcceptToFirstByte()
+    {
+        return _acceptToFirstByte;
+    }//end method getAcceptToFirstByte
+
+    //----------------------------------------------------------------------------------------------
+
+    public double getFramesInPerSecond(MetricsSnapshot __previous)
+    {
+        return perSecond(_framesIn - __previous._framesIn, __previous);
+    }//end method getFramesInPerSecond
+
+    public double getFramesOutPerSecond(MetricsSnapshot __previous)
+    {
+        return perSecond(_framesOut - __previous._framesOut, __previous);
+    }//end method getFramesOutPerSecond
+
+    public double getBytesInPerSecond(MetricsSnapshot __previous)
+    {
+        return perSecond(_bytesIn - __previous._bytesIn, __previous);
+    }//end method getBytesInPerSecond
+
+    public double getBytesOutPerSecond(MetricsSnapshot __previous)
+    {
+        return perSecond(_bytesOut - __previous._bytesOut, __previous);
+    }//end method getBytesOutPerSecond
+
+    private double perSecond(long __delta, MetricsSnapshot __previous)
+    {
+        long __elapsed = _nanos - __previous._nanos;
+        return __elapsed <= 0 ? 0 : __delta * (double) TimeUnit.SECONDS.toNanos(1) / __elapsed;
+    }//end method perSecond
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   a few lines for the on-screen overlay or a log, rates are left out without a previous snapshot
+    */
+    public String format(MetricsSnapshot __previous)
+    {
+        StringBuilder __text = new StringBuilder();
+
+        __text.append(String.format(Locale.US, "links %d  queued %d (max %d)  errors %d\n",
+                _links.size(), _queueDepth, _maxQueueDepth, _errors));
+
+        if(__previous != null)
+        {
+            __text.append(String.format(Locale.US, "in  %.0f frames/s  %.1f KB/s\nout %.0f frames/s  %.1f KB/s\n",
+                    getFramesInPerSecond(__previous), getBytesInPerSecond(__previous) / 1024,
+                    getFramesOutPerSecond(__previous), getBytesOutPerSecond(__previous) / 1024));
+        }//end if
+
+        __text.append("connect  ").append(_connect).append('\n');
+        __text.append("write    ").append(_writeLatency).append('\n');
+        __text.append("stall    ").append(_writeStall).append('\n');
+        __text.append("dispatch ").append(_dispatch).append('\n');
+        __text.append("render   ").append(_readToRender);
+
+        //only a server accepts links
+        if(_acceptToFirstByte.getCount() > 0)
+        {
+            __text.append("\naccept   ").append(_acceptToFirstByte);
+        }//end if
+        return __text.toString();
+    }//end method format
+}//end class MetricsSnapshot
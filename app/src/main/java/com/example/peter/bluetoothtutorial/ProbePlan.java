@@ -0,0 +1,77 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   What a LinkProbe measures: for every payload size a series of pings, then a burst of data
+*   for the throughput. The setters return the plan so several can be chained when it is created
+*/
+public class ProbePlan
+{
+    private int[] _payloadSizes = {16, 256, 4096};
+    private int _pingCount = 100;
+    private long _pingIntervalMillis = 10;
+    private long _throughputMillis = 2000;
+    private long _timeoutMillis = 2000;
+
+    //----------------------------------------------------------------------------------------------
+
+    //bytes per probe frame, every size gets its own row of results. Pings need at least 16
+    public ProbePlan setPayloadSizes(int... __payloadSizes)
+    {
+        _payloadSizes = __payloadSizes;
+        return this;
+    }//end method setPayloadSizes
+
+    public ProbePlan setPingCount(int __pingCount)
+    {
+        _pingCount = __pingCount;
+        return this;
+    }//end method setPingCount
+
+    //pause between pings, 0 sends them back to back
+    public ProbePlan setPingIntervalMillis(long __pingIntervalMillis)
+    {
+        _pingIntervalMillis = __pingIntervalMillis;
+        return this;
+    }//end method setPingIntervalMillis
+
+    //how long data is sent as fast as the link takes it, 0 skips the throughput test
+    public ProbePlan setThroughputMillis(long __throughputMillis)
+    {
+        _throughputMillis = __throughputMillis;
+        return this;
+    }//end method setThroughputMillis
+
+    //how long to wait for the last pong or the throughput report before counting them lost
+    public ProbePlan setTimeoutMillis(long __timeoutMillis)
+    {
+        _timeoutMillis = __timeoutMillis;
+        return this;
+    }//end method setTimeoutMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int[] getPayloadSizes()
+    {
+        return _payloadSizes;
+    }//end method getPayloadSizes
+
+    public int getPingCount()
+    {
+        return _pingCount;
+    }//end method getPingCount
+
+    public long getPingIntervalMillis()
+    {
+        return _pingIntervalMillis;
+    }//end method getPingIntervalMillis
+
+    public long getThroughputMillis()
+    {
+        return _throughputMillis;
+    }//end method getThroughputMillis
+
+    public long getTimeoutMillis()
+    {
+        return _timeoutMillis;
+    }//end method getTimeoutMillis
+}//end class ProbePlan
@@ -0,0 +1,95 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.util.Locale;
+
+/*
+*   What a LinkProbe measured for one payload size
+*/
+public final class ProbeResult
+{
+    //column titles matching toString
+    public static final String HEADER = "  bytes   sent  lost  rtt-p50  rtt-p90  rtt-p99  rtt-max   jitter       KB/s";
+
+    private final int _payloadSize;
+    private final int _sent;
+    private final int _lost;
+    private final long _p50;
+    private final long _p90;
+    private final long _p99;
+    private final long _max;
+    private final long _jitterNanos;
+    private final double _bytesPerSecond;
+
+    ProbeResult(int __payloadSize, int __sent, int __lost, LatencyHistogram __rtt, long __jitterNanos, double __bytesPerSecond)
+    {
+        _payloadSize = __payloadSize;
+        _sent = __sent;
+        _lost = __lost;
+        _p50 = __rtt.getValueAtPercentile(50);
+        _p90 = __rtt.getValueAtPercentile(90);
+        _p99 = __rtt.getValueAtPercentile(99);
+        _max = __rtt.getMax();
+        _jitterNanos = __jitterNanos;
+        _bytesPerSecond = __bytesPerSecond;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getPayloadSize()
+    {
+        return _payloadSize;
+    }//end method getPayloadSize
+
+    public int getPingsSent()
+    {
+        return _sent;
+    }//end method getPingsSent
+
+    //pings without a pong before the timeout
+    public int getPingsLost()
+    {
+        return _lost;
+    }//end method getPingsLost
+
+    //round trip percentiles in nanoseconds
+    public long getRttP50()
+    {
+        return _p50;
+    }//end method getRttP50
+
+    public long getRttP90()
+    {
+        return _p90;
+    }//end method getRttP90
+
+    public long getRttP99()
+    {
+        return _p99;
+    }//end method getRttP99
+
+    public long getRttMax()
+    {
+        return _max;
+    }//end method getRttMax
+
+    //smoothed variation between consecutive round trips, as RTP computes it
+    public long getJitterNanos()
+    {
+        return _jitterNanos;
+    }//end method getJitterNanos
+
+    //payload bytes per second the peer received while data was sent as fast as possible, 0 if not measured
+    public double getBytesPerSecond()
+    {
+        return _bytesPerSecond;
+    }//end method getBytesPerSecond
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.US, "%7d %6d %5d %8.2f %8.2f %8.2f %8.2f %8.3f %10.1f", _payloadSize, _sent, _lost,
+                _p50 / 1e6, _p90 / 1e6, _p99 / 1e6, _max / 1e6, _jitterNanos / 1e6, _bytesPerSecond / 1024);
+    }//end method toString
+}//end class ProbeResult
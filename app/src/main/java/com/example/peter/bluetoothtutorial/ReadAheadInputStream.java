@@ -0,0 +1,253 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+*   Makes a stream that cannot report a dropped link pollable by the connection engine. A
+*   bluetooth socket's available() keeps returning 0 after the peer has gone and never throws,
+*   only a blocking read finds out. So one thread per link blocks in read and copies whatever
+*   arrives into a bounded buffer; available() reports what is buffered and throws once the
+*   read ended and the buffer is empty, which is what the engine's reader workers expect.
+*
+*   The thread costs little because a phone has at most seven RFCOMM links at a time. It ends
+*   when the link ends or the stream is closed, closing the socket unblocks its read. Since it
+*   knows when data arrives it wakes the reader worker then, so the worker need not poll
+*/
+class ReadAheadInputStream extends InputStream
+{
+    static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private final InputStream _inputStream;
+    private final byte[] _buffer;
+    private int _readPosition = 0;
+    private int _count = 0;
+
+    //set once the blocking read returned end of stream or failed, guarded by this
+    private IOException _ended = null;
+    private boolean _closed = false;
+
+    //false once the thread has ended
+    private volatile boolean _pumping = true;
+
+    //unparked whenever something changes that available() reports, null until a reader asks
+    private volatile Thread _reader = null;
+
+    ReadAheadInputStream(InputStream __inputStream, String __name)
+    {
+        this(__inputStream, __name, DEFAULT_CAPACITY);
+    }//end constructor
+
+    ReadAheadInputStream(InputStream __inputStream, String __name, int __capacity)
+    {
+        _inputStream = __inputStream;
+        _buffer = new byte[__capacity];
+
+        Thread __pump = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                pump();
+            }//end method run
+        }, "read-ahead-" + __name);
+        __pump.setDaemon(true);
+        __pump.start();
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs on the stream's own thread until the link ends
+    */
+    private void pump()
+    {
+        byte[] __chunk = new byte[Math.min(_buffer.length, 4096)];
+        IOException __ended;
+
+        try
+        {
+            while(true)
+            {
+                int __read = _inputStream.read(__chunk, 0, __chunk.length);
+                if(__read < 0)
+                {
+                    __ended = new EOFException("peer closed the connection");
+                    break;
+                }//end if
+
+                if(!append(__chunk, __read))
+                {
+                    __ended = new IOException("stream closed");
+                    break;
+                }//end if
+            }//end while loop
+        }//end try
+        catch (IOException e)
+        {
+            __ended = e;
+        }//end catch
+
+        synchronized (this)
+        {
+            _ended = __ended;
+            notifyAll();
+        }//end synchronized
+
+        _pumping = false;
+        wakeReader();
+    }//end method pump
+
+    //waits for room while the reader is behind, false once the stream was closed
+    private synchronized boolean append(byte[] __bytes, int __length) throws IOException
+    {
+        int __offset = 0;
+
+        while(__length > 0)
+        {
+            while(_count == _buffer.length && !_closed)
+            {
+                try
+                {
+                    wait();
+                }//end try
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading ahead");
+                }//end catch
+            }//end while loop
+
+            if(_closed)
+            {
+                return false;
+            }//end if
+
+            int __writePosition = (_readPosition + _count) % _buffer.length;
+            int __chunk = Math.min(__length, _buffer.length - _count);
+            int __firstPart = Math.min(__chunk, _buffer.length - __writePosition);
+            System.arraycopy(__bytes, __offset, _buffer, __writePosition, __firstPart);
+            System.arraycopy(__bytes, __offset + __firstPart, _buffer, 0, __chunk - __firstPart);
+
+            _count += __chunk;
+            __offset += __chunk;
+            __length -= __chunk;
+            notifyAll();
+            wakeReader();
+        }//end while loop
+
+        return true;
+    }//end method append
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   has the thread unparked when data arrives or the link ends, so it can park until then
+    *   instead of polling available()
+    */
+    void wakeOnInput(Thread __reader)
+    {
+        _reader = __reader;
+        wakeReader();
+    }//end method wakeOnInput
+
+    //true while the stream's thread is running
+    boolean isPumping()
+    {
+        return _pumping;
+    }//end method isPumping
+
+    private void wakeReader()
+    {
+        Thread __reader = _reader;
+
+        if(__reader != null)
+        {
+            LockSupport.unpark(__reader);
+        }//end if
+    }//end method wakeReader
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   never blocks, throws once the link has ended and everything before the end was read
+    */
+    @Override
+    public synchronized int available() throws IOException
+    {
+        if(_count == 0 && _ended != null)
+        {
+            throw _ended;
+        }//end if
+
+        return _count;
+    }//end method available
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] __single = new byte[1];
+        return read(__single, 0, 1) < 0 ? -1 : __single[0] & 0xFF;
+    }//end method read
+
+    /*
+    *   hands out what is buffered, waits like any stream only while nothing is
+    */
+    @Override
+    public synchronized int read(byte[] __bytes, int __offset, int __length) throws IOException
+    {
+        if(__length == 0)
+        {
+            return 0;
+        }//end if
+
+        while(_count == 0)
+        {
+            if(_ended != null || _closed)
+            {
+                return -1;
+            }//end if
+
+            try
+            {
+                wait();
+            }//end try
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading");
+            }//end catch
+        }//end while loop
+
+        int __read = Math.min(__length, _count);
+        int __firstPart = Math.min(__read, _buffer.length - _readPosition);
+        System.arraycopy(_buffer, _readPosition, __bytes, __offset, __firstPart);
+        System.arraycopy(_buffer, 0, __bytes, __offset + __firstPart, __read - __firstPart);
+
+        _readPosition = (_readPosition + __read) % _buffer.length;
+        _count -= __read;
+        notifyAll();
+
+        return __read;
+    }//end method read
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   closes the underlying stream, which ends the blocking read and the thread with it
+    */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            _closed = true;
+            notifyAll();
+        }//end synchronized
+
+        wakeReader();
+        _inputStream.close();
+    }//end method close
+}//end class ReadAheadInputStream
@@ -0,0 +1,59 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   A text message received from a peer, as shown in the message log
+*/
+public final class ReceivedMessage
+{
+    private final long _timestamp;
+    private final String _address;
+    private final String _text;
+
+    //System.nanoTime when the frame was read, to measure how long it takes to reach the screen
+    private final long _receivedNanos;
+
+    public ReceivedMessage(long __timestamp, String __address, String __text)
+    {
+        this(__timestamp, __address, __text, System.nanoTime());
+    }//end constructor
+
+    public ReceivedMessage(long __timestamp, String __address, String __text, long __receivedNanos)
+    {
+        _timestamp = __timestamp;
+        _address = __address;
+        _text = __text;
+        _receivedNanos = __receivedNanos;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    //time the message was received, in milliseconds since the epoch
+    public long getTimestamp()
+    {
+        return _timestamp;
+    }//end method getTimestamp
+
+    //address of the peer that sent the message
+    public String getAddress()
+    {
+        return _address;
+    }//end method getAddress
+
+    public String getText()
+    {
+        return _text;
+    }//end method getText
+
+    public long getReceivedNanos()
+    {
+        return _receivedNanos;
+    }//end method getReceivedNanos
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return _text;
+    }//end method toString
+}//end class ReceivedMessage
@@ -0,0 +1,115 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a ReliableChannel. The setters return the policy so several can be chained
+*   when it is created
+*/
+public class ReliabilityPolicy
+{
+    private int _windowSize = 32;
+    private int _maxWaitingFrames = 1024;
+    private long _initialRtoMillis = 300;
+    private long _minRtoMillis = 20;
+    private long _maxRtoMillis = 4000;
+    private int _maxRetransmits = 8;
+    private long _ackDelayMillis = 2;
+    private long _tickMillis = 10;
+
+    //----------------------------------------------------------------------------------------------
+
+    //frames that may be sent but not yet acknowledged, the receiver buffers as many out of order
+    public ReliabilityPolicy setWindowSize(int __windowSize)
+    {
+        _windowSize = __windowSize;
+        return this;
+    }//end method setWindowSize
+
+    //frames waiting for room in the window before sends fail with a BackpressureException
+    public ReliabilityPolicy setMaxWaitingFrames(int __maxWaitingFrames)
+    {
+        _maxWaitingFrames = __maxWaitingFrames;
+        return this;
+    }//end method setMaxWaitingFrames
+
+    //retransmit timeout until the first round trip has been measured
+    public ReliabilityPolicy setInitialRtoMillis(long __initialRtoMillis)
+    {
+        _initialRtoMillis = __initialRtoMillis;
+        return this;
+    }//end method setInitialRtoMillis
+
+    public ReliabilityPolicy setMinRtoMillis(long __minRtoMillis)
+    {
+        _minRtoMillis = __minRtoMillis;
+        return this;
+    }//end method setMinRtoMillis
+
+    public ReliabilityPolicy setMaxRtoMillis(long __maxRtoMillis)
+    {
+        _maxRtoMillis = __maxRtoMillis;
+        return this;
+    }//end method setMaxRtoMillis
+
+    //a frame retransmitted this often without an ack closes the connection
+    public ReliabilityPolicy setMaxRetransmits(int __maxRetransmits)
+    {
+        _maxRetransmits = __maxRetransmits;
+        return this;
+    }//end method setMaxRetransmits
+
+    //acks wait this long so one ack can cover a burst of frames
+    public ReliabilityPolicy setAckDelayMillis(long __ackDelayMillis)
+    {
+        _ackDelayMillis = __ackDelayMillis;
+        return this;
+    }//end method setAckDelayMillis
+
+    //how often the sender checks for frames whose timeout has run out
+    public ReliabilityPolicy setTickMillis(long __tickMillis)
+    {
+        _tickMillis = __tickMillis;
+        return this;
+    }//end method setTickMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getWindowSize()
+    {
+        return _windowSize;
+    }//end method getWindowSize
+
+    public int getMaxWaitingFrames()
+    {
+        return _maxWaitingFrames;
+    }//end method getMaxWaitingFrames
+
+    public long getInitialRtoMillis()
+    {
+        return _initialRtoMillis;
+    }//end method getInitialRtoMillis
+
+    public long getMinRtoMillis()
+    {
+        return _minRtoMillis;
+    }//end method getMinRtoMillis
+
+    public long getMaxRtoMillis()
+    {
+        return _maxRtoMillis;
+    }//end method getMaxRtoMillis
+
+    public int getMaxRetransmits()
+    {
+        return _maxRetransmits;
+    }//end method getMaxRetransmits
+
+    public long getAckDelayMillis()
+    {
+        return _ackDelayMillis;
+    }//end method getAckDelayMillis
+
+    public long getTickMillis()
+    {
+        return _tickMillis;
+    }//end method getTickMillis
+}//end class ReliabilityPolicy
@@ -0,0 +1,713 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Delivers frames exactly once and in order over a connection, and tells the sender which
+*   frames the peer has received. Frames carry sequence numbers; up to a window of them may be
+*   unacknowledged at once, so the link stays busy while acks are on their way back. The
+*   receiver answers with the next sequence number it expects plus a bitmap of the frames it
+*   already holds beyond that, and the sender only retransmits the holes, either when their
+*   timeout runs out or as soon as a later frame is acknowledged past them.
+*
+*   The channel sits between the connection and its listener: frames of other types pass
+*   through untouched. A send completes once the peer has acknowledged the frame
+*/
+public class ReliableChannel implements ConnectionListener
+{
+    //data payload: [sequence: 4 bytes][inner type][data]
+    private static final int DATA_HEADER_LENGTH = 5;
+
+    //ack payload: [next expected sequence: 4 bytes][bitmap of the window after it]
+    private static final int ACK_HEADER_LENGTH = 4;
+
+    /*
+    *   a frame that was sent and not yet acknowledged
+    */
+    private static final class Outgoing
+    {
+        final long sequence;
+        final byte[] frame;
+        final SendFuture future;
+        long sentNanos;
+        int transmissions = 0;
+        boolean acked = false;
+
+        Outgoing(long __sequence, byte[] __frame, SendFuture __future)
+        {
+            sequence = __sequence;
+            frame = __frame;
+            future = __future;
+        }//end constructor
+    }//end class Outgoing
+
+    /*
+    *   a frame that arrived ahead of a missing one
+    */
+    private static final class Incoming
+    {
+        final long sequence;
+        final byte type;
+        final byte[] data;
+
+        Incoming(long __sequence, byte __type, byte[] __data)
+        {
+            sequence = __sequence;
+            type = __type;
+            data = __data;
+        }//end constructor
+    }//end class Incoming
+
+    private final ReliabilityPolicy _policy;
+    private final ScheduledExecutorService _timer;
+    private final ConnectionListener _listener;
+    private final int _window;
+    private volatile Connection _connection = null;
+
+    //sender state, guarded by this
+    private final Outgoing[] _inFlight;
+    private final ArrayDeque<Outgoing> _waiting = new ArrayDeque<>();
+    private long _sendBase = 0;
+    private long _nextSequence = 0;
+    private long _srttNanos = -1;
+    private long _rttVarNanos = 0;
+    private long _rtoNanos;
+    private IOException _closedCause = null;
+    private ScheduledFuture<?> _tick = null;
+
+    //receiver state, guarded by _receiveLock
+    private final Object _receiveLock = new Object();
+    private final Incoming[] _reorder;
+    private final Frame _deliveryFrame = new Frame();
+    private long _expected = 0;
+    private boolean _ackScheduled = false;
+
+    //statistics, guarded by the lock of the side they count
+    private long _transmissions = 0;
+    private long _retransmissions = 0;
+    private long _acked = 0;
+    private long _delivered = 0;
+    private long _duplicates = 0;
+
+    public ReliableChannel(ReliabilityPolicy __policy, ScheduledExecutorService __timer, ConnectionListener __listener)
+    {
+        _policy = __policy;
+        _timer = __timer;
+        _listener = __listener;
+        _window = __policy.getWindowSize();
+        _inFlight = new Outgoing[_window];
+        _reorder = new Incoming[_window];
+        _rtoNanos = TimeUnit.MILLISECONDS.toNanos(__policy.getInitialRtoMillis());
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues a frame for reliable delivery, it is sent as soon as the window has room. The
+    *   future completes once the peer has acknowledged it and fails if the connection goes down
+    *   first
+    */
+    public SendFuture send(byte __type, byte[] __payload)
+    {
+        SendFuture __future = new SendFuture();
+
+        synchronized (this)
+        {
+            if(_closedCause != null)
+            {
+                __future.fail(_closedCause);
+                return __future;
+            }//end if
+
+            if(_waiting.size() >= _policy.getMaxWaitingFrames())
+            {
+                __future.fail(new BackpressureException("reliable send window and queue are full"));
+                return __future;
+            }//end if
+
+            long __sequence = _nextSequence++;
+            byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + DATA_HEADER_LENGTH + __payload.length];
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_RELIABLE_DATA, DATA_HEADER_LENGTH + __payload.length);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, (int) __sequence);
+            __frame[FrameEncoder.HEADER_LENGTH + 4] = __type;
+            System.arraycopy(__payload, 0, __frame, FrameEncoder.HEADER_LENGTH + DATA_HEADER_LENGTH, __payload.length);
+
+            Outgoing __outgoing = new Outgoing(__sequence, __frame, __future);
+
+            if(__sequence - _sendBase < _window && _waiting.isEmpty())
+            {
+                _inFlight[slot(__sequence)] = __outgoing;
+                transmit(__outgoing);
+            }//end if
+            else
+            {
+                _waiting.add(__outgoing);
+            }//end else
+        }//end synchronized
+
+        return __future;
+    }//end method send
+
+    public SendFuture send(String __message)
+    {
+        return send(Frame.TYPE_TEXT, __message.getBytes(Frame.UTF_8));
+    }//end method send
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   writes the frame to the connection, called with the lock held. A frame the write queue
+    *   refuses counts as lost and goes out again when its timeout runs out
+    */
+    private void transmit(Outgoing __outgoing)
+    {
+        Connection __connection = _connection;
+        if(__connection == null)
+        {
+            //sent once the connection is up
+            return;
+        }//end if
+
+        if(__outgoing.transmissions > 0)
+        {
+            _retransmissions++;
+        }//end if
+
+        __outgoing.sentNanos = System.nanoTime();
+        __outgoing.transmissions++;
+        _transmissions++;
+        __connection.sendFrameWithoutBlocking(__outgoing.frame);
+    }//end method transmit
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   processes an ack from the peer
+    */
+    private void onAck(Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < ACK_HEADER_LENGTH)
+        {
+            throw new IOException("reliable ack too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        ArrayList<Outgoing> __completed = new ArrayList<>();
+
+        synchronized (this)
+        {
+            long __now = System.nanoTime();
+            long __cumulative = unwrap(readInt(__buffer, __offset), _sendBase);
+
+            //ignore acks that claim frames which were never sent
+            if(__cumulative > _nextSequence)
+            {
+                throw new IOException("reliable ack for unsent frame " + __cumulative);
+            }//end if
+
+            for(long __sequence = _sendBase; __sequence < __cumulative; __sequence++)
+            {
+                acknowledge(__sequence, __now, __completed);
+            }//end for loop
+
+            //selective acks for frames the peer holds beyond the first gap
+            long __highestSacked = -1;
+            int __bits = (__frame.getLength() - ACK_HEADER_LENGTH) * 8;
+            for(int i = 0; i < __bits; i++)
+            {
+                if((__buffer[__offset + ACK_HEADER_LENGTH + (i >> 3)] & (1 << (i & 7))) != 0)
+                {
+                    long __sequence = __cumulative + 1 + i;
+                    if(__sequence < _nextSequence)
+                    {
+                        acknowledge(__sequence, __now, __completed);
+                        __highestSacked = __sequence;
+                    }//end if
+                }//end if
+            }//end for loop
+
+            //a later frame got through, so the holes before it were most likely lost
+            if(__highestSacked >= 0 && _srttNanos >= 0)
+            {
+                for(long __sequence = __cumulative; __sequence < __highestSacked; __sequence++)
+                {
+                    Outgoing __hole = _inFlight[slot(__sequence)];
+                    if(__hole != null && !__hole.acked && __hole.sequence == __sequence && __now - __hole.sentNanos > _srttNanos)
+                    {
+                        transmit(__hole);
+                    }//end if
+                }//end for loop
+            }//end if
+
+            slideWindow();
+        }//end synchronized
+
+        for(Outgoing __outgoing : __completed)
+        {
+            __outgoing.future.complete();
+        }//end for loop
+    }//end method onAck
+
+    //----------------------------------------------------------------------------------------------
+
+    //called with the lock held
+    private void acknowledge(long __sequence, long __now, ArrayList<Outgoing> __completed)
+    {
+        if(__sequence < _sendBase)
+        {
+            return;
+        }//end if
+
+        Outgoing __outgoing = _inFlight[slot(__sequence)];
+        if(__outgoing == null || __outgoing.sequence != __sequence || __outgoing.acked)
+        {
+            return;
+        }//end if
+
+        __outgoing.acked = true;
+        _acked++;
+        __completed.add(__outgoing);
+
+        //only frames sent once give a round trip that is not ambiguous
+        if(__outgoing.transmissions == 1)
+        {
+            sampleRtt(__now - __outgoing.sentNanos);
+        }//end if
+    }//end method acknowledge
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   moves the window past the acknowledged frames and sends waiting ones into the room made,
+    *   called with the lock held
+    */
+    private void slideWindow()
+    {
+        while(_sendBase < _nextSequence)
+        {
+            int __slot = slot(_sendBase);
+            Outgoing __outgoing = _inFlight[__slot];
+
+            if(__outgoing == null || !__outgoing.acked)
+            {
+                break;
+            }//end if
+
+            _inFlight[__slot] = null;
+            _sendBase++;
+        }//end while loop
+
+        while(!_waiting.isEmpty() && _waiting.peek().sequence - _sendBase < _window)
+        {
+            Outgoing __outgoing = _waiting.poll();
+            _inFlight[slot(__outgoing.sequence)] = __outgoing;
+            transmit(__outgoing);
+        }//end while loop
+    }//end method slideWindow
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   smoothed round trip and its variation, the timeout is their sum as in TCP
+    */
+    private void sampleRtt(long __rttNanos)
+    {
+        if(_srttNanos < 0)
+        {
+            _srttNanos = __rttNanos;
+            _rttVarNanos = __rttNanos / 2;
+        }//end if
+        else
+        {
+            _rttVarNanos = (3 * _rttVarNanos + Math.abs(_srttNanos - __rttNanos)) / 4;
+            _srttNanos = (7 * _srttNanos + __rttNanos) / 8;
+        }//end else
+
+        _rtoNanos = clampRto(_srttNanos + 4 * _rttVarNanos);
+    }//end method sampleRtt
+
+    private long clampRto(long __rtoNanos)
+    {
+        long __min = TimeUnit.MILLISECONDS.toNanos(_policy.getMinRtoMillis());
+        long __max = TimeUnit.MILLISECONDS.toNanos(_policy.getMaxRtoMillis());
+        return Math.max(__min, Math.min(__max, __rtoNanos));
+    }//end method clampRto
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs on the timer, retransmits frames whose timeout ran out
+    */
+    private void tick()
+    {
+        Connection __giveUp = null;
+
+        synchronized (this)
+        {
+            if(_closedCause != null)
+            {
+                return;
+            }//end if
+
+            long __now = System.nanoTime();
+            boolean __backedOff = false;
+
+            for(long __sequence = _sendBase; __sequence < _nextSequence && __sequence - _sendBase < _window; __sequence++)
+            {
+                Outgoing __outgoing = _inFlight[slot(__sequence)];
+                if(__outgoing == null || __outgoing.acked)
+                {
+                    continue;
+                }//end if
+
+                if(__outgoing.transmissions == 0)
+                {
+                    transmit(__outgoing);
+                }//end if
+                else if(__now - __outgoing.sentNanos >= _rtoNanos)
+                {
+                    if(__outgoing.transmissions > _policy.getMaxRetransmits())
+                    {
+                        __giveUp = _connection;
+                        break;
+                    }//end if
+
+                    transmit(__outgoing);
+
+                    //back off once per tick however many frames timed out together
+                    if(!__backedOff)
+                    {
+                        _rtoNanos = clampRto(_rtoNanos * 2);
+                        __backedOff = true;
+                    }//end if
+                }//end else if
+            }//end for loop
+        }//end synchronized
+
+        if(__giveUp != null)
+        {
+            //the listener hears onDisconnected and every pending send fails
+            __giveUp.close();
+        }//end if
+    }//end method tick
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   processes a data frame on the reader thread, delivers it and any frames it unblocks in order
+    */
+    private void onData(Connection __connection, Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < DATA_HEADER_LENGTH)
+        {
+            throw new IOException("reliable frame too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+
+        synchronized (_receiveLock)
+        {
+            long __sequence = unwrap(readInt(__buffer, __offset), _expected);
+            byte __type = __buffer[__offset + 4];
+            int __dataOffset = __offset + DATA_HEADER_LENGTH;
+            int __dataLength = __frame.getLength() - DATA_HEADER_LENGTH;
+
+            if(__sequence < _expected || __sequence - _expected >= _window)
+            {
+                //a retransmission of something we have, or beyond what we can hold; the ack sorts it out
+                _duplicates++;
+            }//end if
+            else if(__sequence == _expected)
+            {
+                deliver(__connection, __type, __buffer, __dataOffset, __dataLength);
+
+                //frames that were waiting for this one
+                Incoming __next;
+                while((__next = _reorder[slot(_expected)]) != null && __next.sequence == _expected)
+                {
+                    _reorder[slot(_expected)] = null;
+                    deliver(__connection, __next.type, __next.data, 0, __next.data.length);
+                }//end while loop
+            }//end else if
+            else if(_reorder[slot(__sequence)] == null)
+            {
+                byte[] __data = new byte[__dataLength];
+                System.arraycopy(__buffer, __dataOffset, __data, 0, __dataLength);
+                _reorder[slot(__sequence)] = new Incoming(__sequence, __type, __data);
+            }//end else if
+            else
+            {
+                _duplicates++;
+            }//end else
+
+            scheduleAck();
+        }//end synchronized
+    }//end method onData
+
+    //called with the receive lock held
+    private void deliver(Connection __connection, byte __type, byte[] __buffer, int __offset, int __length)
+    {
+        _expected++;
+        _delivered++;
+        _deliveryFrame.set(__type, __buffer, __offset, __length);
+        _listener.onFrameReceived(__connection, _deliveryFrame);
+    }//end method deliver
+
+    //----------------------------------------------------------------------------------------------
+
+    //called with the receive lock held
+    private void scheduleAck()
+    {
+        if(_ackScheduled)
+        {
+            return;
+        }//end if
+
+        _ackScheduled = true;
+        _timer.schedule(_sendAckTask, _policy.getAckDelayMillis(), TimeUnit.MILLISECONDS);
+    }//end method scheduleAck
+
+    private final Runnable _sendAckTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            sendAck();
+        }//end method run
+    };
+
+    private void sendAck()
+    {
+        byte[] __frame;
+
+        synchronized (_receiveLock)
+        {
+            _ackScheduled = false;
+
+            int __bitmapLength = (_window + 7) / 8;
+            __frame = new byte[FrameEncoder.HEADER_LENGTH + ACK_HEADER_LENGTH + __bitmapLength];
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_RELIABLE_ACK, ACK_HEADER_LENGTH + __bitmapLength);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, (int) _expected);
+
+            //bit i stands for _expected + 1 + i
+            for(int i = 0; i < _window - 1; i++)
+            {
+                Incoming __held = _reorder[slot(_expected + 1 + i)];
+                if(__held != null && __held.sequence == _expected + 1 + i)
+                {
+                    __frame[FrameEncoder.HEADER_LENGTH + ACK_HEADER_LENGTH + (i >> 3)] |= (byte) (1 << (i & 7));
+                }//end if
+            }//end for loop
+        }//end synchronized
+
+        Connection __connection = _connection;
+        if(__connection != null)
+        {
+            __connection.sendFrameWithoutBlocking(__frame);
+        }//end if
+    }//end method sendAck
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onConnected(Connection __connection)
+    {
+        synchronized (this)
+        {
+            _connection = __connection;
+
+            //frames sent before the link was up go out now
+            for(long __sequence = _sendBase; __sequence < _nextSequence && __sequence - _sendBase < _window; __sequence++)
+            {
+                Outgoing __outgoing = _inFlight[slot(__sequence)];
+                if(__outgoing != null && __outgoing.transmissions == 0)
+                {
+                    transmit(__outgoing);
+                }//end if
+            }//end for loop
+
+            _tick = _timer.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    tick();
+                }//end method run
+            }, _policy.getTickMillis(), _policy.getTickMillis(), TimeUnit.MILLISECONDS);
+        }//end synchronized
+
+        _listener.onConnected(__connection);
+    }//end method onConnected
+
+    @Override
+    public void onConnectionFailed(Connection __connection, IOException __cause)
+    {
+        failAll(__cause);
+        _listener.onConnectionFailed(__connection, __cause);
+    }//end method onConnectionFailed
+
+    @Override
+    public void onFrameReceived(Connection __connection, Frame __frame)
+    {
+        try
+        {
+            if(__frame.getType() == Frame.TYPE_RELIABLE_DATA)
+            {
+                onData(__connection, __frame);
+            }//end if
+            else if(__frame.getType() == Frame.TYPE_RELIABLE_ACK)
+            {
+                onAck(__frame);
+            }//end else if
+            else
+            {
+                _listener.onFrameReceived(__connection, __frame);
+            }//end else
+        }//end try
+        catch (IOException e)
+        {
+            //the peer broke the protocol, nothing it sends can be trusted any more
+            __connection.getMetrics().recordError(e);
+            __connection.close();
+        }//end catch
+    }//end method onFrameReceived
+
+    @Override
+    public void onDisconnected(Connection __connection)
+    {
+        failAll(new IOException("connection lost before the peer acknowledged the frame"));
+        _listener.onDisconnected(__connection);
+    }//end method onDisconnected
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   fails every frame the peer has not acknowledged, their futures tell the caller exactly
+    *   what did not arrive
+    */
+    private void failAll(IOException __cause)
+    {
+        ArrayList<Outgoing> __failed = new ArrayList<>();
+
+        synchronized (this)
+        {
+            if(_closedCause != null)
+            {
+                return;
+            }//end if
+
+            _closedCause = __cause;
+
+            if(_tick != null)
+            {
+                _tick.cancel(false);
+            }//end if
+
+            for(int i = 0; i < _window; i++)
+            {
+                if(_inFlight[i] != null && !_inFlight[i].acked)
+                {
+                    __failed.add(_inFlight[i]);
+                }//end if
+                _inFlight[i] = null;
+            }//end for loop
+
+            __failed.addAll(_waiting);
+            _waiting.clear();
+        }//end synchronized
+
+        for(Outgoing __outgoing : __failed)
+        {
+            __outgoing.future.fail(__cause);
+        }//end for loop
+    }//end method failAll
+
+    //----------------------------------------------------------------------------------------------
+
+    private int slot(long __sequence)
+    {
+        return (int) (__sequence % _window);
+    }//end method slot
+
+    /*
+    *   sequence numbers travel as 32 bits, this restores the full number nearest to __reference
+    */
+    private static long unwrap(int __wire, long __reference)
+    {
+        return __reference + (__wire - (int) __reference);
+    }//end method unwrap
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+
+    //----------------------------------------------------------------------------------------------
+
+    public Connection getConnection()
+    {
+        return _connection;
+    }//end method getConnection
+
+    //frames written, retransmissions included
+    public synchronized long getTransmissionCount()
+    {
+        return _transmissions;
+    }//end method getTransmissionCount
+
+    public synchronized long getRetransmissionCount()
+    {
+        return _retransmissions;
+    }//end method getRetransmissionCount
+
+    //frames the peer has acknowledged
+    public synchronized long getAckedCount()
+    {
+        return _acked;
+    }//end method getAckedCount
+
+    //frames sent and not yet acknowledged, waiting ones included
+    public synchronized int getUnackedCount()
+    {
+        return (int) (_nextSequence - _sendBase);
+    }//end method getUnackedCount
+
+    public synchronized long getRtoMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_rtoNanos);
+    }//end method getRtoMillis
+
+    //frames passed on to the listener in order
+    public long getDeliveredCount()
+    {
+        synchronized (_receiveLock)
+        {
+            return _delivered;
+        }//end synchronized
+    }//end method getDeliveredCount
+
+    //frames received that were already delivered or held
+    public long getDuplicateCount()
+    {
+        synchronized (_receiveLock)
+        {
+            return _duplicates;
+        }//end synchronized
+    }//end method getDuplicateCount
+}//end class ReliableChannel
@@ -0,0 +1,878 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Keeps a conversation with a peer going across link drops. The session has a random id and
+*   numbers the frames it sends in each direction. Sent frames are kept in a bounded buffer
+*   until the peer acknowledges them, which it does every few frames.
+*
+*   When the link drops, the side that dialed dials again, and the other side's
+*   SessionDirectory hands the new link to the same session. Each side then sends one resume
+*   frame with the session id and the next sequence number it expects. Frames the peer already
+*   has are dropped from the buffer and only the rest are sent again, so a blip costs one
+*   handshake instead of starting over. The listener hears onConnected once, for the first
+*   link, and onDisconnected when the session ends: closed by the caller, the peer cannot be
+*   resumed, or the link stayed down longer than the resume timeout.
+*
+*   Frames of other types pass through untouched and are not replayed
+*/
+public class ResumableSession implements ConnectionListener
+{
+    //resume payload: [session id: 8 bytes][next expected sequence: 8 bytes]
+    static final int RESUME_LENGTH = 16;
+
+    //data payload: [sequence: 4 bytes][inner type][data]
+    private static final int DATA_HEADER_LENGTH = 5;
+
+    //ack payload: [next expected sequence: 4 bytes]
+    private static final int ACK_LENGTH = 4;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /*
+    *   a frame kept until the peer acknowledges it
+    */
+    private static final class Outgoing
+    {
+        final long sequence;
+        final byte[] frame;
+        final SendFuture future;
+        int transmissions = 0;
+
+        Outgoing(long __sequence, byte[] __frame, SendFuture __future)
+        {
+            sequence = __sequence;
+            frame = __frame;
+            future = __future;
+        }//end constructor
+    }//end class Outgoing
+
+    private final long _sessionId;
+    private final SessionPolicy _policy;
+    private final ScheduledExecutorService _timer;
+    private final ConnectionListener _listener;
+    private final String _address;
+
+    //the side that dials has an engine and a factory to dial again with, the other side a directory
+    private final ConnectionEngine _engine;
+    private final TransportFactory _transportFactory;
+    private final SessionDirectory _directory;
+
+    //link state, guarded by this
+    private volatile Connection _connection = null;
+    private Connection _lastConnection = null;
+    private boolean _resumed = false;
+    private boolean _established = false;
+    private IOException _endCause = null;
+    private ScheduledFuture<?> _resumeDeadline = null;
+
+    //sender state, guarded by this
+    private final ArrayDeque<Outgoing> _unacked = new ArrayDeque<>();
+    private long _unackedBytes = 0;
+    private long _sendBase = 0;
+    private long _nextSequence = 0;
+
+    //receiver state, guarded by _receiveLock
+    private final Object _receiveLock = new Object();
+    private final Frame _deliveryFrame = new Frame();
+    private long _expected = 0;
+    private long _lastAcked = 0;
+    private boolean _ackScheduled = false;
+
+    //statistics, guarded by the lock of the side they count
+    private long _resumes = 0;
+    private long _transmissions = 0;
+    private long _replayed = 0;
+    private long _delivered = 0;
+    private long _duplicates = 0;
+
+    //a new session on the side that dials
+    ResumableSession(ConnectionEngine __engine, TransportFactory __transportFactory, SessionPolicy __policy,
+                     ScheduledExecutorService __timer, ConnectionListener __listener)
+    {
+        this(RANDOM.nextLong(), __transportFactory.getAddress(), __engine, __transportFactory, null, __policy, __timer, __listener);
+    }//end constructor
+
+    //a session a peer asked for, on the side that accepts
+    ResumableSession(long __sessionId, String __address, SessionDirectory __directory, SessionPolicy __policy,
+                     ScheduledExecutorService __timer, ConnectionListener __listener)
+    {
+        this(__sessionId, __address, null, null, __directory, __policy, __timer, __listener);
+    }//end constructor
+
+    private ResumableSession(long __sessionId, String __address, ConnectionEngine __engine, TransportFactory __transportFactory,
+                             SessionDirectory __directory, SessionPolicy __policy, ScheduledExecutorService __timer,
+                             ConnectionListener __listener)
+    {
+        _sessionId = __sessionId;
+        _address = __address;
+        _engine = __engine;
+        _transportFactory = __transportFactory;
+        _directory = __directory;
+        _policy = __policy;
+        _timer = __timer;
+        _listener = __listener;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   numbers the frame and keeps it until the peer acknowledges it. While the link is down it
+    *   only waits in the buffer and goes out once the session is resumed. The future completes
+    *   once the peer has acknowledged the frame and fails if the session ends first
+    */
+    public SendFuture send(byte __type, byte[] __payload)
+    {
+        SendFuture __future = new SendFuture();
+
+        synchronized (this)
+        {
+            if(_endCause != null)
+            {
+                __future.fail(_endCause);
+                return __future;
+            }//end if
+
+            int __frameLength = FrameEncoder.HEADER_LENGTH + DATA_HEADER_LENGTH + __payload.length;
+            if(_unacked.size() >= _policy.getMaxUnackedFrames() || _unackedBytes + __frameLength > _policy.getMaxUnackedBytes())
+            {
+                __future.fail(new BackpressureException("session retransmit buffer is full"));
+                return __future;
+            }//end if
+
+            long __sequence = _nextSequence++;
+            byte[] __frame = new byte[__frameLength];
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_SESSION_DATA, DATA_HEADER_LENGTH + __payload.length);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, (int) __sequence);
+            __frame[FrameEncoder.HEADER_LENGTH + 4] = __type;
+            System.arraycopy(__payload, 0, __frame, FrameEncoder.HEADER_LENGTH + DATA_HEADER_LENGTH, __payload.length);
+
+            Outgoing __outgoing = new Outgoing(__sequence, __frame, __future);
+            _unacked.add(__outgoing);
+            _unackedBytes += __frameLength;
+
+            if(_resumed)
+            {
+                transmit(__outgoing);
+            }//end if
+        }//end synchronized
+
+        return __future;
+    }//end method send
+
+    public SendFuture send(String __message)
+    {
+        return send(Frame.TYPE_TEXT, __message.getBytes(Frame.UTF_8));
+    }//end method send
+
+    /*
+    *   sends one frame through every session like send(byte, byte[]), so a peer whose link drops
+    *   meanwhile gets it after the resume. A peer completes once it has acknowledged the frame,
+    *   and fails when its buffer is full or its session ends
+    */
+    public static BroadcastResult broadcast(Collection<ResumableSession> __sessions, byte __type, byte[] __payload)
+    {
+        BroadcastResult __result = new BroadcastResult(__sessions.size());
+
+        for(ResumableSession __session : __sessions)
+        {
+            __result.track(__session.getAddress(), __session.send(__type, __payload));
+        }//end for loop
+
+        return __result;
+    }//end method broadcast
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   ends the session for good, frames the peer has not acknowledged fail
+    */
+    public void close()
+    {
+        end(new IOException("session closed"));
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   writes the frame to the current link, called with the lock held. A frame the write queue
+    *   refuses would leave a hole the peer cannot skip, so the link is dropped instead and the
+    *   frame goes out again after the next handshake
+    */
+    private void transmit(Outgoing __outgoing)
+    {
+        Connection __connection = _connection;
+
+        if(__outgoing.transmissions > 0)
+        {
+            _replayed++;
+        }//end if
+
+        __outgoing.transmissions++;
+        _transmissions++;
+
+        SendFuture __write = __connection.sendFrameWithoutBlocking(__outgoing.frame);
+        if(__write.isDone() && !__write.isSuccess())
+        {
+            _resumed = false;
+            __connection.close();
+        }//end if
+    }//end method transmit
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the peer's side of the handshake: drop what it already has and send the rest again
+    */
+    private void onResume(Connection __connection, Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < RESUME_LENGTH)
+        {
+            throw new IOException("session resume too short");
+        }//end if
+
+        if(readSessionId(__frame) != _sessionId)
+        {
+            throw new IOException("resume for another session");
+        }//end if
+
+        long __peerExpected = readLong(__frame.getBuffer(), __frame.getOffset() + 8);
+        ArrayList<Outgoing> __completed = new ArrayList<>();
+        IOException __unresumable = null;
+        boolean __first;
+
+        synchronized (this)
+        {
+            if(__connection != _connection || _endCause != null || _resumed)
+            {
+                return;
+            }//end if
+
+            if(__peerExpected < _sendBase || __peerExpected > _nextSequence)
+            {
+                __unresumable = new IOException("peer expects frame " + __peerExpected + " but frames " + _sendBase + " to "
+                        + _nextSequence + " are held");
+                __first = false;
+            }//end if
+            else
+            {
+                acknowledge(__peerExpected, __completed);
+
+                if(_resumeDeadline != null)
+                {
+                    _resumeDeadline.cancel(false);
+                    _resumeDeadline = null;
+                }//end if
+
+                //only what the peer is missing goes out again
+                _resumed = true;
+                for(Outgoing __outgoing : _unacked)
+                {
+                    if(!_resumed)
+                    {
+                        break;
+                    }//end if
+
+                    transmit(__outgoing);
+                }//end for loop
+
+                __first = !_established;
+                _established = true;
+                if(!__first)
+                {
+                    _resumes++;
+                }//end if
+            }//end else
+        }//end synchronized
+
+        if(__unresumable != null)
+        {
+            end(__unresumable);
+            return;
+        }//end if
+
+        complete(__completed);
+
+        if(__first)
+        {
+            _listener.onConnected(__connection);
+        }//end if
+    }//end method onResume
+
+    //----------------------------------------------------------------------------------------------
+
+    private void onAck(Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < ACK_LENGTH)
+        {
+            throw new IOException("session ack too short");
+        }//end if
+
+        ArrayList<Outgoing> __completed = new ArrayList<>();
+
+        synchronized (this)
+        {
+            long __cumulative = unwrap(readInt(__frame.getBuffer(), __frame.getOffset()), _sendBase);
+
+            if(__cumulative > _nextSequence)
+            {
+                throw new IOException("session ack for unsent frame " + __cumulative);
+            }//end if
+
+            acknowledge(__cumulative, __completed);
+        }//end synchronized
+
+        complete(__completed);
+    }//end method onAck
+
+    //lets go of every frame before __cumulative, called with the lock held
+    private void acknowledge(long __cumulative, ArrayList<Outgoing> __completed)
+    {
+        while(!_unacked.isEmpty() && _unacked.peek().sequence < __cumulative)
+        {
+            Outgoing __outgoing = _unacked.poll();
+            _unackedBytes -= __outgoing.frame.length;
+            __completed.add(__outgoing);
+        }//end while loop
+
+        _sendBase = Math.max(_sendBase, __cumulative);
+    }//end method acknowledge
+
+    private static void complete(ArrayList<Outgoing> __completed)
+    {
+        for(int i = 0; i < __completed.size(); i++)
+        {
+            __completed.get(i).future.complete();
+        }//end for loop
+    }//end method complete
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   processes a data frame on the reader thread. The link is an ordered stream and a resume
+    *   starts exactly where this side stopped, so anything but the next frame is either a
+    *   replay of one already delivered or a sign the link lost data, which drops it
+    */
+    private void onData(Connection __connection, Frame __frame) throws IOException
+    {
+        if(__frame.getLength() < DATA_HEADER_LENGTH)
+        {
+            throw new IOException("session frame too short");
+        }//end if
+
+        byte[] __buffer = __frame.getBuffer();
+        int __offset = __frame.getOffset();
+        boolean __ackNow = false;
+        boolean __timerGone = false;
+
+        synchronized (_receiveLock)
+        {
+            long __sequence = unwrap(readInt(__buffer, __offset), _expected);
+
+            if(__sequence < _expected)
+            {
+                _duplicates++;
+                return;
+            }//end if
+
+            if(__sequence > _expected)
+            {
+                throw new IOException("session frame " + __sequence + " arrived while " + _expected + " was expected");
+            }//end if
+
+            _expected++;
+            _delivered++;
+            _deliveryFrame.set(__buffer[__offset + 4], __buffer, __offset + DATA_HEADER_LENGTH, __frame.getLength() - DATA_HEADER_LENGTH);
+            _listener.onFrameReceived(__connection, _deliveryFrame);
+
+            if(_expected - _lastAcked >= _policy.getAckEveryFrames())
+            {
+                __ackNow = true;
+            }//end if
+            else if(!_ackScheduled)
+            {
+                _ackScheduled = true;
+                __timerGone = schedule(_sendAckTask, _policy.getAckDelayMillis()) == null;
+            }//end else if
+        }//end synchronized
+
+        if(__timerGone)
+        {
+            endForShutdown();
+        }//end if
+        else if(__ackNow)
+        {
+            sendAck();
+        }//end if
+    }//end method onData
+
+    //----------------------------------------------------------------------------------------------
+
+    private final Runnable _sendAckTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            sendAck();
+        }//end method run
+    };
+
+    /*
+    *   tells the peer how far this side got. Acks only go out on a resumed link, the resume
+    *   frame carries the same number for a new one. An ack the write queue refuses is tried
+    *   again after the ack delay, otherwise a peer whose buffer is full would wait for frames
+    *   it cannot send
+    */
+    private void sendAck()
+    {
+        byte[] __frame;
+        long __previous;
+        long __acked;
+
+        synchronized (_receiveLock)
+        {
+            _ackScheduled = false;
+
+            if(_expected == _lastAcked)
+            {
+                return;
+            }//end if
+
+            __previous = _lastAcked;
+            __acked = _expected;
+            _lastAcked = __acked;
+            __frame = new byte[FrameEncoder.HEADER_LENGTH + ACK_LENGTH];
+            FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_SESSION_ACK, ACK_LENGTH);
+            writeInt(__frame, FrameEncoder.HEADER_LENGTH, (int) __acked);
+        }//end synchronized
+
+        Connection __connection;
+        synchronized (this)
+        {
+            __connection = _resumed ? _connection : null;
+        }//end synchronized
+
+        if(__connection == null)
+        {
+            return;
+        }//end if
+
+        SendFuture __write = __connection.sendFrameWithoutBlocking(__frame);
+        if(__write.isDone() && __write.getFailure() instanceof BackpressureException)
+        {
+            boolean __timerGone = false;
+
+            synchronized (_receiveLock)
+            {
+                //nothing newer went out meanwhile, so the peer still only has the old position
+                if(_lastAcked == __acked)
+                {
+                    _lastAcked = __previous;
+                }//end if
+
+                if(!_ackScheduled)
+                {
+                    _ackScheduled = true;
+                    __timerGone = schedule(_sendAckTask, _policy.getAckDelayMillis()) == null;
+                }//end if
+            }//end synchronized
+
+            if(__timerGone)
+            {
+                endForShutdown();
+            }//end if
+        }//end if
+    }//end method sendAck
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onConnected(Connection __connection)
+    {
+        boolean __ended;
+        Connection __stale = null;
+
+        synchronized (this)
+        {
+            __ended = _endCause != null;
+
+            if(!__ended)
+            {
+                //a link the peer gave up on before this side noticed
+                __stale = _connection;
+                _connection = __connection;
+                _lastConnection = __connection;
+                _resumed = false;
+            }//end if
+        }//end synchronized
+
+        if(__ended)
+        {
+            __connection.close();
+            return;
+        }//end if
+
+        if(__stale != null)
+        {
+            __stale.close();
+        }//end if
+
+        byte[] __frame = new byte[FrameEncoder.HEADER_LENGTH + RESUME_LENGTH];
+        FrameEncoder.writeHeader(__frame, 0, Frame.TYPE_SESSION_RESUME, RESUME_LENGTH);
+        writeLong(__frame, FrameEncoder.HEADER_LENGTH, _sessionId);
+
+        synchronized (_receiveLock)
+        {
+            writeLong(__frame, FrameEncoder.HEADER_LENGTH + 8, _expected);
+            _lastAcked = _expected;
+        }//end synchronized
+
+        __connection.sendFrameWithoutBlocking(__frame);
+    }//end method onConnected
+
+    @Override
+    public void onConnectionFailed(Connection __connection, IOException __cause)
+    {
+        boolean __retry;
+
+        synchronized (this)
+        {
+            if(_endCause != null)
+            {
+                return;
+            }//end if
+
+            _lastConnection = __connection;
+            __retry = _established;
+        }//end synchronized
+
+        //the engine already retried the first connect as its policy says
+        if(__retry)
+        {
+            scheduleReconnect();
+        }//end if
+        else
+        {
+            end(__cause);
+        }//end else
+    }//end method onConnectionFailed
+
+    @Override
+    public void onFrameReceived(Connection __connection, Frame __frame)
+    {
+        try
+        {
+            switch (__frame.getType())
+            {
+                case Frame.TYPE_SESSION_RESUME:
+                    onResume(__connection, __frame);
+                    break;
+                case Frame.TYPE_SESSION_DATA:
+                    if(__connection == _connection)
+                    {
+                        onData(__connection, __frame);
+                    }//end if
+                    break;
+                case Frame.TYPE_SESSION_ACK:
+                    onAck(__frame);
+                    break;
+                default:
+                    _listener.onFrameReceived(__connection, __frame);
+                    break;
+            }//end switch
+        }//end try
+        catch (IOException e)
+        {
+            //the link cannot be trusted any more, a fresh one resumes from the last good frame
+            __connection.getMetrics().recordError(e);
+            __connection.close();
+        }//end catch
+    }//end method onFrameReceived
+
+    @Override
+    public void onDisconnected(Connection __connection)
+    {
+        boolean __established;
+        boolean __timerGone = false;
+
+        synchronized (this)
+        {
+            if(__connection != _connection || _endCause != null)
+            {
+                return;
+            }//end if
+
+            _connection = null;
+            _resumed = false;
+            __established = _established;
+
+            if(__established && _resumeDeadline == null)
+            {
+                _resumeDeadline = schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        end(new IOException("link did not come back within " + _policy.getResumeTimeoutMillis() + " ms"));
+                    }//end method run
+                }, _policy.getResumeTimeoutMillis());
+                __timerGone = _resumeDeadline == null;
+            }//end if
+        }//end synchronized
+
+        if(!__established)
+        {
+            end(new IOException("link dropped before the session was set up"));
+        }//end if
+        else if(__timerGone)
+        {
+            endForShutdown();
+        }//end else if
+        else
+        {
+            scheduleReconnect();
+        }//end else
+    }//end method onDisconnected
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   dials again after the reconnect delay, only the side that dialed in the first place does
+    */
+    private void scheduleReconnect()
+    {
+        if(_engine == null)
+        {
+            return;
+        }//end if
+
+        ScheduledFuture<?> __reconnect = schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (ResumableSession.this)
+                {
+                    if(_endCause != null || _connection != null)
+                    {
+                        return;
+                    }//end if
+                }//end synchronized
+
+                _engine.connect(_transportFactory, ResumableSession.this);
+            }//end method run
+        }, _policy.getReconnectDelayMillis());
+
+        if(__reconnect == null)
+        {
+            endForShutdown();
+        }//end if
+    }//end method scheduleReconnect
+
+    /*
+    *   null once the timer has been shut down. Callers may hold a lock, so they end the session
+    *   with endForShutdown after letting go of it
+    */
+    private ScheduledFuture<?> schedule(Runnable __task, long __delayMillis)
+    {
+        try
+        {
+            return _timer.schedule(__task, __delayMillis, TimeUnit.MILLISECONDS);
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            return null;
+        }//end catch
+    }//end method schedule
+
+    //a session cannot go on without the engine's timer
+    private void endForShutdown()
+    {
+        end(new IOException("connection engine is shut down"));
+    }//end method endForShutdown
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   ends the session once: the link is closed, every frame not acknowledged fails and the
+    *   listener hears onDisconnected, or onConnectionFailed if the session never got going
+    */
+    private void end(IOException __cause)
+    {
+        Connection __connection;
+        Connection __lastConnection;
+        boolean __established;
+        ArrayList<Outgoing> __failed;
+
+        synchronized (this)
+        {
+            if(_endCause != null)
+            {
+                return;
+            }//end if
+
+            _endCause = __cause;
+            __connection = _connection;
+            __lastConnection = _lastConnection;
+            __established = _established;
+            _connection = null;
+            _resumed = false;
+
+            if(_resumeDeadline != null)
+            {
+                _resumeDeadline.cancel(false);
+                _resumeDeadline = null;
+            }//end if
+
+            __failed = new ArrayList<>(_unacked);
+            _unacked.clear();
+            _unackedBytes = 0;
+        }//end synchronized
+
+        if(__connection != null)
+        {
+            __connection.close();
+        }//end if
+
+        for(Outgoing __outgoing : __failed)
+        {
+            __outgoing.future.fail(__cause);
+        }//end for loop
+
+        if(_directory != null)
+        {
+            _directory.remove(this);
+        }//end if
+
+        if(__established)
+        {
+            _listener.onDisconnected(__lastConnection);
+        }//end if
+        else
+        {
+            _listener.onConnectionFailed(__lastConnection, __cause);
+        }//end else
+    }//end method end
+
+    //----------------------------------------------------------------------------------------------
+
+    static long readSessionId(Frame __frame)
+    {
+        return readLong(__frame.getBuffer(), __frame.getOffset());
+    }//end method readSessionId
+
+    /*
+    *   sequence numbers travel as 32 bits, this restores the full number nearest to __reference
+    */
+    private static long unwrap(int __wire, long __reference)
+    {
+        return __reference + (__wire - (int) __reference);
+    }//end method unwrap
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+
+    private static void writeLong(byte[] __destination, int __offset, long __value)
+    {
+        writeInt(__destination, __offset, (int) (__value >>> 32));
+        writeInt(__destination, __offset + 4, (int) __value);
+    }//end method writeLong
+
+    private static long readLong(byte[] __source, int __offset)
+    {
+        return ((long) readInt(__source, __offset) << 32) | (readInt(__source, __offset + 4) & 0xffffffffL);
+    }//end method readLong
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getSessionId()
+    {
+        return _sessionId;
+    }//end method getSessionId
+
+    //address of the peer, the same for every link of the session
+    public String getAddress()
+    {
+        return _address;
+    }//end method getAddress
+
+    //current link, null while it is down
+    public Connection getConnection()
+    {
+        return _connection;
+    }//end method getConnection
+
+    //true while a link is up and both sides have resumed on it
+    public synchronized boolean isResumed()
+    {
+        return _resumed;
+    }//end method isResumed
+
+    //true once the session has ended
+    public synchronized boolean isClosed()
+    {
+        return _endCause != null;
+    }//end method isClosed
+
+    //handshakes after a drop, the first one is not counted
+    public synchronized long getResumeCount()
+    {
+        return _resumes;
+    }//end method getResumeCount
+
+    //frames written, replays included
+    public synchronized long getTransmissionCount()
+    {
+        return _transmissions;
+    }//end method getTransmissionCount
+
+    //frames written again after a drop because the peer had not got them
+    public synchronized long getReplayedCount()
+    {
+        return _replayed;
+    }//end method getReplayedCount
+
+    //frames sent and not yet acknowledged
+    public synchronized int getUnackedCount()
+    {
+        return _unacked.size();
+    }//end method getUnackedCount
+
+    //frames passed on to the listener in order
+    public long getDeliveredCount()
+    {
+        synchronized (_receiveLock)
+        {
+            return _delivered;
+        }//end synchronized
+    }//end method getDeliveredCount
+
+    //frames received again after a resume and dropped
+    public long getDuplicateCount()
+    {
+        synchronized (_receiveLock)
+        {
+            return _duplicates;
+        }//end synchronized
+    }//end method getDuplicateCount
+}//end class ResumableSession
@@ -0,0 +1,34 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothServerSocket;
+
+import java.io.IOException;
+
+/*
+*   Accepts RFCOMM links on the serial port profile UUID, the one RfcommTransport dials
+*/
+public class RfcommAcceptor implements TransportAcceptor
+{
+    private final BluetoothServerSocket _serverSocket;
+
+    public RfcommAcceptor(BluetoothAdapter __bluetoothAdapter, String __serviceName) throws IOException
+    {
+        //registers the service record so peers looking for the UUID find us
+        _serverSocket = __bluetoothAdapter.listenUsingRfcommWithServiceRecord(__serviceName, RfcommTransport.SPP_UUID);
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public Transport accept() throws IOException
+    {
+        return new RfcommTransport(_serverSocket.accept());
+    }//end method accept
+
+    @Override
+    public void close() throws IOException
+    {
+        _serverSocket.close();
+    }//end method close
+}//end class RfcommAcceptor
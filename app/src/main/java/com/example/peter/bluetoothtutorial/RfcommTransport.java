@@ -0,0 +1,152 @@
+package com.example.peter.bluetoothtutorial;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/*
+*   Transport over a bluetooth RFCOMM socket using the serial port profile
+*/
+public class RfcommTransport implements Transport
+{
+    //default Bluetooth UUID is being used
+    public static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805f9b34fb");
+
+    private final BluetoothAdapter _bluetoothAdapter;
+    private final BluetoothDevice _device;
+    private final BluetoothSocket _socket;
+
+    //set for sockets returned by a server socket, they are connected already
+    private final boolean _accepted;
+
+    //reads the socket on its own thread so the engine can poll it, created with the first request
+    private ReadAheadInputStream _inputStream;
+
+    public RfcommTransport(BluetoothAdapter __bluetoothAdapter, BluetoothDevice __device) throws IOException
+    {
+        _bluetoothAdapter = __bluetoothAdapter;
+        _device = __device;
+
+        //get a BluetoothSocket to connect with the given BluetoothDevice
+        _socket = _device.createRfcommSocketToServiceRecord(SPP_UUID);
+        _accepted = false;
+    }//end constructor
+
+    /*
+    *   wraps a socket returned by BluetoothServerSocket.accept
+    */
+    public RfcommTransport(BluetoothSocket __acceptedSocket)
+    {
+        _bluetoothAdapter = null;
+        _device = __acceptedSocket.getRemoteDevice();
+        _socket = __acceptedSocket;
+        _accepted = true;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   creates a new socket to the device for every connect attempt, a closed socket cannot be reused
+    */
+    public static TransportFactory factory(final BluetoothAdapter __bluetoothAdapter, final BluetoothDevice __device)
+    {
+        return new TransportFactory()
+        {
+            @Override
+            public String getAddress()
+            {
+                return __device.getAddress();
+            }//end method getAddress
+
+            @Override
+            public Transport create() throws IOException
+            {
+                return new RfcommTransport(__bluetoothAdapter, __device);
+            }//end method create
+        };
+    }//end method factory
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void connect() throws IOException
+    {
+        if(_accepted)
+        {
+            return;
+        }//end if
+
+        //cancel discovery because it will slow the connection
+        if(_bluetoothAdapter != null)
+        {
+            _bluetoothAdapter.cancelDiscovery();
+        }//end if
+
+        //This will block until it succeeds or throws an exception
+        _socket.connect();
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the socket's own stream reports 0 from available() forever once the link drops, so it is
+    *   read ahead on a thread of its own that sees the end of the link and passes it on
+    */
+    @Override
+    public synchronized InputStream getInputStream() throws IOException
+    {
+        if(_inputStream == null)
+        {
+            _inputStream = new ReadAheadInputStream(_socket.getInputStream(), _device.getAddress());
+        }//end if
+
+        return _inputStream;
+    }//end method getInputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return _socket.getOutputStream();
+    }//end method getOutputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getAddress()
+    {
+        return _device.getAddress();
+    }//end method getAddress
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getName()
+    {
+        return _device.getName();
+    }//end method getName
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   method to return the bluetooth device on the other end of the socket
+    */
+    public BluetoothDevice get_device()
+    {
+        return _device;
+    }//end method get_device
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException
+    {
+        _socket.close();
+    }//end method close
+}//end class RfcommTransport
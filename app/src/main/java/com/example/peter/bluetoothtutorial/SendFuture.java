@@ -0,0 +1,166 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+*   Outcome of a send. It completes once the frame has been written to the transport, or fails
+*   when it could not be queued or written. Listeners run on the thread that completes the send,
+*   usually a writer thread of the connection engine
+*/
+public class SendFuture implements Future<Void>
+{
+    /*
+    *   notified once when the send completes or fails
+    */
+    public interface Listener
+    {
+        void onComplete(SendFuture __future);
+    }//end interface Listener
+
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile IOException _failure = null;
+    private ArrayList<Listener> _listeners = null;
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   a send that has already failed, used when the frame never reached a queue
+    */
+    public static SendFuture failed(IOException __cause)
+    {
+        SendFuture __future = new SendFuture();
+        __future.fail(__cause);
+        return __future;
+    }//end method failed
+
+    //----------------------------------------------------------------------------------------------
+
+    void complete()
+    {
+        finish(null);
+    }//end method complete
+
+    void fail(IOException __cause)
+    {
+        finish(__cause);
+    }//end method fail
+
+    private void finish(IOException __failure)
+    {
+        ArrayList<Listener> __listeners;
+
+        synchronized (this)
+        {
+            if(_done.getCount() == 0)
+            {
+                return;
+            }//end if
+
+            _failure = __failure;
+            _done.countDown();
+            __listeners = _listeners;
+            _listeners = null;
+        }//end synchronized
+
+        if(__listeners != null)
+        {
+            for(Listener __listener : __listeners)
+            {
+                __listener.onComplete(this);
+            }//end for loop
+        }//end if
+    }//end method finish
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs the listener when the send completes, straight away if it already has
+    */
+    public void addListener(Listener __listener)
+    {
+        synchronized (this)
+        {
+            if(_done.getCount() > 0)
+            {
+                if(_listeners == null)
+                {
+                    _listeners = new ArrayList<>(1);
+                }//end if
+
+                _listeners.add(__listener);
+                return;
+            }//end if
+        }//end synchronized
+
+        __listener.onComplete(this);
+    }//end method addListener
+
+    //----------------------------------------------------------------------------------------------
+
+    //true once the frame has been written
+    public boolean isSuccess()
+    {
+        return isDone() && _failure == null;
+    }//end method isSuccess
+
+    //reason the send failed, null while pending or after success
+    public IOException getFailure()
+    {
+        return _failure;
+    }//end method getFailure
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean cancel(boolean __mayInterruptIfRunning)
+    {
+        //a queued frame may already be part of a coalesced write, it cannot be taken back
+        return false;
+    }//end method cancel
+
+    @Override
+    public boolean isCancelled()
+    {
+        return false;
+    }//end method isCancelled
+
+    @Override
+    public boolean isDone()
+    {
+        return _done.getCount() == 0;
+    }//end method isDone
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException
+    {
+        _done.await();
+        return result();
+    }//end method get
+
+    @Override
+    public Void get(long __timeout, TimeUnit __unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if(!_done.await(__timeout, __unit))
+        {
+            throw new TimeoutException("send still pending");
+        }//end if
+
+        return result();
+    }//end method get
+
+    private Void result() throws ExecutionException
+    {
+        if(_failure != null)
+        {
+            throw new ExecutionException(_failure);
+        }//end if
+
+        return null;
+    }//end method result
+}//end class SendFuture
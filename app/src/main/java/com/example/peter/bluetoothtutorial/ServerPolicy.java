@@ -0,0 +1,54 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a ConnectionServer. The setters return the policy so several can be chained
+*   when it is created
+*/
+public class ServerPolicy
+{
+    //an RFCOMM piconet has at most seven active peers
+    private int _maxClients = 7;
+    private boolean _rejectWhenFull = true;
+    private long _acceptRetryMillis = 1000;
+
+    //----------------------------------------------------------------------------------------------
+
+    //accepted links connected at the same time
+    public ServerPolicy setMaxClients(int __maxClients)
+    {
+        _maxClients = __maxClients;
+        return this;
+    }//end method setMaxClients
+
+    //true closes links that arrive while the server is full, so the peer can try elsewhere. False
+    //stops accepting until a client leaves, the next peers wait in the listen backlog
+    public ServerPolicy setRejectWhenFull(boolean __rejectWhenFull)
+    {
+        _rejectWhenFull = __rejectWhenFull;
+        return this;
+    }//end method setRejectWhenFull
+
+    //pause after accept fails, so a broken server socket does not spin the accept thread
+    public ServerPolicy setAcceptRetryMillis(long __acceptRetryMillis)
+    {
+        _acceptRetryMillis = __acceptRetryMillis;
+        return this;
+    }//end method setAcceptRetryMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getMaxClients()
+    {
+        return _maxClients;
+    }//end method getMaxClients
+
+    public boolean isRejectWhenFull()
+    {
+        return _rejectWhenFull;
+    }//end method isRejectWhenFull
+
+    public long getAcceptRetryMillis()
+    {
+        return _acceptRetryMillis;
+    }//end method getAcceptRetryMillis
+}//end class ServerPolicy
@@ -0,0 +1,122 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/*
+*   The accepting side of resumable sessions, used as the listener of a ConnectionServer. The
+*   first frame on every accepted link must be a resume; its session id picks the session the
+*   link belongs to. A known id resumes that session where it stopped, an unknown one starts a
+*   new session. Links that open with anything else are closed.
+*
+*   Every session reports to the listener given here, find(Connection) returns the session of
+*   a link so the listener can answer through it
+*/
+public class SessionDirectory implements ConnectionListener
+{
+    private final SessionPolicy _policy;
+    private final ScheduledExecutorService _timer;
+    private final ConnectionListener _listener;
+
+    //sessions that have not ended, by id
+    private final ConcurrentHashMap<Long, ResumableSession> _sessions = new ConcurrentHashMap<>();
+
+    //session of every link that has sent its resume
+    private final ConcurrentHashMap<Connection, ResumableSession> _links = new ConcurrentHashMap<>();
+
+    SessionDirectory(SessionPolicy __policy, ScheduledExecutorService __timer, ConnectionListener __listener)
+    {
+        _policy = __policy;
+        _timer = __timer;
+        _listener = __listener;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    //session with the id, null if there is none or it ended
+    public ResumableSession get(long __sessionId)
+    {
+        return _sessions.get(__sessionId);
+    }//end method get
+
+    //session the link belongs to, null before its resume arrived
+    public ResumableSession find(Connection __connection)
+    {
+        return _links.get(__connection);
+    }//end method find
+
+    //every session that has not ended, whether its link is up or not
+    public List<ResumableSession> getSessions()
+    {
+        return new ArrayList<>(_sessions.values());
+    }//end method getSessions
+
+    public int getSessionCount()
+    {
+        return _sessions.size();
+    }//end method getSessionCount
+
+    //----------------------------------------------------------------------------------------------
+
+    //called by a session when it ends, the id is free for a new session after that
+    void remove(ResumableSession __session)
+    {
+        _sessions.remove(__session.getSessionId(), __session);
+    }//end method remove
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void onConnected(Connection __connection)
+    {
+        //the link joins a session when its resume arrives
+    }//end method onConnected
+
+    @Override
+    public void onConnectionFailed(Connection __connection, IOException __cause)
+    {
+        //an accepted link that never came up, no session knows it
+    }//end method onConnectionFailed
+
+    @Override
+    public void onFrameReceived(Connection __connection, Frame __frame)
+    {
+        ResumableSession __session = _links.get(__connection);
+
+        if(__session == null)
+        {
+            if(__frame.getType() != Frame.TYPE_SESSION_RESUME || __frame.getLength() < ResumableSession.RESUME_LENGTH)
+            {
+                __connection.close();
+                return;
+            }//end if
+
+            long __sessionId = ResumableSession.readSessionId(__frame);
+            ResumableSession __created = new ResumableSession(__sessionId, __connection.getAddress(), this, _policy, _timer, _listener);
+            __session = _sessions.putIfAbsent(__sessionId, __created);
+            if(__session == null)
+            {
+                __session = __created;
+            }//end if
+
+            _links.put(__connection, __session);
+            __session.onConnected(__connection);
+        }//end if
+
+        __session.onFrameReceived(__connection, __frame);
+    }//end method onFrameReceived
+
+    @Override
+    public void onDisconnected(Connection __connection)
+    {
+        ResumableSession __session = _links.remove(__connection);
+
+        if(__session != null)
+        {
+            __session.onDisconnected(__connection);
+        }//end if
+    }//end method onDisconnected
+}//end class SessionDirectory
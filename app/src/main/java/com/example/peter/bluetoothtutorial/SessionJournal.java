@@ -0,0 +1,617 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/*
+*   Append-only record of every frame received, kept in memory-mapped segment files. Appending
+*   only copies the record into a buffer, a writer thread moves whole batches into the current
+*   segment and forces them to disk once per batch, so the reader threads never wait for the
+*   disk. A full buffer drops the record and counts it instead of blocking.
+*
+*   Each time a journal is opened it starts a new session. Segments are named after the session
+*   and their sequence so sorting by name sorts by age, and the oldest are deleted once all of
+*   them together go over the disk budget.
+*
+*       segment: [magic: 4 bytes][session id: 8 bytes][sequence: 4 bytes][records...]
+*       record:  [body length: 4 bytes][crc32 of body: 4 bytes]
+*                [timestamp: 8 bytes][frame type][address length][address][payload]
+*
+*   A zero length ends a segment, a record whose checksum does not match was torn by a crash
+*   and ends it too
+*/
+public class SessionJournal
+{
+    //replays every session in the directory
+    public static final long ALL_SESSIONS = -1;
+
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x42544a31;
+    private static final int SEGMENT_HEADER_LENGTH = 16;
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int BODY_HEADER_LENGTH = 10;
+    private static final int MAX_ADDRESS_LENGTH = 255;
+
+    /*
+    *   receives the records of a replay in the order they were written. The frame is reused
+    *   for the next record like the ones from a connection
+    */
+    public interface Visitor
+    {
+        void onRecord(long __sessionId, long __timestamp, String __address, Frame __frame);
+    }//end interface Visitor
+
+    private final JournalPolicy _policy;
+    private final File _directory;
+    private final long _sessionId;
+    private final Thread _writer;
+
+    //records are appended to _filling while the writer commits _draining, both guarded by this
+    private byte[] _filling;
+    private int _fillingLength = 0;
+    private byte[] _draining;
+    private boolean _closed = false;
+    private long _appended = 0;
+    private long _committed = 0;
+
+    //segment being written, only touched by the writer thread once it runs
+    private RandomAccessFile _segmentFile;
+    private MappedByteBuffer _segment;
+    private File _segmentPath;
+    private int _sequence = 0;
+    private final CRC32 _crc = new CRC32();
+
+    private volatile IOException _failure;
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _commits = new AtomicLong();
+    private final AtomicLong _bytesWritten = new AtomicLong();
+    private final AtomicLong _deletedSegments = new AtomicLong();
+
+    /*
+    *   starts a new session in __directory and its writer thread. The first segment is created
+    *   here so a journal that cannot write fails straight away
+    */
+    public SessionJournal(File __directory, JournalPolicy __policy) throws IOException
+    {
+        if(!__directory.isDirectory() && !__directory.mkdirs())
+        {
+            throw new IOException("cannot create " + __directory);
+        }//end if
+
+        _directory = __directory;
+        _policy = __policy;
+        _filling = new byte[__policy.getBufferBytes()];
+        _draining = new byte[__policy.getBufferBytes()];
+
+        //sessions are ordered by id, a session opened in the same millisecond as the last still sorts after it
+        long[] __sessions = listSessions(__directory);
+        long __last = __sessions.length > 0 ? __sessions[__sessions.length - 1] : 0;
+        _sessionId = Math.max(System.currentTimeMillis(), __last + 1);
+
+        openSegment(0);
+        enforceBudget();
+
+        _writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeLoop();
+            }//end method run
+        }, "session-journal");
+        _writer.setDaemon(true);
+        _writer.start();
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues the frame for the journal without waiting for the disk. Returns false if it was
+    *   dropped because the buffer is full or the journal is closed or broken
+    */
+    public boolean append(long __timestamp, String __address, Frame __frame)
+    {
+        byte[] __addressBytes = __address.getBytes(Frame.UTF_8);
+        int __addressLength = Math.min(__addressBytes.length, MAX_ADDRESS_LENGTH);
+        int __bodyLength = BODY_HEADER_LENGTH + __addressLength + __frame.getLength();
+        int __recordLength = RECORD_HEADER_LENGTH + __bodyLength;
+
+        synchronized (this)
+        {
+            if(_closed || _failure != null || __recordLength > _filling.length - _fillingLength)
+            {
+                _dropped.incrementAndGet();
+                return false;
+            }//end if
+
+            //the checksum is left to the writer so the caller only pays for the copy
+            int __position = _fillingLength;
+            writeInt(_filling, __position, __bodyLength);
+            writeLong(_filling, __position + RECORD_HEADER_LENGTH, __timestamp);
+            _filling[__position + RECORD_HEADER_LENGTH + 8] = __frame.getType();
+            _filling[__position + RECORD_HEADER_LENGTH + 9] = (byte) __addressLength;
+            System.arraycopy(__addressBytes, 0, _filling, __position + RECORD_HEADER_LENGTH + BODY_HEADER_LENGTH, __addressLength);
+            System.arraycopy(__frame.getBuffer(), __frame.getOffset(), _filling,
+                    __position + RECORD_HEADER_LENGTH + BODY_HEADER_LENGTH + __addressLength, __frame.getLength());
+
+            _fillingLength += __recordLength;
+            _appended++;
+
+            //wakes the writer for the first record of a batch and once the batch is big enough
+            int __commitBytes = _policy.getCommitBytes();
+            if(__position == 0 || (__position < __commitBytes && _fillingLength >= __commitBytes))
+            {
+                notifyAll();
+            }//end if
+        }//end synchronized
+
+        return true;
+    }//end method append
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   waits until every record appended so far is on disk
+    */
+    public synchronized void sync() throws IOException, InterruptedException
+    {
+        long __target = _appended;
+
+        while(_committed < __target)
+        {
+            if(_failure != null)
+            {
+                throw _failure;
+            }//end if
+
+            if(!_writer.isAlive())
+            {
+                throw new IOException("journal closed");
+            }//end if
+
+            wait(_policy.getCommitIntervalMillis());
+        }//end while loop
+    }//end method sync
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   commits what is still buffered and stops the writer. Later appends are dropped
+    */
+    public void close() throws InterruptedException
+    {
+        synchronized (this)
+        {
+            _closed = true;
+            notifyAll();
+        }//end synchronized
+
+        _writer.join();
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+
+    private void writeLoop()
+    {
+        try
+        {
+            while(true)
+            {
+                byte[] __batch;
+                int __length;
+                long __records;
+                boolean __closed;
+
+                synchronized (this)
+                {
+                    while(_fillingLength == 0 && !_closed)
+                    {
+                        wait();
+                    }//end while loop
+
+                    //group commit: give more records the chance to join the batch
+                    long __deadline = System.currentTimeMillis() + _policy.getCommitIntervalMillis();
+                    while(_fillingLength < _policy.getCommitBytes() && !_closed)
+                    {
+                        long __remaining = __deadline - System.currentTimeMillis();
+                        if(__remaining <= 0)
+                        {
+                            break;
+                        }//end if
+
+                        wait(__remaining);
+                    }//end while loop
+
+                    __batch = _filling;
+                    __length = _fillingLength;
+                    __records = _appended - _committed;
+                    _filling = _draining;
+                    _draining = __batch;
+                    _fillingLength = 0;
+                    __closed = _closed;
+                }//end synchronized
+
+                if(__length > 0)
+                {
+                    commit(__batch, __length);
+
+                    synchronized (this)
+                    {
+                        _committed += __records;
+                        notifyAll();
+                    }//end synchronized
+                }//end if
+
+                if(__closed)
+                {
+                    break;
+                }//end if
+            }//end while loop
+        }//end try
+        catch (IOException e)
+        {
+            _failure = e;
+        }//end catch
+        catch (InterruptedException e)
+        {
+            //only interrupted when the process goes down, what is buffered is lost
+        }//end catch
+        finally
+        {
+            closeSegment();
+
+            synchronized (this)
+            {
+                notifyAll();
+            }//end synchronized
+        }//end finally
+    }//end method writeLoop
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   moves one batch into the segments and forces it to disk, called on the writer thread
+    */
+    private void commit(byte[] __batch, int __length) throws IOException
+    {
+        int __position = 0;
+
+        while(__position < __length)
+        {
+            int __bodyLength = readInt(__batch, __position);
+            int __recordLength = RECORD_HEADER_LENGTH + __bodyLength;
+
+            _crc.reset();
+            _crc.update(__batch, __position + RECORD_HEADER_LENGTH, __bodyLength);
+            writeInt(__batch, __position + 4, (int) _crc.getValue());
+
+            if(_segment.remaining() < __recordLength)
+            {
+                rotate(__recordLength);
+            }//end if
+
+            _segment.put(__batch, __position, __recordLength);
+            __position += __recordLength;
+        }//end while loop
+
+        _segment.force();
+        _commits.incrementAndGet();
+        _bytesWritten.addAndGet(__length);
+    }//end method commit
+
+    //----------------------------------------------------------------------------------------------
+
+    private void rotate(int __recordLength) throws IOException
+    {
+        closeSegment();
+        _sequence++;
+        openSegment(__recordLength);
+        enforceBudget();
+    }//end method rotate
+
+    /*
+    *   maps a new segment, larger than usual if a single record would not fit
+    */
+    private void openSegment(int __recordLength) throws IOException
+    {
+        _segmentPath = new File(_directory, segmentName(_sessionId, _sequence));
+        _segmentFile = new RandomAccessFile(_segmentPath, "rw");
+
+        try
+        {
+            int __size = Math.max(_policy.getSegmentBytes(), SEGMENT_HEADER_LENGTH + __recordLength);
+            _segment = _segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, __size);
+            _segment.putInt(MAGIC).putLong(_sessionId).putInt(_sequence);
+        }//end try
+        catch (IOException e)
+        {
+            _segmentFile.close();
+            throw e;
+        }//end catch
+    }//end method openSegment
+
+    /*
+    *   forces the segment and cuts the unused tail off the file, so rotated segments take no
+    *   more disk than their records
+    */
+    private void closeSegment()
+    {
+        if(_segment == null)
+        {
+            return;
+        }//end if
+
+        try
+        {
+            _segment.force();
+            int __used = _segment.position();
+            _segment = null;
+            _segmentFile.getChannel().truncate(__used);
+        }//end try
+        catch (IOException e)
+        {
+            //the records are on disk, only the zeroed tail is left
+        }//end catch
+        finally
+        {
+            try
+            {
+                _segmentFile.close();
+            }//end try
+            catch (IOException e)
+            {
+                //nothing more to release
+            }//end catch
+        }//end finally
+    }//end method closeSegment
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   deletes the oldest segments until the rest fit in the disk budget, never the one being written
+    */
+    private void enforceBudget()
+    {
+        File[] __segments = listSegments(_directory);
+
+        long __total = 0;
+        for(File __segment : __segments)
+        {
+            __total += __segment.length();
+        }//end for loop
+
+        for(int i = 0; i < __segments.length && __total > _policy.getDiskBudgetBytes(); i++)
+        {
+            if(__segments[i].equals(_segmentPath))
+            {
+                break;
+            }//end if
+
+            long __length = __segments[i].length();
+            if(__segments[i].delete())
+            {
+                __total -= __length;
+                _deletedSegments.incrementAndGet();
+            }//end if
+        }//end for loop
+    }//end method enforceBudget
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   ids of the sessions that still have segments in __directory, oldest first
+    */
+    public static long[] listSessions(File __directory)
+    {
+        File[] __segments = listSegments(__directory);
+        long[] __sessions = new long[__segments.length];
+        int __count = 0;
+
+        for(File __segment : __segments)
+        {
+            long __session = parseSessionId(__segment);
+            if(__session >= 0 && (__count == 0 || __sessions[__count - 1] != __session))
+            {
+                __sessions[__count++] = __session;
+            }//end if
+        }//end for loop
+
+        return Arrays.copyOf(__sessions, __count);
+    }//end method listSessions
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   passes every intact record of the session to __visitor, or of every session for
+    *   ALL_SESSIONS. Returns the number of records replayed. Safe while the session is still
+    *   being written, the replay ends at the last committed record
+    */
+    public static long replay(File __directory, long __sessionId, Visitor __visitor) throws IOException
+    {
+        Frame __frame = new Frame();
+        byte[] __body = new byte[4096];
+        CRC32 __crc = new CRC32();
+        long __records = 0;
+
+        for(File __segment : listSegments(__directory))
+        {
+            if(__sessionId != ALL_SESSIONS && parseSessionId(__segment) != __sessionId)
+            {
+                continue;
+            }//end if
+
+            RandomAccessFile __file = new RandomAccessFile(__segment, "r");
+            try
+            {
+                FileChannel __channel = __file.getChannel();
+                MappedByteBuffer __buffer = __channel.map(FileChannel.MapMode.READ_ONLY, 0, __channel.size());
+
+                if(__buffer.remaining() < SEGMENT_HEADER_LENGTH || __buffer.getInt() != MAGIC)
+                {
+                    continue;
+                }//end if
+
+                long __session = __buffer.getLong();
+                __buffer.getInt();
+
+                while(__buffer.remaining() >= RECORD_HEADER_LENGTH)
+                {
+                    int __bodyLength = __buffer.getInt();
+                    int __checksum = __buffer.getInt();
+
+                    if(__bodyLength < BODY_HEADER_LENGTH || __bodyLength > __buffer.remaining())
+                    {
+                        break;
+                    }//end if
+
+                    if(__body.length < __bodyLength)
+                    {
+                        __body = new byte[Math.max(__bodyLength, __body.length * 2)];
+                    }//end if
+                    __buffer.get(__body, 0, __bodyLength);
+
+                    __crc.reset();
+                    __crc.update(__body, 0, __bodyLength);
+                    if((int) __crc.getValue() != __checksum)
+                    {
+                        break;
+                    }//end if
+
+                    int __addressLength = __body[9] & 0xff;
+                    String __address = new String(__body, BODY_HEADER_LENGTH, __addressLength, Frame.UTF_8);
+                    __frame.set(__body[8], __body, BODY_HEADER_LENGTH + __addressLength, __bodyLength - BODY_HEADER_LENGTH - __addressLength);
+
+                    __visitor.onRecord(__session, readLong(__body, 0), __address, __frame);
+                    __records++;
+                }//end while loop
+            }//end try
+            finally
+            {
+                __file.close();
+            }//end finally
+        }//end for loop
+
+        return __records;
+    }//end method replay
+
+    //----------------------------------------------------------------------------------------------
+
+    static String segmentName(long __sessionId, int __sequence)
+    {
+        return String.format(Locale.US, "%016d-%06d%s", __sessionId, __sequence, SEGMENT_SUFFIX);
+    }//end method segmentName
+
+    //-1 for names that are not a segment name
+    private static long parseSessionId(File __segment)
+    {
+        String __name = __segment.getName();
+        int __dash = __name.indexOf('-');
+
+        try
+        {
+            return __dash > 0 ? Long.parseLong(__name.substring(0, __dash)) : -1;
+        }//end try
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }//end catch
+    }//end method parseSessionId
+
+    //segment files in __directory, oldest first
+    private static File[] listSegments(File __directory)
+    {
+        File[] __segments = __directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File __file)
+            {
+                return __file.isFile() && __file.getName().endsWith(SEGMENT_SUFFIX);
+            }//end method accept
+        });
+
+        if(__segments == null)
+        {
+            return new File[0];
+        }//end if
+
+        Arrays.sort(__segments);
+        return __segments;
+    }//end method listSegments
+
+    //----------------------------------------------------------------------------------------------
+
+    public long getSessionId()
+    {
+        return _sessionId;
+    }//end method getSessionId
+
+    public File getDirectory()
+    {
+        return _directory;
+    }//end method getDirectory
+
+    //records dropped because the buffer was full or the journal closed
+    public long getDroppedCount()
+    {
+        return _dropped.get();
+    }//end method getDroppedCount
+
+    //batches forced to disk, each one covers every record appended while the last was written
+    public long getCommitCount()
+    {
+        return _commits.get();
+    }//end method getCommitCount
+
+    public long getBytesWritten()
+    {
+        return _bytesWritten.get();
+    }//end method getBytesWritten
+
+    //segments deleted to stay in the disk budget
+    public long getDeletedSegmentCount()
+    {
+        return _deletedSegments.get();
+    }//end method getDeletedSegmentCount
+
+    //the error that stopped the writer, null while it works
+    public IOException getFailure()
+    {
+        return _failure;
+    }//end method getFailure
+
+    //----------------------------------------------------------------------------------------------
+
+    private static void writeInt(byte[] __destination, int __offset, int __value)
+    {
+        __destination[__offset] = (byte) (__value >>> 24);
+        __destination[__offset + 1] = (byte) (__value >>> 16);
+        __destination[__offset + 2] = (byte) (__value >>> 8);
+        __destination[__offset + 3] = (byte) __value;
+    }//end method writeInt
+
+    private static int readInt(byte[] __source, int __offset)
+    {
+        return ((__source[__offset] & 0xff) << 24) | ((__source[__offset + 1] & 0xff) << 16)
+                | ((__source[__offset + 2] & 0xff) << 8) | (__source[__offset + 3] & 0xff);
+    }//end method readInt
+
+    private static void writeLong(byte[] __destination, int __offset, long __value)
+    {
+        writeInt(__destination, __offset, (int) (__value >>> 32));
+        writeInt(__destination, __offset + 4, (int) __value);
+    }//end method writeLong
+
+    private static long readLong(byte[] __source, int __offset)
+    {
+        return ((long) readInt(__source, __offset) << 32) | (readInt(__source, __offset + 4) & 0xffffffffL);
+    }//end method readLong
+}//end class SessionJournal
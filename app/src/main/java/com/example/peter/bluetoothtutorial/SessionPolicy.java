@@ -0,0 +1,91 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a ResumableSession. The setters return the policy so several can be chained
+*   when it is created
+*/
+public class SessionPolicy
+{
+    private int _maxUnackedFrames = 128;
+    private long _maxUnackedBytes = 1024 * 1024;
+    private int _ackEveryFrames = 16;
+    private long _ackDelayMillis = 20;
+    private long _reconnectDelayMillis = 200;
+    private long _resumeTimeoutMillis = 30000;
+
+    //----------------------------------------------------------------------------------------------
+
+    //frames kept for replay until the peer acknowledges them, further sends fail with a BackpressureException
+    public SessionPolicy setMaxUnackedFrames(int __maxUnackedFrames)
+    {
+        _maxUnackedFrames = __maxUnackedFrames;
+        return this;
+    }//end method setMaxUnackedFrames
+
+    //the same limit in bytes
+    public SessionPolicy setMaxUnackedBytes(long __maxUnackedBytes)
+    {
+        _maxUnackedBytes = __maxUnackedBytes;
+        return this;
+    }//end method setMaxUnackedBytes
+
+    //the receiver acks at least this often, so the sender can let go of delivered frames
+    public SessionPolicy setAckEveryFrames(int __ackEveryFrames)
+    {
+        _ackEveryFrames = __ackEveryFrames;
+        return this;
+    }//end method setAckEveryFrames
+
+    //and otherwise this long after the first frame it has not acked
+    public SessionPolicy setAckDelayMillis(long __ackDelayMillis)
+    {
+        _ackDelayMillis = __ackDelayMillis;
+        return this;
+    }//end method setAckDelayMillis
+
+    //pause before the side that connected dials again after the link drops
+    public SessionPolicy setReconnectDelayMillis(long __reconnectDelayMillis)
+    {
+        _reconnectDelayMillis = __reconnectDelayMillis;
+        return this;
+    }//end method setReconnectDelayMillis
+
+    //how long a session waits for its link to come back before it ends
+    public SessionPolicy setResumeTimeoutMillis(long __resumeTimeoutMillis)
+    {
+        _resumeTimeoutMillis = __resumeTimeoutMillis;
+        return this;
+    }//end method setResumeTimeoutMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getMaxUnackedFrames()
+    {
+        return _maxUnackedFrames;
+    }//end method getMaxUnackedFrames
+
+    public long getMaxUnackedBytes()
+    {
+        return _maxUnackedBytes;
+    }//end method getMaxUnackedBytes
+
+    public int getAckEveryFrames()
+    {
+        return _ackEveryFrames;
+    }//end method getAckEveryFrames
+
+    public long getAckDelayMillis()
+    {
+        return _ackDelayMillis;
+    }//end method getAckDelayMillis
+
+    public long getReconnectDelayMillis()
+    {
+        return _reconnectDelayMillis;
+    }//end method getReconnectDelayMillis
+
+    public long getResumeTimeoutMillis()
+    {
+        return _resumeTimeoutMillis;
+    }//end method getResumeTimeoutMillis
+}//end class SessionPolicy
@@ -0,0 +1,46 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+/*
+*   Accepts TCP links, the stand-in for an RFCOMM server socket on a plain JVM
+*/
+public class TcpAcceptor implements TransportAcceptor
+{
+    private final ServerSocket _serverSocket;
+
+    /*
+    *   listens on __port of the loopback interface, 0 picks a free port
+    */
+    public TcpAcceptor(int __port, int __backlog) throws IOException
+    {
+        _serverSocket = new ServerSocket(__port, __backlog, InetAddress.getLoopbackAddress());
+    }//end constructor
+
+    public TcpAcceptor(ServerSocket __serverSocket)
+    {
+        _serverSocket = __serverSocket;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public Transport accept() throws IOException
+    {
+        return new TcpTransport(_serverSocket.accept());
+    }//end method accept
+
+    @Override
+    public void close() throws IOException
+    {
+        _serverSocket.close();
+    }//end method close
+
+    //the port actually listened on
+    public int getPort()
+    {
+        return _serverSocket.getLocalPort();
+    }//end method getPort
+}//end class TcpAcceptor
@@ -0,0 +1,202 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/*
+*   Transport over a TCP socket, used as a stand-in for RFCOMM when measuring throughput
+*   and latency on a plain JVM (usually against localhost)
+*/
+public class TcpTransport implements Transport
+{
+    //how often an idle stream is probed for a closed peer, each probe blocks for up to a millisecond
+    private static final long CLOSE_PROBE_INTERVAL_MILLIS = 500;
+
+    private final String _host;
+    private final int _port;
+    private final Socket _socket;
+    private PollableInputStream _inputStream;
+
+    /*
+    *   creates a transport that dials out to the given host and port when connect is called
+    */
+    public TcpTransport(String __host, int __port)
+    {
+        _host = __host;
+        _port = __port;
+        _socket = new Socket();
+    }//end constructor
+
+    /*
+    *   wraps a socket that is already connected, for example one returned by ServerSocket.accept
+    */
+    public TcpTransport(Socket __connectedSocket)
+    {
+        _host = __connectedSocket.getInetAddress().getHostAddress();
+        _port = __connectedSocket.getPort();
+        _socket = __connectedSocket;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void connect() throws IOException
+    {
+        if(!_socket.isConnected())
+        {
+            _socket.connect(new InetSocketAddress(_host, _port));
+        }//end if
+
+        //small messages are the norm, do not let Nagle hold them back
+        _socket.setTcpNoDelay(true);
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException
+    {
+        if(_inputStream == null)
+        {
+            _inputStream = new PollableInputStream(_socket.getInputStream());
+        }//end if
+
+        return _inputStream;
+    }//end method getInputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return _socket.getOutputStream();
+    }//end method getOutputStream
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getAddress()
+    {
+        return _host + ":" + _port;
+    }//end method getAddress
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String getName()
+    {
+        return "tcp://" + getAddress();
+    }//end method getName
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException
+    {
+        _socket.close();
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   A socket stream only ever reports 0 from available, even after the peer has gone. To
+    *   behave like a bluetooth stream for the connection engine, an idle stream is probed now
+    *   and then with a very short read timeout; end of stream makes available throw and a byte
+    *   that turns up is kept and handed out by the next read
+    */
+    private class PollableInputStream extends FilterInputStream
+    {
+        private int _pushedBack = -1;
+        private long _nextProbeTime = 0;
+
+        PollableInputStream(InputStream __inputStream)
+        {
+            super(__inputStream);
+        }//end constructor
+
+        @Override
+        public int available() throws IOException
+        {
+            int __available = super.available();
+
+            if(_pushedBack >= 0)
+            {
+                return __available + 1;
+            }//end if
+
+            long __now = System.currentTimeMillis();
+            if(__available > 0 || __now < _nextProbeTime)
+            {
+                return __available;
+            }//end if
+
+            _nextProbeTime = __now + CLOSE_PROBE_INTERVAL_MILLIS;
+
+            try
+            {
+                _socket.setSoTimeout(1);
+                int __byte = super.read();
+
+                if(__byte < 0)
+                {
+                    throw new EOFException("peer closed the connection");
+                }//end if
+
+                _pushedBack = __byte;
+                return 1;
+            }//end try
+            catch (SocketTimeoutException e)
+            {
+                return 0;
+            }//end catch
+            finally
+            {
+                if(!_socket.isClosed())
+                {
+                    _socket.setSoTimeout(0);
+                }//end if
+            }//end finally
+        }//end method available
+
+        @Override
+        public int read() throws IOException
+        {
+            if(_pushedBack >= 0)
+            {
+                int __byte = _pushedBack;
+                _pushedBack = -1;
+                return __byte;
+            }//end if
+
+            return super.read();
+        }//end method read
+
+        @Override
+        public int read(byte[] __bytes, int __offset, int __length) throws IOException
+        {
+            if(_pushedBack < 0 || __length == 0)
+            {
+                return super.read(__bytes, __offset, __length);
+            }//end if
+
+            __bytes[__offset] = (byte) _pushedBack;
+            _pushedBack = -1;
+
+            //only add what is already waiting so a read never blocks after the probe
+            int __more = Math.min(__length - 1, super.available());
+            if(__more > 0)
+            {
+                __more = Math.max(0, super.read(__bytes, __offset + 1, __more));
+            }//end if
+
+            return 1 + __more;
+        }//end method read
+    }//end class PollableInputStream
+}//end class TcpTransport
@@ -0,0 +1,32 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+*   A byte stream link to a single peer. Connection and ConnectionEngine only talk to this
+*   interface, so the same connect/read/write logic runs over RFCOMM on a phone or over an
+*   in-memory pipe or localhost TCP socket on a plain JVM
+*/
+public interface Transport
+{
+    //blocks until the link is established or throws if it could not be
+    void connect() throws IOException;
+
+    //available() on this stream must not block and must throw once the link is gone, the
+    //connection engine polls it to find out which connections have data. A stream that cannot
+    //tell can be wrapped in a ReadAheadInputStream
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    //unique identifier of the peer (MAC address for bluetooth, host:port for TCP)
+    String getAddress();
+
+    //human readable name of the peer
+    String getName();
+
+    //closes the link, unblocking any thread waiting in connect or read
+    void close() throws IOException;
+}//end interface Transport
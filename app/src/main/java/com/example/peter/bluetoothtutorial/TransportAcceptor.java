@@ -0,0 +1,16 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+
+/*
+*   The listening side of a transport. A ConnectionServer only talks to this interface, so the
+*   same accept loop serves RFCOMM on a phone and localhost TCP on a plain JVM
+*/
+public interface TransportAcceptor
+{
+    //blocks until a peer connects and returns its link, already connected
+    Transport accept() throws IOException;
+
+    //stops listening, a thread blocked in accept throws
+    void close() throws IOException;
+}//end interface TransportAcceptor
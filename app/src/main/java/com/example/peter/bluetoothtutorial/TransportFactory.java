@@ -0,0 +1,15 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+
+/*
+*   Creates a fresh transport to the same peer for every connect attempt. A bluetooth socket
+*   cannot be connected again once an attempt has failed or timed out, so retries need a new one
+*/
+public interface TransportFactory
+{
+    //address of the peer, the same as getAddress of every transport created
+    String getAddress();
+
+    Transport create() throws IOException;
+}//end interface TransportFactory
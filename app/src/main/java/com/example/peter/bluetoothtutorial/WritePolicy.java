@@ -0,0 +1,103 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   Settings for a connection's outbound queue. The setters return the policy so several
+*   can be chained when it is created
+*/
+public class WritePolicy
+{
+    /*
+    *   what a send does when the queue is full
+    */
+    public enum Overflow
+    {
+        //fail the new send straight away
+        REJECT,
+        //wait for room up to the block timeout, then fail the new send
+        BLOCK,
+        //make room by failing the oldest queued send
+        DROP_OLDEST
+    }//end enum Overflow
+
+    private int _maxQueuedFrames = 256;
+    private Overflow _overflow = Overflow.BLOCK;
+    private long _blockTimeoutMillis = 1000;
+    private int _flushSize = 4 * 1024;
+    private long _flushDelayMillis = 0;
+    private long _writeTimeoutMillis = 10000;
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of frames that may wait in the queue
+    public WritePolicy setMaxQueuedFrames(int __maxQueuedFrames)
+    {
+        _maxQueuedFrames = __maxQueuedFrames;
+        return this;
+    }//end method setMaxQueuedFrames
+
+    public WritePolicy setOverflow(Overflow __overflow)
+    {
+        _overflow = __overflow;
+        return this;
+    }//end method setOverflow
+
+    //longest a BLOCK send waits for room in the queue
+    public WritePolicy setBlockTimeoutMillis(long __blockTimeoutMillis)
+    {
+        _blockTimeoutMillis = __blockTimeoutMillis;
+        return this;
+    }//end method setBlockTimeoutMillis
+
+    //queued bytes are written as soon as this many are waiting, and a single socket write carries at most this many coalesced bytes
+    public WritePolicy setFlushSize(int __flushSize)
+    {
+        _flushSize = __flushSize;
+        return this;
+    }//end method setFlushSize
+
+    //longest a frame waits for others to be coalesced with, 0 writes as soon as a writer thread is free
+    public WritePolicy setFlushDelayMillis(long __flushDelayMillis)
+    {
+        _flushDelayMillis = __flushDelayMillis;
+        return this;
+    }//end method setFlushDelayMillis
+
+    //a socket write blocked this long closes the connection, a peer that stopped reading must not keep a writer thread. 0 waits forever
+    public WritePolicy setWriteTimeoutMillis(long __writeTimeoutMillis)
+    {
+        _writeTimeoutMillis = __writeTimeoutMillis;
+        return this;
+    }//end method setWriteTimeoutMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getMaxQueuedFrames()
+    {
+        return _maxQueuedFrames;
+    }//end method getMaxQueuedFrames
+
+    public Overflow getOverflow()
+    {
+        return _overflow;
+    }//end method getOverflow
+
+    public long getBlockTimeoutMillis()
+    {
+        return _blockTimeoutMillis;
+    }//end method getBlockTimeoutMillis
+
+    public int getFlushSize()
+    {
+        return _flushSize;
+    }//end method getFlushSize
+
+    public long getFlushDelayMillis()
+    {
+        return _flushDelayMillis;
+    }//end method getFlushDelayMillis
+
+    public long getWriteTimeoutMillis()
+    {
+        return _writeTimeoutMillis;
+    }//end method getWriteTimeoutMillis
+}//end class WritePolicy
@@ -0,0 +1,495 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Bounded outbound queue of one connection. Senders only enqueue, a writer thread of the
+*   connection engine drains the queue and coalesces small frames into one socket write of up
+*   to the flush size. A full queue is handled by the policy's overflow rule instead of
+*   blocking the sender for as long as the peer is slow.
+*
+*   Flush delays wait on the engine's timer, not on a writer thread, and the time the current
+*   socket write started is kept so the engine can tell a peer that stopped reading
+*/
+class WriteQueue
+{
+    //batches written in one go before the writer thread is handed to the next connection
+    private static final int MAX_BATCHES_PER_DRAIN = 16;
+
+    /*
+    *   a frame waiting to be written
+    */
+    private static class Pending
+    {
+        final byte[] data;
+        final int offset;
+        final int length;
+        final SendFuture future;
+        final long enqueuedMillis;
+        final long enqueuedNanos;
+
+        Pending(byte[] __data, int __offset, int __length, SendFuture __future, long __enqueuedMillis, long __enqueuedNanos)
+        {
+            data = __data;
+            offset = __offset;
+            length = __length;
+            future = __future;
+            enqueuedMillis = __enqueuedMillis;
+            enqueuedNanos = __enqueuedNanos;
+        }//end constructor
+    }//end class Pending
+
+    private final WritePolicy _policy;
+    private final Executor _writers;
+    private final ScheduledExecutorService _timer;
+    private final BufferPool _pool;
+    private final LinkMetrics _metrics;
+
+    private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+    private int _queuedBytes = 0;
+    private boolean _drainScheduled = false;
+    private ScheduledFuture<?> _delayedDrain = null;
+    private IOException _closedCause = null;
+    private OutputStream _outputStream = null;
+
+    //only touched by the single drain that can run at a time
+    private final ArrayList<Pending> _batch = new ArrayList<>();
+
+    //System.nanoTime the socket write in progress started, valid while _writing is set
+    private volatile long _writeStartedNanos;
+    private volatile boolean _writing = false;
+
+    private final Runnable _drainTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            drain();
+        }//end method run
+    };
+
+    //runs on the timer once a flush delay is over and hands the drain to the writers
+    private final Runnable _delayedDrainTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                _writers.execute(_drainTask);
+            }//end try
+            catch (RejectedExecutionException e)
+            {
+                close(new IOException("connection engine is shut down"));
+            }//end catch
+        }//end method run
+    };
+
+    WriteQueue(WritePolicy __policy, ScheduledExecutorService __executor, BufferPool __pool)
+    {
+        this(__policy, __executor, __executor, __pool, new LinkMetrics(new EngineMetrics()));
+    }//end constructor
+
+    WriteQueue(WritePolicy __policy, Executor __writers, ScheduledExecutorService __timer, BufferPool __pool, LinkMetrics __metrics)
+    {
+        _policy = __policy;
+        _writers = __writers;
+        _timer = __timer;
+        _pool = __pool;
+        _metrics = __metrics;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    //counters of the connection this queue belongs to
+    LinkMetrics getMetrics()
+    {
+        return _metrics;
+    }//end method getMetrics
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   starts writing to the stream, frames sent before the connection was up are written now
+    */
+    void start(OutputStream __outputStream)
+    {
+        synchronized (this)
+        {
+            _outputStream = __outputStream;
+        }//end synchronized
+
+        scheduleDrain(0);
+    }//end method start
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   queues a complete frame. The array is not copied and must not change until the send completes
+    */
+    SendFuture enqueue(byte[] __data, int __offset, int __length)
+    {
+        return enqueue(__data, __offset, __length, true);
+    }//end method enqueue
+
+    /*
+    *   same as above, but a full queue under the BLOCK policy fails the send straight away when
+    *   __mayBlock is false, so a caller feeding several queues is not held up by one of them
+    */
+    SendFuture enqueue(byte[] __data, int __offset, int __length, boolean __mayBlock)
+    {
+        SendFuture __future = new SendFuture();
+        Pending __dropped = null;
+
+        synchronized (this)
+        {
+            if(_closedCause != null)
+            {
+                __future.fail(_closedCause);
+                return __future;
+            }//end if
+
+            if(_queue.size() >= _policy.getMaxQueuedFrames())
+            {
+                switch (_policy.getOverflow())
+                {
+                    case REJECT:
+                        __future.fail(new BackpressureException("outbound queue full"));
+                        return __future;
+                    case DROP_OLDEST:
+                        __dropped = _queue.poll();
+                        _queuedBytes -= __dropped.length;
+                        break;
+                    case BLOCK:
+                        if(!__mayBlock)
+                        {
+                            __future.fail(new BackpressureException("outbound queue full"));
+                            return __future;
+                        }//end if
+
+                        long __stallStart = System.nanoTime();
+                        boolean __room = awaitRoom();
+                        _metrics.recordWriteStall(System.nanoTime() - __stallStart);
+
+                        if(!__room)
+                        {
+                            __future.fail(_closedCause != null ? _closedCause : new BackpressureException("outbound queue still full after " + _policy.getBlockTimeoutMillis() + " ms"));
+                            return __future;
+                        }//end if
+                        break;
+                }//end switch
+            }//end if
+
+            _queue.add(new Pending(__data, __offset, __length, __future, System.currentTimeMillis(), System.nanoTime()));
+            _queuedBytes += __length;
+            _metrics.recordQueueDepth(_queue.size());
+        }//end synchronized
+
+        if(__dropped != null)
+        {
+            __dropped.future.fail(new BackpressureException("dropped from full outbound queue"));
+        }//end if
+
+        scheduleDrain(_policy.getFlushDelayMillis());
+        return __future;
+    }//end method enqueue
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   waits for the writer to make room, called with the lock held
+    */
+    private boolean awaitRoom()
+    {
+        long __deadline = System.currentTimeMillis() + _policy.getBlockTimeoutMillis();
+
+        while(_queue.size() >= _policy.getMaxQueuedFrames() && _closedCause == null)
+        {
+            long __remaining = __deadline - System.currentTimeMillis();
+            if(__remaining <= 0)
+            {
+                return false;
+            }//end if
+
+            try
+            {
+                wait(__remaining);
+            }//end try
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }//end catch
+        }//end while loop
+
+        return _closedCause == null;
+    }//end method awaitRoom
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   makes sure a drain will run, waiting up to __delayMillis for more frames unless the
+    *   flush size is already reached
+    */
+    private void scheduleDrain(long __delayMillis)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                if(_outputStream == null || _queue.isEmpty() || _closedCause != null)
+                {
+                    return;
+                }//end if
+
+                boolean __full = _queuedBytes >= _policy.getFlushSize();
+
+                if(_drainScheduled)
+                {
+                    //a drain waiting for more frames is brought forward once the flush size is reached
+                    if(!__full || _delayedDrain == null || !_delayedDrain.cancel(false))
+                    {
+                        return;
+                    }//end if
+                }//end if
+
+                _drainScheduled = true;
+                schedule(__full ? 0 : __delayMillis);
+            }//end synchronized
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            close(new IOException("connection engine is shut down"));
+        }//end catch
+    }//end method scheduleDrain
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   hands the drain to the writer pool, through the timer when it has to wait. Called with
+    *   the lock held
+    */
+    private void schedule(long __delayMillis)
+    {
+        _delayedDrain = null;
+
+        if(__delayMillis > 0)
+        {
+            _delayedDrain = _timer.schedule(_delayedDrainTask, __delayMillis, TimeUnit.MILLISECONDS);
+        }//end if
+        else
+        {
+            _writers.execute(_drainTask);
+        }//end else
+    }//end method schedule
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs on a writer thread, writes queued frames in coalesced batches
+    */
+    private void drain()
+    {
+        for(int __round = 0; __round < MAX_BATCHES_PER_DRAIN; __round++)
+        {
+            OutputStream __outputStream;
+            int __bytes = 0;
+
+            synchronized (this)
+            {
+                _delayedDrain = null;
+
+                if(_queue.isEmpty() || _closedCause != null)
+                {
+                    _drainScheduled = false;
+                    return;
+                }//end if
+
+                //not enough for a full write yet, give later frames a chance to join
+                long __wait = _queue.peek().enqueuedMillis + _policy.getFlushDelayMillis() - System.currentTimeMillis();
+                if(_queuedBytes < _policy.getFlushSize() && __wait > 0)
+                {
+                    reschedule(__wait);
+                    return;
+                }//end if
+
+                //the first frame always goes, later ones only while the batch stays within the flush size
+                while(!_queue.isEmpty())
+                {
+                    Pending __next = _queue.peek();
+                    if(!_batch.isEmpty() && __bytes + __next.length > _policy.getFlushSize())
+                    {
+                        break;
+                    }//end if
+
+                    _batch.add(_queue.poll());
+                    __bytes += __next.length;
+                }//end while loop
+
+                _queuedBytes -= __bytes;
+                __outputStream = _outputStream;
+
+                //wake senders waiting for room
+                notifyAll();
+            }//end synchronized
+
+            _writeStartedNanos = System.nanoTime();
+            _writing = true;
+            IOException __failure = write(__outputStream, __bytes);
+            _writing = false;
+            long __writtenNanos = System.nanoTime();
+
+            if(__failure == null)
+            {
+                _metrics.recordWrite(_batch.size(), __bytes);
+            }//end if
+            else
+            {
+                _metrics.recordError(__failure);
+            }//end else
+
+            for(int i = 0; i < _batch.size(); i++)
+            {
+                if(__failure == null)
+                {
+                    _metrics.recordWriteLatency(__writtenNanos - _batch.get(i).enqueuedNanos);
+                    _batch.get(i).future.complete();
+                }//end if
+                else
+                {
+                    _batch.get(i).future.fail(__failure);
+                }//end else
+            }//end for loop
+            _batch.clear();
+
+            if(__failure != null)
+            {
+                close(__failure);
+                return;
+            }//end if
+        }//end for loop
+
+        //more is waiting, let the other connections have the writer thread first
+        reschedule(0);
+    }//end method drain
+
+    //----------------------------------------------------------------------------------------------
+
+    private void reschedule(long __delayMillis)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                schedule(__delayMillis);
+            }//end synchronized
+        }//end try
+        catch (RejectedExecutionException e)
+        {
+            close(new IOException("connection engine is shut down"));
+        }//end catch
+    }//end method reschedule
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   writes the current batch with a single socket write
+    */
+    private IOException write(OutputStream __outputStream, int __bytes)
+    {
+        try
+        {
+            if(_batch.size() == 1)
+            {
+                //nothing to coalesce, write the frame where it is
+                Pending __only = _batch.get(0);
+                __outputStream.write(__only.data, __only.offset, __only.length);
+            }//end if
+            else
+            {
+                byte[] __staging = _pool.acquire(__bytes);
+
+                try
+                {
+                    int __position = 0;
+                    for(int i = 0; i < _batch.size(); i++)
+                    {
+                        Pending __pending = _batch.get(i);
+                        System.arraycopy(__pending.data, __pending.offset, __staging, __position, __pending.length);
+                        __position += __pending.length;
+                    }//end for loop
+
+                    __outputStream.write(__staging, 0, __bytes);
+                }//end try
+                finally
+                {
+                    _pool.release(__staging);
+                }//end finally
+            }//end else
+
+            __outputStream.flush();
+            return null;
+        }//end try
+        catch (IOException e)
+        {
+            return e;
+        }//end catch
+    }//end method write
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   fails every queued send and refuses new ones
+    */
+    void close(IOException __cause)
+    {
+        ArrayList<Pending> __failed;
+
+        synchronized (this)
+        {
+            if(_closedCause != null)
+            {
+                return;
+            }//end if
+
+            _closedCause = __cause;
+            __failed = new ArrayList<>(_queue);
+            _queue.clear();
+            _queuedBytes = 0;
+            notifyAll();
+        }//end synchronized
+
+        for(Pending __pending : __failed)
+        {
+            __pending.future.fail(__cause);
+        }//end for loop
+    }//end method close
+
+    //----------------------------------------------------------------------------------------------
+
+    //how long the socket write in progress has been blocked, 0 when none is
+    long getWriteBlockedNanos(long __now)
+    {
+        return _writing ? Math.max(0, __now - _writeStartedNanos) : 0;
+    }//end method getWriteBlockedNanos
+
+    //----------------------------------------------------------------------------------------------
+
+    synchronized int size()
+    {
+        return _queue.size();
+    }//end method size
+
+    synchronized int getQueuedBytes()
+    {
+        return _queuedBytes;
+    }//end method getQueuedBytes
+}//end class WriteQueue
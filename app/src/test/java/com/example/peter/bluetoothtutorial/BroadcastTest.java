@@ -0,0 +1,166 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BroadcastTest
+{
+    private static final int PEERS = 4;
+
+    //small queues so a peer that does not read fills up quickly
+    private final ConnectionEngine _engine = new ConnectionEngine(2, 2, 2,
+            new WritePolicy().setMaxQueuedFrames(4).setOverflow(WritePolicy.Overflow.BLOCK));
+
+    private final ArrayList<LoopbackTransport> _peers = new ArrayList<>();
+
+    @After
+    public void shutdownEngine()
+    {
+        _engine.shutdown();
+    }//end method shutdownEngine
+
+    private void connectPeers(int __pipeCapacity) throws Exception
+    {
+        TransportTest.RecordingListener[] __listeners = new TransportTest.RecordingListener[PEERS];
+
+        for(int i = 0; i < PEERS; i++)
+        {
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("hub", "AA:0" + i, __pipeCapacity);
+            __listeners[i] = new TransportTest.RecordingListener();
+            _engine.connect(__pair[0], __listeners[i]);
+            __pair[1].connect();
+            _peers.add(__pair[1]);
+        }//end for loop
+
+        for(TransportTest.RecordingListener __listener : __listeners)
+        {
+            assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+        }//end for loop
+    }//end method connectPeers
+
+    //drains the peers from __first on in the background, the ones before it never read
+    private void readInBackground(int __first)
+    {
+        for(int i = __first; i < PEERS; i++)
+        {
+            final InputStream __input = _peers.get(i).getInputStream();
+            Thread __reader = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(__input.read(new byte[256]) >= 0)
+                        {
+                            //discard
+                        }//end while loop
+                    }//end try
+                    catch (Exception e)
+                    {
+                        //engine shut down
+                    }//end catch
+                }
+            };
+            __reader.setDaemon(true);
+            __reader.start();
+        }//end for loop
+    }//end method readInBackground
+
+    @Test
+    public void broadcast_reachesEveryPeer() throws Exception
+    {
+        connectPeers(LoopbackTransport.DEFAULT_PIPE_CAPACITY);
+        byte[] __expected = FrameEncoder.encodeText("hello all");
+
+        BroadcastResult __result = _engine.broadcast("hello all");
+
+        assertTrue(__result.await(5, TimeUnit.SECONDS));
+        assertEquals(PEERS, __result.getTargetCount());
+        assertEquals(PEERS, __result.getSucceededCount());
+        assertEquals(0, __result.getFailedCount());
+
+        for(LoopbackTransport __peer : _peers)
+        {
+            InputStream __input = __peer.getInputStream();
+            assertArrayEquals(__expected, TransportTest.readFully(__input, __expected.length));
+        }//end for loop
+    }//end test
+
+    @Test
+    public void multicast_onlyReachesTheGivenPeers() throws Exception
+    {
+        connectPeers(LoopbackTransport.DEFAULT_PIPE_CAPACITY);
+
+        BroadcastResult __result = _engine.multicast(Arrays.asList("AA:01", "AA:03", "BB:99"), Frame.TYPE_BINARY, new byte[] {1, 2, 3});
+
+        assertTrue(__result.await(5, TimeUnit.SECONDS));
+        assertEquals(2, __result.getTargetCount());
+        assertEquals(2, __result.getSucceededCount());
+    }//end test
+
+    @Test
+    public void stalledPeer_failsWithoutHoldingUpTheOthers() throws Exception
+    {
+        //pipes hold less than one frame, so a peer that never reads stalls its writer
+        connectPeers(64);
+        final byte[] __payload = new byte[100];
+
+        //drain every peer but the first in the background
+        readInBackground(1);
+
+        BroadcastResult __last = null;
+        long __blockedNanos = 0;
+        for(int i = 0; i < 20; i++)
+        {
+            long __start = System.nanoTime();
+            __last = _engine.broadcast(Frame.TYPE_BINARY, __payload);
+            __blockedNanos += System.nanoTime() - __start;
+
+            //the readers keep up with one frame at a time, only the stalled peer stays behind
+            long __deadline = System.currentTimeMillis() + 5000;
+            while(__last.getPendingCount() > 1 && System.currentTimeMillis() < __deadline)
+            {
+                Thread.sleep(1);
+            }//end while loop
+            assertTrue(__last.getPendingCount() <= 1);
+        }//end for loop
+
+        //the blocking policy would have waited a second once the stalled queue was full
+        long __blockedMillis = TimeUnit.NANOSECONDS.toMillis(__blockedNanos);
+        assertTrue("broadcasting took " + __blockedMillis + " ms", __blockedMillis < 500);
+
+        assertTrue(__last.await(5, TimeUnit.SECONDS));
+        assertEquals(PEERS - 1, __last.getSucceededCount());
+        assertTrue(__last.getFailures().get("AA:00") instanceof BackpressureException);
+    }//end test
+
+    @Test
+    public void asManyStalledPeersAsWriters_doNotHoldUpTheOthers() throws Exception
+    {
+        //both writer threads end up blocked in writes to a peer that never reads
+        connectPeers(64);
+        final int __stalled = 2;
+        readInBackground(__stalled);
+
+        for(int i = 0; i < 20; i++)
+        {
+            BroadcastResult __result = _engine.broadcast(Frame.TYPE_BINARY, new byte[100]);
+
+            //the reading peers still get every frame, only the stalled ones stay behind
+            long __deadline = System.currentTimeMillis() + 2000;
+            while(__result.getSucceededCount() < PEERS - __stalled && System.currentTimeMillis() < __deadline)
+            {
+                Thread.sleep(1);
+            }//end while loop
+            assertEquals("frame " + i, PEERS - __stalled, __result.getSucceededCount());
+        }//end for loop
+    }//end test
+}//end class BroadcastTest
@@ -0,0 +1,47 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest
+{
+    @Test
+    public void releasedBuffer_isHandedOutAgain() throws Exception
+    {
+        BufferPool __pool = new BufferPool(64 * 1024);
+
+        byte[] __buffer = __pool.acquire(1000);
+        assertEquals(1024, __buffer.length);
+        assertEquals(1, __pool.getAllocationCount());
+
+        __pool.release(__buffer);
+        assertSame(__buffer, __pool.acquire(700));
+        assertEquals(1, __pool.getAllocationCount());
+        assertEquals(1, __pool.getHitCount());
+    }//end test
+
+    @Test
+    public void pool_staysWithinByteBound() throws Exception
+    {
+        BufferPool __pool = new BufferPool(4096);
+
+        byte[] __first = __pool.acquire(4096);
+        byte[] __second = __pool.acquire(4096);
+        __pool.release(__first);
+        __pool.release(__second);
+
+        assertEquals(4096, __pool.getPooledBytes());
+        assertEquals(1, __pool.getDiscardCount());
+    }//end test
+
+    @Test
+    public void foreignSizes_areNotPooled() throws Exception
+    {
+        BufferPool __pool = new BufferPool(64 * 1024);
+
+        __pool.release(new byte[1000]);
+        assertEquals(0, __pool.getPooledBytes());
+        assertEquals(1, __pool.getDiscardCount());
+    }//end test
+}//end class BufferPoolTest
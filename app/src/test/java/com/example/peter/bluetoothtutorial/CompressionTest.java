@@ -0,0 +1,184 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest
+{
+    private static final byte[] DICTIONARY = "{\"sensor\":\"temperature\",\"value\":,\"unit\":\"celsius\"}".getBytes(Frame.UTF_8);
+
+    private final ConnectionEngine _hub = new ConnectionEngine(new ConnectPolicy()
+            .setCompression(new CompressionPolicy().setDictionary(DICTIONARY)), 1, 1, new WritePolicy());
+    private final ConnectionEngine _node = new ConnectionEngine(new ConnectPolicy()
+            .setCompression(new CompressionPolicy().setDictionary(DICTIONARY)), 1, 1, new WritePolicy());
+    private final ConnectionEngine _plainNode = new ConnectionEngine();
+
+    @After
+    public void shutdownEngines()
+    {
+        _hub.shutdown();
+        _node.shutdown();
+        _plainNode.shutdown();
+    }//end method shutdownEngines
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   connects the hub to a peer run by __peerEngine and waits until both hellos had time to arrive
+    */
+    private Connection[] connect(ConnectionEngine __peerEngine, TransportTest.RecordingListener __peerListener) throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("hub", "node");
+        TransportTest.RecordingListener __hubListener = new TransportTest.RecordingListener();
+
+        Connection __hubSide = _hub.connect(__pair[0], __hubListener);
+        Connection __peerSide = __peerEngine.connect(__pair[1], __peerListener);
+
+        assertTrue(__hubListener.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(__peerListener.connected.await(5, TimeUnit.SECONDS));
+        return new Connection[] {__hubSide, __peerSide};
+    }//end method connect
+
+    private static void awaitCompressing(Connection __connection, boolean __expected) throws InterruptedException
+    {
+        long __deadline = System.currentTimeMillis() + 2000;
+        while(__connection.isCompressing() != __expected && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(5);
+        }//end while loop
+
+        assertEquals(__expected, __connection.isCompressing());
+    }//end method awaitCompressing
+
+    private static String telemetry(int __records)
+    {
+        StringBuilder __text = new StringBuilder();
+        for(int i = 0; i < __records; i++)
+        {
+            __text.append("{\"sensor\":\"temperature\",\"value\":").append(20 + i % 7).append(",\"unit\":\"celsius\"}\n");
+        }//end for loop
+        return __text.toString();
+    }//end method telemetry
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void bothSidesOffering_compressLargeFrames() throws Exception
+    {
+        TransportTest.RecordingListener __nodeListener = new TransportTest.RecordingListener();
+        Connection[] __connections = connect(_node, __nodeListener);
+        awaitCompressing(__connections[0], true);
+
+        String __message = telemetry(200);
+        __connections[0].send(__message).get(5, TimeUnit.SECONDS);
+
+        assertTrue(__nodeListener.received.await(5, TimeUnit.SECONDS));
+        assertEquals(__message, __nodeListener.lastMessage);
+
+        CompressionStats __stats = _hub.getCompressionStats();
+        assertEquals(1, __stats.getFramesCompressed());
+        assertTrue(__stats.toString(), __stats.getRatio() < 0.2);
+        assertEquals(1, _node.getCompressionStats().getFramesInflated());
+    }//end test
+
+    @Test
+    public void shortFrames_areSentAsTheyAre() throws Exception
+    {
+        TransportTest.RecordingListener __nodeListener = new TransportTest.RecordingListener();
+        Connection[] __connections = connect(_node, __nodeListener);
+        awaitCompressing(__connections[0], true);
+
+        __connections[0].send("short").get(5, TimeUnit.SECONDS);
+
+        assertTrue(__nodeListener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("short", __nodeListener.lastMessage);
+        assertEquals(0, _hub.getCompressionStats().getFramesCompressed());
+        assertEquals(1, _hub.getCompressionStats().getFramesSkipped());
+    }//end test
+
+    @Test
+    public void peerWithoutCompression_getsPlainFrames() throws Exception
+    {
+        TransportTest.RecordingListener __nodeListener = new TransportTest.RecordingListener();
+        Connection[] __connections = connect(_plainNode, __nodeListener);
+
+        //the plain node never answers the hello, and ignores the one it got
+        Thread.sleep(100);
+        awaitCompressing(__connections[0], false);
+
+        String __message = telemetry(50);
+        __connections[0].send(__message).get(5, TimeUnit.SECONDS);
+
+        assertTrue(__nodeListener.received.await(5, TimeUnit.SECONDS));
+        assertEquals(__message, __nodeListener.lastMessage);
+        assertEquals(0, _hub.getCompressionStats().getFramesCompressed());
+    }//end test
+
+    @Test
+    public void differentDictionaries_doNotCompress() throws Exception
+    {
+        ConnectionEngine __otherNode = new ConnectionEngine(new ConnectPolicy()
+                .setCompression(new CompressionPolicy().setDictionary(new byte[] {1, 2, 3})), 1, 1, new WritePolicy());
+
+        try
+        {
+            TransportTest.RecordingListener __nodeListener = new TransportTest.RecordingListener();
+            Connection[] __connections = connect(__otherNode, __nodeListener);
+
+            Thread.sleep(100);
+            awaitCompressing(__connections[0], false);
+            awaitCompressing(__connections[1], false);
+        }//end try
+        finally
+        {
+            __otherNode.shutdown();
+        }//end finally
+    }//end test
+
+    @Test
+    public void broadcast_compressesOnceForCompressingPeers() throws Exception
+    {
+        final CountDownLatch __received = new CountDownLatch(2);
+        TransportTest.RecordingListener __nodeListener = new TransportTest.RecordingListener()
+        {
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+                super.onFrameReceived(__connection, __frame);
+                __received.countDown();
+            }
+        };
+
+        Connection[] __first = connect(_node, __nodeListener);
+        awaitCompressing(__first[0], true);
+
+        ConnectionEngine __secondNode = new ConnectionEngine(new ConnectPolicy()
+                .setCompression(new CompressionPolicy().setDictionary(DICTIONARY)), 1, 1, new WritePolicy());
+
+        try
+        {
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("hub", "node2");
+            TransportTest.RecordingListener __hubListener = new TransportTest.RecordingListener();
+            Connection __hubSide = _hub.connect(__pair[0], __hubListener);
+            __secondNode.connect(__pair[1], __nodeListener);
+            assertTrue(__hubListener.connected.await(5, TimeUnit.SECONDS));
+            awaitCompressing(__hubSide, true);
+
+            BroadcastResult __result = _hub.broadcast(telemetry(100));
+
+            assertTrue(__result.await(5, TimeUnit.SECONDS));
+            assertEquals(2, __result.getSucceededCount());
+            assertTrue(__received.await(5, TimeUnit.SECONDS));
+            assertEquals(1, _hub.getCompressionStats().getFramesCompressed());
+        }//end try
+        finally
+        {
+            __secondNode.shutdown();
+        }//end finally
+    }//end test
+}//end class CompressionTest
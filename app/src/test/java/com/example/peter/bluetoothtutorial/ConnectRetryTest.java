@@ -0,0 +1,228 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConnectRetryTest
+{
+    private final ConnectPolicy _policy = new ConnectPolicy()
+            .setMaxAttempts(3)
+            .setInitialBackoffMillis(10)
+            .setMaxBackoffMillis(40)
+            .setAttemptTimeoutMillis(200);
+
+    private final ConnectionEngine _engine = new ConnectionEngine(_policy, 1, 1, new WritePolicy());
+
+    @After
+    public void shutdownEngine()
+    {
+        _engine.shutdown();
+    }//end method shutdownEngine
+
+    @Test
+    public void failedAttempts_areRetriedWithNewTransports() throws Exception
+    {
+        FlakyFactory __factory = new FlakyFactory("AA:01", 2);
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+
+        Connection __connection = _engine.connect(__factory, __listener);
+
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+        assertEquals(ConnectionState.CONNECTED, __connection.getState());
+        assertEquals(3, __factory.created.get());
+        assertEquals(3, _engine.getConnectAttemptCount());
+        assertEquals(2, _engine.getConnectRetryCount());
+        assertEquals(1, _engine.getConnectLatency().getCount());
+    }//end test
+
+    @Test
+    public void lastFailedAttempt_reportsFailure() throws Exception
+    {
+        FlakyFactory __factory = new FlakyFactory("AA:01", 5);
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+
+        Connection __connection = _engine.connect(__factory, __listener);
+
+        assertTrue(__listener.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(ConnectionState.CLOSED, __connection.getState());
+        assertEquals(3, __factory.created.get());
+        assertEquals(1, _engine.getConnectFailureCount());
+        assertNull(_engine.getRegistry().get("AA:01"));
+    }//end test
+
+    @Test
+    public void hungConnect_isAbortedAfterTimeout() throws Exception
+    {
+        final HangingTransport __transport = new HangingTransport("AA:02");
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+
+        //a single transport only gets one attempt
+        _engine.connect(__transport, __listener);
+
+        assertTrue(__listener.failed.await(5, TimeUnit.SECONDS));
+        assertTrue(__transport.closed.await(0, TimeUnit.SECONDS));
+        assertEquals(1, _engine.getConnectTimeoutCount());
+    }//end test
+
+    @Test
+    public void hungConnect_timesOutWhileTheWriterIsBlocked() throws Exception
+    {
+        //a peer that never reads holds the engine's only writer thread in a socket write
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "AA:03", 64);
+        TransportTest.RecordingListener __stuckListener = new TransportTest.RecordingListener();
+        Connection __stuck = _engine.connect(__pair[0], __stuckListener);
+        assertTrue(__stuckListener.connected.await(5, TimeUnit.SECONDS));
+        __stuck.send(Frame.TYPE_BINARY, new byte[100]);
+
+        HangingTransport __transport = new HangingTransport("AA:02");
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        long __start = System.nanoTime();
+        _engine.connect(__transport, __listener);
+
+        //the deadline runs on the engine's timer, not behind the blocked write
+        assertTrue(__listener.failed.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - __start) < 1000);
+        assertEquals(1, _engine.getConnectTimeoutCount());
+    }//end test
+
+    @Test
+    public void connectAll_runsEveryTargetThroughTheQueue() throws Exception
+    {
+        List<TransportFactory> __targets = new ArrayList<>();
+        for(int i = 0; i < 8; i++)
+        {
+            __targets.add(new FlakyFactory("AA:1" + i, 0));
+        }//end for loop
+
+        final CountDownLatch __connected = new CountDownLatch(__targets.size());
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener()
+        {
+            @Override
+            public void onConnected(Connection __connection)
+            {
+                __connected.countDown();
+            }
+        };
+
+        List<Connection> __connections = _engine.connectAll(__targets, __listener);
+
+        assertEquals(__targets.size(), __connections.size());
+        assertTrue(__connected.await(5, TimeUnit.SECONDS));
+        assertEquals(__targets.size(), _engine.getRegistry().size());
+        assertEquals(__targets.size(), _engine.getConnectLatency().getCount());
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   fails the first __failures attempts, then hands out one end of a loopback pair
+    */
+    static class FlakyFactory implements TransportFactory
+    {
+        final AtomicInteger created = new AtomicInteger();
+        private final String _address;
+        private final int _failures;
+
+        FlakyFactory(String __address, int __failures)
+        {
+            _address = __address;
+            _failures = __failures;
+        }
+
+        @Override
+        public String getAddress()
+        {
+            return _address;
+        }
+
+        @Override
+        public Transport create() throws IOException
+        {
+            if(created.incrementAndGet() <= _failures)
+            {
+                return new HangingTransport(_address)
+                {
+                    @Override
+                    public void connect() throws IOException
+                    {
+                        throw new IOException("refused");
+                    }
+                };
+            }//end if
+
+            return LoopbackTransport.createPair("local", _address)[0];
+        }
+    }//end class FlakyFactory
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   connect blocks until the transport is closed, like a peer that never answers
+    */
+    static class HangingTransport implements Transport
+    {
+        final CountDownLatch closed = new CountDownLatch(1);
+        private final String _address;
+
+        HangingTransport(String __address)
+        {
+            _address = __address;
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            try
+            {
+                closed.await();
+            }//end try
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }//end catch
+
+            throw new IOException("socket closed");
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            throw new IOException("not connected");
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            throw new IOException("not connected");
+        }
+
+        @Override
+        public String getAddress()
+        {
+            return _address;
+        }
+
+        @Override
+        public String getName()
+        {
+            return _address;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed.countDown();
+        }
+    }//end class HangingTransport
+}//end class ConnectRetryTest
@@ -0,0 +1,127 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scaling benchmark for the connection engine over loopback transports. Prints thread count
+ * and per-connection throughput for 1 to 64 connections and checks the thread count stays flat.
+ */
+public class ConnectionEngineScalingTest
+{
+    private static final int FRAMES_PER_CONNECTION = 2000;
+    private static final int PAYLOAD_SIZE = 128;
+
+    private static final int CONNECT_THREADS = 2;
+    private static final int READER_THREADS = 2;
+    private static final int WRITER_THREADS = 2;
+
+    @Test
+    public void threadCount_staysFlatAsConnectionsGrow() throws Exception
+    {
+        System.out.println("connections  engine-threads  total-MB/s  per-connection-KB/s");
+
+        for(int __connections = 1; __connections <= 64; __connections *= 2)
+        {
+            ConnectionEngine __engine = new ConnectionEngine(CONNECT_THREADS, READER_THREADS, WRITER_THREADS, new WritePolicy());
+
+            try
+            {
+                Result __result = run(__engine, __connections);
+
+                System.out.println(String.format("%11d  %14d  %10.1f  %19.1f", __connections, __result.threads,
+                        __result.bytesPerSecond / (1024 * 1024), __result.bytesPerSecond / 1024 / __connections));
+
+                //the pools and the timer may have started fewer threads than their size, never more
+                assertTrue(__result.threads <= CONNECT_THREADS + READER_THREADS + WRITER_THREADS + 1);
+            }//end try
+            finally
+            {
+                __engine.shutdown();
+            }//end finally
+        }//end for loop
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    private Result run(ConnectionEngine __engine, int __connectionCount) throws Exception
+    {
+        final CountDownLatch __connected = new CountDownLatch(__connectionCount);
+        final CountDownLatch __done = new CountDownLatch(__connectionCount * FRAMES_PER_CONNECTION);
+        final AtomicLong __bytes = new AtomicLong();
+
+        ConnectionListener __listener = new ConnectionListener()
+        {
+            @Override
+            public void onConnected(Connection __connection)
+            {
+                __connected.countDown();
+            }
+
+            @Override
+            public void onConnectionFailed(Connection __connection, IOException __cause)
+            {
+            }
+
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+                __bytes.addAndGet(__frame.getLength());
+                __done.countDown();
+            }
+
+            @Override
+            public void onDisconnected(Connection __connection)
+            {
+            }
+        };
+
+        OutputStream[] __peers = new OutputStream[__connectionCount];
+        for(int i = 0; i < __connectionCount; i++)
+        {
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("engine", "peer-" + i);
+            __engine.connect(__pair[0], __listener);
+            __peers[i] = __pair[1].getOutputStream();
+        }//end for loop
+
+        assertTrue(__connected.await(10, TimeUnit.SECONDS));
+
+        //engine threads only, the connect pool threads count as long as they are alive
+        int __threads = __engine.getThreadCount();
+
+        byte[] __frame = FrameEncoder.encode(Frame.TYPE_BINARY, new byte[PAYLOAD_SIZE]);
+        long __start = System.nanoTime();
+
+        //a single feeder writes to every peer in turn
+        for(int i = 0; i < FRAMES_PER_CONNECTION; i++)
+        {
+            for(OutputStream __peer : __peers)
+            {
+                __peer.write(__frame);
+            }//end for loop
+        }//end for loop
+
+        assertTrue(__done.await(60, TimeUnit.SECONDS));
+        double __seconds = (System.nanoTime() - __start) / 1e9;
+
+        Result __result = new Result();
+        __result.threads = __threads;
+        __result.bytesPerSecond = __bytes.get() / __seconds;
+        return __result;
+    }//end method run
+
+    //----------------------------------------------------------------------------------------------
+
+    private static class Result
+    {
+        int threads;
+        double bytesPerSecond;
+    }//end class Result
+}//end class ConnectionEngineScalingTest
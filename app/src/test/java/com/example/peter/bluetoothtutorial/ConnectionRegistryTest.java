@@ -0,0 +1,71 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionRegistryTest
+{
+    private final ConnectionEngine _engine = new ConnectionEngine();
+
+    @After
+    public void shutdownEngine()
+    {
+        _engine.shutdown();
+    }//end method shutdownEngine
+
+    @Test
+    public void connect_registersByAddress() throws Exception
+    {
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        Connection __connection = _engine.connect(LoopbackTransport.createPair("local", "AA:BB")[0], __listener);
+
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+        assertSame(__connection, _engine.getRegistry().get("AA:BB"));
+        assertEquals(ConnectionState.CONNECTED, __connection.getState());
+    }//end test
+
+    @Test
+    public void secondConnectToSameAddress_returnsLiveConnection() throws Exception
+    {
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        Connection __first = _engine.connect(LoopbackTransport.createPair("local", "AA:BB")[0], __listener);
+        Connection __second = _engine.connect(LoopbackTransport.createPair("local", "AA:BB")[0], __listener);
+
+        assertSame(__first, __second);
+        assertEquals(1, _engine.getRegistry().size());
+    }//end test
+
+    @Test
+    public void closedConnection_leavesRegistry() throws Exception
+    {
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        Connection __connection = _engine.connect(LoopbackTransport.createPair("local", "AA:BB")[0], __listener);
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __connection.close();
+        assertTrue(__connection.isClosed());
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+
+        assertEquals(ConnectionState.CLOSED, __connection.getState());
+        assertNull(_engine.getRegistry().get("AA:BB"));
+        assertTrue(_engine.getRegistry().snapshot().isEmpty());
+    }//end test
+
+    @Test
+    public void snapshot_isNotChangedByLaterConnections() throws Exception
+    {
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        _engine.connect(LoopbackTransport.createPair("local", "AA:01")[0], __listener);
+        List<Connection> __snapshot = _engine.getRegistry().snapshot();
+
+        _engine.connect(LoopbackTransport.createPair("local", "AA:02")[0], __listener);
+
+        assertEquals(1, __snapshot.size());
+        assertEquals(2, _engine.getRegistry().snapshot().size());
+    }//end test
+}//end class ConnectionRegistryTest
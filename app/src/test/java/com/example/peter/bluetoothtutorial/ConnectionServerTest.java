@@ -0,0 +1,307 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionServerTest
+{
+    private final ConnectionEngine _serverEngine = new ConnectionEngine();
+    private final ConnectionEngine _clientEngine = new ConnectionEngine();
+    private ConnectionServer _server;
+    private int _dialed = 0;
+
+    @After
+    public void shutdown() throws Exception
+    {
+        if(_server != null)
+        {
+            _server.stop();
+        }//end if
+
+        _clientEngine.shutdown();
+        _serverEngine.shutdown();
+    }//end method shutdown
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   counts the links the server side sees come up and the frames they deliver
+    */
+    static class CountingListener extends TransportTest.RecordingListener
+    {
+        final CountDownLatch connects;
+        final CountDownLatch frames;
+
+        CountingListener(int __connects, int __frames)
+        {
+            connects = new CountDownLatch(__connects);
+            frames = new CountDownLatch(__frames);
+        }
+
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            super.onConnected(__connection);
+            connects.countDown();
+        }
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            super.onFrameReceived(__connection, __frame);
+            frames.countDown();
+        }
+    }//end class CountingListener
+
+    private TcpAcceptor startServer(ServerPolicy __policy, ConnectionListener __listener) throws Exception
+    {
+        TcpAcceptor __acceptor = new TcpAcceptor(0, 50);
+        _server = new ConnectionServer(_serverEngine, __acceptor, __policy, __listener);
+        _server.start();
+        return __acceptor;
+    }//end method startServer
+
+    /*
+    *   every client dials the same host and port, so each gets a name of its own or the client
+    *   engine would hand back the first connection
+    */
+    private Transport clientTransport(TcpAcceptor __acceptor)
+    {
+        final String __address = "client-" + _dialed++;
+
+        return new TcpTransport("127.0.0.1", __acceptor.getPort())
+        {
+            @Override
+            public String getAddress()
+            {
+                return __address;
+            }
+        };
+    }//end method clientTransport
+
+    private Connection dial(TcpAcceptor __acceptor, TransportTest.RecordingListener __listener) throws Exception
+    {
+        Connection __connection = _clientEngine.connect(clientTransport(__acceptor), __listener);
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+        return __connection;
+    }//end method dial
+
+    /*
+    *   hands out the server ends of loopback pairs, which keep their peer's address across
+    *   links the way RFCOMM does. The server ends behave like bluetooth sockets
+    */
+    static class LoopbackAcceptor implements TransportAcceptor
+    {
+        private final LinkedBlockingQueue<Transport> _pending = new LinkedBlockingQueue<>();
+        private volatile boolean _closed = false;
+
+        //a new link from __address, returns the client's end. See RfcommLikeTransport for __noticesDrop
+        LoopbackTransport dialIn(String __address, boolean __noticesDrop)
+        {
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("server", __address);
+            _pending.add(new RfcommLikeTransport(__pair[0], __noticesDrop));
+            return __pair[1];
+        }
+
+        @Override
+        public Transport accept() throws IOException
+        {
+            while(!_closed)
+            {
+                try
+                {
+                    Transport __transport = _pending.poll(50, TimeUnit.MILLISECONDS);
+                    if(__transport != null)
+                    {
+                        return __transport;
+                    }//end if
+                }//end try
+                catch (InterruptedException e)
+                {
+                    throw new IOException("interrupted");
+                }//end catch
+            }//end while loop
+
+            throw new IOException("acceptor closed");
+        }
+
+        @Override
+        public void close()
+        {
+            _closed = true;
+        }
+    }//end class LoopbackAcceptor
+
+    private void awaitClientCount(int __clients) throws InterruptedException
+    {
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(_server.getClientCount() != __clients && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(5);
+        }//end while loop
+
+        assertEquals(__clients, _server.getClientCount());
+    }//end method awaitClientCount
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void manyClients_shareTheEngineThreads() throws Exception
+    {
+        int __clients = 30;
+        CountingListener __serverListener = new CountingListener(__clients, __clients);
+        TcpAcceptor __acceptor = startServer(new ServerPolicy().setMaxClients(__clients), __serverListener);
+
+        List<Connection> __connections = new ArrayList<>();
+        for(int i = 0; i < __clients; i++)
+        {
+            TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+            __connections.add(dial(__acceptor, __listener));
+        }//end for loop
+
+        assertTrue(__serverListener.connects.await(5, TimeUnit.SECONDS));
+        for(Connection __connection : __connections)
+        {
+            __connection.send("hello");
+        }//end for loop
+        assertTrue(__serverListener.frames.await(5, TimeUnit.SECONDS));
+
+        assertEquals(__clients, _server.getClientCount());
+        assertEquals(__clients, _serverEngine.getConnectionCount());
+        assertEquals(0, _server.getRejectedCount());
+
+        //the pools never grow past their fixed sizes, however many clients there are, plus the timer thread
+        assertTrue(_serverEngine.getThreadCount() <= ConnectionEngine.DEFAULT_READER_THREADS
+                + ConnectionEngine.DEFAULT_WRITER_THREADS + new ConnectPolicy().getMaxParallelAttempts() + 1);
+
+        MetricsSnapshot __snapshot = _serverEngine.getMetricsSnapshot();
+        assertEquals(__clients, __snapshot.getAcceptToFirstByte().getCount());
+        System.out.println("accept to first byte " + __snapshot.getAcceptToFirstByte() + " over " + __clients + " clients");
+    }//end test
+
+    @Test
+    public void fullServer_rejectsUntilAClientLeaves() throws Exception
+    {
+        CountingListener __serverListener = new CountingListener(3, 0);
+        TcpAcceptor __acceptor = startServer(new ServerPolicy().setMaxClients(2), __serverListener);
+
+        Connection __first = dial(__acceptor, new TransportTest.RecordingListener());
+        dial(__acceptor, new TransportTest.RecordingListener());
+
+        //the third link is accepted by the socket and closed by the server
+        TransportTest.RecordingListener __third = new TransportTest.RecordingListener();
+        dial(__acceptor, __third);
+        assertTrue(__third.disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(1, _server.getRejectedCount());
+        assertEquals(2, _server.getClientCount());
+
+        //once a client leaves its slot is free again
+        __first.close();
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(_server.getClientCount() > 1 && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(5);
+        }//end while loop
+
+        dial(__acceptor, new TransportTest.RecordingListener());
+        assertTrue(__serverListener.connects.await(5, TimeUnit.SECONDS));
+        assertEquals(2, _server.getClientCount());
+    }//end test
+
+    @Test
+    public void waitingServer_acceptsOnceASlotFrees() throws Exception
+    {
+        CountingListener __serverListener = new CountingListener(2, 0);
+        TcpAcceptor __acceptor = startServer(new ServerPolicy().setMaxClients(1).setRejectWhenFull(false), __serverListener);
+
+        Connection __first = dial(__acceptor, new TransportTest.RecordingListener());
+
+        //the second peer's connect completes in the listen backlog but the server does not take it yet
+        dial(__acceptor, new TransportTest.RecordingListener());
+        Thread.sleep(200);
+        assertEquals(1, _server.getAcceptedCount());
+
+        __first.close();
+        assertTrue(__serverListener.connects.await(5, TimeUnit.SECONDS));
+        assertEquals(2, _server.getAcceptedCount());
+        assertEquals(0, _server.getRejectedCount());
+    }//end test
+
+    @Test
+    public void admissionFilter_turnsPeersAway() throws Exception
+    {
+        TcpAcceptor __acceptor = startServer(new ServerPolicy(), new TransportTest.RecordingListener());
+        _server.setAdmissionFilter(new ConnectionServer.AdmissionFilter()
+        {
+            @Override
+            public boolean admit(Transport __transport, int __clients)
+            {
+                return false;
+            }
+        });
+
+        TransportTest.RecordingListener __client = new TransportTest.RecordingListener();
+        dial(__acceptor, __client);
+        assertTrue(__client.disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(1, _server.getRejectedCount());
+        assertEquals(0, _server.getClientCount());
+    }//end test
+
+    @Test
+    public void droppedClient_givesItsSlotBack() throws Exception
+    {
+        LoopbackAcceptor __acceptor = new LoopbackAcceptor();
+        CountingListener __serverListener = new CountingListener(2, 0);
+        _server = new ConnectionServer(_serverEngine, __acceptor, new ServerPolicy().setMaxClients(1), __serverListener);
+        _server.start();
+
+        //available() on the server end never reports the drop, only its read ahead does
+        LoopbackTransport __first = __acceptor.dialIn("AA:01", true);
+        assertTrue(__serverListener.connected.await(5, TimeUnit.SECONDS));
+        __first.close();
+        assertTrue(__serverListener.disconnected.await(5, TimeUnit.SECONDS));
+        awaitClientCount(0);
+
+        __acceptor.dialIn("AA:02", true);
+        assertTrue(__serverListener.connects.await(5, TimeUnit.SECONDS));
+        assertEquals(0, _server.getRejectedCount());
+    }//end test
+
+    @Test
+    public void returningClient_replacesALinkThatNeverNoticedTheDrop() throws Exception
+    {
+        LoopbackAcceptor __acceptor = new LoopbackAcceptor();
+        CountingListener __serverListener = new CountingListener(2, 1);
+        _server = new ConnectionServer(_serverEngine, __acceptor, new ServerPolicy().setMaxClients(1), __serverListener);
+        _server.start();
+
+        //the server end of the first link never finds out the client is gone
+        LoopbackTransport __first = __acceptor.dialIn("AA:01", false);
+        assertTrue(__serverListener.connected.await(5, TimeUnit.SECONDS));
+        Connection __stale = _serverEngine.getRegistry().get("AA:01");
+        __first.close();
+        Thread.sleep(100);
+        assertFalse(__stale.isClosed());
+
+        //the full server still lets the client back in, and the old link makes room for it
+        LoopbackTransport __second = __acceptor.dialIn("AA:01", false);
+        assertTrue(__serverListener.connects.await(5, TimeUnit.SECONDS));
+        assertTrue(__serverListener.disconnected.await(5, TimeUnit.SECONDS));
+        awaitClientCount(1);
+        assertEquals(0, _server.getRejectedCount());
+        assertNotSame(__stale, _serverEngine.getRegistry().get("AA:01"));
+
+        __second.getOutputStream().write(FrameEncoder.encodeText("back"));
+        assertTrue(__serverListener.frames.await(5, TimeUnit.SECONDS));
+        assertEquals("back", __serverListener.lastMessage);
+    }//end test
+}//end class ConnectionServerTest
@@ -0,0 +1,99 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeviceCacheTest
+{
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final File _file = new File(System.getProperty("java.io.tmpdir"), "DeviceCacheTest-" + System.nanoTime() + ".cache");
+
+    @After
+    public void deleteFile()
+    {
+        _file.delete();
+    }//end method deleteFile
+
+    @Test
+    public void savedEntries_areLoadedByANewCache() throws Exception
+    {
+        DeviceCache __cache = new DeviceCache(_file, 16, 7 * DAY);
+        __cache.recordSighting("AA:01", "phone", -55, 1000);
+        __cache.recordConnect("AA:01", null, true, 1800, 2000);
+        __cache.recordConnect("AA:01", null, false, -1, 3000);
+        __cache.save();
+
+        DeviceCache __reloaded = new DeviceCache(_file, 16, 7 * DAY);
+        DeviceCache.Entry __entry = __reloaded.get("AA:01", 4000);
+
+        assertNotNull(__entry);
+        assertEquals("phone", __entry.getName());
+        assertEquals(-55, __entry.getLastRssi());
+        assertEquals(2000, __entry.getLastSeenMillis());
+        assertEquals(1800, __entry.getLastConnectMillis());
+        assertEquals(0.5, __entry.getSuccessRate(), 0);
+        assertTrue(__reloaded.getLoadNanos() >= 0);
+    }//end test
+
+    @Test
+    public void expiredEntries_areDropped() throws Exception
+    {
+        DeviceCache __cache = new DeviceCache(_file, 16, DAY);
+        __cache.recordSighting("AA:01", "old", -60, 0);
+        __cache.recordSighting("AA:02", "new", -60, DAY);
+
+        assertNull(__cache.get("AA:01", DAY + 1));
+        assertNotNull(__cache.get("AA:02", DAY + 1));
+        assertEquals(0.5, __cache.getHitRate(), 0);
+    }//end test
+
+    @Test
+    public void leastRecentlyUsed_isEvictedWhenFull() throws Exception
+    {
+        DeviceCache __cache = new DeviceCache(_file, 2, DAY);
+        __cache.recordSighting("AA:01", "a", -60, 0);
+        __cache.recordSighting("AA:02", "b", -60, 0);
+        __cache.get("AA:01", 0);
+        __cache.recordSighting("AA:03", "c", -60, 0);
+
+        assertEquals(2, __cache.size());
+        assertNotNull(__cache.get("AA:01", 0));
+        assertNull(__cache.get("AA:02", 0));
+    }//end test
+
+    @Test
+    public void knownGood_onlyListsReliableDevices() throws Exception
+    {
+        DeviceCache __cache = new DeviceCache(_file, 16, DAY);
+        __cache.recordConnect("AA:01", "good", true, 900, 0);
+        __cache.recordConnect("AA:02", "flaky", false, -1, 0);
+        __cache.recordConnect("AA:02", "flaky", false, -1, 0);
+        __cache.recordConnect("AA:02", "flaky", true, 900, 0);
+        __cache.recordSighting("AA:03", "never connected", -40, 0);
+
+        List<DeviceCache.Entry> __good = __cache.getKnownGood(0.5, 0);
+
+        assertEquals(1, __good.size());
+        assertEquals("AA:01", __good.get(0).getAddress());
+    }//end test
+
+    @Test
+    public void damagedFile_startsEmpty() throws Exception
+    {
+        FileOutputStream __out = new FileOutputStream(_file);
+        __out.write(new byte[] {1, 2, 3});
+        __out.close();
+
+        DeviceCache __cache = new DeviceCache(_file, 16, DAY);
+
+        assertEquals(0, __cache.size());
+        assertNull(__cache.get("AA:01"));
+    }//end test
+}//end class DeviceCacheTest
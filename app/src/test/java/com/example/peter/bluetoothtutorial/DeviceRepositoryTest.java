@@ -0,0 +1,79 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class DeviceRepositoryTest
+{
+    @Test
+    public void snapshot_isNotChangedByLaterUpdates() throws Exception
+    {
+        DeviceRepository __repository = new DeviceRepository();
+        __repository.addConnected(new DiscoveredDevice("AA:01", "a", DiscoveredDevice.NO_RSSI, 0));
+        DeviceRepository.Snapshot __before = __repository.getSnapshot();
+
+        __repository.addConnected(new DiscoveredDevice("AA:02", "b", DiscoveredDevice.NO_RSSI, 0));
+        __repository.removeConnected("AA:01");
+
+        assertEquals(1, __before.getConnected().size());
+        assertEquals("AA:01", __before.getConnected().get(0).getAddress());
+        assertEquals("AA:02", __repository.getSnapshot().getConnected().get(0).getAddress());
+        assertTrue(__repository.getSnapshot().getVersion() > __before.getVersion());
+    }//end test
+
+    @Test
+    public void discoveredSightings_areMergedByAddress() throws Exception
+    {
+        DeviceRepository __repository = new DeviceRepository();
+        __repository.reportDiscovered(Arrays.asList(
+                new DiscoveredDevice("AA:01", "a", -70, 0),
+                new DiscoveredDevice("AA:02", "b", -60, 0)));
+        __repository.reportDiscovered(Arrays.asList(new DiscoveredDevice("AA:01", null, -40, 1)));
+
+        DeviceRepository.Snapshot __snapshot = __repository.getSnapshot();
+        assertEquals(2, __snapshot.getDiscovered().size());
+        assertEquals(-40, __snapshot.find("AA:01").getRssi());
+        assertEquals("a", __snapshot.find("AA:01").getName());
+
+        __repository.clearDiscovered();
+        assertTrue(__repository.getSnapshot().getDiscovered().isEmpty());
+    }//end test
+
+    @Test
+    public void listeners_receiveEveryChange() throws Exception
+    {
+        DeviceRepository __repository = new DeviceRepository();
+        final AtomicReference<DeviceRepository.Snapshot> __seen = new AtomicReference<>();
+        DeviceRepository.Listener __listener = new DeviceRepository.Listener()
+        {
+            @Override
+            public void onDevicesChanged(DeviceRepository.Snapshot __snapshot)
+            {
+                __seen.set(__snapshot);
+            }
+        };
+
+        __repository.addListener(__listener);
+        __repository.setPaired(Arrays.asList(new DiscoveredDevice("AA:01", "a", DiscoveredDevice.NO_RSSI, 0)));
+        assertSame(__repository.getSnapshot(), __seen.get());
+
+        __repository.removeListener(__listener);
+        __repository.setPaired(Arrays.<DiscoveredDevice>asList());
+        assertEquals(1, __seen.get().getPaired().size());
+    }//end test
+
+    @Test
+    public void removingUnknownDevice_publishesNothing() throws Exception
+    {
+        DeviceRepository __repository = new DeviceRepository();
+        long __version = __repository.getSnapshot().getVersion();
+
+        __repository.removeConnected("AA:01");
+
+        assertEquals(__version, __repository.getSnapshot().getVersion());
+    }//end test
+}//end class DeviceRepositoryTest
@@ -0,0 +1,93 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DiscoveryIndexTest
+{
+    @Test
+    public void repeatedSightings_mergeIntoOneEntry() throws Exception
+    {
+        DiscoveryIndex __index = new DiscoveryIndex();
+        __index.report(new DiscoveredDevice("AA:01", "phone", -70, 100));
+        __index.report(new DiscoveredDevice("AA:01", null, -50, 200));
+        __index.report(new DiscoveredDevice("AA:01", null, DiscoveredDevice.NO_RSSI, 300));
+
+        DiscoveredDevice __device = __index.get("AA:01");
+        assertEquals(1, __index.size());
+        assertEquals("phone", __device.getName());
+        assertEquals(-50, __device.getRssi());
+        assertEquals(100, __device.getFirstSeenMillis());
+        assertEquals(300, __device.getLastSeenMillis());
+        assertEquals(3, __device.getSightings());
+        assertEquals(2, __index.getMergeCount());
+    }//end test
+
+    @Test
+    public void publish_ranksByStrongestSignal() throws Exception
+    {
+        DiscoveryIndex __index = new DiscoveryIndex();
+        __index.report(new DiscoveredDevice("AA:01", "far", -90, 0));
+        __index.report(new DiscoveredDevice("AA:02", "paired", DiscoveredDevice.NO_RSSI, 0));
+        __index.report(new DiscoveredDevice("AA:03", "near", -40, 0));
+
+        List<DiscoveryIndex.Change> __changes = __index.publish();
+
+        assertEquals(3, __changes.size());
+        assertEquals("AA:03", __index.getPublished().get(0).getAddress());
+        assertEquals("AA:01", __index.getPublished().get(1).getAddress());
+        assertEquals("AA:02", __index.getPublished().get(2).getAddress());
+    }//end test
+
+    @Test
+    public void publish_withoutReports_isEmpty() throws Exception
+    {
+        DiscoveryIndex __index = new DiscoveryIndex();
+        __index.report(new DiscoveredDevice("AA:01", "phone", -60, 0));
+        __index.publish();
+
+        assertTrue(__index.publish().isEmpty());
+    }//end test
+
+    @Test
+    public void strongerSignal_movesDeviceUp() throws Exception
+    {
+        DiscoveryIndex __index = new DiscoveryIndex();
+        __index.report(new DiscoveredDevice("AA:01", "a", -40, 0));
+        __index.report(new DiscoveredDevice("AA:02", "b", -80, 0));
+        __index.publish();
+
+        __index.report(new DiscoveredDevice("AA:02", null, -30, 10));
+        List<DiscoveryIndex.Change> __changes = __index.publish();
+
+        assertEquals(1, __changes.size());
+        assertEquals(DiscoveryIndex.Change.MOVE, __changes.get(0).getType());
+        assertEquals(1, __changes.get(0).getFrom());
+        assertEquals(0, __changes.get(0).getTo());
+    }//end test
+
+    @Test
+    public void appliedDiffs_reproduceThePublishedRanking() throws Exception
+    {
+        DiscoveryIndex __index = new DiscoveryIndex();
+        ArrayList<DiscoveredDevice> __rows = new ArrayList<>();
+        Random __random = new Random(7);
+
+        for(int __batch = 0; __batch < 50; __batch++)
+        {
+            for(int i = 0; i < 20; i++)
+            {
+                String __address = "AA:" + __random.nextInt(40);
+                __index.report(new DiscoveredDevice(__address, "d" + __address, -30 - __random.nextInt(70), __batch));
+            }//end for loop
+
+            DiscoveryIndex.apply(__rows, __index.publish());
+            assertEquals(__index.getPublished(), __rows);
+        }//end for loop
+    }//end test
+}//end class DiscoveryIndexTest
@@ -0,0 +1,331 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FileTransferChannelTest
+{
+    private static final FileTransferPolicy POLICY = new FileTransferPolicy().setChunkSize(16 * 1024)
+            .setWindowChunks(8).setSyncEveryChunks(16).setMapSegmentBytes(1024 * 1024);
+
+    private final File _root = new File(System.getProperty("java.io.tmpdir"), "FileTransferChannelTest-" + System.nanoTime());
+    private final File _outbox = new File(_root, "outbox");
+    private final File _inbox = new File(_root, "inbox");
+
+    private final ConnectionEngine _sender = new ConnectionEngine();
+    private final ConnectionEngine _receiver = new ConnectionEngine();
+
+    @Before
+    public void createDirectories()
+    {
+        assertTrue(_outbox.mkdirs());
+        assertTrue(_inbox.mkdirs());
+    }//end method createDirectories
+
+    @After
+    public void cleanUp()
+    {
+        _sender.shutdown();
+        _receiver.shutdown();
+        delete(_root);
+    }//end method cleanUp
+
+    private static void delete(File __file)
+    {
+        File[] __children = __file.listFiles();
+        if(__children != null)
+        {
+            for(File __child : __children)
+            {
+                delete(__child);
+            }//end for loop
+        }//end if
+
+        __file.delete();
+    }//end method delete
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   Loopback end that flips one outgoing byte, or cuts the link, once a given number of bytes
+    *   has been written
+    */
+    static class TamperingTransport implements Transport
+    {
+        private final Transport _inner;
+        private final long _corruptAt;
+        private final long _cutAfter;
+        private long _written = 0;
+
+        TamperingTransport(Transport __inner, long __corruptAt, long __cutAfter)
+        {
+            _inner = __inner;
+            _corruptAt = __corruptAt;
+            _cutAfter = __cutAfter;
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            _inner.connect();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return _inner.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            final OutputStream __out = _inner.getOutputStream();
+
+            return new OutputStream()
+            {
+                @Override
+                public void write(int __byte) throws IOException
+                {
+                    write(new byte[] {(byte) __byte}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] __bytes, int __offset, int __length) throws IOException
+                {
+                    if(_cutAfter >= 0 && _written + __length > _cutAfter)
+                    {
+                        _inner.close();
+                        throw new IOException("link cut");
+                    }//end if
+
+                    if(_corruptAt >= _written && _corruptAt < _written + __length)
+                    {
+                        byte[] __copy = new byte[__length];
+                        System.arraycopy(__bytes, __offset, __copy, 0, __length);
+                        __copy[(int) (_corruptAt - _written)] ^= 0x5a;
+                        __bytes = __copy;
+                        __offset = 0;
+                    }//end if
+
+                    _written += __length;
+                    __out.write(__bytes, __offset, __length);
+                }
+            };
+        }
+
+        @Override
+        public String getAddress()
+        {
+            return _inner.getAddress();
+        }
+
+        @Override
+        public String getName()
+        {
+            return _inner.getName();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _inner.close();
+        }
+    }//end class TamperingTransport
+
+    //----------------------------------------------------------------------------------------------
+
+    private File createFile(String __name, int __length) throws IOException
+    {
+        File __file = new File(_outbox, __name);
+        Random __random = new Random(__length);
+        byte[] __block = new byte[4096];
+        FileOutputStream __out = new FileOutputStream(__file);
+
+        try
+        {
+            for(int __written = 0; __written < __length; __written += __block.length)
+            {
+                __random.nextBytes(__block);
+                __out.write(__block, 0, Math.min(__block.length, __length - __written));
+            }//end for loop
+        }//end try
+        finally
+        {
+            __out.close();
+        }//end finally
+
+        return __file;
+    }//end method createFile
+
+    private static void assertSameContent(File __expected, File __actual) throws IOException
+    {
+        assertEquals(__expected.length(), __actual.length());
+
+        InputStream __a = new BufferedInputStream(new FileInputStream(__expected));
+        InputStream __b = new BufferedInputStream(new FileInputStream(__actual));
+
+        try
+        {
+            for(long i = 0; i < __expected.length(); i++)
+            {
+                if(__a.read() != __b.read())
+                {
+                    fail("files differ at byte " + i);
+                }//end if
+            }//end for loop
+        }//end try
+        finally
+        {
+            __a.close();
+            __b.close();
+        }//end finally
+    }//end method assertSameContent
+
+    /*
+    *   connects __sending to a new receiving channel over __pair and waits until both are up
+    */
+    private FileTransferChannel connect(FileTransferChannel __sending, TransportTest.RecordingListener __senderListener,
+                                        Transport __senderEnd, Transport __receiverEnd,
+                                        TransportTest.RecordingListener __receiverListener) throws Exception
+    {
+        FileTransferChannel __receiving = new FileTransferChannel(POLICY, _inbox, __receiverListener);
+        _sender.connect(__senderEnd, __sending);
+        _receiver.connect(__receiverEnd, __receiving);
+
+        assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(__receiverListener.connected.await(5, TimeUnit.SECONDS));
+        return __receiving;
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void largeFile_arrivesIntactWithFlatMemory() throws Exception
+    {
+        File __source = createFile("firmware.bin", 4 * 1024 * 1024 + 123);
+        BufferPool __pool = new BufferPool(1024 * 1024);
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+        FileTransferChannel __sending = new FileTransferChannel(POLICY, _outbox, __senderListener, __pool);
+
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        connect(__sending, __senderListener, __pair[0], __pair[1], new TransportTest.RecordingListener());
+
+        FileTransferChannel.Transfer __transfer = __sending.sendFile(__source);
+        __transfer.getFuture().get(30, TimeUnit.SECONDS);
+
+        assertSameContent(__source, new File(_inbox, "firmware.bin"));
+        assertEquals(0, __transfer.getResumedFrom());
+        assertEquals(__transfer.getChunkCount(), __transfer.getChunksSent());
+        assertEquals(__transfer.getChunkCount(), __transfer.getAckedChunks());
+        assertFalse(new File(_inbox, "firmware.bin" + FileTransferChannel.PART_SUFFIX).exists());
+        assertFalse(new File(_inbox, "firmware.bin" + FileTransferChannel.PROGRESS_SUFFIX).exists());
+
+        //chunk buffers came from the pool and went back, however long the file
+        assertTrue(String.valueOf(__pool.getAllocationCount()), __pool.getAllocationCount() <= 2 * POLICY.getWindowChunks());
+    }//end test
+
+    @Test
+    public void corruptChunk_isSentAgain() throws Exception
+    {
+        File __source = createFile("log.txt", 200 * 1024);
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+        FileTransferChannel __sending = new FileTransferChannel(POLICY, _outbox, __senderListener);
+
+        //byte 2000 is inside the data of the first chunk, right after the offer
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        connect(__sending, __senderListener, new TamperingTransport(__pair[0], 2000, -1), __pair[1], new TransportTest.RecordingListener());
+
+        FileTransferChannel.Transfer __transfer = __sending.sendFile(__source);
+        __transfer.getFuture().get(30, TimeUnit.SECONDS);
+
+        assertSameContent(__source, new File(_inbox, "log.txt"));
+        assertTrue(__transfer.getChunksSent() > __transfer.getChunkCount());
+    }//end test
+
+    @Test
+    public void cutLink_resumesFromLastAcknowledgedChunk() throws Exception
+    {
+        File __source = createFile("image.bin", 2 * 1024 * 1024);
+        TransportTest.RecordingListener __firstSenderListener = new TransportTest.RecordingListener();
+        TransportTest.RecordingListener __firstReceiverListener = new TransportTest.RecordingListener();
+        final TransportTest.RecordingListener[] __senderListener = {__firstSenderListener};
+
+        //the sender channel outlives the connection, its listener follows the current one
+        FileTransferChannel __sending = new FileTransferChannel(POLICY, _outbox, new ConnectionListener()
+        {
+            @Override
+            public void onConnected(Connection __connection)
+            {
+                __senderListener[0].onConnected(__connection);
+            }
+
+            @Override
+            public void onConnectionFailed(Connection __connection, IOException __cause)
+            {
+                __senderListener[0].onConnectionFailed(__connection, __cause);
+            }
+
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+                __senderListener[0].onFrameReceived(__connection, __frame);
+            }
+
+            @Override
+            public void onDisconnected(Connection __connection)
+            {
+                __senderListener[0].onDisconnected(__connection);
+            }
+        });
+
+        LoopbackTransport[] __first = LoopbackTransport.createPair("sender", "receiver");
+        connect(__sending, __firstSenderListener, new TamperingTransport(__first[0], -1, 1024 * 1024), __first[1], __firstReceiverListener);
+
+        FileTransferChannel.Transfer __transfer = __sending.sendFile(__source);
+        assertTrue(__firstSenderListener.disconnected.await(10, TimeUnit.SECONDS));
+        assertTrue(__firstReceiverListener.disconnected.await(10, TimeUnit.SECONDS));
+        assertFalse(__transfer.getFuture().isDone());
+        assertTrue(new File(_inbox, "image.bin" + FileTransferChannel.PROGRESS_SUFFIX).exists());
+
+        //a new receiving channel, as after a restart, only has the progress record to go on
+        TransportTest.RecordingListener __secondSenderListener = new TransportTest.RecordingListener();
+        __senderListener[0] = __secondSenderListener;
+        LoopbackTransport[] __second = LoopbackTransport.createPair("sender", "receiver");
+        connect(__sending, __secondSenderListener, __second[0], __second[1], new TransportTest.RecordingListener());
+
+        __transfer.getFuture().get(30, TimeUnit.SECONDS);
+
+        assertSameContent(__source, new File(_inbox, "image.bin"));
+        assertTrue(__transfer.getResumedFrom() > 0);
+        assertTrue(__transfer.getChunksSent() < __transfer.getChunkCount() + 2 * POLICY.getWindowChunks());
+    }//end test
+
+    @Test
+    public void emptyFile_completesWithoutChunks() throws Exception
+    {
+        File __source = createFile("empty.txt", 0);
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+        FileTransferChannel __sending = new FileTransferChannel(POLICY, _outbox, __senderListener);
+
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        connect(__sending, __senderListener, __pair[0], __pair[1], new TransportTest.RecordingListener());
+
+        __sending.sendFile(__source).getFuture().get(5, TimeUnit.SECONDS);
+
+        assertTrue(new File(_inbox, "empty.txt").isFile());
+        assertEquals(0, new File(_inbox, "empty.txt").length());
+    }//end test
+}//end class FileTransferChannelTest
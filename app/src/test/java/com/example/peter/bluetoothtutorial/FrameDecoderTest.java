@@ -0,0 +1,148 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest
+{
+    private final List<String> _texts = new ArrayList<>();
+    private final List<Byte> _types = new ArrayList<>();
+
+    private final FrameConsumer _collector = new FrameConsumer()
+    {
+        @Override
+        public void onFrame(Frame __frame)
+        {
+            _types.add(__frame.getType());
+            _texts.add(__frame.asText());
+        }
+    };
+
+    @Test
+    public void frameSplitAcrossReads_isReassembled() throws Exception
+    {
+        byte[] __frame = FrameEncoder.encodeText("hello world");
+        FrameDecoder __decoder = new FrameDecoder();
+
+        //one byte at a time, the header itself is split too
+        for(int i = 0; i < __frame.length; i++)
+        {
+            assertEquals(0, _texts.size());
+            __decoder.feed(__frame, i, 1, _collector);
+        }//end for loop
+
+        assertEquals(1, _texts.size());
+        assertEquals("hello world", _texts.get(0));
+        assertEquals(0, __decoder.getPendingBytes());
+    }//end test
+
+    @Test
+    public void severalFramesInOneRead_areSeparated() throws Exception
+    {
+        byte[] __first = FrameEncoder.encodeText("one");
+        byte[] __second = FrameEncoder.encode(Frame.TYPE_BINARY, new byte[] {1, 2, 3});
+        byte[] __third = FrameEncoder.encodeText("");
+
+        byte[] __all = new byte[__first.length + __second.length + __third.length];
+        System.arraycopy(__first, 0, __all, 0, __first.length);
+        System.arraycopy(__second, 0, __all, __first.length, __second.length);
+        System.arraycopy(__third, 0, __all, __first.length + __second.length, __third.length);
+
+        new FrameDecoder().readFrom(new ByteArrayInputStream(__all), _collector);
+
+        assertEquals(3, _texts.size());
+        assertEquals("one", _texts.get(0));
+        assertEquals(Frame.TYPE_BINARY, (byte) _types.get(1));
+        assertEquals("", _texts.get(2));
+    }//end test
+
+    @Test
+    public void frameLargerThanBuffer_growsBuffer() throws Exception
+    {
+        StringBuilder __text = new StringBuilder();
+        for(int i = 0; i < 500; i++)
+        {
+            __text.append(i);
+        }//end for loop
+
+        byte[] __frame = FrameEncoder.encodeText(__text.toString());
+        ByteArrayInputStream __input = new ByteArrayInputStream(__frame);
+        FrameDecoder __decoder = new FrameDecoder(16, 4096);
+
+        while(__decoder.readFrom(__input, _collector) >= 0)
+        {
+            //keep reading until the stream ends
+        }//end while loop
+
+        assertEquals(1, _texts.size());
+        assertEquals(__text.toString(), _texts.get(0));
+    }//end test
+
+    @Test
+    public void frameWrappingAroundRing_isJoined() throws Exception
+    {
+        FrameDecoder __decoder = new FrameDecoder(new BufferPool(1024 * 1024), 256, 4096);
+
+        //frames of odd sizes walk their start position around the 256 byte ring
+        for(int i = 0; i < 200; i++)
+        {
+            byte[] __frame = FrameEncoder.encodeText("message " + i);
+            __decoder.feed(__frame, 0, __frame.length, _collector);
+        }//end for loop
+
+        assertEquals(200, _texts.size());
+        for(int i = 0; i < 200; i++)
+        {
+            assertEquals("message " + i, _texts.get(i));
+        }//end for loop
+    }//end test
+
+    @Test
+    public void steadyStateReceive_allocatesNoBuffers() throws Exception
+    {
+        BufferPool __pool = new BufferPool(1024 * 1024);
+        FrameDecoder __decoder = new FrameDecoder(__pool, 1024, 4096);
+        FrameConsumer __ignore = new FrameConsumer()
+        {
+            @Override
+            public void onFrame(Frame __frame)
+            {
+            }
+        };
+
+        byte[] __frame = FrameEncoder.encode(Frame.TYPE_BINARY, new byte[100]);
+        byte[] __stream = new byte[__frame.length * 7];
+        for(int i = 0; i < 7; i++)
+        {
+            System.arraycopy(__frame, 0, __stream, i * __frame.length, __frame.length);
+        }//end for loop
+
+        //warm up so the ring has settled and the pool holds a chunk for wrapping frames
+        for(int i = 0; i < 1000; i++)
+        {
+            __decoder.readFrom(new ByteArrayInputStream(__stream), __ignore);
+        }//end for loop
+
+        long __allocations = __pool.getAllocationCount();
+        for(int i = 0; i < 10000; i++)
+        {
+            __decoder.readFrom(new ByteArrayInputStream(__stream), __ignore);
+        }//end for loop
+
+        assertEquals(__allocations, __pool.getAllocationCount());
+        assertEquals(0, __decoder.getPendingBytes());
+    }//end test
+
+    @Test(expected = IOException.class)
+    public void oversizedFrame_isRejected() throws Exception
+    {
+        byte[] __frame = FrameEncoder.encode(Frame.TYPE_BINARY, new byte[100]);
+        new FrameDecoder(16, 64).feed(__frame, 0, __frame.length, _collector);
+    }//end test
+}//end class FrameDecoderTest
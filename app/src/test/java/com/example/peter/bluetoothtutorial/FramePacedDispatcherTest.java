@@ -0,0 +1,88 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FramePacedDispatcherTest
+{
+    private long _now = 1000;
+    private final List<Runnable> _tasks = new ArrayList<>();
+    private final List<Long> _delays = new ArrayList<>();
+    private final List<List<String>> _batches = new ArrayList<>();
+
+    private final FramePacedDispatcher.Scheduler _scheduler = new FramePacedDispatcher.Scheduler()
+    {
+        @Override
+        public void schedule(Runnable __task, long __delayMillis)
+        {
+            _tasks.add(__task);
+            _delays.add(__delayMillis);
+        }
+
+        @Override
+        public long now()
+        {
+            return _now;
+        }
+    };
+
+    private final FramePacedDispatcher.Sink<String> _sink = new FramePacedDispatcher.Sink<String>()
+    {
+        @Override
+        public void onBatch(List<String> __batch)
+        {
+            _batches.add(new ArrayList<>(__batch));
+        }
+    };
+
+    @Test
+    public void burst_isFlushedOnce() throws Exception
+    {
+        FramePacedDispatcher<String> __dispatcher = new FramePacedDispatcher<>(_scheduler, _sink);
+
+        for(int i = 0; i < 100; i++)
+        {
+            __dispatcher.submit("m" + i);
+        }//end for loop
+
+        //only the first submit schedules a flush, and nothing limits the very first one
+        assertEquals(1, _tasks.size());
+        assertEquals(0L, (long) _delays.get(0));
+
+        _tasks.remove(0).run();
+        assertEquals(1, _batches.size());
+        assertEquals(100, _batches.get(0).size());
+        assertEquals(1, __dispatcher.getFlushCount());
+        assertEquals(99, __dispatcher.getCoalescedCount());
+    }//end test
+
+    @Test
+    public void nextFlush_waitsForInterval() throws Exception
+    {
+        FramePacedDispatcher<String> __dispatcher = new FramePacedDispatcher<>(_scheduler, _sink, 20);
+
+        __dispatcher.submit("first");
+        _tasks.remove(0).run();
+
+        _now += 5;
+        __dispatcher.submit("second");
+        assertEquals(15L, (long) _delays.get(1));
+
+        _now += 15;
+        _tasks.remove(0).run();
+
+        //right after a flush a full interval has to pass, after a quiet period nothing waits
+        __dispatcher.submit("third");
+        assertEquals(20L, (long) _delays.get(2));
+        _tasks.remove(0).run();
+
+        _now += 100;
+        __dispatcher.submit("fourth");
+        assertEquals(0L, (long) _delays.get(3));
+        assertEquals(3, _batches.size());
+    }//end test
+}//end class FramePacedDispatcherTest
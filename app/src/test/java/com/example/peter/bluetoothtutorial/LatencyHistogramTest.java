@@ -0,0 +1,56 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void emptyHistogram_reportsZero() throws Exception
+    {
+        LatencyHistogram __histogram = new LatencyHistogram();
+
+        assertEquals(0, __histogram.getCount());
+        assertEquals(0, __histogram.getValueAtPercentile(99));
+        assertEquals(0, __histogram.getMean(), 0);
+    }//end test
+
+    @Test
+    public void percentiles_areWithinBucketPrecision() throws Exception
+    {
+        LatencyHistogram __histogram = new LatencyHistogram();
+        for(long i = 1; i <= 10000; i++)
+        {
+            __histogram.record(i * 1000);
+        }//end for loop
+
+        assertEquals(10000, __histogram.getCount());
+        assertEquals(10000000, __histogram.getMax());
+        assertEquals(5000000, __histogram.getValueAtPercentile(50), 5000000 * 0.07);
+        assertEquals(9900000, __histogram.getValueAtPercentile(99), 9900000 * 0.07);
+        assertEquals(5000500, __histogram.getMean(), 1);
+    }//end test
+
+    @Test
+    public void bucketUpperBound_coversItsValues() throws Exception
+    {
+        long[] __values = {0, 1, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE};
+        for(long __value : __values)
+        {
+            assertTrue(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(__value)) >= __value);
+        }//end for loop
+    }//end test
+
+    @Test
+    public void reset_clearsEverything() throws Exception
+    {
+        LatencyHistogram __histogram = new LatencyHistogram();
+        __histogram.record(42);
+        __histogram.reset();
+
+        assertEquals(0, __histogram.getCount());
+        assertEquals(0, __histogram.getMax());
+        assertEquals(0, __histogram.getValueAtPercentile(100));
+    }//end test
+}//end class LatencyHistogramTest
@@ -0,0 +1,100 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LinkProbeTest
+{
+    private final ConnectionEngine _engine = new ConnectionEngine();
+    private final ConnectionEngine _peerEngine = new ConnectionEngine();
+
+    @After
+    public void shutdownEngines()
+    {
+        _engine.shutdown();
+        _peerEngine.shutdown();
+    }//end method shutdownEngines
+
+    //----------------------------------------------------------------------------------------------
+
+    private static ProbePlan smallPlan()
+    {
+        return new ProbePlan().setPayloadSizes(16, 1024).setPingCount(20).setPingIntervalMillis(1).setThroughputMillis(200);
+    }//end method smallPlan
+
+    private static void assertMeasured(List<ProbeResult> __results)
+    {
+        assertEquals(2, __results.size());
+
+        for(ProbeResult __result : __results)
+        {
+            assertEquals(20, __result.getPingsSent());
+            assertEquals(0, __result.getPingsLost());
+            assertTrue(__result.getRttP50() > 0);
+            assertTrue(__result.getRttMax() >= __result.getRttP99());
+            assertTrue(__result.getBytesPerSecond() > 0);
+        }//end for loop
+    }//end method assertMeasured
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void loopback_measuresEveryPayloadSize() throws Exception
+    {
+        List<ProbeResult> __results = LinkBenchmark.runLoopback(smallPlan());
+
+        LinkBenchmark.print(System.out, __results);
+        assertMeasured(__results);
+    }//end test
+
+    @Test
+    public void tcp_measuresAgainstAPeerEngine() throws Exception
+    {
+        ServerSocket __serverSocket = new ServerSocket(0);
+
+        try
+        {
+            TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+            TransportTest.RecordingListener __peerListener = new TransportTest.RecordingListener();
+            LinkProbe __probe = new LinkProbe(__listener);
+            Connection __connection = _engine.connect(new TcpTransport("127.0.0.1", __serverSocket.getLocalPort()), __probe);
+            Socket __accepted = __serverSocket.accept();
+            _peerEngine.connect(new TcpTransport(__accepted), new LinkProbe(__peerListener));
+            assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+            assertTrue(__peerListener.connected.await(5, TimeUnit.SECONDS));
+
+            assertMeasured(__probe.run(__connection, smallPlan()));
+        }//end try
+        finally
+        {
+            __serverSocket.close();
+        }//end finally
+    }//end test
+
+    @Test
+    public void otherFrames_passThroughUntouched() throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("probe", "peer");
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        TransportTest.RecordingListener __peerListener = new TransportTest.RecordingListener();
+
+        LinkProbe __probe = new LinkProbe(__listener);
+        Connection __connection = _engine.connect(__pair[0], __probe);
+        _peerEngine.connect(__pair[1], new LinkProbe(__peerListener));
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __probe.run(__connection, new ProbePlan().setPayloadSizes(64).setPingCount(5).setPingIntervalMillis(0).setThroughputMillis(50));
+        __connection.send("after the probe").get(5, TimeUnit.SECONDS);
+
+        //the probe frames never reached the app's listener, the text did
+        assertTrue(__peerListener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("after the probe", __peerListener.lastMessage);
+    }//end test
+}//end class LinkProbeTest
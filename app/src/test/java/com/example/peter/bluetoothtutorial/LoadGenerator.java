@@ -0,0 +1,466 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Puts the receive path under load without a phone. Virtual peers stream text messages over
+*   loopback links into one ConnectionEngine, whose listener does what the service's does: each
+*   message is handed to a FramePacedDispatcher and indexed, and every batch is appended to a
+*   MessageLog on a single "ui" thread standing in for the main looper.
+*
+*   Every message carries the time it was sent, so the report has the latency from a peer's
+*   send to the message being drawn as well as throughput, collections and the heap high-water
+*   mark. Runs from the command line for long soaks:
+*
+*       LoadGenerator [peers] [message bytes] [messages per second] [burst size] [seconds]
+*
+*   any argument left out keeps the LoadPlan default. Uses java.lang.management, so it lives
+*   with the tests and never ships in the app
+*/
+public class LoadGenerator
+{
+    private static final int PIPE_CAPACITY = 256 * 1024;
+    private static final int PEER_THREADS = 2;
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    //every message starts with the send time and the peer's sequence number in hex, then padding
+    private static final int TIME_DIGITS = 16;
+    private static final int SEQUENCE_DIGITS = 6;
+    private static final int SEQUENCE_MASK = (1 << (4 * SEQUENCE_DIGITS)) - 1;
+    static final int HEADER_LENGTH = TIME_DIGITS + 1 + SEQUENCE_DIGITS + 1;
+
+    private final LoadPlan _plan;
+    private final LoadReport _report;
+
+    private final ConnectionEngine _engine = new ConnectionEngine();
+    private final ConnectionEngine _peerEngine = new ConnectionEngine();
+    private final ScheduledExecutorService _uiThread = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService _peerThreads = Executors.newScheduledThreadPool(PEER_THREADS);
+    private final ExecutorService _indexExecutor = Executors.newSingleThreadExecutor();
+
+    private final MessageLog _messageLog = new MessageLog(MessageLog.DEFAULT_CAPACITY);
+    private final MessageIndex _messageIndex = new MessageIndex();
+    private final FramePacedDispatcher<ReceivedMessage> _messageDispatcher;
+
+    private final CountDownLatch _connected;
+    private final AtomicLong _sent = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _rendered = new AtomicLong();
+    private final AtomicLong _outOfOrder = new AtomicLong();
+    private final AtomicLong _heapHighWater = new AtomicLong();
+    private final MemoryMXBean _memory = ManagementFactory.getMemoryMXBean();
+
+    //last sequence number drawn for every peer, only touched on the ui thread
+    private final HashMap<String, Integer> _lastSequence = new HashMap<>();
+
+    private volatile long _startNanos;
+    private volatile long _lastRenderNanos;
+
+    //----------------------------------------------------------------------------------------------
+
+    public static void main(String[] __args) throws Exception
+    {
+        LoadPlan __plan = new LoadPlan();
+
+        if(__args.length > 0)
+        {
+            __plan.setPeers(Integer.parseInt(__args[0]));
+        }//end if
+
+        if(__args.length > 1)
+        {
+            __plan.setMessageBytes(Integer.parseInt(__args[1]));
+        }//end if
+
+        if(__args.length > 2)
+        {
+            __plan.setMessagesPerSecond(Integer.parseInt(__args[2]));
+        }//end if
+
+        if(__args.length > 3)
+        {
+            __plan.setBurstSize(Integer.parseInt(__args[3]));
+        }//end if
+
+        if(__args.length > 4)
+        {
+            __plan.setDurationMillis(Long.parseLong(__args[4]) * 1000);
+        }//end if
+
+        System.out.println(run(__plan));
+    }//end method main
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   runs the plan and waits for every message to be drawn or the drain timeout to pass
+    */
+    public static LoadReport run(LoadPlan __plan) throws IOException, InterruptedException
+    {
+        if(__plan.getMessageBytes() < HEADER_LENGTH)
+        {
+            throw new IllegalArgumentException("messages need at least " + HEADER_LENGTH + " bytes");
+        }//end if
+
+        LoadGenerator __generator = new LoadGenerator(__plan);
+
+        try
+        {
+            return __generator.run();
+        }//end try
+        finally
+        {
+            __generator.shutdown();
+        }//end finally
+    }//end method run
+
+    //----------------------------------------------------------------------------------------------
+
+    private LoadGenerator(LoadPlan __plan)
+    {
+        _plan = __plan;
+        _report = new LoadReport(__plan);
+        _connected = new CountDownLatch(2 * __plan.getPeers());
+
+        _messageDispatcher = new FramePacedDispatcher<>(
+                new FramePacedDispatcher.Scheduler()
+                {
+                    @Override
+                    public void schedule(Runnable __task, long __delayMillis)
+                    {
+                        _uiThread.schedule(__task, __delayMillis, TimeUnit.MILLISECONDS);
+                    }//end method schedule
+
+                    @Override
+                    public long now()
+                    {
+                        return System.nanoTime() / 1000000;
+                    }//end method now
+                },
+                new FramePacedDispatcher.Sink<ReceivedMessage>()
+                {
+                    @Override
+                    public void onBatch(List<ReceivedMessage> __messages)
+                    {
+                        render(__messages);
+                    }//end method onBatch
+                });
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    private LoadReport run() throws IOException, InterruptedException
+    {
+        long[] __gcBefore = collectGarbage();
+        _report.heapBaseline = heapUsed();
+
+        List<Peer> __peers = new ArrayList<>();
+        for(int i = 0; i < _plan.getPeers(); i++)
+        {
+            //the receiving engine sees each link as peer-i, the way the service sees a device's address
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("peer-" + i, "receiver-" + i, PIPE_CAPACITY);
+            _engine.connect(__pair[1], _receiverListener);
+            __peers.add(new Peer(_peerEngine.connect(__pair[0], _peerListener)));
+        }//end for loop
+
+        if(!_connected.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        {
+            throw new IOException("timed out connecting the peers");
+        }//end if
+
+        ScheduledFuture<?> __heapSampler = _peerThreads.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                EngineMetrics.raiseMax(_heapHighWater, heapUsed());
+            }//end method run
+        }, 0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        //the peers' bursts are spread over the interval so they do not all land at once
+        long __interval = _plan.getBurstIntervalNanos();
+        _startNanos = System.nanoTime();
+        for(int i = 0; i < __peers.size(); i++)
+        {
+            __peers.get(i).start(__interval * i / __peers.size(), __interval);
+        }//end for loop
+
+        Thread.sleep(_plan.getDurationMillis());
+
+        for(Peer __peer : __peers)
+        {
+            __peer.stop();
+        }//end for loop
+
+        long __deadline = System.currentTimeMillis() + _plan.getDrainTimeoutMillis();
+        while(_rendered.get() < _sent.get() - _failed.get() && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(10);
+        }//end while loop
+
+        __heapSampler.cancel(false);
+        long[] __gcAfter = gcTotals();
+
+        _report.sent = _sent.get();
+        _report.failed = _failed.get();
+        _report.rendered = _rendered.get();
+        _report.outOfOrder = _outOfOrder.get();
+        _report.elapsedNanos = _lastRenderNanos - _startNanos;
+        _report.framesDrawn = _messageDispatcher.getFlushCount();
+        _report.engineErrors = _engine.getMetrics().getErrors() + _peerEngine.getMetrics().getErrors();
+        _report.readToRender = _engine.getMetrics().getReadToRender();
+        _report.gcCount = __gcAfter[0] - __gcBefore[0];
+        _report.gcMillis = __gcAfter[1] - __gcBefore[1];
+        _report.heapHighWater = _heapHighWater.get();
+
+        collectGarbage();
+        _report.heapAfterDrain = heapUsed();
+
+        return _report;
+    }//end method run
+
+    //----------------------------------------------------------------------------------------------
+
+    private void shutdown()
+    {
+        _peerThreads.shutdownNow();
+        _peerEngine.shutdown();
+        _engine.shutdown();
+        _indexExecutor.shutdownNow();
+        _uiThread.shutdownNow();
+    }//end method shutdown
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the ui thread's share of a batch: append it to the log, then note how long every message
+    *   took to get here and whether it came in order
+    */
+    private void render(List<ReceivedMessage> __messages)
+    {
+        _messageLog.appendAll(__messages);
+
+        long __now = System.nanoTime();
+        EngineMetrics __metrics = _engine.getMetrics();
+        for(int i = 0; i < __messages.size(); i++)
+        {
+            ReceivedMessage __message = __messages.get(i);
+            String __text = __message.getText();
+            __metrics.recordReadToRender(__now - __message.getReceivedNanos());
+
+            long __sentNanos = _startNanos + Long.parseLong(__text.substring(0, TIME_DIGITS), 16);
+            _report.sendToRender.record(__now - __sentNanos);
+
+            int __sequence = Integer.parseInt(__text.substring(TIME_DIGITS + 1, TIME_DIGITS + 1 + SEQUENCE_DIGITS), 16);
+            Integer __last = _lastSequence.put(__message.getAddress(), __sequence);
+            int __expected = __last == null ? 0 : (__last + 1) & SEQUENCE_MASK;
+            if(__sequence != __expected)
+            {
+                _outOfOrder.incrementAndGet();
+            }//end if
+        }//end for loop
+
+        _lastRenderNanos = __now;
+        _rendered.addAndGet(__messages.size());
+    }//end method render
+
+    //----------------------------------------------------------------------------------------------
+
+    //runs the collector until the counts settle a little, returns the collection totals after it
+    private long[] collectGarbage()
+    {
+        System.gc();
+        System.runFinalization();
+        System.gc();
+        return gcTotals();
+    }//end method collectGarbage
+
+    //collections and milliseconds spent collecting since the vm started, over every collector
+    private static long[] gcTotals()
+    {
+        long __count = 0;
+        long __millis = 0;
+
+        for(GarbageCollectorMXBean __collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            __count += Math.max(0, __collector.getCollectionCount());
+            __millis += Math.max(0, __collector.getCollectionTime());
+        }//end for loop
+
+        return new long[] {__count, __millis};
+    }//end method gcTotals
+
+    private long heapUsed()
+    {
+        return _memory.getHeapMemoryUsage().getUsed();
+    }//end method heapUsed
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   one virtual peer, sending a burst every interval on the shared peer threads
+    */
+    private class Peer implements Runnable
+    {
+        private final Connection _connection;
+        private final StringBuilder _text;
+        private int _sequence = 0;
+        private boolean _stopped = false;
+        private ScheduledFuture<?> _future;
+
+        Peer(Connection __connection)
+        {
+            _connection = __connection;
+            _text = new StringBuilder(_plan.getMessageBytes());
+        }//end constructor
+
+        void start(long __delayNanos, long __intervalNanos)
+        {
+            _future = _peerThreads.scheduleAtFixedRate(this, __delayNanos, __intervalNanos, TimeUnit.NANOSECONDS);
+        }//end method start
+
+        //returns once a burst that is under way has been sent, so the sent count is final
+        synchronized void stop()
+        {
+            _stopped = true;
+            _future.cancel(false);
+        }//end method stop
+
+        @Override
+        public synchronized void run()
+        {
+            for(int i = 0; i < _plan.getBurstSize() && !_stopped; i++)
+            {
+                _text.setLength(0);
+                appendHex(_text, System.nanoTime() - _startNanos, TIME_DIGITS);
+                _text.append(' ');
+                appendHex(_text, _sequence, SEQUENCE_DIGITS);
+                _text.append(' ');
+                while(_text.length() < _plan.getMessageBytes())
+                {
+                    _text.append('x');
+                }//end while loop
+
+                _sequence = (_sequence + 1) & SEQUENCE_MASK;
+                _sent.incrementAndGet();
+                _connection.send(_text.toString()).addListener(_sendListener);
+            }//end for loop
+        }//end method run
+    }//end class Peer
+
+    private static void appendHex(StringBuilder __builder, long __value, int __digits)
+    {
+        for(int __shift = 4 * (__digits - 1); __shift >= 0; __shift -= 4)
+        {
+            __builder.append(Character.forDigit((int) (__value >>> __shift) & 0xf, 16));
+        }//end for loop
+    }//end method appendHex
+
+    //----------------------------------------------------------------------------------------------
+
+    private final SendFuture.Listener _sendListener = new SendFuture.Listener()
+    {
+        @Override
+        public void onComplete(SendFuture __future)
+        {
+            if(!__future.isSuccess())
+            {
+                _failed.incrementAndGet();
+            }//end if
+        }//end method onComplete
+    };
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   the receiving side, doing with every frame what ConnectionService's listener does
+    */
+    private final ConnectionListener _receiverListener = new ConnectionListener()
+    {
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            _connected.countDown();
+        }//end method onConnected
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            __cause.printStackTrace();
+        }//end method onConnectionFailed
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            if(__frame.getType() == Frame.TYPE_TEXT)
+            {
+                final ReceivedMessage __message = new ReceivedMessage(System.currentTimeMillis(), __connection.getAddress(), __frame.asText());
+                _messageDispatcher.submit(__message);
+
+                try
+                {
+                    _indexExecutor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            _messageIndex.add(__message);
+                        }//end method run
+                    });
+                }//end try
+                catch (RejectedExecutionException e)
+                {
+                    //the run is over
+                }//end catch
+            }//end if
+        }//end method onFrameReceived
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+        }//end method onDisconnected
+    };//end ConnectionListener
+
+    /*
+    *   the virtual peers only send, anything coming back is ignored
+    */
+    private final ConnectionListener _peerListener = new ConnectionListener()
+    {
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            _connected.countDown();
+        }//end method onConnected
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            __cause.printStackTrace();
+        }//end method onConnectionFailed
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+        }//end method onFrameReceived
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+        }//end method onDisconnected
+    };//end ConnectionListener
+}//end class LoadGenerator
@@ -0,0 +1,63 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Short soaks of the receive, dispatch and render path. Prints the load report of every run so
+ * the numbers can be compared across builds; LoadGenerator's main runs the long ones.
+ */
+public class LoadGeneratorTest
+{
+    private static void assertNothingLost(LoadReport __report)
+    {
+        System.out.println(__report);
+        System.out.println();
+
+        assertTrue(__report.getSentCount() > 0);
+        assertEquals(0, __report.getFailedCount());
+        assertEquals(0, __report.getEngineErrors());
+        assertEquals(__report.getSentCount(), __report.getRenderedCount());
+        assertEquals(0, __report.getOutOfOrderCount());
+        assertEquals(__report.getRenderedCount(), __report.getSendToRender().getCount());
+        assertEquals(__report.getRenderedCount(), __report.getReadToRender().getCount());
+    }//end method assertNothingLost
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void steadyPeers_everyMessageIsDrawnInOrder() throws Exception
+    {
+        LoadPlan __plan = new LoadPlan().setPeers(8).setMessageBytes(64).setMessagesPerSecond(200).setDurationMillis(2000);
+        LoadReport __report = LoadGenerator.run(__plan);
+
+        assertNothingLost(__report);
+
+        //8 peers at 200/s for 2 s, give or take the scheduling at either end
+        assertTrue(__report.getSentCount() >= 3000 && __report.getSentCount() <= 3300);
+
+        //messages are drawn within a few frames, not queued up behind each other
+        assertTrue(__report.getSendToRender().getValueAtPercentile(99) < 500 * 1000000L);
+    }//end test
+
+    @Test
+    public void burstyPeers_areBatchedIntoFrames() throws Exception
+    {
+        LoadPlan __plan = new LoadPlan().setPeers(32).setMessageBytes(512).setMessagesPerSecond(500).setBurstSize(50)
+                .setDurationMillis(2000);
+        LoadReport __report = LoadGenerator.run(__plan);
+
+        assertNothingLost(__report);
+
+        //the ui thread sees a batch per frame at most, never a message at a time
+        assertTrue(__report.getFramesDrawn() < __report.getRenderedCount() / 10);
+        assertTrue(__report.getHeapHighWater() >= __report.getHeapBaseline());
+    }//end test
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messagesShorterThanTheHeader_areRefused() throws Exception
+    {
+        LoadGenerator.run(new LoadPlan().setMessageBytes(LoadGenerator.HEADER_LENGTH - 1));
+    }//end test
+}//end class LoadGeneratorTest
@@ -0,0 +1,106 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   What a LoadGenerator simulates: how many peers, how big their messages are, how fast they
+*   send them and in what bursts, and for how long. The setters return the plan so several can
+*   be chained when it is created
+*/
+public class LoadPlan
+{
+    private int _peers = 16;
+    private int _messageBytes = 128;
+    private int _messagesPerSecond = 100;
+    private int _burstSize = 1;
+    private long _durationMillis = 5000;
+    private long _drainTimeoutMillis = 10000;
+
+    //----------------------------------------------------------------------------------------------
+
+    //number of virtual peers, each on a link of its own
+    public LoadPlan setPeers(int __peers)
+    {
+        _peers = __peers;
+        return this;
+    }//end method setPeers
+
+    //text bytes per message, at least the 24 the timestamp and sequence number take
+    public LoadPlan setMessageBytes(int __messageBytes)
+    {
+        _messageBytes = __messageBytes;
+        return this;
+    }//end method setMessageBytes
+
+    //average rate of every peer
+    public LoadPlan setMessagesPerSecond(int __messagesPerSecond)
+    {
+        _messagesPerSecond = __messagesPerSecond;
+        return this;
+    }//end method setMessagesPerSecond
+
+    //messages a peer sends back to back before pausing, 1 spreads them evenly
+    public LoadPlan setBurstSize(int __burstSize)
+    {
+        _burstSize = __burstSize;
+        return this;
+    }//end method setBurstSize
+
+    public LoadPlan setDurationMillis(long __durationMillis)
+    {
+        _durationMillis = __durationMillis;
+        return this;
+    }//end method setDurationMillis
+
+    //how long to wait after the last send for every message to be drawn
+    public LoadPlan setDrainTimeoutMillis(long __drainTimeoutMillis)
+    {
+        _drainTimeoutMillis = __drainTimeoutMillis;
+        return this;
+    }//end method setDrainTimeoutMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    public int getPeers()
+    {
+        return _peers;
+    }//end method getPeers
+
+    public int getMessageBytes()
+    {
+        return _messageBytes;
+    }//end method getMessageBytes
+
+    public int getMessagesPerSecond()
+    {
+        return _messagesPerSecond;
+    }//end method getMessagesPerSecond
+
+    public int getBurstSize()
+    {
+        return _burstSize;
+    }//end method getBurstSize
+
+    public long getDurationMillis()
+    {
+        return _durationMillis;
+    }//end method getDurationMillis
+
+    public long getDrainTimeoutMillis()
+    {
+        return _drainTimeoutMillis;
+    }//end method getDrainTimeoutMillis
+
+    //----------------------------------------------------------------------------------------------
+
+    //time between the starts of two bursts of one peer
+    long getBurstIntervalNanos()
+    {
+        return _burstSize * 1000000000L / _messagesPerSecond;
+    }//end method getBurstIntervalNanos
+
+    @Override
+    public String toString()
+    {
+        return _peers + " peers, " + _messageBytes + " byte messages, " + _messagesPerSecond + "/s each in bursts of "
+                + _burstSize + ", " + _durationMillis + " ms";
+    }//end method toString
+}//end class LoadPlan
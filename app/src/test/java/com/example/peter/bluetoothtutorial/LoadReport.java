@@ -0,0 +1,154 @@
+package com.example.peter.bluetoothtutorial;
+
+/*
+*   What one LoadGenerator run measured. Latencies are in nanoseconds and heap sizes in bytes,
+*   toString prints the lot in a form that can be pasted into a bug report
+*/
+public class LoadReport
+{
+    final LoadPlan plan;
+    final LatencyHistogram sendToRender = new LatencyHistogram();
+    LatencyHistogram readToRender;
+
+    long sent;
+    long failed;
+    long rendered;
+    long outOfOrder;
+    long engineErrors;
+    long framesDrawn;
+    long elapsedNanos;
+
+    long gcCount;
+    long gcMillis;
+    long heapBaseline;
+    long heapHighWater;
+    long heapAfterDrain;
+
+    LoadReport(LoadPlan __plan)
+    {
+        plan = __plan;
+    }//end constructor
+
+    //----------------------------------------------------------------------------------------------
+
+    public LoadPlan getPlan()
+    {
+        return plan;
+    }//end method getPlan
+
+    public long getSentCount()
+    {
+        return sent;
+    }//end method getSentCount
+
+    //sends that never reached the link, because the outbound queue stayed full or the link went down
+    public long getFailedCount()
+    {
+        return failed;
+    }//end method getFailedCount
+
+    //messages that made it into the message log
+    public long getRenderedCount()
+    {
+        return rendered;
+    }//end method getRenderedCount
+
+    //messages that arrived before an earlier one of the same peer, or after a gap
+    public long getOutOfOrderCount()
+    {
+        return outOfOrder;
+    }//end method getOutOfOrderCount
+
+    public long getEngineErrors()
+    {
+        return engineErrors;
+    }//end method getEngineErrors
+
+    //batches handed to the ui thread, at most one per frame
+    public long getFramesDrawn()
+    {
+        return framesDrawn;
+    }//end method getFramesDrawn
+
+    //from the first send to the last message being drawn
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }//end method getElapsedNanos
+
+    public double getMessagesPerSecond()
+    {
+        return elapsedNanos > 0 ? rendered * 1e9 / elapsedNanos : 0;
+    }//end method getMessagesPerSecond
+
+    public double getBytesPerSecond()
+    {
+        return getMessagesPerSecond() * plan.getMessageBytes();
+    }//end method getBytesPerSecond
+
+    //nanoseconds from a peer sending a message to it being drawn
+    public LatencyHistogram getSendToRender()
+    {
+        return sendToRender;
+    }//end method getSendToRender
+
+    //nanoseconds from the engine reading a message to it being drawn
+    public LatencyHistogram getReadToRender()
+    {
+        return readToRender;
+    }//end method getReadToRender
+
+    //collections during the run, summed over every collector
+    public long getGcCount()
+    {
+        return gcCount;
+    }//end method getGcCount
+
+    public long getGcMillis()
+    {
+        return gcMillis;
+    }//end method getGcMillis
+
+    //heap in use after a collection before the peers connected
+    public long getHeapBaseline()
+    {
+        return heapBaseline;
+    }//end method getHeapBaseline
+
+    //most heap in use while the peers were sending, sampled
+    public long getHeapHighWater()
+    {
+        return heapHighWater;
+    }//end method getHeapHighWater
+
+    //heap in use after a collection once every message was drawn, what the run left behind
+    public long getHeapAfterDrain()
+    {
+        return heapAfterDrain;
+    }//end method getHeapAfterDrain
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return plan + "\n"
+                + String.format("sent %d  rendered %d  failed %d  out of order %d  engine errors %d%n",
+                        sent, rendered, failed, outOfOrder, engineErrors)
+                + String.format("throughput %.0f msgs/s  %.1f KB/s  in %d frames drawn over %.2f s%n",
+                        getMessagesPerSecond(), getBytesPerSecond() / 1024, framesDrawn, elapsedNanos / 1e9)
+                + "send to render  " + percentiles(sendToRender) + "\n"
+                + "read to render  " + percentiles(readToRender) + "\n"
+                + String.format("gc %d collections  %d ms%n", gcCount, gcMillis)
+                + String.format("heap baseline %.1f MB  high-water %.1f MB  after drain %.1f MB",
+                        heapBaseline / 1048576.0, heapHighWater / 1048576.0, heapAfterDrain / 1048576.0);
+    }//end method toString
+
+    private static String percentiles(LatencyHistogram __histogram)
+    {
+        return String.format("p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms",
+                __histogram.getValueAtPercentile(50) / 1e6, __histogram.getValueAtPercentile(90) / 1e6,
+                __histogram.getValueAtPercentile(99) / 1e6, __histogram.getValueAtPercentile(99.9) / 1e6,
+                __histogram.getMax() / 1e6);
+    }//end method percentiles
+}//end class LoadReport
@@ -0,0 +1,224 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageIndexTest
+{
+    private static final String[] ADDRESSES = {"AA:AA", "BB:BB", "CC:CC", "DD:DD"};
+
+    //message i of a synthetic stream: one per second, a sensor reading, and an error every 1000th
+    private static ReceivedMessage message(int i)
+    {
+        String __text = i % 1000 == 999 ? "ERROR E_" + (i / 1000) % 7 + " on sensor" + i % 13 : "sensor" + i % 13 + " temp=" + (i % 40);
+        return new ReceivedMessage(1000L * i, ADDRESSES[i % ADDRESSES.length], __text, 0);
+    }//end method message
+
+    private static MessageIndex build(int __count)
+    {
+        return build(__count, Math.max(__count, MessageIndex.DEFAULT_MAX_DOCUMENTS));
+    }//end method build
+
+    private static MessageIndex build(int __count, int __maxDocuments)
+    {
+        MessageIndex __index = new MessageIndex(MessageIndex.DEFAULT_BUCKET_MILLIS, __maxDocuments);
+
+        for(int i = 0; i < __count; i++)
+        {
+            __index.add(message(i));
+        }//end for loop
+
+        return __index;
+    }//end method build
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void tokenize_splitsOnPunctuationAndLowerCases()
+    {
+        assertEquals(Arrays.asList("error", "e_42", "sensor17", "temp", "21", "5"),
+                MessageIndex.tokenize("ERROR E_42: sensor17 temp=21.5, error"));
+        assertTrue(MessageIndex.tokenize(" ,.! ").isEmpty());
+    }//end test
+
+    @Test
+    public void words_matchEveryMessageContainingAllOfThem()
+    {
+        MessageIndex __index = build(10000);
+
+        //errors are every 1000th message, E_3 is the fourth of them
+        List<ReceivedMessage> __page = __index.search(new MessageQuery().setText("error e_3")).nextPage(100);
+        assertEquals(1, __page.size());
+        assertEquals(message(3999).getText(), __page.get(0).getText());
+        assertEquals(message(3999).getAddress(), __page.get(0).getAddress());
+        assertEquals(message(3999).getTimestamp(), __page.get(0).getTimestamp());
+
+        assertTrue(__index.search(new MessageQuery().setText("error nosuchword")).nextPage(100).isEmpty());
+        assertEquals(10, __index.search(new MessageQuery().setText("Error")).nextPage(100).size());
+    }//end test
+
+    @Test
+    public void pages_comeNewestFirstWithoutRepeats()
+    {
+        MessageIndex __index = build(10000);
+        MessageIndex.Cursor __cursor = __index.search(new MessageQuery().setText("sensor5"));
+
+        int __previous = Integer.MAX_VALUE;
+        int __total = 0;
+        while(__cursor.hasMore())
+        {
+            for(ReceivedMessage __message : __cursor.nextPage(50))
+            {
+                int i = (int) (__message.getTimestamp() / 1000);
+                assertTrue(i < __previous);
+                assertEquals(5, i % 13);
+                __previous = i;
+                __total++;
+            }//end for loop
+        }//end while loop
+
+        assertEquals(769, __total);
+        assertEquals(__total, __cursor.getMatchedCount());
+        assertTrue(__cursor.nextPage(50).isEmpty());
+    }//end test
+
+    @Test
+    public void addressAndTimeRange_narrowTheMatches()
+    {
+        MessageIndex __index = build(10000);
+
+        List<ReceivedMessage> __page = __index.search(new MessageQuery().setText("temp").setAddress("BB:BB")
+                .setFromMillis(100 * 1000).setToMillis(200 * 1000)).nextPage(1000);
+
+        //every fourth message is from BB:BB, in [100, 200) those are 101, 105 ... 197
+        assertEquals(25, __page.size());
+        for(ReceivedMessage __message : __page)
+        {
+            assertEquals("BB:BB", __message.getAddress());
+            assertTrue(__message.getTimestamp() >= 100 * 1000 && __message.getTimestamp() < 200 * 1000);
+        }//end for loop
+
+        assertTrue(__index.search(new MessageQuery().setAddress("EE:EE")).nextPage(10).isEmpty());
+        assertEquals(10, __index.search(new MessageQuery().setFromMillis(9990 * 1000)).nextPage(100).size());
+    }//end test
+
+    @Test
+    public void laterMessages_doNotChangeARunningSearch()
+    {
+        MessageIndex __index = build(100);
+        MessageIndex.Cursor __cursor = __index.search(new MessageQuery().setText("sensor1"));
+
+        __index.add(new ReceivedMessage(1000000, "AA:AA", "sensor1 late", 0));
+
+        List<ReceivedMessage> __page = __cursor.nextPage(100);
+        assertEquals(message(92).getText(), __page.get(0).getText());
+        assertEquals(1, __index.search(new MessageQuery().setText("late")).nextPage(10).size());
+    }//end test
+
+    @Test
+    public void fullIndex_dropsTheOldestMessages()
+    {
+        MessageIndex __index = build(5000, 1000);
+
+        assertEquals(1000, __index.size());
+        assertEquals(4000, __index.getDroppedCount());
+
+        //the only error left is message 4999, E_4
+        assertEquals(1, __index.search(new MessageQuery().setText("error")).nextPage(100).size());
+        assertTrue(__index.search(new MessageQuery().setText("e_1")).nextPage(100).isEmpty());
+        assertTrue(__index.search(new MessageQuery().setToMillis(4000 * 1000)).nextPage(100).isEmpty());
+
+        MessageIndex.Cursor __cursor = __index.search(new MessageQuery().setText("sensor5"));
+        int __total = 0;
+        while(__cursor.hasMore())
+        {
+            for(ReceivedMessage __message : __cursor.nextPage(50))
+            {
+                assertTrue(__message.getTimestamp() >= 4000 * 1000);
+                __total++;
+            }//end for loop
+        }//end while loop
+        assertEquals(77, __total);
+
+        try
+        {
+            __index.get(3999);
+            fail("message 3999 was dropped");
+        }//end try
+        catch (IndexOutOfBoundsException e)
+        {
+            //expected
+        }//end catch
+        assertEquals(message(4000).getText(), __index.get(4000).getText());
+    }//end test
+
+    @Test
+    public void droppingMessages_skipsThemInARunningSearch()
+    {
+        MessageIndex __index = build(1000, 1000);
+        MessageIndex.Cursor __cursor = __index.search(new MessageQuery().setText("temp"));
+        assertEquals(message(999 - 1).getText(), __cursor.nextPage(1).get(0).getText());
+
+        //pushes the first 600 out and gives their memory back while the search is open
+        for(int i = 1000; i < 1600; i++)
+        {
+            __index.add(message(i));
+        }//end for loop
+
+        int __previous = 998;
+        while(__cursor.hasMore())
+        {
+            for(ReceivedMessage __message : __cursor.nextPage(50))
+            {
+                int i = (int) (__message.getTimestamp() / 1000);
+                assertTrue(i < __previous && i >= 600);
+                assertEquals(message(i).getText(), __message.getText());
+                __previous = i;
+            }//end for loop
+        }//end while loop
+        assertEquals(600, __previous);
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   a million messages: the first page of a rare word, a common word and a narrow time range
+    *   must each come back in milliseconds
+    */
+    @Test
+    public void millionMessages_firstPageInMilliseconds()
+    {
+        int __count = 1000000;
+
+        long __start = System.nanoTime();
+        MessageIndex __index = build(__count);
+        long __buildMillis = (System.nanoTime() - __start) / 1000000;
+
+        MessageQuery[] __queries = {
+                new MessageQuery().setText("error e_6"),
+                new MessageQuery().setText("sensor3 temp"),
+                new MessageQuery().setText("temp").setAddress("CC:CC").setFromMillis(500000L * 1000).setToMillis(500600L * 1000)};
+
+        //warm up, then time
+        for(MessageQuery __query : __queries)
+        {
+            __index.search(__query).nextPage(50);
+        }//end for loop
+
+        System.out.println("indexed " + __count + " messages, " + __index.getWordCount() + " words in " + __buildMillis + " ms");
+        for(MessageQuery __query : __queries)
+        {
+            long __queryStart = System.nanoTime();
+            List<ReceivedMessage> __page = __index.search(__query).nextPage(50);
+            double __millis = (System.nanoTime() - __queryStart) / 1e6;
+
+            System.out.println(String.format("first page of %2d for \"%s\" in %.3f ms", __page.size(), __query.getText(), __millis));
+            assertFalse(__page.isEmpty());
+            assertTrue(__millis < 50);
+        }//end for loop
+    }//end test
+}//end class MessageIndexTest
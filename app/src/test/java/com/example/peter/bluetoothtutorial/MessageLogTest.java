@@ -0,0 +1,47 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageLogTest
+{
+    @Test
+    public void fullLog_dropsOldestEntries() throws Exception
+    {
+        MessageLog __log = new MessageLog(3);
+
+        for(int i = 0; i < 5; i++)
+        {
+            __log.append(new ReceivedMessage(i, "peer", "m" + i));
+        }//end for loop
+
+        assertEquals(3, __log.size());
+        assertEquals(5, __log.getAppendedCount());
+        assertEquals("m2", __log.get(0).getText());
+        assertEquals("m4", __log.get(2).getText());
+    }//end test
+
+    @Test
+    public void sequence_followsEntryWhenOlderOnesAreDropped() throws Exception
+    {
+        MessageLog __log = new MessageLog(2);
+
+        __log.append(new ReceivedMessage(0, "peer", "a"));
+        __log.append(new ReceivedMessage(0, "peer", "b"));
+        assertEquals(1, __log.getSequence(1));
+
+        __log.append(new ReceivedMessage(0, "peer", "c"));
+        assertEquals("b", __log.get(0).getText());
+        assertEquals(1, __log.getSequence(0));
+        assertEquals(2, __log.getSequence(1));
+    }//end test
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void positionPastEnd_isRejected() throws Exception
+    {
+        MessageLog __log = new MessageLog(2);
+        __log.append(new ReceivedMessage(0, "peer", "a"));
+        __log.get(1);
+    }//end test
+}//end class MessageLogTest
@@ -0,0 +1,145 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest
+{
+    private final ConnectionEngine _sender = new ConnectionEngine();
+    private final ConnectionEngine _receiver = new ConnectionEngine();
+
+    @After
+    public void shutdownEngines()
+    {
+        _sender.shutdown();
+        _receiver.shutdown();
+    }//end method shutdownEngines
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void traffic_isCountedOnBothSides() throws Exception
+    {
+        final int __frames = 200;
+        final CountDownLatch __all = new CountDownLatch(__frames);
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+        TransportTest.RecordingListener __receiverListener = new TransportTest.RecordingListener()
+        {
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+                __all.countDown();
+            }
+        };
+
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        Connection __sending = _sender.connect(__pair[0], __senderListener);
+        Connection __receiving = _receiver.connect(__pair[1], __receiverListener);
+        assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+
+        MetricsSnapshot __before = _receiver.getMetricsSnapshot();
+        SendFuture __last = null;
+        for(int i = 0; i < __frames; i++)
+        {
+            __last = __sending.send("frame of twenty bytes");
+        }//end for loop
+        __last.get(5, TimeUnit.SECONDS);
+        assertTrue(__all.await(5, TimeUnit.SECONDS));
+
+        //a frame is counted once the listener returns, which can be just after the latch opens
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(_receiver.getMetrics().getDispatchLatency().getCount() < __frames && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(1);
+        }//end while loop
+
+        //21 payload bytes and a 5 byte header per frame
+        long __bytes = __frames * (21 + FrameEncoder.HEADER_LENGTH);
+        assertEquals(__frames, __sending.getMetrics().getFramesOut());
+        assertEquals(__bytes, __sending.getMetrics().getBytesOut());
+        assertEquals(__frames, __receiving.getMetrics().getFramesIn());
+        assertEquals(__bytes, __receiving.getMetrics().getBytesIn());
+        assertTrue(__sending.getMetrics().getMaxQueueDepth() >= 1);
+
+        assertEquals(1, _sender.getMetrics().getConnectLatency().getCount());
+        assertEquals(__frames, _sender.getMetrics().getWriteLatency().getCount());
+        assertEquals(__frames, _receiver.getMetrics().getDispatchLatency().getCount());
+
+        MetricsSnapshot __after = _receiver.getMetricsSnapshot();
+        assertEquals(1, __after.getLinks().size());
+        assertEquals("sender", __after.getLinks().get(0).getAddress());
+        assertEquals(__frames, __after.getFramesIn() - __before.getFramesIn());
+        assertTrue(__after.getFramesInPerSecond(__before) > 0);
+        System.out.println(__after.format(__before));
+    }//end test
+
+    @Test
+    public void failures_areCountedWithTheirReason() throws Exception
+    {
+        TransportTest.RecordingListener __listener = new TransportTest.RecordingListener();
+        Connection __connection = _sender.connect(new TransportFactory()
+        {
+            @Override
+            public String getAddress()
+            {
+                return "unreachable";
+            }
+
+            @Override
+            public Transport create() throws IOException
+            {
+                throw new IOException("host is down");
+            }
+        }, __listener);
+
+        assertTrue(__listener.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, __connection.getMetrics().getErrors());
+        assertEquals("host is down", __connection.getMetrics().getLastError());
+        assertEquals(1, _sender.getMetrics().getErrors());
+    }//end test
+
+    @Test
+    public void brokenLink_isCountedAsAnError() throws Exception
+    {
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        Connection __sending = _sender.connect(__pair[0], __senderListener);
+        assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+
+        //the far end goes away without a goodbye
+        __pair[1].close();
+
+        assertTrue(__senderListener.disconnected.await(5, TimeUnit.SECONDS));
+        assertTrue(__sending.getMetrics().getErrors() >= 1);
+        assertNotNull(__sending.getMetrics().getLastError());
+    }//end test
+
+    /*
+    *   Recording is on every read, dispatch and write, so it has to be cheap. Prints the cost per
+    *   frame of the records the receive path makes
+    */
+    @Test
+    public void recordingOverhead_isSmall()
+    {
+        LinkMetrics __metrics = new LinkMetrics(new EngineMetrics());
+        int __iterations = 2000000;
+
+        long __start = System.nanoTime();
+        for(int i = 0; i < __iterations; i++)
+        {
+            __metrics.recordRead(64);
+            __metrics.recordFrameIn(i & 0xffff);
+        }//end for loop
+        double __nanosPerFrame = (System.nanoTime() - __start) / (double) __iterations;
+
+        System.out.println(String.format("metrics recording: %.1f ns per received frame", __nanosPerFrame));
+        assertEquals(__iterations, __metrics.getFramesIn());
+        assertTrue(__nanosPerFrame < 1000);
+    }//end test
+}//end class MetricsTest
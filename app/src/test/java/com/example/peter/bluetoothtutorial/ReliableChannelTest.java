@@ -0,0 +1,362 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReliableChannelTest
+{
+    private final ConnectionEngine _sender = new ConnectionEngine();
+    private final ConnectionEngine _receiver = new ConnectionEngine();
+
+    @After
+    public void shutdownEngines()
+    {
+        _sender.shutdown();
+        _receiver.shutdown();
+    }//end method shutdownEngines
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   Loopback end that drops and delays reliable frames on their way out. Writes are parsed
+    *   back into whole frames so a drop never leaves half a frame on the wire
+    */
+    static class LossyTransport implements Transport
+    {
+        private final Transport _inner;
+        private final double _lossRate;
+        private final long _delayMillis;
+        private final Random _random;
+        private final ScheduledExecutorService _delayLine = Executors.newSingleThreadScheduledExecutor();
+        private final ByteArrayOutputStream _pending = new ByteArrayOutputStream();
+
+        LossyTransport(Transport __inner, double __lossRate, long __delayMillis, long __seed)
+        {
+            _inner = __inner;
+            _lossRate = __lossRate;
+            _delayMillis = __delayMillis;
+            _random = new Random(__seed);
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            _inner.connect();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return _inner.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            final OutputStream __out = _inner.getOutputStream();
+
+            return new OutputStream()
+            {
+                @Override
+                public void write(int __byte) throws IOException
+                {
+                    write(new byte[] {(byte) __byte}, 0, 1);
+                }
+
+                @Override
+                public synchronized void write(byte[] __bytes, int __offset, int __length) throws IOException
+                {
+                    _pending.write(__bytes, __offset, __length);
+                    byte[] __buffered = _pending.toByteArray();
+
+                    int __position = 0;
+                    while(__buffered.length - __position >= FrameEncoder.HEADER_LENGTH)
+                    {
+                        int __payloadLength = ((__buffered[__position] & 0xff) << 24) | ((__buffered[__position + 1] & 0xff) << 16)
+                                | ((__buffered[__position + 2] & 0xff) << 8) | (__buffered[__position + 3] & 0xff);
+                        int __frameLength = FrameEncoder.HEADER_LENGTH + __payloadLength;
+                        if(__buffered.length - __position < __frameLength)
+                        {
+                            break;
+                        }//end if
+
+                        byte __type = __buffered[__position + 4];
+                        final byte[] __frame = new byte[__frameLength];
+                        System.arraycopy(__buffered, __position, __frame, 0, __frameLength);
+                        __position += __frameLength;
+
+                        boolean __reliable = __type == Frame.TYPE_RELIABLE_DATA || __type == Frame.TYPE_RELIABLE_ACK;
+                        if(__reliable && _random.nextDouble() < _lossRate)
+                        {
+                            continue;
+                        }//end if
+
+                        _delayLine.schedule(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                try
+                                {
+                                    __out.write(__frame);
+                                }//end try
+                                catch (IOException e)
+                                {
+                                    //the other end is gone, the frame is lost like any other
+                                }//end catch
+                            }
+                        }, _delayMillis, TimeUnit.MILLISECONDS);
+                    }//end while loop
+
+                    _pending.reset();
+                    _pending.write(__buffered, __position, __buffered.length - __position);
+                }
+            };
+        }
+
+        @Override
+        public String getAddress()
+        {
+            return _inner.getAddress();
+        }
+
+        @Override
+        public String getName()
+        {
+            return _inner.getName();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _delayLine.shutdownNow();
+            _inner.close();
+        }
+    }//end class LossyTransport
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   records the text of every frame the channel delivers
+    */
+    static class CollectingListener extends TransportTest.RecordingListener
+    {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch all;
+
+        CollectingListener(int __expected)
+        {
+            all = new CountDownLatch(__expected);
+        }
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            messages.add(__frame.asText());
+            all.countDown();
+        }
+    }//end class CollectingListener
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   connects a sending and a receiving channel over a pair that loses and delays frames both ways
+    */
+    private ReliableChannel[] connect(ReliabilityPolicy __policy, double __lossRate, long __delayMillis,
+                                      ConnectionListener __receiverListener) throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver", 1024 * 1024);
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+
+        ReliableChannel __sending = _sender.connectReliable(new LossyTransport(__pair[0], __lossRate, __delayMillis, 1),
+                __policy, __senderListener);
+        ReliableChannel __receiving = _receiver.connectReliable(new LossyTransport(__pair[1], __lossRate, __delayMillis, 2),
+                __policy, __receiverListener);
+
+        assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+        return new ReliableChannel[] {__sending, __receiving};
+    }//end method connect
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void lossyLink_deliversEveryFrameOnceAndInOrder() throws Exception
+    {
+        int __count = 500;
+        CollectingListener __collector = new CollectingListener(__count);
+        ReliableChannel[] __channels = connect(new ReliabilityPolicy().setWindowSize(16), 0.1, 2, __collector);
+
+        List<SendFuture> __futures = new ArrayList<>();
+        for(int i = 0; i < __count; i++)
+        {
+            __futures.add(__channels[0].send("message " + i));
+        }//end for loop
+
+        for(SendFuture __future : __futures)
+        {
+            __future.get(20, TimeUnit.SECONDS);
+            assertTrue(__future.isSuccess());
+        }//end for loop
+
+        assertTrue(__collector.all.await(5, TimeUnit.SECONDS));
+        for(int i = 0; i < __count; i++)
+        {
+            assertEquals("message " + i, __collector.messages.get(i));
+        }//end for loop
+
+        assertEquals(__count, __channels[1].getDeliveredCount());
+        assertEquals(__count, __channels[0].getAckedCount());
+        assertTrue(__channels[0].getRetransmissionCount() > 0);
+        assertEquals(0, __channels[0].getUnackedCount());
+    }//end test
+
+    @Test
+    public void otherFrames_passThroughUntouched() throws Exception
+    {
+        CollectingListener __collector = new CollectingListener(1);
+        ReliableChannel[] __channels = connect(new ReliabilityPolicy(), 0, 0, __collector);
+
+        __channels[0].getConnection().send("plain").get(5, TimeUnit.SECONDS);
+
+        assertTrue(__collector.all.await(5, TimeUnit.SECONDS));
+        assertEquals("plain", __collector.messages.get(0));
+        assertEquals(0, __channels[1].getDeliveredCount());
+    }//end test
+
+    @Test
+    public void fullWindow_queuesAndThenRejects() throws Exception
+    {
+        //nothing gets through, so nothing is ever acknowledged
+        CollectingListener __collector = new CollectingListener(1);
+        ReliableChannel[] __channels = connect(new ReliabilityPolicy().setWindowSize(4).setMaxWaitingFrames(2)
+                .setInitialRtoMillis(5000), 1.0, 0, __collector);
+
+        List<SendFuture> __futures = new ArrayList<>();
+        for(int i = 0; i < 6; i++)
+        {
+            __futures.add(__channels[0].send("message " + i));
+        }//end for loop
+
+        SendFuture __rejected = __channels[0].send("one too many");
+        assertTrue(__rejected.isDone());
+        assertTrue(__rejected.getFailure() instanceof BackpressureException);
+        assertEquals(6, __channels[0].getUnackedCount());
+
+        //the sends the peer never acknowledged fail when the connection goes
+        __channels[0].getConnection().close();
+        for(SendFuture __future : __futures)
+        {
+            try
+            {
+                __future.get(5, TimeUnit.SECONDS);
+                fail("send was never acknowledged");
+            }//end try
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+            }//end catch
+        }//end for loop
+    }//end test
+
+    @Test
+    public void unansweredFrames_closeTheConnectionAfterMaxRetransmits() throws Exception
+    {
+        TransportTest.RecordingListener __receiverListener = new TransportTest.RecordingListener();
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver");
+        TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+
+        ReliableChannel __sending = _sender.connectReliable(new LossyTransport(__pair[0], 1.0, 0, 1),
+                new ReliabilityPolicy().setInitialRtoMillis(5).setMaxRtoMillis(10).setMaxRetransmits(3), __senderListener);
+        _receiver.connect(__pair[1], __receiverListener);
+        assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+
+        SendFuture __future = __sending.send("lost");
+
+        assertTrue(__senderListener.disconnected.await(5, TimeUnit.SECONDS));
+        assertTrue(__future.isDone());
+        assertFalse(__future.isSuccess());
+        assertEquals(4, __sending.getTransmissionCount());
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   Goodput benchmark: a fixed batch of frames over a link that drops 5% of frames and delays
+    *   the rest by 10 ms each way, once per window size. Prints the table and checks a wide
+    *   window keeps the link busier than stop-and-wait
+    */
+    @Test
+    public void goodput_growsWithWindowSize() throws Exception
+    {
+        int __frames = 300;
+        byte[] __payload = new byte[256];
+        new Random(7).nextBytes(__payload);
+
+        System.out.println("window  frames  retransmits  millis  goodput-KB/s");
+
+        double __stopAndWait = 0;
+        double __widest = 0;
+
+        for(int __window = 1; __window <= 64; __window *= 4)
+        {
+            ConnectionEngine __sender = new ConnectionEngine();
+            ConnectionEngine __receiver = new ConnectionEngine();
+
+            try
+            {
+                LoopbackTransport[] __pair = LoopbackTransport.createPair("sender", "receiver", 1024 * 1024);
+                ReliabilityPolicy __policy = new ReliabilityPolicy().setWindowSize(__window).setMaxWaitingFrames(__frames);
+                CollectingListener __collector = new CollectingListener(__frames);
+                TransportTest.RecordingListener __senderListener = new TransportTest.RecordingListener();
+
+                ReliableChannel __sending = __sender.connectReliable(new LossyTransport(__pair[0], 0.05, 10, 1), __policy, __senderListener);
+                __receiver.connectReliable(new LossyTransport(__pair[1], 0.05, 10, 2), __policy, __collector);
+                assertTrue(__senderListener.connected.await(5, TimeUnit.SECONDS));
+
+                long __start = System.nanoTime();
+                SendFuture __last = null;
+                for(int i = 0; i < __frames; i++)
+                {
+                    __last = __sending.send(Frame.TYPE_BINARY, __payload);
+                }//end for loop
+
+                __last.get(60, TimeUnit.SECONDS);
+                assertTrue(__collector.all.await(5, TimeUnit.SECONDS));
+                long __millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - __start);
+
+                double __goodput = (double) __frames * __payload.length / 1024 / (__millis / 1000.0);
+                System.out.println(String.format("%6d  %6d  %11d  %6d  %12.1f", __window, __frames,
+                        __sending.getRetransmissionCount(), __millis, __goodput));
+
+                if(__window == 1)
+                {
+                    __stopAndWait = __goodput;
+                }//end if
+                __widest = __goodput;
+            }//end try
+            finally
+            {
+                __sender.shutdown();
+                __receiver.shutdown();
+            }//end finally
+        }//end for loop
+
+        assertTrue(__widest > __stopAndWait * 4);
+    }//end test
+}//end class ReliableChannelTest
@@ -0,0 +1,386 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResumableSessionTest
+{
+    private final ConnectionEngine _clientEngine = new ConnectionEngine();
+    private final ConnectionEngine _serverEngine = new ConnectionEngine();
+
+    @After
+    public void shutdown()
+    {
+        _clientEngine.shutdown();
+        _serverEngine.shutdown();
+    }//end method shutdown
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   dials the server engine over a fresh loopback pair every time, the server end is accepted
+    *   into whichever directory is current. Links can be cut and dialing refused. With
+    *   silentServerEnd the server's end never notices a cut, like a bluetooth link whose
+    *   supervision timeout has not run out
+    */
+    class Dialer implements TransportFactory
+    {
+        volatile SessionDirectory directory;
+        volatile boolean refusing = false;
+        volatile boolean silentServerEnd = false;
+        volatile LoopbackTransport current;
+        private final String _name;
+
+        Dialer(SessionDirectory __directory)
+        {
+            this(__directory, "client");
+        }
+
+        //__name is the address the server sees
+        Dialer(SessionDirectory __directory, String __name)
+        {
+            directory = __directory;
+            _name = __name;
+        }
+
+        @Override
+        public String getAddress()
+        {
+            return "server";
+        }
+
+        @Override
+        public Transport create() throws IOException
+        {
+            if(refusing)
+            {
+                throw new IOException("peer out of range");
+            }
+
+            LoopbackTransport[] __pair = LoopbackTransport.createPair(_name, "server");
+            _serverEngine.accept(silentServerEnd ? new RfcommLikeTransport(__pair[1], false) : __pair[1], directory);
+            current = __pair[0];
+            return __pair[0];
+        }
+
+        void cut()
+        {
+            current.close();
+        }
+    }//end class Dialer
+
+    /*
+    *   keeps the text of every frame in order
+    */
+    static class Recorder extends TransportTest.RecordingListener
+    {
+        final List<String> texts = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch all;
+
+        Recorder(int __expected)
+        {
+            all = new CountDownLatch(__expected);
+        }
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            texts.add(__frame.asText());
+            all.countDown();
+        }
+    }//end class Recorder
+
+    private static SessionPolicy policy()
+    {
+        return new SessionPolicy().setReconnectDelayMillis(10).setAckEveryFrames(8).setAckDelayMillis(5);
+    }//end method policy
+
+    //sends, waiting for room while the retransmit buffer is full, returns the last send
+    private static SendFuture send(ResumableSession __session, String __message) throws InterruptedException
+    {
+        while(true)
+        {
+            SendFuture __future = __session.send(__message);
+            if(!(__future.isDone() && __future.getFailure() instanceof BackpressureException))
+            {
+                return __future;
+            }//end if
+
+            Thread.sleep(1);
+        }//end while loop
+    }//end method send
+
+    private static void awaitResumed(ResumableSession __session) throws InterruptedException
+    {
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(!__session.isResumed() && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(1);
+        }//end while loop
+
+        assertTrue(__session.isResumed());
+    }//end method awaitResumed
+
+    private static void assertInOrder(List<String> __texts, String __prefix, int __count)
+    {
+        assertEquals(__count, __texts.size());
+        for(int i = 0; i < __count; i++)
+        {
+            assertEquals(__prefix + i, __texts.get(i));
+        }//end for loop
+    }//end method assertInOrder
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void cutLinks_deliverEveryFrameOnceAndInOrder() throws Exception
+    {
+        int __count = 2000;
+        Recorder __server = new Recorder(__count);
+        SessionDirectory __directory = _serverEngine.newSessionDirectory(policy(), __server);
+        Dialer __dialer = new Dialer(__directory);
+
+        TransportTest.RecordingListener __client = new TransportTest.RecordingListener();
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, policy(), __client);
+        assertTrue(__client.connected.await(5, TimeUnit.SECONDS));
+
+        SendFuture __last = null;
+        for(int i = 0; i < __count; i++)
+        {
+            if(i > 0 && i % 400 == 0)
+            {
+                __dialer.cut();
+            }//end if
+
+            __last = send(__session, "m-" + i);
+        }//end for loop
+
+        assertTrue(__server.all.await(10, TimeUnit.SECONDS));
+        __last.get(5, TimeUnit.SECONDS);
+        assertTrue(__last.isSuccess());
+        assertInOrder(__server.texts, "m-", __count);
+
+        //the peer's session is the same one every time
+        assertEquals(1, __directory.getSessionCount());
+        ResumableSession __serverSession = __directory.get(__session.getSessionId());
+        assertEquals(__count, __serverSession.getDeliveredCount());
+        assertTrue(__session.getResumeCount() >= 4);
+
+        //only what was in flight went out again, never more than the buffer holds
+        assertTrue(__session.getReplayedCount() <= __session.getResumeCount() * new SessionPolicy().getMaxUnackedFrames());
+        assertEquals(0, __session.getUnackedCount());
+
+        //the client never saw the link go
+        assertEquals(1, __client.disconnected.getCount());
+    }//end test
+
+    @Test
+    public void bothDirections_resumeFromTheirOwnPositions() throws Exception
+    {
+        int __count = 500;
+        final Recorder __client = new Recorder(__count);
+
+        //the server answers every message through the session it arrived on. A resume can hand it
+        //the client's whole buffer at once while its own answers from before the drop are still
+        //held, so its buffer is sized for both instead of refusing answers
+        final SessionDirectory[] __directory = new SessionDirectory[1];
+        __directory[0] = _serverEngine.newSessionDirectory(policy().setMaxUnackedFrames(__count), new TransportTest.RecordingListener()
+        {
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+                __directory[0].find(__connection).send("re-" + __frame.asText());
+            }
+        });
+        Dialer __dialer = new Dialer(__directory[0]);
+
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, policy(), __client);
+        assertTrue(__client.connected.await(5, TimeUnit.SECONDS));
+
+        for(int i = 0; i < __count; i++)
+        {
+            if(i > 0 && i % 150 == 0)
+            {
+                __dialer.cut();
+            }//end if
+
+            send(__session, "" + i);
+        }//end for loop
+
+        assertTrue(__client.all.await(10, TimeUnit.SECONDS));
+        assertInOrder(__client.texts, "re-", __count);
+        assertEquals(0, __session.getDuplicateCount());
+    }//end test
+
+    @Test
+    public void idleLink_resumesWithOneHandshakeAndNoReplay() throws Exception
+    {
+        Recorder __server = new Recorder(2);
+        Dialer __dialer = new Dialer(_serverEngine.newSessionDirectory(policy(), __server));
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, policy(), new TransportTest.RecordingListener());
+
+        send(__session, "before").get(5, TimeUnit.SECONDS);
+        Connection __first = __session.getConnection();
+
+        __dialer.cut();
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(__session.getResumeCount() == 0 && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(1);
+        }//end while loop
+
+        assertEquals(1, __session.getResumeCount());
+        assertNotSame(__first, __session.getConnection());
+
+        send(__session, "after").get(5, TimeUnit.SECONDS);
+        assertTrue(__server.all.await(5, TimeUnit.SECONDS));
+        assertEquals(2, __session.getTransmissionCount());
+        assertEquals(0, __session.getReplayedCount());
+    }//end test
+
+    @Test
+    public void resume_replacesAServerLinkThatNeverNoticedTheCut() throws Exception
+    {
+        Recorder __server = new Recorder(2);
+        SessionDirectory __directory = _serverEngine.newSessionDirectory(policy(), __server);
+        Dialer __dialer = new Dialer(__directory);
+        __dialer.silentServerEnd = true;
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, policy(), new TransportTest.RecordingListener());
+
+        send(__session, "before").get(5, TimeUnit.SECONDS);
+        Connection __stale = _serverEngine.getRegistry().get("client");
+
+        //the server still has the old link registered under the client's address when the resume comes in
+        __dialer.cut();
+        long __deadline = System.currentTimeMillis() + 5000;
+        while(__session.getResumeCount() == 0 && System.currentTimeMillis() < __deadline)
+        {
+            Thread.sleep(1);
+        }//end while loop
+        assertEquals(1, __session.getResumeCount());
+        awaitResumed(__session);
+
+        send(__session, "after").get(5, TimeUnit.SECONDS);
+        assertTrue(__server.all.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("before", "after"), __server.texts);
+
+        assertTrue(__stale.isClosed());
+        assertNotSame(__stale, _serverEngine.getRegistry().get("client"));
+        assertEquals(1, __directory.getSessionCount());
+    }//end test
+
+    @Test
+    public void broadcast_reachesAPeerWhoseLinkDropsHalfway() throws Exception
+    {
+        int __count = 100;
+        SessionDirectory __directory = _serverEngine.newSessionDirectory(policy(), new TransportTest.RecordingListener());
+        Dialer[] __dialers = {new Dialer(__directory, "client-0"), new Dialer(__directory, "client-1")};
+        Recorder[] __clients = {new Recorder(__count), new Recorder(__count)};
+
+        //each client is a device of its own, one engine would take the second dial for the first link
+        ConnectionEngine __otherClientEngine = new ConnectionEngine();
+
+        try
+        {
+            _clientEngine.connectResumable(__dialers[0], policy(), __clients[0]);
+            __otherClientEngine.connectResumable(__dialers[1], policy(), __clients[1]);
+            for(Recorder __client : __clients)
+            {
+                assertTrue(__client.connected.await(5, TimeUnit.SECONDS));
+            }//end for loop
+
+            BroadcastResult __last = null;
+            for(int i = 0; i < __count; i++)
+            {
+                if(i == __count / 2)
+                {
+                    __dialers[1].cut();
+                }//end if
+
+                __last = ResumableSession.broadcast(__directory.getSessions(), Frame.TYPE_TEXT, ("b-" + i).getBytes(Frame.UTF_8));
+                assertEquals(2, __last.getTargetCount());
+            }//end for loop
+
+            //the frames sent while the link was down went out after the resume
+            for(Recorder __client : __clients)
+            {
+                assertTrue(__client.all.await(10, TimeUnit.SECONDS));
+                assertInOrder(__client.texts, "b-", __count);
+            }//end for loop
+
+            assertTrue(__last.await(5, TimeUnit.SECONDS));
+            assertEquals(2, __last.getSucceededCount());
+
+            for(ResumableSession __session : __directory.getSessions())
+            {
+                assertEquals(__session.getAddress().equals("client-1") ? 1 : 0, __session.getResumeCount());
+            }//end for loop
+        }//end try
+        finally
+        {
+            __otherClientEngine.shutdown();
+        }//end finally
+    }//end test
+
+    @Test
+    public void linkThatStaysDown_endsTheSessionAndFailsItsSends() throws Exception
+    {
+        SessionPolicy __policy = policy().setResumeTimeoutMillis(300);
+        Dialer __dialer = new Dialer(_serverEngine.newSessionDirectory(__policy, new TransportTest.RecordingListener()));
+        TransportTest.RecordingListener __client = new TransportTest.RecordingListener();
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, __policy, __client);
+        awaitResumed(__session);
+
+        __dialer.refusing = true;
+        __dialer.cut();
+        SendFuture __pending = __session.send("never");
+
+        assertTrue(__client.disconnected.await(5, TimeUnit.SECONDS));
+        assertTrue(__session.isClosed());
+        assertTrue(__pending.isDone());
+        assertFalse(__pending.isSuccess());
+        assertFalse(__session.send("too late").isSuccess());
+    }//end test
+
+    @Test
+    public void peerThatForgotTheSession_endsIt() throws Exception
+    {
+        Dialer __dialer = new Dialer(_serverEngine.newSessionDirectory(policy(), new TransportTest.RecordingListener()));
+        TransportTest.RecordingListener __client = new TransportTest.RecordingListener();
+        ResumableSession __session = _clientEngine.connectResumable(__dialer, policy(), __client);
+        send(__session, "acknowledged").get(5, TimeUnit.SECONDS);
+
+        //the server restarted, its new directory starts the id from scratch and cannot replay
+        __dialer.directory = _serverEngine.newSessionDirectory(policy(), new TransportTest.RecordingListener());
+        __dialer.cut();
+
+        assertTrue(__client.disconnected.await(5, TimeUnit.SECONDS));
+        assertTrue(__session.isClosed());
+    }//end test
+
+    @Test
+    public void linksThatDoNotOpenWithAResume_areClosed() throws Exception
+    {
+        TransportTest.RecordingListener __server = new TransportTest.RecordingListener();
+        SessionDirectory __directory = _serverEngine.newSessionDirectory(policy(), __server);
+
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("client", "server");
+        _serverEngine.accept(__pair[1], __directory);
+        TransportTest.RecordingListener __client = new TransportTest.RecordingListener();
+        _clientEngine.connect(__pair[0], __client).send("hello");
+
+        assertTrue(__client.disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(0, __directory.getSessionCount());
+        assertEquals(1, __server.received.getCount());
+    }//end test
+}//end class ResumableSessionTest
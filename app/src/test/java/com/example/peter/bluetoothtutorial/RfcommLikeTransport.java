@@ -0,0 +1,162 @@
+package com.example.peter.bluetoothtutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One end of a loopback pair that behaves like a bluetooth socket: available() on its raw
+ * stream keeps returning 0 after the peer has gone and never throws, only a blocking read sees
+ * the end. It is read ahead the same way RfcommTransport is.
+ *
+ * An end made with noticesDrop false does not even find out from a read, like a link whose
+ * supervision timeout has not run out yet: reads block and writes vanish until it is closed
+ * on this side.
+ */
+class RfcommLikeTransport implements Transport
+{
+    private final LoopbackTransport _inner;
+    private final boolean _noticesDrop;
+    private final RawStream _rawStream;
+    private ReadAheadInputStream _inputStream;
+    private volatile boolean _closed = false;
+
+    RfcommLikeTransport(LoopbackTransport __inner, boolean __noticesDrop)
+    {
+        _inner = __inner;
+        _noticesDrop = __noticesDrop;
+        _rawStream = new RawStream(__inner.getInputStream());
+    }
+
+    @Override
+    public void connect() throws IOException
+    {
+        _inner.connect();
+    }
+
+    @Override
+    public synchronized InputStream getInputStream()
+    {
+        if(_inputStream == null)
+        {
+            _inputStream = new ReadAheadInputStream(_rawStream, _inner.getAddress());
+        }//end if
+
+        return _inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        final OutputStream __output = _inner.getOutputStream();
+
+        return new OutputStream()
+        {
+            @Override
+            public void write(int __byte) throws IOException
+            {
+                write(new byte[] {(byte) __byte}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] __bytes, int __offset, int __length) throws IOException
+            {
+                try
+                {
+                    __output.write(__bytes, __offset, __length);
+                }//end try
+                catch (IOException e)
+                {
+                    if(_noticesDrop || _closed)
+                    {
+                        throw e;
+                    }//end if
+                }//end catch
+            }
+        };
+    }
+
+    @Override
+    public String getAddress()
+    {
+        return _inner.getAddress();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "rfcomm-like://" + _inner.getAddress();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (_rawStream)
+        {
+            _closed = true;
+            _rawStream.notifyAll();
+        }//end synchronized
+
+        _inner.close();
+    }
+
+    /*
+     * the socket's stream as bluetooth hands it out
+     */
+    private class RawStream extends InputStream
+    {
+        private final InputStream _input;
+
+        RawStream(InputStream __input)
+        {
+            _input = __input;
+        }
+
+        @Override
+        public int available()
+        {
+            try
+            {
+                return _input.available();
+            }//end try
+            catch (IOException e)
+            {
+                return 0;
+            }//end catch
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] __single = new byte[1];
+            return read(__single, 0, 1) < 0 ? -1 : __single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] __bytes, int __offset, int __length) throws IOException
+        {
+            int __read = _input.read(__bytes, __offset, __length);
+            if(__read >= 0 || _noticesDrop)
+            {
+                return __read;
+            }//end if
+
+            synchronized (this)
+            {
+                while(!_closed)
+                {
+                    try
+                    {
+                        wait();
+                    }//end try
+                    catch (InterruptedException e)
+                    {
+                        throw new IOException("interrupted");
+                    }//end catch
+                }//end while loop
+            }//end synchronized
+
+            throw new IOException("socket closed");
+        }
+    }
+}//end class RfcommLikeTransport
@@ -0,0 +1,211 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionJournalTest
+{
+    private final File _directory = new File(System.getProperty("java.io.tmpdir"), "SessionJournalTest-" + System.nanoTime());
+
+    @After
+    public void deleteDirectory()
+    {
+        File[] __children = _directory.listFiles();
+        if(__children != null)
+        {
+            for(File __child : __children)
+            {
+                __child.delete();
+            }//end for loop
+        }//end if
+
+        _directory.delete();
+    }//end method deleteDirectory
+
+    //----------------------------------------------------------------------------------------------
+
+    /*
+    *   keeps a copy of every replayed record as "session address type text"
+    */
+    static class Collector implements SessionJournal.Visitor
+    {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onRecord(long __sessionId, long __timestamp, String __address, Frame __frame)
+        {
+            records.add(__sessionId + " " + __address + " " + __frame.getType() + " " + __frame.asText());
+        }
+    }//end class Collector
+
+    private static Frame frame(String __text)
+    {
+        byte[] __payload = __text.getBytes(Frame.UTF_8);
+        Frame __frame = new Frame();
+        __frame.set(Frame.TYPE_TEXT, __payload, 0, __payload.length);
+        return __frame;
+    }//end method frame
+
+    //message i, padded so the records vary in size
+    private static String message(int i)
+    {
+        StringBuilder __text = new StringBuilder("message ").append(i).append(' ');
+        for(int j = 0; j < i % 50; j++)
+        {
+            __text.append('x');
+        }//end for loop
+
+        return __text.toString();
+    }//end method message
+
+    //----------------------------------------------------------------------------------------------
+
+    @Test
+    public void appendedFrames_replayInOrderAcrossSegments() throws Exception
+    {
+        SessionJournal __journal = new SessionJournal(_directory, new JournalPolicy().setSegmentBytes(4096));
+        int __count = 2000;
+
+        Frame[] __frames = new Frame[__count];
+        for(int i = 0; i < __count; i++)
+        {
+            __frames[i] = frame(message(i));
+        }//end for loop
+
+        long __start = System.nanoTime();
+        for(int i = 0; i < __count; i++)
+        {
+            assertTrue(__journal.append(1000 + i, i % 2 == 0 ? "AA:BB" : "CC:DD", __frames[i]));
+        }//end for loop
+        long __appendNanos = (System.nanoTime() - __start) / __count;
+
+        __journal.sync();
+        System.out.println("journal append " + __appendNanos + " ns/frame, " + __journal.getCommitCount() + " commits for "
+                + __count + " frames");
+
+        Collector __collector = new Collector();
+        assertEquals(__count, SessionJournal.replay(_directory, __journal.getSessionId(), __collector));
+        for(int i = 0; i < __count; i++)
+        {
+            assertEquals(__journal.getSessionId() + " " + (i % 2 == 0 ? "AA:BB" : "CC:DD") + " " + Frame.TYPE_TEXT + " " + message(i),
+                    __collector.records.get(i));
+        }//end for loop
+
+        __journal.close();
+        assertTrue(_directory.listFiles().length > 10);
+        assertTrue(__journal.getCommitCount() < __count);
+        assertEquals(0, __journal.getDroppedCount());
+    }//end test
+
+    @Test
+    public void everyOpen_startsANewSession() throws Exception
+    {
+        SessionJournal __first = new SessionJournal(_directory, new JournalPolicy());
+        __first.append(1, "AA:BB", frame("first"));
+        __first.close();
+
+        SessionJournal __second = new SessionJournal(_directory, new JournalPolicy());
+        __second.append(2, "AA:BB", frame("second"));
+        __second.close();
+
+        long[] __sessions = SessionJournal.listSessions(_directory);
+        assertEquals(2, __sessions.length);
+        assertEquals(__first.getSessionId(), __sessions[0]);
+        assertEquals(__second.getSessionId(), __sessions[1]);
+
+        Collector __collector = new Collector();
+        SessionJournal.replay(_directory, __first.getSessionId(), __collector);
+        assertEquals(1, __collector.records.size());
+        assertTrue(__collector.records.get(0).endsWith("first"));
+
+        __collector = new Collector();
+        assertEquals(2, SessionJournal.replay(_directory, SessionJournal.ALL_SESSIONS, __collector));
+        assertTrue(__collector.records.get(1).endsWith("second"));
+    }//end test
+
+    @Test
+    public void oldSegments_areDeletedToStayInTheBudget() throws Exception
+    {
+        SessionJournal __journal = new SessionJournal(_directory, new JournalPolicy().setSegmentBytes(2048)
+                .setDiskBudgetBytes(8192));
+        int __count = 1000;
+
+        for(int i = 0; i < __count; i++)
+        {
+            __journal.append(i, "AA:BB", frame(message(i)));
+        }//end for loop
+        __journal.close();
+
+        long __total = 0;
+        for(File __segment : _directory.listFiles())
+        {
+            __total += __segment.length();
+        }//end for loop
+        assertTrue(__total <= 8192 + 2048);
+        assertTrue(__journal.getDeletedSegmentCount() > 0);
+
+        //what is left is the newest records, without gaps
+        Collector __collector = new Collector();
+        long __replayed = SessionJournal.replay(_directory, __journal.getSessionId(), __collector);
+        assertTrue(__replayed > 0 && __replayed < __count);
+        for(int i = 0; i < __replayed; i++)
+        {
+            assertTrue(__collector.records.get(i).endsWith(message((int) (__count - __replayed + i))));
+        }//end for loop
+    }//end test
+
+    @Test
+    public void tornRecord_endsTheReplay() throws Exception
+    {
+        SessionJournal __journal = new SessionJournal(_directory, new JournalPolicy());
+        __journal.append(1, "AA:BB", frame("kept"));
+        __journal.append(2, "AA:BB", frame("torn"));
+        __journal.close();
+
+        //a crash halfway through the last record leaves it with the wrong checksum
+        File __segment = _directory.listFiles()[0];
+        RandomAccessFile __file = new RandomAccessFile(__segment, "rw");
+        __file.seek(__file.length() - 1);
+        __file.write('X');
+        __file.close();
+
+        Collector __collector = new Collector();
+        assertEquals(1, SessionJournal.replay(_directory, SessionJournal.ALL_SESSIONS, __collector));
+        assertTrue(__collector.records.get(0).endsWith("kept"));
+    }//end test
+
+    @Test
+    public void fullBuffer_dropsInsteadOfBlocking() throws Exception
+    {
+        //the writer waits a long time for each batch, so the small buffer fills up
+        SessionJournal __journal = new SessionJournal(_directory, new JournalPolicy().setBufferBytes(1024)
+                .setCommitBytes(1024 * 1024).setCommitIntervalMillis(500));
+        int __count = 200;
+        int __accepted = 0;
+
+        long __start = System.nanoTime();
+        for(int i = 0; i < __count; i++)
+        {
+            if(__journal.append(i, "AA:BB", frame(message(i))))
+            {
+                __accepted++;
+            }//end if
+        }//end for loop
+        long __millis = (System.nanoTime() - __start) / 1000000;
+
+        assertTrue(__millis < 200);
+        assertTrue(__accepted < __count);
+        assertEquals(__count - __accepted, __journal.getDroppedCount());
+
+        __journal.close();
+        assertEquals(__accepted, SessionJournal.replay(_directory, __journal.getSessionId(), new Collector()));
+        assertFalse(__journal.append(0, "AA:BB", frame("after close")));
+    }//end test
+}//end class SessionJournalTest
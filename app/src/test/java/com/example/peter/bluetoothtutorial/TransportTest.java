@@ -0,0 +1,267 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the connect/read/write logic over the non-bluetooth transports.
+ */
+public class TransportTest
+{
+    private final ConnectionEngine _engine = new ConnectionEngine();
+
+    @After
+    public void shutdownEngine()
+    {
+        _engine.shutdown();
+    }//end method shutdownEngine
+
+    @Test
+    public void loopbackPair_deliversBytesBothWays() throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("AA:AA", "BB:BB", 16);
+        assertEquals("BB:BB", __pair[0].getAddress());
+        assertEquals("AA:AA", __pair[1].getAddress());
+
+        //larger than the pipe so the writer has to wait for the reader
+        byte[] __payload = new byte[1000];
+        for(int i = 0; i < __payload.length; i++)
+        {
+            __payload[i] = (byte) i;
+        }//end for loop
+
+        writeInBackground(__pair[0].getOutputStream(), __payload);
+        assertArrayEquals(__payload, readFully(__pair[1].getInputStream(), __payload.length));
+
+        __pair[1].close();
+        assertEquals(-1, __pair[0].getInputStream().read());
+    }//end test
+
+    @Test
+    public void connection_receivesOverLoopback() throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "peer");
+        RecordingListener __listener = new RecordingListener();
+
+        Connection __connection = _engine.connect(__pair[0], __listener);
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __pair[1].getOutputStream().write(FrameEncoder.encodeText("hello"));
+        assertTrue(__listener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("hello", __listener.lastMessage);
+
+        __connection.send("world").get(5, TimeUnit.SECONDS);
+        assertArrayEquals(FrameEncoder.encodeText("world"), readFully(__pair[1].getInputStream(), FrameEncoder.HEADER_LENGTH + 5));
+
+        __pair[1].close();
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+    }//end test
+
+    @Test
+    public void connection_receivesOverTcp() throws Exception
+    {
+        ServerSocket __server = new ServerSocket(0);
+        RecordingListener __listener = new RecordingListener();
+
+        Connection __connection = _engine.connect(new TcpTransport("127.0.0.1", __server.getLocalPort()), __listener);
+
+        Socket __peer = __server.accept();
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __peer.getOutputStream().write(FrameEncoder.encodeText("hello"));
+        assertTrue(__listener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("hello", __listener.lastMessage);
+
+        __connection.close();
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+        __peer.close();
+        __server.close();
+    }//end test
+
+    @Test
+    public void connection_noticesTcpPeerClosing() throws Exception
+    {
+        ServerSocket __server = new ServerSocket(0);
+        RecordingListener __listener = new RecordingListener();
+
+        _engine.connect(new TcpTransport("127.0.0.1", __server.getLocalPort()), __listener);
+        Socket __peer = __server.accept();
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __peer.close();
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+        __server.close();
+    }//end test
+
+    @Test
+    public void connection_noticesADroppedRfcommLink() throws Exception
+    {
+        //available() on this end returns 0 forever once the peer is gone, like a bluetooth socket
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "peer");
+        RecordingListener __listener = new RecordingListener();
+
+        _engine.connect(new RfcommLikeTransport(__pair[0], true), __listener);
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        __pair[1].getOutputStream().write(FrameEncoder.encodeText("hello"));
+        assertTrue(__listener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("hello", __listener.lastMessage);
+
+        __pair[1].close();
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(_engine.getRegistry().contains("peer"));
+    }//end test
+
+    @Test
+    public void readAheadLink_wakesTheIdleReaderWhenDataArrives() throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "peer");
+        RecordingListener __listener = new RecordingListener();
+
+        _engine.connect(new RfcommLikeTransport(__pair[0], true), __listener);
+        assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+        //long enough for the reader to have parked without a time limit
+        Thread.sleep(50);
+        __pair[1].getOutputStream().write(FrameEncoder.encodeText("late"));
+        assertTrue(__listener.received.await(5, TimeUnit.SECONDS));
+        assertEquals("late", __listener.lastMessage);
+
+        //the link's read-ahead thread counts as one of the engine's
+        int __threads = _engine.getThreadCount();
+        Thread.sleep(50);
+        __pair[1].close();
+        assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(__threads - 1, _engine.getThreadCount());
+    }//end test
+
+    @Test
+    public void connection_closesWhenAWriteBlocksPastTheTimeout() throws Exception
+    {
+        ConnectionEngine __engine = new ConnectionEngine(2, 2, 2, new WritePolicy().setWriteTimeoutMillis(300));
+
+        try
+        {
+            //the pipe holds less than the frame and the peer never reads, so the write blocks
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "peer", 64);
+            RecordingListener __listener = new RecordingListener();
+
+            Connection __connection = __engine.connect(__pair[0], __listener);
+            assertTrue(__listener.connected.await(5, TimeUnit.SECONDS));
+
+            try
+            {
+                __connection.send(Frame.TYPE_BINARY, new byte[100]).get(5, TimeUnit.SECONDS);
+                fail("the write cannot complete");
+            }//end try
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+            }//end catch
+
+            assertTrue(__listener.disconnected.await(5, TimeUnit.SECONDS));
+            assertTrue(__connection.getMetrics().getErrors() > 0);
+        }//end try
+        finally
+        {
+            __engine.shutdown();
+        }//end finally
+    }//end test
+
+    @Test
+    public void connection_reportsFailure() throws Exception
+    {
+        LoopbackTransport[] __pair = LoopbackTransport.createPair("local", "peer");
+        __pair[0].close();
+        RecordingListener __listener = new RecordingListener();
+
+        _engine.connect(__pair[0], __listener);
+        assertTrue(__listener.failed.await(5, TimeUnit.SECONDS));
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    static byte[] readFully(InputStream __inputStream, int __length) throws IOException
+    {
+        byte[] __bytes = new byte[__length];
+        int __read = 0;
+
+        while(__read < __length)
+        {
+            int __count = __inputStream.read(__bytes, __read, __length - __read);
+            if(__count < 0)
+            {
+                throw new IOException("stream ended after " + __read + " bytes");
+            }//end if
+            __read += __count;
+        }//end while loop
+
+        return __bytes;
+    }//end method readFully
+
+    static void writeInBackground(final OutputStream __outputStream, final byte[] __bytes)
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    __outputStream.write(__bytes);
+                }//end try
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }//end catch
+            }//end method run
+        }.start();
+    }//end method writeInBackground
+
+    //----------------------------------------------------------------------------------------------
+
+    static class RecordingListener implements ConnectionListener
+    {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        volatile String lastMessage;
+
+        @Override
+        public void onConnected(Connection __connection)
+        {
+            connected.countDown();
+        }
+
+        @Override
+        public void onConnectionFailed(Connection __connection, IOException __cause)
+        {
+            failed.countDown();
+        }
+
+        @Override
+        public void onFrameReceived(Connection __connection, Frame __frame)
+        {
+            lastMessage = __frame.asText();
+            received.countDown();
+        }
+
+        @Override
+        public void onDisconnected(Connection __connection)
+        {
+            disconnected.countDown();
+        }
+    }//end class RecordingListener
+}//end class TransportTest
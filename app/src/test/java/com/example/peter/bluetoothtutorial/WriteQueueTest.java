@@ -0,0 +1,157 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteQueueTest
+{
+    private final ScheduledThreadPoolExecutor _executor = new ScheduledThreadPoolExecutor(1);
+
+    @After
+    public void shutdownExecutor()
+    {
+        _executor.shutdownNow();
+    }//end method shutdownExecutor
+
+    @Test
+    public void smallFrames_areCoalescedIntoOneWrite() throws Exception
+    {
+        CountingOutputStream __output = new CountingOutputStream();
+        WriteQueue __queue = new WriteQueue(new WritePolicy().setFlushDelayMillis(50), _executor, new BufferPool(64 * 1024));
+        __queue.start(__output);
+
+        SendFuture __last = null;
+        for(int i = 0; i < 10; i++)
+        {
+            __last = __queue.enqueue(new byte[] {(byte) i}, 0, 1);
+        }//end for loop
+
+        __last.get(5, TimeUnit.SECONDS);
+        assertEquals(1, __output.writes);
+        assertArrayEquals(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, __output.toByteArray());
+    }//end test
+
+    @Test
+    public void flushSize_capsEachWrite() throws Exception
+    {
+        CountingOutputStream __output = new CountingOutputStream();
+        WriteQueue __queue = new WriteQueue(new WritePolicy().setFlushSize(4).setFlushDelayMillis(10000), _executor, new BufferPool(64 * 1024));
+
+        //queued before the stream is there, so everything is waiting when the writer starts
+        SendFuture __last = null;
+        for(int i = 0; i < 8; i++)
+        {
+            __last = __queue.enqueue(new byte[] {(byte) i}, 0, 1);
+        }//end for loop
+        __queue.start(__output);
+
+        __last.get(5, TimeUnit.SECONDS);
+        assertEquals(2, __output.writes);
+        assertEquals(8, __output.size());
+    }//end test
+
+    @Test
+    public void fullQueue_rejectsNewSend() throws Exception
+    {
+        WriteQueue __queue = new WriteQueue(new WritePolicy().setMaxQueuedFrames(2).setOverflow(WritePolicy.Overflow.REJECT), _executor, new BufferPool(64 * 1024));
+
+        __queue.enqueue(new byte[1], 0, 1);
+        __queue.enqueue(new byte[1], 0, 1);
+        SendFuture __rejected = __queue.enqueue(new byte[1], 0, 1);
+
+        assertTrue(__rejected.isDone());
+        assertTrue(__rejected.getFailure() instanceof BackpressureException);
+        assertEquals(2, __queue.size());
+    }//end test
+
+    @Test
+    public void fullQueue_dropsOldestSend() throws Exception
+    {
+        WriteQueue __queue = new WriteQueue(new WritePolicy().setMaxQueuedFrames(2).setOverflow(WritePolicy.Overflow.DROP_OLDEST), _executor, new BufferPool(64 * 1024));
+
+        SendFuture __oldest = __queue.enqueue(new byte[1], 0, 1);
+        __queue.enqueue(new byte[1], 0, 1);
+        SendFuture __newest = __queue.enqueue(new byte[1], 0, 1);
+
+        assertTrue(__oldest.getFailure() instanceof BackpressureException);
+        assertFalse(__newest.isDone());
+        assertEquals(2, __queue.size());
+    }//end test
+
+    @Test
+    public void fullQueue_blocksUntilTimeout() throws Exception
+    {
+        WriteQueue __queue = new WriteQueue(new WritePolicy().setMaxQueuedFrames(1).setBlockTimeoutMillis(50), _executor, new BufferPool(64 * 1024));
+
+        __queue.enqueue(new byte[1], 0, 1);
+        long __start = System.nanoTime();
+        SendFuture __blocked = __queue.enqueue(new byte[1], 0, 1);
+
+        assertTrue(System.nanoTime() - __start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(__blocked.getFailure() instanceof BackpressureException);
+    }//end test
+
+    @Test
+    public void writeFailure_failsSendAndQueue() throws Exception
+    {
+        OutputStream __broken = new OutputStream()
+        {
+            @Override
+            public void write(int __byte) throws IOException
+            {
+                throw new IOException("link down");
+            }
+        };
+
+        WriteQueue __queue = new WriteQueue(new WritePolicy(), _executor, new BufferPool(64 * 1024));
+        __queue.start(__broken);
+
+        final CountDownLatch __notified = new CountDownLatch(1);
+        SendFuture __send = __queue.enqueue(new byte[1], 0, 1);
+        __send.addListener(new SendFuture.Listener()
+        {
+            @Override
+            public void onComplete(SendFuture __future)
+            {
+                __notified.countDown();
+            }
+        });
+
+        assertTrue(__notified.await(5, TimeUnit.SECONDS));
+        try
+        {
+            __send.get();
+            fail("send should have failed");
+        }//end try
+        catch (ExecutionException e)
+        {
+            assertEquals("link down", e.getCause().getMessage());
+        }//end catch
+
+        assertFalse(__queue.enqueue(new byte[1], 0, 1).isSuccess());
+    }//end test
+
+    //----------------------------------------------------------------------------------------------
+
+    static class CountingOutputStream extends ByteArrayOutputStream
+    {
+        volatile int writes = 0;
+
+        @Override
+        public synchronized void write(byte[] __bytes, int __offset, int __length)
+        {
+            writes++;
+            super.write(__bytes, __offset, __length);
+        }
+    }//end class CountingOutputStream
+}//end class WriteQueueTest
@@ -0,0 +1,74 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Getting a buffer for a read or a write. The baseline allocates a new array every time, as
+*   the first version did for every message; the others borrow one from the shared BufferPool
+*   and give it back. The contended runs have the readers and writers of several links at it
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferPoolBenchmark
+{
+    private static final int CONTENDING_THREADS = 4;
+
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    private final BufferPool _pool = new BufferPool(4 * 1024 * 1024);
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public byte[] baselineAllocate()
+    {
+        return new byte[size];
+    }//end method baselineAllocate
+
+    @Benchmark
+    public void pooled(Blackhole __blackhole)
+    {
+        borrow(__blackhole);
+    }//end method pooled
+
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public byte[] baselineAllocateContended()
+    {
+        return new byte[size];
+    }//end method baselineAllocateContended
+
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public void pooledContended(Blackhole __blackhole)
+    {
+        borrow(__blackhole);
+    }//end method pooledContended
+
+    //----------------------------------------------------------------------------------------------
+
+    private void borrow(Blackhole __blackhole)
+    {
+        byte[] __buffer = _pool.acquire(size);
+        __blackhole.consume(__buffer);
+        _pool.release(__buffer);
+    }//end method borrow
+}//end class BufferPoolBenchmark
@@ -0,0 +1,141 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Handing received messages to the main thread and into the message log, a frame's worth at
+*   a time. The baseline posts every message on its own, as ConnectedThread did with
+*   obtainMessage().sendToTarget(), and the main thread handles them one by one. The other
+*   goes through a FramePacedDispatcher, whose flush is run by hand in place of the looper
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark
+{
+    //messages arriving between two frames
+    private static final int MESSAGES = 64;
+
+    private final ReceivedMessage[] _messages = new ReceivedMessage[MESSAGES];
+    private final MessageLog _messageLog = new MessageLog(MessageLog.DEFAULT_CAPACITY);
+
+    //the main thread's queue for the baseline, locked like a MessageQueue
+    private final ArrayDeque<PostedMessage> _looperQueue = new ArrayDeque<>();
+
+    private FramePacedDispatcher<ReceivedMessage> _dispatcher;
+    private Runnable _scheduledFlush;
+
+    @Setup
+    public void setUp()
+    {
+        for(int i = 0; i < MESSAGES; i++)
+        {
+            _messages[i] = new ReceivedMessage(i, "00:11:22:33:44:55", "sensor" + i + " temp=21.5");
+        }//end for loop
+
+        _dispatcher = new FramePacedDispatcher<>(
+                new FramePacedDispatcher.Scheduler()
+                {
+                    @Override
+                    public void schedule(Runnable __task, long __delayMillis)
+                    {
+                        _scheduledFlush = __task;
+                    }//end method schedule
+
+                    @Override
+                    public long now()
+                    {
+                        return 0;
+                    }//end method now
+                },
+                new FramePacedDispatcher.Sink<ReceivedMessage>()
+                {
+                    @Override
+                    public void onBatch(List<ReceivedMessage> __batch)
+                    {
+                        _messageLog.appendAll(__batch);
+                    }//end method onBatch
+                });
+    }//end method setUp
+
+    //----------------------------------------------------------------------------------------------
+
+    //a post per message and a log update per message
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long baselinePostPerMessage()
+    {
+        for(int i = 0; i < MESSAGES; i++)
+        {
+            //obtainMessage wraps the object, sendToTarget queues it under the queue's lock
+            PostedMessage __posted = new PostedMessage(_messages[i]);
+            synchronized (_looperQueue)
+            {
+                _looperQueue.add(__posted);
+            }//end synchronized
+        }//end for loop
+
+        while(true)
+        {
+            PostedMessage __posted;
+            synchronized (_looperQueue)
+            {
+                __posted = _looperQueue.poll();
+            }//end synchronized
+
+            if(__posted == null)
+            {
+                break;
+            }//end if
+
+            _messageLog.append(__posted.obj);
+        }//end while loop
+
+        return _messageLog.getAppendedCount();
+    }//end method baselinePostPerMessage
+
+    //submitted from the reader, drawn in one batch on the next frame
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long framePaced()
+    {
+        for(int i = 0; i < MESSAGES; i++)
+        {
+            _dispatcher.submit(_messages[i]);
+        }//end for loop
+
+        _scheduledFlush.run();
+
+        return _messageLog.getAppendedCount();
+    }//end method framePaced
+
+    //----------------------------------------------------------------------------------------------
+
+    //stands in for android.os.Message
+    private static final class PostedMessage
+    {
+        final ReceivedMessage obj;
+
+        PostedMessage(ReceivedMessage __obj)
+        {
+            obj = __obj;
+        }//end constructor
+    }//end class PostedMessage
+}//end class DispatchBenchmark
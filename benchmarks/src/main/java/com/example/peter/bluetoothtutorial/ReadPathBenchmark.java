@@ -0,0 +1,141 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Turning the bytes of a link into messages. The baseline is the first ConnectedThread: one
+*   read into a 1 KB array and a String per read, wherever the message boundaries fall. The
+*   others run a FrameDecoder over the same messages, framed, the way the engine's readers do
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadPathBenchmark
+{
+    private static final int MESSAGES = 64;
+
+    @Param({"16", "256", "4096"})
+    public int messageBytes;
+
+    private ByteArrayInputStream _rawStream;
+    private ByteArrayInputStream _framedStream;
+    private byte[] _readBuffer;
+    private FrameDecoder _decoder;
+    private FrameDecoder _pooledDecoder;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        char[] __text = new char[messageBytes];
+        Arrays.fill(__text, 'x');
+        byte[] __payload = new String(__text).getBytes(Frame.UTF_8);
+
+        ByteArrayOutputStream __raw = new ByteArrayOutputStream();
+        ByteArrayOutputStream __framed = new ByteArrayOutputStream();
+        for(int i = 0; i < MESSAGES; i++)
+        {
+            __raw.write(__payload);
+            __framed.write(FrameEncoder.encode(Frame.TYPE_TEXT, __payload));
+        }//end for loop
+
+        _rawStream = new ByteArrayInputStream(__raw.toByteArray());
+        _framedStream = new ByteArrayInputStream(__framed.toByteArray());
+        _readBuffer = new byte[1024];
+        _decoder = new FrameDecoder();
+        _pooledDecoder = new FrameDecoder(BufferPool.getDefault(), FrameDecoder.DEFAULT_BUFFER_SIZE, FrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }//end method setUp
+
+    //----------------------------------------------------------------------------------------------
+
+    //what ConnectedThread.run did, a String per read in the platform charset
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void baselineStringPerRead(Blackhole __blackhole)
+    {
+        _rawStream.reset();
+
+        int __read;
+        while((__read = _rawStream.read(_readBuffer, 0, _readBuffer.length)) > 0)
+        {
+            __blackhole.consume(new String(_readBuffer, 0, __read));
+        }//end while loop
+    }//end method baselineStringPerRead
+
+    //the engine's reader for a text link: decode the frames and the text of each
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decodeText(final Blackhole __blackhole) throws IOException
+    {
+        decode(_decoder, new FrameConsumer()
+        {
+            @Override
+            public void onFrame(Frame __frame)
+            {
+                __blackhole.consume(__frame.asText());
+            }//end method onFrame
+        });
+    }//end method decodeText
+
+    //frames only, the cost a binary or file transfer consumer pays before looking at the bytes
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decodeFrames(final Blackhole __blackhole) throws IOException
+    {
+        decode(_decoder, new FrameConsumer()
+        {
+            @Override
+            public void onFrame(Frame __frame)
+            {
+                __blackhole.consume(__frame.getLength());
+            }//end method onFrame
+        });
+    }//end method decodeFrames
+
+    //the same with the decoder's ring taken from the shared pool
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decodeTextPooled(final Blackhole __blackhole) throws IOException
+    {
+        decode(_pooledDecoder, new FrameConsumer()
+        {
+            @Override
+            public void onFrame(Frame __frame)
+            {
+                __blackhole.consume(__frame.asText());
+            }//end method onFrame
+        });
+    }//end method decodeTextPooled
+
+    //----------------------------------------------------------------------------------------------
+
+    private void decode(FrameDecoder __decoder, FrameConsumer __consumer) throws IOException
+    {
+        _framedStream.reset();
+
+        while(__decoder.readFrom(_framedStream, __consumer) > 0)
+        {
+            //every frame is handed to the consumer as soon as it is complete
+        }//end while loop
+    }//end method decode
+}//end class ReadPathBenchmark
@@ -0,0 +1,157 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Finding a peer's connection by address and walking every connection for a broadcast. The
+*   baselines use a locked list like the first version's _connectDevices, scanned for the
+*   address; the others use the engine's ConnectionRegistry. The connections are real ones
+*   over loopback links
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark
+{
+    @Param({"1", "7", "64"})
+    public int connections;
+
+    private ConnectionEngine _engine;
+    private ConnectionEngine _peerEngine;
+    private ConnectionRegistry _registry;
+    private final ArrayList<Connection> _list = new ArrayList<>();
+
+    //the address looked up, the last one connected so the scan goes the whole way
+    private String _address;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException
+    {
+        _engine = new ConnectionEngine();
+        _peerEngine = new ConnectionEngine();
+        _registry = _engine.getRegistry();
+
+        final CountDownLatch __connected = new CountDownLatch(connections);
+        ConnectionListener __listener = new ConnectionListener()
+        {
+            @Override
+            public void onConnected(Connection __connection)
+            {
+                __connected.countDown();
+            }//end method onConnected
+
+            @Override
+            public void onConnectionFailed(Connection __connection, IOException __cause)
+            {
+            }//end method onConnectionFailed
+
+            @Override
+            public void onFrameReceived(Connection __connection, Frame __frame)
+            {
+            }//end method onFrameReceived
+
+            @Override
+            public void onDisconnected(Connection __connection)
+            {
+            }//end method onDisconnected
+        };//end ConnectionListener
+
+        for(int i = 0; i < connections; i++)
+        {
+            _address = String.format("00:11:22:33:44:%02X", i);
+            LoopbackTransport[] __pair = LoopbackTransport.createPair("phone-" + i, _address);
+            _list.add(_engine.connect(__pair[0], __listener));
+            _peerEngine.connect(__pair[1], __listener);
+        }//end for loop
+
+        if(!__connected.await(10, TimeUnit.SECONDS))
+        {
+            throw new IOException("timed out connecting");
+        }//end if
+    }//end method setUp
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        _engine.shutdown();
+        _peerEngine.shutdown();
+    }//end method tearDown
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Connection baselineListLookup()
+    {
+        synchronized (_list)
+        {
+            for(int i = 0; i < _list.size(); i++)
+            {
+                Connection __connection = _list.get(i);
+                if(__connection.getAddress().equals(_address))
+                {
+                    return __connection;
+                }//end if
+            }//end for loop
+        }//end synchronized
+
+        return null;
+    }//end method baselineListLookup
+
+    @Benchmark
+    public Connection registryLookup()
+    {
+        return _registry.get(_address);
+    }//end method registryLookup
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public int baselineListWalk()
+    {
+        int __queued = 0;
+
+        synchronized (_list)
+        {
+            for(int i = 0; i < _list.size(); i++)
+            {
+                __queued += _list.get(i).getQueuedFrames();
+            }//end for loop
+        }//end synchronized
+
+        return __queued;
+    }//end method baselineListWalk
+
+    //what a broadcast does before queueing the frame on every link
+    @Benchmark
+    public int registryWalk()
+    {
+        int __queued = 0;
+
+        for(Connection __connection : _registry.snapshotArray())
+        {
+            __queued += __connection.getQueuedFrames();
+        }//end for loop
+
+        return __queued;
+    }//end method registryWalk
+}//end class RegistryBenchmark
@@ -0,0 +1,91 @@
+package com.example.peter.bluetoothtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Turning a message into the bytes that are written. The baseline is ConnectThread.send, a
+*   plain getBytes in the platform charset with no framing; the others build the frame the
+*   engine writes, with and without compression
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendPathBenchmark
+{
+    private static final String SAMPLE = "sensor17 temp=21.5 humidity=40 battery=87 ";
+
+    @Param({"16", "256", "4096"})
+    public int messageBytes;
+
+    private String _message;
+    private byte[] _payload;
+    private FrameCompressor _compressor;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder __builder = new StringBuilder(messageBytes);
+        while(__builder.length() < messageBytes)
+        {
+            __builder.append(SAMPLE);
+        }//end while loop
+        __builder.setLength(messageBytes);
+
+        _message = __builder.toString();
+        _payload = _message.getBytes(Frame.UTF_8);
+        _compressor = new FrameCompressor(new CompressionPolicy(), new CompressionStats(), FrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }//end method setUp
+
+    @TearDown
+    public void tearDown()
+    {
+        _compressor.release();
+    }//end method tearDown
+
+    //----------------------------------------------------------------------------------------------
+
+    //what ConnectThread.send did
+    @Benchmark
+    public byte[] baselineGetBytes()
+    {
+        return _message.getBytes();
+    }//end method baselineGetBytes
+
+    //Connection.send on a link without compression
+    @Benchmark
+    public byte[] encodeText()
+    {
+        return FrameEncoder.encodeText(_message);
+    }//end method encodeText
+
+    //Connection.send once both ends agreed on compression, short messages go out as they are
+    @Benchmark
+    public byte[] encodeCompressed()
+    {
+        byte[] __payload = _message.getBytes(Frame.UTF_8);
+        return _compressor.encode(Frame.TYPE_TEXT, __payload, 0, __payload.length);
+    }//end method encodeCompressed
+
+    //the framing alone, for an already encoded payload such as a file chunk
+    @Benchmark
+    public byte[] frameOnly()
+    {
+        return FrameEncoder.encode(Frame.TYPE_BINARY, _payload);
+    }//end method frameOnly
+}//end class SendPathBenchmark